@@ -24,6 +24,9 @@ public class ClientChannelContext extends ChannelContext {
    */
   private AtomicInteger reconnCount = new AtomicInteger();
 
+  /** 心跳，连接建立后创建 */
+  private volatile ClientHeartbeat heartbeat;
+
   /**
    * @param tioConfig
    * @param asynchronousSocketChannel
@@ -43,6 +46,14 @@ public class ClientChannelContext extends ChannelContext {
     super(tioConfig);
   }
 
+  public ClientHeartbeat getHeartbeat() {
+    return heartbeat;
+  }
+
+  public void setHeartbeat(ClientHeartbeat heartbeat) {
+    this.heartbeat = heartbeat;
+  }
+
   /**
    * @return the bindIp
    */
@@ -0,0 +1,166 @@
+package com.litongjava.tio.client;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.litongjava.aio.Packet;
+import com.litongjava.tio.client.intf.ClientAioHandler;
+import com.litongjava.tio.core.Tio;
+import com.litongjava.tio.core.pool.BufferPoolUtils;
+import com.litongjava.tio.core.stat.ChannelStat;
+import com.litongjava.tio.core.ssl.SslUtils;
+import com.litongjava.tio.core.timer.HashedTimingWheel;
+import com.litongjava.tio.core.timer.IdleDetector;
+import com.litongjava.tio.utils.SystemTimer;
+
+/**
+ * 客户端心跳：每个连接在共用的时间轮上有一个定时任务，连接空闲达到心跳间隔时才发心跳<br>
+ * 心跳间隔是heartbeatTimeout/2减去一个连接建立时随机取的偏移（最多1/4），
+ * 同时建立的大量连接不会在同一时刻一起发心跳，任何连接的心跳间隔都不超过heartbeatTimeout/2
+ * @author Tong Li
+ */
+public class ClientHeartbeat implements Runnable {
+  private static final Logger log = LoggerFactory.getLogger(ClientHeartbeat.class);
+
+  private final ClientChannelContext channelContext;
+  private final ClientTioConfig clientTioConfig;
+  /** 随机偏移，连接存续期间不变 */
+  private final double jitter;
+  private volatile HashedTimingWheel.Timeout timeout;
+  private volatile boolean cancelled = false;
+
+  private ClientHeartbeat(ClientChannelContext channelContext) {
+    this.channelContext = channelContext;
+    this.clientTioConfig = (ClientTioConfig) channelContext.tioConfig;
+    this.jitter = ThreadLocalRandom.current().nextDouble(0.25);
+  }
+
+  /**
+   * 连接建立后开始心跳，heartbeatTimeout小于等于0时不发心跳
+   * @param channelContext
+   */
+  public static void register(ClientChannelContext channelContext) {
+    cancel(channelContext);
+    ClientHeartbeat heartbeat = new ClientHeartbeat(channelContext);
+    long interval = heartbeat.interval();
+    if (interval <= 0) {
+      return;
+    }
+    channelContext.setHeartbeat(heartbeat);
+    heartbeat.schedule(interval);
+  }
+
+  /**
+   * 连接关闭时停止心跳
+   * @param channelContext
+   */
+  public static void cancel(ClientChannelContext channelContext) {
+    ClientHeartbeat heartbeat = channelContext.getHeartbeat();
+    if (heartbeat != null) {
+      channelContext.setHeartbeat(null);
+      heartbeat.cancelled = true;
+      HashedTimingWheel.Timeout current = heartbeat.timeout;
+      if (current != null) {
+        current.cancel();
+      }
+    }
+  }
+
+  private long interval() {
+    long heartbeatTimeout = clientTioConfig.heartbeatTimeout;
+    if (heartbeatTimeout <= 0) {
+      return -1;
+    }
+    return (long) (heartbeatTimeout / 2 * (1 - jitter));
+  }
+
+  private void schedule(long delay) {
+    if (cancelled) {
+      return;
+    }
+    timeout = IdleDetector.wheel().newTimeout(this, delay, TimeUnit.MILLISECONDS);
+  }
+
+  @Override
+  public void run() {
+    if (cancelled || channelContext.isClosed() || channelContext.isRemoved() || clientTioConfig.isStopped()) {
+      return;
+    }
+    long interval = interval();
+    if (interval <= 0) {
+      return;
+    }
+    ChannelStat stat = channelContext.stat;
+    long idle = SystemTimer.currTime - Math.max(stat.latestTimeOfReceivedByte, stat.latestTimeOfSentPacket);
+    long delay;
+    if (idle >= interval) {
+      try {
+        Packet packet = heartbeatPacket();
+        if (packet != null) {
+          if (log.isDebugEnabled()) {
+            log.debug("{} send heartbeat packet ", channelContext);
+          }
+          Tio.send(channelContext, packet);
+        }
+      } catch (Throwable e) {
+        log.error(e.toString(), e);
+      }
+      delay = interval;
+    } else {
+      // 期间有收发，从最后一次收发算起
+      delay = interval - idle;
+    }
+    schedule(delay);
+  }
+
+  /**
+   * 心跳包总是由aioHandler.heartbeatPacket()生成，开启预编码时附上共用的编码结果，发送时不再编码
+   */
+  private Packet heartbeatPacket() {
+    ClientAioHandler aioHandler = clientTioConfig.getClientAioHandler();
+    Packet packet = aioHandler.heartbeatPacket(channelContext);
+    if (packet == null || packet.getPreEncodedByteBuffer() != null || !clientTioConfig.isHeartbeatPreEncoded() || SslUtils.isSsl(clientTioConfig)
+        || clientTioConfig.packetConverter != null) {
+      return packet;
+    }
+    ByteBuffer byteBuffer = clientTioConfig.heartbeatByteBuffer;
+    if (byteBuffer == null) {
+      byteBuffer = preEncode(aioHandler, packet);
+      if (byteBuffer == null) {
+        return packet;
+      }
+    }
+    // 只读视图：发送完成后不会被当作池中的缓冲区回收
+    packet.setPreEncodedByteBuffer(byteBuffer.duplicate());
+    return packet;
+  }
+
+  /**
+   * 编码第一个心跳包，复制到一个只读的直接内存缓冲区，之后所有连接共用，编码用的缓冲区复制后归还
+   */
+  private ByteBuffer preEncode(ClientAioHandler aioHandler, Packet packet) {
+    synchronized (clientTioConfig) {
+      if (clientTioConfig.heartbeatByteBuffer != null) {
+        return clientTioConfig.heartbeatByteBuffer;
+      }
+      ByteBuffer encoded = aioHandler.encode(packet, clientTioConfig, channelContext);
+      if (encoded == null) {
+        return null;
+      }
+      if (!encoded.hasRemaining()) {
+        encoded.flip();
+      }
+      ByteBuffer byteBuffer = ByteBuffer.allocateDirect(encoded.remaining());
+      byteBuffer.put(encoded);
+      byteBuffer.flip();
+      // 编码结果一般是从池中分配的，复制后归还
+      BufferPoolUtils.clean(encoded);
+      clientTioConfig.heartbeatByteBuffer = byteBuffer.asReadOnlyBuffer();
+      return clientTioConfig.heartbeatByteBuffer;
+    }
+  }
+}
@@ -1,5 +1,6 @@
 package com.litongjava.tio.client;
 
+import java.nio.ByteBuffer;
 import java.util.HashSet;
 
 import org.slf4j.Logger;
@@ -7,11 +8,14 @@ import org.slf4j.LoggerFactory;
 
 import com.litongjava.tio.client.intf.ClientAioHandler;
 import com.litongjava.tio.client.intf.ClientAioListener;
+import com.litongjava.tio.consts.TioCoreConfigKeys;
 import com.litongjava.tio.core.ChannelContext;
 import com.litongjava.tio.core.TioConfig;
 import com.litongjava.tio.core.intf.AioHandler;
 import com.litongjava.tio.core.intf.AioListener;
+import com.litongjava.tio.core.maintain.MaintainUtils;
 import com.litongjava.tio.core.ssl.SslConfig;
+import com.litongjava.tio.utils.environment.EnvUtils;
 import com.litongjava.tio.utils.lock.SetWithLock;
 
 /**
@@ -29,9 +33,17 @@ public class ClientTioConfig extends TioConfig {
 
   private ConnectionCompletionHandler connectionCompletionHandler = new ConnectionCompletionHandler();
 
-  public final SetWithLock<ChannelContext> connecteds = new SetWithLock<ChannelContext>(new HashSet<ChannelContext>());
+  public final SetWithLock<ChannelContext> connecteds = MaintainUtils.createIdOrderedSet();
   public final SetWithLock<ChannelContext> closeds = new SetWithLock<ChannelContext>(new HashSet<ChannelContext>());
 
+  /**
+   * 心跳包只编码一次，所有连接共用编码结果，附在heartbeatPacket()返回的packet上发送；
+   * 要求heartbeatPacket()对所有连接返回相同内容且每次返回新的Packet，ssl和配置了packetConverter时不生效
+   */
+  private boolean heartbeatPreEncoded = EnvUtils.getBoolean(TioCoreConfigKeys.TIO_CORE_CLIENT_HEARTBEAT_PRE_ENCODED, false);
+  /** 预编码的心跳包（只读），第一次发心跳时生成 */
+  volatile ByteBuffer heartbeatByteBuffer;
+
   /**
    * 不重连
    * @param aioHandler
@@ -111,6 +123,18 @@ public class ClientTioConfig extends TioConfig {
     return connectionCompletionHandler;
   }
 
+  public boolean isHeartbeatPreEncoded() {
+    return heartbeatPreEncoded;
+  }
+
+  /**
+   * @param heartbeatPreEncoded 心跳包是否只编码一次、所有连接共用
+   */
+  public void setHeartbeatPreEncoded(boolean heartbeatPreEncoded) {
+    this.heartbeatPreEncoded = heartbeatPreEncoded;
+    this.heartbeatByteBuffer = null;
+  }
+
   /**
    * @param clientAioHandler the clientAioHandler to set
    */
@@ -19,12 +19,12 @@ import com.litongjava.tio.core.pool.BufferPoolUtils;
 import com.litongjava.tio.core.ssl.SslFacadeContext;
 import com.litongjava.tio.core.ssl.SslUtils;
 import com.litongjava.tio.core.stat.IpStat;
+import com.litongjava.tio.core.stat.IpStatRecord;
 import com.litongjava.tio.core.task.DecodeTask;
 import com.litongjava.tio.proxy.ProxyHandshake;
 import com.litongjava.tio.proxy.ProxyInfo;
 import com.litongjava.tio.proxy.ProxyType;
 import com.litongjava.tio.utils.SystemTimer;
-import com.litongjava.tio.utils.hutool.CollUtil;
 
 /**
  * Just for Client
@@ -158,10 +158,11 @@ public class ConnectionCompletionHandler implements CompletionHandler<Void, Conn
 
         attachment.setChannelContext(channelContext);
         clientTioConfig.connecteds.add(channelContext);
+        ClientHeartbeat.register(channelContext);
 
         // 4) Start async read loop.
         ReadCompletionHandler readCompletionHandler = new ReadCompletionHandler(channelContext);
-        VirtualBuffer vBuffer = BufferPoolUtils.allocateRequest(channelContext.getReadBufferSize());
+        VirtualBuffer vBuffer = BufferPoolUtils.allocateRequest(readCompletionHandler.nextReadBufferSize(), channelContext);
         ByteBuffer readByteBuffer = vBuffer.buffer();
         readByteBuffer.position(0);
         readByteBuffer.limit(readByteBuffer.capacity());
@@ -235,11 +236,13 @@ public class ConnectionCompletionHandler implements CompletionHandler<Void, Conn
 
           // Update ipStats after connection attempt.
           TioConfig tioConfig = channelContext.tioConfig;
-          if (CollUtil.isNotEmpty(tioConfig.ipStats.durationList)) {
-            for (Long v : tioConfig.ipStats.durationList) {
-              IpStat ipStat = tioConfig.ipStats.get(v, channelContext);
-              ipStat.getRequestCount().incrementAndGet();
-              tioConfig.getIpStatListener().onAfterConnected(channelContext, isConnected, isReconnect, ipStat);
+          if (tioConfig.ipStats.isOn()) {
+            IpStatRecord ipStatRecord = tioConfig.ipStats.record(channelContext);
+            ipStatRecord.add(IpStatRecord.REQUEST_COUNT, 1);
+            if (tioConfig.ipStats.hasListener()) {
+              for (IpStat ipStat : ipStatRecord.snapshots()) {
+                tioConfig.getIpStatListener().onAfterConnected(channelContext, isConnected, isReconnect, ipStat);
+              }
             }
           }
         }
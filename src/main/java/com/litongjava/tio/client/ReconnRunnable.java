@@ -36,11 +36,11 @@ public class ReconnRunnable extends AbstractSynRunnable {
   @Override
   public void runTask() {
     channelContext.getReconnCount().incrementAndGet();
-    ReentrantReadWriteLock closeLock = channelContext.closeLock;
+    ReentrantReadWriteLock closeLock = channelContext.getCloseLock();
     WriteLock writeLock = closeLock.writeLock();
     writeLock.lock();
     try {
-      if (!channelContext.isClosed) // 已经连上了，不需要再重连了
+      if (!channelContext.isClosed()) // 已经连上了，不需要再重连了
       {
         return;
       }
@@ -56,7 +56,7 @@ public class ReconnRunnable extends AbstractSynRunnable {
 
       log.error("{}, 第{}次重连,重连耗时:{} ms", channelContext, channelContext.getReconnCount(), iv);
 
-      // if (channelContext.isClosed) {
+      // if (channelContext.isClosed()) {
       // // cacheMap.put(channelContext.getServerNode(), SystemTimer.currTime);
       // return;
       // }
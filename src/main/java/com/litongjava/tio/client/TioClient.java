@@ -5,28 +5,24 @@ import java.net.InetSocketAddress;
 import java.net.StandardSocketOptions;
 import java.nio.channels.AsynchronousChannelGroup;
 import java.nio.channels.AsynchronousSocketChannel;
-import java.util.Set;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.locks.ReentrantReadWriteLock.ReadLock;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.litongjava.aio.Packet;
-import com.litongjava.tio.client.intf.ClientAioHandler;
+import com.litongjava.enhance.buffer.GlobalScheduler;
 import com.litongjava.tio.core.ChannelContext;
 import com.litongjava.tio.core.Node;
-import com.litongjava.tio.core.Tio;
 import com.litongjava.tio.core.ssl.SslFacadeContext;
-import com.litongjava.tio.core.stat.ChannelStat;
+import com.litongjava.tio.core.stat.GroupStat;
 import com.litongjava.tio.proxy.ProxyInfo;
 import com.litongjava.tio.utils.SystemTimer;
 import com.litongjava.tio.utils.Threads;
 import com.litongjava.tio.utils.environment.EnvUtils;
 import com.litongjava.tio.utils.hutool.StrUtil;
-import com.litongjava.tio.utils.lock.SetWithLock;
 
 /**
  *
@@ -39,6 +35,8 @@ public class TioClient {
 
   private ClientTioConfig clientTioConfig;
 
+  private ScheduledFuture<?> statLogFuture = null;
+
   /**
    * @param serverIp   可以为空
    * @param serverPort
@@ -57,8 +55,8 @@ public class TioClient {
       this.channelGroup = AsynchronousChannelGroup.withThreadPool(Threads.getReadExecutor());
     }
 
-    startHeartbeatTask();
     startReconnTask();
+    startStatLogTask();
   }
 
   /**
@@ -285,73 +283,6 @@ public class TioClient {
     this.clientTioConfig = clientTioConfig;
   }
 
-  /**
-   * 定时任务：发心跳
-   */
-  private void startHeartbeatTask() {
-    final ClientGroupStat clientGroupStat = (ClientGroupStat) clientTioConfig.groupStat;
-    final ClientAioHandler aioHandler = clientTioConfig.getClientAioHandler();
-
-    final String id = clientTioConfig.getId();
-    new Thread(new Runnable() {
-      @Override
-      public void run() {
-        while (!clientTioConfig.isStopped()) {
-          // final long heartbeatTimeout = clientTioConfig.heartbeatTimeout;
-          if (clientTioConfig.heartbeatTimeout <= 0) {
-            log.warn(
-                "The user has cancelled the heartbeat sending function at the frame level, and asks the user to complete the heartbeat mechanism by himself");
-            break;
-          }
-          SetWithLock<ChannelContext> setWithLock = clientTioConfig.connecteds;
-          ReadLock readLock = setWithLock.readLock();
-          readLock.lock();
-          try {
-            Set<ChannelContext> set = setWithLock.getObj();
-            long currtime = SystemTimer.currTime;
-            for (ChannelContext entry : set) {
-              ClientChannelContext channelContext = (ClientChannelContext) entry;
-              if (channelContext.isClosed || channelContext.isRemoved) {
-                continue;
-              }
-
-              ChannelStat stat = channelContext.stat;
-              long compareTime = Math.max(stat.latestTimeOfReceivedByte, stat.latestTimeOfSentPacket);
-              long interval = currtime - compareTime;
-              if (interval >= clientTioConfig.heartbeatTimeout / 2) {
-                Packet packet = aioHandler.heartbeatPacket(channelContext);
-                if (packet != null) {
-                  if (log.isInfoEnabled()) {
-                    log.info("{} send heartbeat packet ", channelContext.toString());
-                  }
-                  Tio.send(channelContext, packet);
-                }
-              }
-            }
-            if (log.isInfoEnabled()) {
-              log.info("[{}]: curr:{}, closed:{}, received:({}p)({}b), handled:{}, sent:({}p)({}b)", id, set.size(),
-                  clientGroupStat.closed.get(), clientGroupStat.receivedPackets.get(),
-                  clientGroupStat.receivedBytes.get(), clientGroupStat.handledPackets.get(),
-                  clientGroupStat.sentPackets.get(), clientGroupStat.sentBytes.get());
-            }
-
-          } catch (Throwable e) {
-            log.error("", e);
-          } finally {
-            try {
-              readLock.unlock();
-              Thread.sleep(clientTioConfig.heartbeatTimeout / 4);
-            } catch (Throwable e) {
-              log.error(e.toString(), e);
-            } finally {
-
-            }
-          }
-        }
-      }
-    }, "tio-timer-heartbeat-" + id).start();
-  }
-
   /**
    * 启动重连任务
    */
@@ -380,7 +311,7 @@ public class TioClient {
             // return;
           }
 
-          if (channelContext.isRemoved) // 已经删除的，不需要重新再连
+          if (channelContext.isRemoved()) // 已经删除的，不需要重新再连
           {
             continue;
           }
@@ -400,7 +331,7 @@ public class TioClient {
             }
           }
 
-          if (channelContext.isRemoved || !channelContext.isClosed) // 已经删除的和已经连上的，不需要重新再连
+          if (channelContext.isRemoved() || !channelContext.isClosed()) // 已经删除的和已经连上的，不需要重新再连
           {
             continue;
           } else {
@@ -425,8 +356,45 @@ public class TioClient {
     thread.start();
   }
 
+  /**
+   * 定时打印客户端统计，间隔与原来的心跳线程相同（heartbeatTimeout/4）；心跳本身由ClientHeartbeat按连接调度
+   */
+  private void startStatLogTask() {
+    long interval = clientTioConfig.heartbeatTimeout / 4;
+    if (interval <= 0) {
+      log.warn(
+          "The user has cancelled the heartbeat sending function at the frame level, and asks the user to complete the heartbeat mechanism by himself");
+      return;
+    }
+    statLogFuture = GlobalScheduler.scheduleWithFixedDelay(this::logStat, interval, interval, TimeUnit.MILLISECONDS);
+  }
+
+  private void logStat() {
+    if (clientTioConfig.isStopped()) {
+      cancelStatLogTask();
+      return;
+    }
+    if (log.isInfoEnabled()) {
+      GroupStat groupStat = clientTioConfig.groupStat;
+      log.info("[{}]: curr:{}, closed:{}, received:({}p)({}b), handled:{}, sent:({}p)({}b)", clientTioConfig.getId(),
+          clientTioConfig.connecteds.size(), groupStat.closed.get(), groupStat.receivedPackets.get(), groupStat.receivedBytes.get(),
+          groupStat.handledPackets.get(), groupStat.sentPackets.get(), groupStat.sentBytes.get());
+    }
+  }
+
+  private void cancelStatLogTask() {
+    ScheduledFuture<?> future = statLogFuture;
+    if (future != null) {
+      future.cancel(false);
+      statLogFuture = null;
+    }
+  }
+
   public boolean stop() {
     boolean ret = true;
+    cancelStatLogTask();
+    clientTioConfig.shutdownBizExecutor();
+    clientTioConfig.shutdownFanOutPool();
     Threads.close();
     log.info("client resource has released");
     return ret;
@@ -8,6 +8,48 @@ public interface TioCoreConfigKeys {
 
   String TIO_CORE_DIAGNOSTIC = "tio.core.diagnostic";
   String TIO_CORE_THREADS = "tio.core.threads";
+  String TIO_CORE_SEND_BATCH_PACKETS = "tio.core.send.batch.packets";
+  String TIO_CORE_SEND_BATCH_BYTES = "tio.core.send.batch.bytes";
+  String TIO_CORE_FILE_TRANSFER_CHUNK_SIZE = "tio.core.file.transfer.chunk.size";
+  String TIO_CORE_FILE_TRANSFER_MAX_CONCURRENT = "tio.core.file.transfer.max.concurrent";
+  String TIO_CORE_SEND_QUEUE_MAX_PACKETS = "tio.core.send.queue.max.packets";
+  String TIO_CORE_SEND_QUEUE_MAX_BYTES = "tio.core.send.queue.max.bytes";
+  String TIO_CORE_SEND_QUEUE_HIGH_WATER_MARK_PACKETS = "tio.core.send.queue.high.water.mark.packets";
+  String TIO_CORE_SEND_QUEUE_LOW_WATER_MARK_PACKETS = "tio.core.send.queue.low.water.mark.packets";
+  String TIO_CORE_SEND_QUEUE_HIGH_WATER_MARK_BYTES = "tio.core.send.queue.high.water.mark.bytes";
+  String TIO_CORE_SEND_QUEUE_LOW_WATER_MARK_BYTES = "tio.core.send.queue.low.water.mark.bytes";
+  String TIO_CORE_SEND_QUEUE_TOTAL_MAX_PACKETS = "tio.core.send.queue.total.max.packets";
+  String TIO_CORE_SEND_QUEUE_TOTAL_MAX_BYTES = "tio.core.send.queue.total.max.bytes";
+  String TIO_CORE_SEND_QUEUE_OVERFLOW_POLICY = "tio.core.send.queue.overflow.policy";
+  String TIO_CORE_READ_BUFFER_ADAPTIVE = "tio.core.read.buffer.adaptive";
+  String TIO_CORE_READ_BUFFER_MIN_SIZE = "tio.core.read.buffer.min.size";
+  String TIO_CORE_READ_BUFFER_INITIAL_SIZE = "tio.core.read.buffer.initial.size";
+  String TIO_CORE_READ_BUFFER_MAX_SIZE = "tio.core.read.buffer.max.size";
+  String TIO_CORE_READ_HIBERNATE_TIMEOUT = "tio.core.read.hibernate.timeout";
+  String TIO_CORE_BIZ_BATCH_DISPATCH = "tio.core.biz.batch.dispatch";
+  String TIO_CORE_PACKET_HANDLER_MODE = "tio.core.packet.handler.mode";
+  String TIO_CORE_LANE_MAX_PACKETS_PER_RUN = "tio.core.lane.max.packets.per.run";
+  String TIO_CORE_VIRTUAL_THREADS = "tio.core.virtual.threads";
+  String TIO_CORE_VIRTUAL_THREADS_MAX_CONCURRENT = "tio.core.virtual.threads.max.concurrent";
+  String TIO_CORE_BUFFER_POOL_MAX_RETAINED_BYTES = "tio.core.buffer.pool.max.retained.bytes";
+  String TIO_CORE_BUFFER_POOL_MAX_CLASS_SIZE = "tio.core.buffer.pool.max.class.size";
+  String TIO_CORE_BUFFER_LEAK_DETECTION = "tio.core.buffer.leak.detection";
+  String TIO_CORE_BUFFER_LEAK_DETECTION_SAMPLING_INTERVAL = "tio.core.buffer.leak.detection.sampling.interval";
+  String TIO_CORE_MEMORY_BUDGET_ENABLED = "tio.core.memory.budget.enabled";
+  String TIO_CORE_MEMORY_BUDGET_SOFT_LIMIT = "tio.core.memory.budget.soft.limit";
+  String TIO_CORE_MEMORY_BUDGET_HARD_LIMIT = "tio.core.memory.budget.hard.limit";
+  String TIO_CORE_READ_IDLE_TIMEOUT = "tio.core.read.idle.timeout";
+  String TIO_CORE_WRITE_IDLE_TIMEOUT = "tio.core.write.idle.timeout";
+  String TIO_CORE_CLIENT_HEARTBEAT_PRE_ENCODED = "tio.core.client.heartbeat.pre.encoded";
+  String TIO_CORE_FAN_OUT_SHARD_SIZE = "tio.core.fan.out.shard.size";
+  String TIO_CORE_FAN_OUT_CONCURRENCY = "tio.core.fan.out.concurrency";
+  String TIO_CORE_FAN_OUT_SHARED_ENCODE = "tio.core.fan.out.shared.encode";
   String TIO_CORE_HOTSWAP_RELOAD = "tio.core.hotswap.reload";
+  String TIO_CORE_STAT_GROUP_LAZY = "tio.core.stat.group.lazy";
+  String TIO_CORE_STAT_LATENCY = "tio.core.stat.latency";
+  String TIO_CORE_STAT_CHANNEL_LATENCY = "tio.core.stat.channel.latency";
+  String TIO_CORE_STAT_READ_SIZE = "tio.core.stat.read.size";
+  String TIO_CORE_STAT_CHANNEL_READ_SIZE = "tio.core.stat.channel.read.size";
+  String TIO_CORE_CHANNEL_COMPACT = "tio.core.channel.compact";
   String REQEUST_PROCESSING = "reqeust_processing";
 }
@@ -133,7 +133,19 @@ public enum ChannelCloseCode {
    */
   CLOSE_BY_ERROR((byte) 202),
 
-  IP_IN_BLACK_LIST((byte) 203);
+  IP_IN_BLACK_LIST((byte) 203),
+  /**
+   * 发送队列超过上限（对端消费太慢）
+   */
+  SEND_QUEUE_OVERFLOW((byte) 204),
+  /**
+   * 直接内存超过预算的硬上限，拒绝新连接
+   */
+  MEMORY_BUDGET_EXCEEDED((byte) 205),
+  /**
+   * 业务线程池已关闭，连接中已解码的packet无法处理
+   */
+  BIZ_EXECUTOR_REJECTED((byte) 206);
 
   public static ChannelCloseCode from(Byte value) {
     ChannelCloseCode[] values = ChannelCloseCode.values();
@@ -3,12 +3,13 @@ package com.litongjava.tio.core;
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.nio.channels.AsynchronousSocketChannel;
+import java.util.HashSet;
 import java.util.Objects;
-import java.util.Queue;
-import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.slf4j.Logger;
@@ -19,19 +20,33 @@ import com.litongjava.aio.PacketMeta;
 import com.litongjava.tio.core.ssl.SslFacadeContext;
 import com.litongjava.tio.core.stat.ChannelStat;
 import com.litongjava.tio.core.stat.IpStat;
-import com.litongjava.tio.utils.hutool.CollUtil;
+import com.litongjava.tio.core.stat.IpStatRecord;
+import com.litongjava.tio.core.task.DecodeTask;
+import com.litongjava.tio.core.task.SerialLane;
+import com.litongjava.tio.core.timer.IdleDetector;
+import com.litongjava.tio.core.utils.LazyPropSupport;
 import com.litongjava.tio.utils.hutool.StrUtil;
 import com.litongjava.tio.utils.lock.SetWithLock;
-import com.litongjava.tio.utils.prop.MapWithLockPropSupport;
 
 /**
+ * 连接<br>
+ * 百万连接时每个连接的内存占用决定了机器成本：属性map、groups在第一次使用时才创建，
+ * closed、removed、waitingClose、sending合并在一个int状态字中，通过FieldUpdater原子更新<br>
+ * 开启TioConfig.compactChannelContext后，closeLock、closeMeta也在第一次使用时创建，不创建isSending和ChannelStat的AtomicLong计数器；
+ * 默认不开启，已废弃的public字段保持原来的行为，便于旧代码迁移
  * @author tanyaowu 2017年10月19日 上午9:39:46
  */
-public abstract class ChannelContext extends MapWithLockPropSupport {
+public abstract class ChannelContext extends LazyPropSupport {
   private static final Logger log = LoggerFactory.getLogger(ChannelContext.class);
   private static final String DEFAULT_ATTUBITE_KEY = "t-io-d-a-k";
   public static final String UNKNOWN_ADDRESS_IP = "$UNKNOWN";
   public static final AtomicInteger UNKNOWN_ADDRESS_PORT_SEQ = new AtomicInteger();
+  /** 状态字中的标志位 */
+  private static final int CLOSED = 1;
+  private static final int REMOVED = 1 << 1;
+  private static final int WAITING_CLOSE = 1 << 2;
+  private static final int SENDING = 1 << 3;
+  private static final AtomicIntegerFieldUpdater<ChannelContext> STATE = AtomicIntegerFieldUpdater.newUpdater(ChannelContext.class, "state");
   public boolean isReconnect = false;
 
   public boolean isBind = false;
@@ -41,28 +56,55 @@ public abstract class ChannelContext extends MapWithLockPropSupport {
   public boolean logWhenDecodeError = false;
   /**
    * 此值不设时，心跳时间取TioConfig.heartbeatTimeout
-   * 当然这个值如果小于TioConfig.heartbeatTimeout，定时检查的时间间隔还是以TioConfig.heartbeatTimeout为准，只是在判断时用此值
+   * 建立连接后修改请调用setHeartbeatTimeout()，直接赋值要等到下一次检测时才按新值计时
    */
   public Long heartbeatTimeout = null;
+  /** 空闲检测，服务端连接建立后创建 */
+  private volatile IdleDetector idleDetector;
+  /** 所在IP的统计，第一次统计时由IpStats设置 */
+  private volatile IpStatRecord ipStatRecord;
+  private static final AtomicReferenceFieldUpdater<ChannelContext, IpStatRecord> IP_STAT_RECORD = AtomicReferenceFieldUpdater.newUpdater(ChannelContext.class,
+      IpStatRecord.class, "ipStatRecord");
   /**
    * 一个packet所需要的字节数（用于应用告诉框架，下一次解码所需要的字节长度，省去冗余解码带来的性能损耗）
    */
   public Integer packetNeededLength = null;
   public TioConfig tioConfig = null;
-  public final ReentrantReadWriteLock closeLock = new ReentrantReadWriteLock();
+  /**
+   * 关闭和重连互斥用的锁，紧凑连接时第一次调用getCloseLock()才创建
+   * @deprecated 用getCloseLock()
+   */
+  @Deprecated
+  public volatile ReentrantReadWriteLock closeLock;
 
   public SslFacadeContext sslFacadeContext;
-  public String userId;
-  private String token;
-  private String bsId;
+  /**
+   * 持有半包累积缓冲区的DecodeTask，连接关闭时归还缓冲区
+   */
+  public volatile DecodeTask decodeTask;
+  /**
+   * 读完成回调，MemoryBudget通过它暂停和恢复读
+   */
+  public volatile ReadCompletionHandler readCompletionHandler;
+  /**
+   * ORDERED模式下的串行通道，第一次派发packet时创建
+   */
+  private volatile SerialLane serialLane;
+  /** 绑定的userid、token、bsId，连接关闭时按它们解绑 */
+  public volatile String userId;
+  private volatile String token;
+  private static final AtomicReferenceFieldUpdater<ChannelContext, String> USER_ID = AtomicReferenceFieldUpdater.newUpdater(ChannelContext.class,
+      String.class, "userId");
+  private static final AtomicReferenceFieldUpdater<ChannelContext, String> TOKEN = AtomicReferenceFieldUpdater.newUpdater(ChannelContext.class,
+      String.class, "token");
+  private volatile String bsId;
   private Long dataId;
   private Boolean dataBool;
-  public boolean isWaitingClose = false;
-  public boolean isClosed = true;
-  public boolean isRemoved = false;
+  /** closed、removed、waitingClose、sending标志位，初始是closed */
+  private volatile int state = CLOSED;
   public boolean isVirtual = false;
   public boolean hasTempDir = false;
-  public final ChannelStat stat = new ChannelStat();
+  public final ChannelStat stat;
   /** The asynchronous socket channel. */
   public AsynchronousSocketChannel asynchronousSocketChannel;
   private String id = null;
@@ -70,16 +112,26 @@ public abstract class ChannelContext extends MapWithLockPropSupport {
   private Node proxyClientNode = null; // 一些连接是代理的，譬如web服务器放在nginx后面，此时需要知道最原始的ip
   private Node serverNode;
   /**
-   * 该连接在哪些组中
+   * 该连接在哪些组中，第一次加入组时创建，建议用getGroups()
    */
-  public SetWithLock<String> groups;
+  public volatile SetWithLock<String> groups;
   private Integer readBufferSize = null; // 个性化readBufferSize
-  public CloseMeta closeMeta = new CloseMeta();
+  /**
+   * 关闭原因，紧凑连接时第一次调用getCloseMeta()才创建
+   * @deprecated 用getCloseMeta()
+   */
+  @Deprecated
+  public volatile CloseMeta closeMeta;
   private ChannelCloseCode closeCode = ChannelCloseCode.INIT_STATUS; // 连接关闭的原因码
 
   // 添加发送队列和控制变量
-  public final Queue<Packet> sendQueue = new ConcurrentLinkedQueue<>();
-  public final AtomicBoolean isSending = new AtomicBoolean(false);
+  public final SendQueue sendQueue = new SendQueue(this);
+  /**
+   * 是否有线程在写这个连接，紧凑连接时为null，发送权记在状态字中
+   * @deprecated 用tryAcquireSending()、releaseSending()、isSending()
+   */
+  @Deprecated
+  public final AtomicBoolean isSending;
 
   /**
    *
@@ -89,6 +141,10 @@ public abstract class ChannelContext extends MapWithLockPropSupport {
    */
   public ChannelContext(TioConfig tioConfig, AsynchronousSocketChannel asynchronousSocketChannel) {
     super();
+    boolean compact = tioConfig.isCompactChannelContext();
+    stat = new ChannelStat(compact);
+    isSending = compact ? null : new AtomicBoolean(false);
+    createEagerFields(compact);
     init(tioConfig, asynchronousSocketChannel);
 
     if (tioConfig.sslConfig != null) {
@@ -107,6 +163,10 @@ public abstract class ChannelContext extends MapWithLockPropSupport {
 
   public ChannelContext(TioConfig tioConfig, AsynchronousSocketChannel asynchronousSocketChannel, String ip, int port) {
     super();
+    boolean compact = tioConfig.isCompactChannelContext();
+    stat = new ChannelStat(compact);
+    isSending = compact ? null : new AtomicBoolean(false);
+    createEagerFields(compact);
     init(tioConfig, asynchronousSocketChannel, ip, port);
 
     if (tioConfig.sslConfig != null) {
@@ -140,6 +200,10 @@ public abstract class ChannelContext extends MapWithLockPropSupport {
    * @author tanyaowu
    */
   public ChannelContext(TioConfig tioConfig, String id) {
+    boolean compact = tioConfig.isCompactChannelContext();
+    stat = new ChannelStat(compact);
+    isSending = compact ? null : new AtomicBoolean(false);
+    createEagerFields(compact);
     isVirtual = true;
     this.tioConfig = tioConfig;
     Node clientNode = new Node("127.0.0.1", 26254);
@@ -150,6 +214,16 @@ public abstract class ChannelContext extends MapWithLockPropSupport {
     }
   }
 
+  /**
+   * 非紧凑连接和原来一样预先创建closeLock、closeMeta
+   */
+  private void createEagerFields(boolean compact) {
+    if (!compact) {
+      closeLock = new ReentrantReadWriteLock();
+      closeMeta = new CloseMeta();
+    }
+  }
+
   private void assignAnUnknownClientNode() {
     Node clientNode = new Node(UNKNOWN_ADDRESS_IP, UNKNOWN_ADDRESS_PORT_SEQ.incrementAndGet());
     setClientNode(clientNode);
@@ -219,8 +293,28 @@ public abstract class ChannelContext extends MapWithLockPropSupport {
     return clientNode;
   }
 
+  /**
+   * @return 该连接在哪些组中，不存在时创建
+   */
   public SetWithLock<String> getGroups() {
-    return groups;
+    SetWithLock<String> set = groups;
+    if (set == null) {
+      synchronized (this) {
+        set = groups;
+        if (set == null) {
+          set = new SetWithLock<String>(new HashSet<String>());
+          groups = set;
+        }
+      }
+    }
+    return set;
+  }
+
+  /**
+   * @return 是否已经加入过组，不会创建groups
+   */
+  public boolean hasGroups() {
+    return groups != null;
   }
 
   /**
@@ -301,15 +395,16 @@ public abstract class ChannelContext extends MapWithLockPropSupport {
         }
 
         if (tioConfig.statOn) {
-          tioConfig.groupStat.sentPackets.incrementAndGet();
-          stat.sentPackets.incrementAndGet();
+          if (!tioConfig.isStatGroupLazy()) {
+            tioConfig.groupStat.sentPackets.increment();
+          }
+          stat.addSentPackets(1);
         }
 
-        if (CollUtil.isNotEmpty(tioConfig.ipStats.durationList)) {
+        // SENT_PACKETS由WriteCompletionHandler按写成功的packet数计入，这里只回调监听器
+        if (tioConfig.ipStats.isOn() && tioConfig.ipStats.hasListener()) {
           try {
-            for (Long v : tioConfig.ipStats.durationList) {
-              IpStat ipStat = tioConfig.ipStats.get(v, this);
-              ipStat.getSentPackets().incrementAndGet();
+            for (IpStat ipStat : tioConfig.ipStats.record(this).snapshots()) {
               tioConfig.getIpStatListener().onAfterSent(this, packet, isSentSuccess, ipStat);
             }
           } catch (Exception e) {
@@ -393,11 +488,114 @@ public abstract class ChannelContext extends MapWithLockPropSupport {
     }
   }
 
+  private void setFlag(int flag, boolean value) {
+    for (;;) {
+      int current = state;
+      int next = value ? (current | flag) : (current & ~flag);
+      if (current == next || STATE.compareAndSet(this, current, next)) {
+        break;
+      }
+    }
+  }
+
+  public boolean isClosed() {
+    return (state & CLOSED) != 0;
+  }
+
+  public boolean isRemoved() {
+    return (state & REMOVED) != 0;
+  }
+
+  public boolean isWaitingClose() {
+    return (state & WAITING_CLOSE) != 0;
+  }
+
+  public void setWaitingClose(boolean isWaitingClose) {
+    setFlag(WAITING_CLOSE, isWaitingClose);
+  }
+
+  /**
+   * 抢占发送权，同一时间只有一个线程在写这个连接
+   * @return true: 抢到了
+   */
+  public boolean tryAcquireSending() {
+    AtomicBoolean sending = isSending;
+    if (sending != null) {
+      return sending.compareAndSet(false, true);
+    }
+    for (;;) {
+      int current = state;
+      if ((current & SENDING) != 0) {
+        return false;
+      }
+      if (STATE.compareAndSet(this, current, current | SENDING)) {
+        return true;
+      }
+    }
+  }
+
+  /**
+   * 释放发送权
+   */
+  public void releaseSending() {
+    AtomicBoolean sending = isSending;
+    if (sending != null) {
+      sending.set(false);
+      return;
+    }
+    setFlag(SENDING, false);
+  }
+
+  /**
+   * @return 是否有线程持有发送权
+   */
+  public boolean isSending() {
+    AtomicBoolean sending = isSending;
+    if (sending != null) {
+      return sending.get();
+    }
+    return (state & SENDING) != 0;
+  }
+
+  /**
+   * @return 关闭和重连互斥用的锁，不存在时创建
+   */
+  public ReentrantReadWriteLock getCloseLock() {
+    ReentrantReadWriteLock lock = closeLock;
+    if (lock == null) {
+      synchronized (this) {
+        lock = closeLock;
+        if (lock == null) {
+          lock = new ReentrantReadWriteLock();
+          closeLock = lock;
+        }
+      }
+    }
+    return lock;
+  }
+
+  /**
+   * @return 关闭原因，不存在时创建
+   */
+  public CloseMeta getCloseMeta() {
+    CloseMeta meta = closeMeta;
+    if (meta == null) {
+      synchronized (this) {
+        meta = closeMeta;
+        if (meta == null) {
+          meta = new CloseMeta();
+          closeMeta = meta;
+        }
+      }
+    }
+    return meta;
+  }
+
   /**
    * @param isClosed the isClosed to set
    */
   public void setClosed(boolean isClosed) {
-    this.isClosed = isClosed;
+    setFlag(CLOSED, isClosed);
     if (isClosed) {
       if (clientNode == null || !UNKNOWN_ADDRESS_IP.equals(clientNode.getHost())) {
         assignAnUnknownClientNode();
@@ -428,7 +626,7 @@ public abstract class ChannelContext extends MapWithLockPropSupport {
    * @param isRemoved the isRemoved to set
    */
   public void setRemoved(boolean isRemoved) {
-    this.isRemoved = isRemoved;
+    setFlag(REMOVED, isRemoved);
   }
 
   /**
@@ -453,6 +651,20 @@ public abstract class ChannelContext extends MapWithLockPropSupport {
     this.userId = userId;
   }
 
+  /**
+   * 给框架内部用的（Users绑定时修改反向引用），用户请勿调用此方法
+   */
+  public boolean compareAndSetUserId(String expect, String update) {
+    return USER_ID.compareAndSet(this, expect, update);
+  }
+
+  /**
+   * 给框架内部用的（Tokens绑定时修改反向引用），用户请勿调用此方法
+   */
+  public boolean compareAndSetToken(String expect, String update) {
+    return TOKEN.compareAndSet(this, expect, update);
+  }
+
   @Override
   public String toString() {
     StringBuilder sb = new StringBuilder(64);
@@ -492,6 +704,14 @@ public abstract class ChannelContext extends MapWithLockPropSupport {
     return tioConfig;
   }
 
+  /**
+   * 发送队列是否在高水位以下，广播等场景可以据此跳过积压严重的连接
+   * @return
+   */
+  public boolean isWritable() {
+    return sendQueue.isWritable();
+  }
+
   /**
    * 是否是服务器端
    * 
@@ -512,6 +732,51 @@ public abstract class ChannelContext extends MapWithLockPropSupport {
    */
   public void setHeartbeatTimeout(Long heartbeatTimeout) {
     this.heartbeatTimeout = heartbeatTimeout;
+    IdleDetector detector = idleDetector;
+    if (detector != null) {
+      detector.reschedule();
+    }
+  }
+
+  public IdleDetector getIdleDetector() {
+    return idleDetector;
+  }
+
+  public void setIdleDetector(IdleDetector idleDetector) {
+    this.idleDetector = idleDetector;
+  }
+
+  public IpStatRecord getIpStatRecord() {
+    return ipStatRecord;
+  }
+
+  public boolean compareAndSetIpStatRecord(IpStatRecord expect, IpStatRecord update) {
+    return IP_STAT_RECORD.compareAndSet(this, expect, update);
+  }
+
+  /**
+   * @return 本连接的串行通道，不存在时创建
+   */
+  public SerialLane getSerialLane() {
+    SerialLane lane = serialLane;
+    if (lane == null) {
+      synchronized (this) {
+        lane = serialLane;
+        if (lane == null) {
+          lane = new SerialLane(this);
+          serialLane = lane;
+        }
+      }
+    }
+    return lane;
+  }
+
+  /**
+   * @return 串行通道（ORDERED模式或批量派发）中等待处理的packet数
+   */
+  public int getLaneQueueSize() {
+    SerialLane lane = serialLane;
+    return lane == null ? 0 : lane.size();
   }
 
   public Integer getReadBufferSize() {
@@ -532,30 +797,6 @@ public abstract class ChannelContext extends MapWithLockPropSupport {
     return proxyClientNode;
   }
 
-  private void swithIpStat(IpStat oldIpStat, IpStat newIpStat, ChannelStat myStat) {
-    oldIpStat.getHandledBytes().addAndGet(-myStat.getHandledBytes().get());
-    oldIpStat.getHandledPacketCosts().addAndGet(-myStat.getHandledPacketCosts().get());
-    oldIpStat.getHandledPackets().addAndGet(-myStat.getHandledPackets().get());
-    oldIpStat.getReceivedBytes().addAndGet(-myStat.getReceivedBytes().get());
-    oldIpStat.getReceivedPackets().addAndGet(-myStat.getReceivedPackets().get());
-    oldIpStat.getReceivedTcps().addAndGet(-myStat.getReceivedTcps().get());
-    oldIpStat.getRequestCount().addAndGet(-1);
-    oldIpStat.getSentBytes().addAndGet(-myStat.getSentBytes().get());
-    oldIpStat.getSentPackets().addAndGet(-myStat.getSentPackets().get());
-    oldIpStat.getStart();
-
-    newIpStat.getHandledBytes().addAndGet(myStat.getHandledBytes().get());
-    newIpStat.getHandledPacketCosts().addAndGet(myStat.getHandledPacketCosts().get());
-    newIpStat.getHandledPackets().addAndGet(myStat.getHandledPackets().get());
-    newIpStat.getReceivedBytes().addAndGet(myStat.getReceivedBytes().get());
-    newIpStat.getReceivedPackets().addAndGet(myStat.getReceivedPackets().get());
-    newIpStat.getReceivedTcps().addAndGet(myStat.getReceivedTcps().get());
-    newIpStat.getRequestCount().addAndGet(1);
-    newIpStat.getSentBytes().addAndGet(myStat.getSentBytes().get());
-    newIpStat.getSentPackets().addAndGet(myStat.getSentPackets().get());
-    newIpStat.getStart();
-  }
-
   /**
    * @param proxyClientNode the proxyClientNode to set
    */
@@ -565,17 +806,10 @@ public abstract class ChannelContext extends MapWithLockPropSupport {
       // 将性能数据进行转移
       if (!Objects.equals(proxyClientNode.getHost(), clientNode.getHost())) {
 
-        if (CollUtil.isNotEmpty(tioConfig.ipStats.durationList)) {
-          try {
-            for (Long v : tioConfig.ipStats.durationList) {
-              IpStat oldIpStat = (IpStat) tioConfig.ipStats._get(v, this, true, false);
-              IpStat newIpStat = (IpStat) tioConfig.ipStats.get(v, this);
-              ChannelStat myStat = this.stat;
-              swithIpStat(oldIpStat, newIpStat, myStat);
-            }
-          } catch (Exception e) {
-            log.error(e.toString(), e);
-          }
+        try {
+          tioConfig.ipStats.switchIp(this);
+        } catch (Exception e) {
+          log.error(e.toString(), e);
         }
       }
     }
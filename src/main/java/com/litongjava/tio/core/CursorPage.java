@@ -0,0 +1,41 @@
+package com.litongjava.tio.core;
+
+import java.util.List;
+
+/**
+ * 游标分页的一页<br>
+ * 下一页用getCursor()作为游标继续取，getCursor()为null表示已经取完
+ * @author Tong Li
+ */
+public class CursorPage<T> {
+  private final List<T> list;
+  private final String cursor;
+
+  public CursorPage(List<T> list, String cursor) {
+    this.list = list;
+    this.cursor = cursor;
+  }
+
+  /**
+   * @return 本页的数据，经过ChannelContextFilter过滤，条数可能少于pageSize
+   */
+  public List<T> getList() {
+    return list;
+  }
+
+  /**
+   * @return 取下一页用的游标（本页最后遍历到的连接的id），null表示没有下一页了
+   */
+  public String getCursor() {
+    return cursor;
+  }
+
+  public boolean isLastPage() {
+    return cursor == null;
+  }
+
+  @Override
+  public String toString() {
+    return "CursorPage [size=" + list.size() + ", cursor=" + cursor + "]";
+  }
+}
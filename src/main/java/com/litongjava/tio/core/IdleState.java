@@ -0,0 +1,21 @@
+package com.litongjava.tio.core;
+
+/**
+ *  连接空闲的类型
+ * @author Tong Li
+ *
+ */
+public enum IdleState {
+	/**
+	 * 超过readIdleTimeout没有收到数据
+	 */
+	READER_IDLE,
+	/**
+	 * 超过writeIdleTimeout没有发送packet
+	 */
+	WRITER_IDLE,
+	/**
+	 * 超过heartbeatTimeout既没有收到数据也没有发送packet，即心跳超时
+	 */
+	ALL_IDLE;
+}
@@ -13,7 +13,11 @@ public enum PacketHandlerMode {
 	/**
 	 * 把packet丢到一个队列中，让线程池去处理
 	 */
-	QUEUE(2);
+	QUEUE(2),
+	/**
+	 * 按连接串行：每个连接一条串行通道，多个连接共享bizExecutor并行处理，同一连接的packet按到达顺序处理
+	 */
+	ORDERED(3);
 
 	public static PacketHandlerMode forNumber(int value) {
 		switch (value) {
@@ -21,11 +25,22 @@ public enum PacketHandlerMode {
 			return SINGLE_THREAD;
 		case 2:
 			return QUEUE;
+		case 3:
+			return ORDERED;
 		default:
 			return null;
 		}
 	}
 
+	public static PacketHandlerMode from(String name) {
+		for (PacketHandlerMode v : values()) {
+			if (v.name().equalsIgnoreCase(name)) {
+				return v;
+			}
+		}
+		return QUEUE;
+	}
+
 	private final int value;
 
 	private PacketHandlerMode(int value) {
@@ -1,22 +1,25 @@
 package com.litongjava.tio.core;
 
 import java.nio.ByteBuffer;
-import java.nio.channels.ClosedChannelException;
 import java.nio.channels.CompletionHandler;
+import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.litongjava.enhance.buffer.VirtualBuffer;
+import com.litongjava.enhance.channel.EnhanceAsynchronousChannelProvider;
 import com.litongjava.tio.consts.TioCoreConfigKeys;
+import com.litongjava.tio.core.pool.AdaptiveReadBufferSizer;
 import com.litongjava.tio.core.pool.BufferPoolUtils;
 import com.litongjava.tio.core.stat.IpStat;
+import com.litongjava.tio.core.stat.IpStatRecord;
 import com.litongjava.tio.core.task.DecodeTask;
+import com.litongjava.tio.core.timer.HashedTimingWheel;
 import com.litongjava.tio.core.utils.ByteBufferUtils;
 import com.litongjava.tio.core.utils.TioUtils;
 import com.litongjava.tio.utils.SystemTimer;
 import com.litongjava.tio.utils.environment.EnvUtils;
-import com.litongjava.tio.utils.hutool.CollUtil;
 
 /**
  *
@@ -29,10 +32,45 @@ public class ReadCompletionHandler implements CompletionHandler<Integer, Virtual
   private static Logger log = LoggerFactory.getLogger(ReadCompletionHandler.class);
   private ChannelContext channelContext = null;
   private DecodeTask decodeTask;
+  /** 开启了自适应读buffer时不为null */
+  private AdaptiveReadBufferSizer readBufferSizer;
+  /** 暂停读的原因：直接内存超过预算 */
+  public static final int PAUSE_MEMORY_BUDGET = 1;
+  /** 暂停读的原因：业务线程池拒绝了连接的串行通道 */
+  public static final int PAUSE_BIZ_EXECUTOR = 2;
+
+  /** 暂停读的原因（位掩码），所有原因都解除后才恢复读 */
+  private int readPaused = 0;
+  /** 暂停期间有一次读完成了，下一次读要等恢复时再发起 */
+  private boolean readParked = false;
+  /** 读休眠：读不到数据时暂存的读缓冲区，空闲超过readHibernateTimeout后归还，数据先到达则直接复用 */
+  private VirtualBuffer idleBuffer;
+  /** idleBuffer开始空闲的时间，System.nanoTime() */
+  private long idleSince;
+  /** 检查是否该休眠的定时任务，每个连接最多一个 */
+  private HashedTimingWheel.Timeout hibernateTimer;
+  /** 已归还读缓冲区，等待数据到达 */
+  private boolean hibernating = false;
 
   public ReadCompletionHandler(ChannelContext channelContext) {
     this.channelContext = channelContext;
     this.decodeTask = new DecodeTask();
+    channelContext.readCompletionHandler = this;
+    TioConfig tioConfig = channelContext.tioConfig;
+    if (tioConfig.isReadBufferAdaptive()) {
+      this.readBufferSizer = new AdaptiveReadBufferSizer(tioConfig.getReadBufferMinSize(),
+          tioConfig.getReadBufferInitialSize(), tioConfig.getReadBufferMaxSize());
+    }
+  }
+
+  /**
+   * @return 下一次读使用的buffer大小
+   */
+  public int nextReadBufferSize() {
+    if (readBufferSizer != null) {
+      return readBufferSizer.nextSize();
+    }
+    return channelContext.getReadBufferSize();
   }
 
   /**
@@ -53,25 +91,48 @@ public class ReadCompletionHandler implements CompletionHandler<Integer, Virtual
 
   @Override
   public void completed(Integer result, VirtualBuffer virtualBuffer) {
+    if (result == EnhanceAsynchronousChannelProvider.READ_MONITOR_SIGNAL) {
+      // 读休眠：暂时没有数据可读，通道已不再持有读缓冲区，读仍在等待中
+      onReadIdle(virtualBuffer);
+      return;
+    }
+    if (result == EnhanceAsynchronousChannelProvider.READABLE_SIGNAL) {
+      // 读休眠：数据到达（或通道关闭），virtualBuffer是休眠前的附件，可能已经归还，不能再使用
+      onReadable();
+      return;
+    }
     ByteBuffer byteBuffer = virtualBuffer.buffer();
     if (result > 0) {
       TioConfig tioConfig = channelContext.tioConfig;
       if (tioConfig.statOn) {
-        tioConfig.groupStat.receivedBytes.addAndGet(result);
-        tioConfig.groupStat.receivedTcps.incrementAndGet();
-        channelContext.stat.receivedBytes.addAndGet(result);
-        channelContext.stat.receivedTcps.incrementAndGet();
+        if (!tioConfig.isStatGroupLazy()) {
+          tioConfig.groupStat.receivedBytes.add(result);
+          tioConfig.groupStat.receivedTcps.increment();
+        }
+        channelContext.stat.addReceivedBytes(result);
+        channelContext.stat.addReceivedTcps(1);
+        if (tioConfig.isReadSizeStatOn() && !tioConfig.isStatGroupLazy()) {
+          tioConfig.groupStat.readSizes.record(result);
+        }
+        if (tioConfig.isChannelReadSizeStatOn()) {
+          channelContext.stat.recordReadSize(result);
+        }
+      }
+      if (readBufferSizer != null) {
+        readBufferSizer.record(result, byteBuffer.capacity());
       }
 
       channelContext.stat.latestTimeOfReceivedByte = SystemTimer.currTime;
 
-      if (CollUtil.isNotEmpty(tioConfig.ipStats.durationList)) {
+      if (tioConfig.ipStats.isOn()) {
         try {
-          for (Long v : tioConfig.ipStats.durationList) {
-            IpStat ipStat = tioConfig.ipStats.get(v, channelContext);
-            ipStat.getReceivedBytes().addAndGet(result);
-            ipStat.getReceivedTcps().incrementAndGet();
-            tioConfig.getIpStatListener().onAfterReceivedBytes(channelContext, result, ipStat);
+          IpStatRecord ipStatRecord = tioConfig.ipStats.record(channelContext);
+          ipStatRecord.add(IpStatRecord.RECEIVED_BYTES, result);
+          ipStatRecord.add(IpStatRecord.RECEIVED_TCPS, 1);
+          if (tioConfig.ipStats.hasListener()) {
+            for (IpStat ipStat : ipStatRecord.snapshots()) {
+              tioConfig.getIpStatListener().onAfterReceivedBytes(channelContext, result, ipStat);
+            }
           }
         } catch (Exception e1) {
           log.error(channelContext.toString(), e1);
@@ -92,7 +153,7 @@ public class ReadCompletionHandler implements CompletionHandler<Integer, Virtual
           decodeTask.decode(channelContext, byteBuffer);
         } catch (Throwable e) {
           log.error("Decode error", e);
-          virtualBuffer.clean();
+          BufferPoolUtils.clean(virtualBuffer);
           Tio.close(channelContext, e, "unexpected decode error", ChannelCloseCode.DECODE_ERROR);
           return;
         }
@@ -109,9 +170,14 @@ public class ReadCompletionHandler implements CompletionHandler<Integer, Virtual
       }
 
       if (TioUtils.checkBeforeIO(channelContext)) {
-        read(byteBuffer, virtualBuffer);
+        if (parkIfPaused()) {
+          // 暂停期间不持有读缓冲区
+          BufferPoolUtils.clean(virtualBuffer);
+        } else {
+          read(byteBuffer, virtualBuffer);
+        }
       } else {
-        virtualBuffer.clean();
+        BufferPoolUtils.clean(virtualBuffer);
       }
 
     } else if (result == 0) {
@@ -120,7 +186,7 @@ public class ReadCompletionHandler implements CompletionHandler<Integer, Virtual
       try {
         Tio.close(channelContext, null, message, ChannelCloseCode.READ_COUNT_IS_ZERO);
       } finally {
-        virtualBuffer.clean();
+        BufferPoolUtils.clean(virtualBuffer);
       }
       return;
     } else if (result < 0) {
@@ -132,7 +198,7 @@ public class ReadCompletionHandler implements CompletionHandler<Integer, Virtual
         try {
           Tio.close(channelContext, null, message, ChannelCloseCode.CLOSED_BY_PEER);
         } finally {
-          virtualBuffer.clean();
+          BufferPoolUtils.clean(virtualBuffer);
         }
         return;
       } else {
@@ -140,8 +206,8 @@ public class ReadCompletionHandler implements CompletionHandler<Integer, Virtual
         log.error("close {}, because {}", channelContext, message);
         try {
           Tio.close(channelContext, null, "read result" + result, ChannelCloseCode.READ_COUNT_IS_NEGATIVE);
-        } catch (Exception e) {
-          virtualBuffer.clean();
+        } finally {
+          BufferPoolUtils.clean(virtualBuffer);
         }
         return;
       }
@@ -149,25 +215,204 @@ public class ReadCompletionHandler implements CompletionHandler<Integer, Virtual
   }
 
   private void read(ByteBuffer readByteBuffer, VirtualBuffer virtualBuffer) {
-    if (readByteBuffer.capacity() == channelContext.getReadBufferSize()) {
+    int readBufferSize = nextReadBufferSize();
+    if (readByteBuffer.capacity() == readBufferSize) {
       readByteBuffer.position(0);
       readByteBuffer.limit(readByteBuffer.capacity());
     } else {
-      virtualBuffer.clean();
-      virtualBuffer = BufferPoolUtils.allocateRequest(channelContext.getReadBufferSize());
+      BufferPoolUtils.clean(virtualBuffer);
+      virtualBuffer = BufferPoolUtils.allocateRequest(readBufferSize, channelContext);
       readByteBuffer = virtualBuffer.buffer();
     }
 
     channelContext.asynchronousSocketChannel.read(readByteBuffer, virtualBuffer, this);
   }
 
+  private void onReadIdle(VirtualBuffer virtualBuffer) {
+    long timeout = channelContext.tioConfig.getReadHibernateTimeout();
+    synchronized (this) {
+      if (timeout != 0) {
+        idleBuffer = virtualBuffer;
+        idleSince = System.nanoTime();
+        if (timeout > 0 && hibernateTimer == null) {
+          hibernateTimer = HashedTimingWheel.shared().newTimeout(this::checkHibernate, timeout, TimeUnit.MILLISECONDS);
+        }
+        return;
+      }
+      enterHibernate();
+    }
+    hibernate(virtualBuffer);
+  }
+
+  /**
+   * 时间轮回调：idleBuffer空闲够久就归还，否则按剩余时间重新检查
+   */
+  private void checkHibernate() {
+    VirtualBuffer virtualBuffer;
+    synchronized (this) {
+      hibernateTimer = null;
+      if (idleBuffer == null) {
+        return;
+      }
+      long remaining = channelContext.tioConfig.getReadHibernateTimeout() - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - idleSince);
+      if (remaining > 0) {
+        hibernateTimer = HashedTimingWheel.shared().newTimeout(this::checkHibernate, remaining, TimeUnit.MILLISECONDS);
+        return;
+      }
+      virtualBuffer = idleBuffer;
+      idleBuffer = null;
+      enterHibernate();
+    }
+    hibernate(virtualBuffer);
+  }
+
+  private void enterHibernate() {
+    if (!hibernating) {
+      hibernating = true;
+      channelContext.tioConfig.groupStat.hibernatingChannels.incrementAndGet();
+    }
+    channelContext.tioConfig.groupStat.hibernatedReads.increment();
+  }
+
+  private void exitHibernate() {
+    if (hibernating) {
+      hibernating = false;
+      channelContext.tioConfig.groupStat.hibernatingChannels.decrementAndGet();
+    }
+  }
+
+  private void hibernate(VirtualBuffer virtualBuffer) {
+    BufferPoolUtils.clean(virtualBuffer);
+    DecodeTask decodeTask = channelContext.decodeTask;
+    if (decodeTask != null) {
+      decodeTask.shrink(channelContext);
+    }
+  }
+
+  private void onReadable() {
+    VirtualBuffer virtualBuffer;
+    synchronized (this) {
+      virtualBuffer = idleBuffer;
+      idleBuffer = null;
+      exitHibernate();
+    }
+    if (!TioUtils.checkBeforeIO(channelContext) || parkIfPaused()) {
+      if (virtualBuffer != null) {
+        BufferPoolUtils.clean(virtualBuffer);
+      }
+      return;
+    }
+    if (virtualBuffer == null) {
+      virtualBuffer = BufferPoolUtils.allocateRequest(nextReadBufferSize(), channelContext);
+    }
+    read(virtualBuffer.buffer(), virtualBuffer);
+  }
+
+  /**
+   * 连接关闭时调用，归还读休眠暂存的读缓冲区
+   */
+  public void release() {
+    VirtualBuffer virtualBuffer;
+    synchronized (this) {
+      virtualBuffer = idleBuffer;
+      idleBuffer = null;
+      exitHibernate();
+      if (hibernateTimer != null) {
+        hibernateTimer.cancel();
+        hibernateTimer = null;
+      }
+    }
+    if (virtualBuffer != null) {
+      BufferPoolUtils.clean(virtualBuffer);
+    }
+  }
+
+  /**
+   * @return 是否处于读休眠（不持有读缓冲区）
+   */
+  public synchronized boolean isHibernating() {
+    return hibernating;
+  }
+
+  private synchronized boolean parkIfPaused() {
+    if (readPaused != 0) {
+      readParked = true;
+    }
+    return readPaused != 0;
+  }
+
+  /**
+   * 暂停读（直接内存超过预算）：正在进行的读完成后不再发起下一次读
+   */
+  public void pauseRead() {
+    pauseRead(PAUSE_MEMORY_BUDGET);
+  }
+
+  /**
+   * 暂停读：正在进行的读完成后不再发起下一次读<br>
+   * 因为直接内存超过预算暂停时，立即归还读休眠暂存的读缓冲区并收缩半包累积缓冲区
+   * @param reason PAUSE_MEMORY_BUDGET、PAUSE_BIZ_EXECUTOR
+   */
+  public void pauseRead(int reason) {
+    VirtualBuffer virtualBuffer = null;
+    synchronized (this) {
+      readPaused |= reason;
+      if (reason != PAUSE_MEMORY_BUDGET) {
+        return;
+      }
+      if (idleBuffer != null) {
+        virtualBuffer = idleBuffer;
+        idleBuffer = null;
+        enterHibernate();
+      }
+    }
+    if (virtualBuffer != null) {
+      hibernate(virtualBuffer);
+    } else if (channelContext.decodeTask != null) {
+      channelContext.decodeTask.shrink(channelContext);
+    }
+  }
+
+  /**
+   * 恢复读（直接内存回落）：暂停期间已经停下的读重新发起
+   */
+  public void resumeRead() {
+    resumeRead(PAUSE_MEMORY_BUDGET);
+  }
+
+  /**
+   * 解除一个暂停原因，没有其它原因时重新发起暂停期间停下的读
+   * @param reason PAUSE_MEMORY_BUDGET、PAUSE_BIZ_EXECUTOR
+   */
+  public void resumeRead(int reason) {
+    boolean parked;
+    synchronized (this) {
+      readPaused &= ~reason;
+      if (readPaused != 0) {
+        return;
+      }
+      parked = readParked;
+      readParked = false;
+    }
+    if (parked && TioUtils.checkBeforeIO(channelContext)) {
+      VirtualBuffer virtualBuffer = BufferPoolUtils.allocateRequest(nextReadBufferSize(), channelContext);
+      ByteBuffer readByteBuffer = virtualBuffer.buffer();
+      readByteBuffer.position(0);
+      readByteBuffer.limit(readByteBuffer.capacity());
+      channelContext.asynchronousSocketChannel.read(readByteBuffer, virtualBuffer, this);
+    }
+  }
+
+  public synchronized boolean isReadPaused() {
+    return readPaused != 0;
+  }
+
   @Override
   public void failed(Throwable exc, VirtualBuffer virtualBuffer) {
-    if (exc instanceof ClosedChannelException) {
-      try {
-        virtualBuffer.clean();
-      } catch (Exception e) {
-      }
+    // 读失败后不会再用这个缓冲区，无论什么异常都归还
+    try {
+      BufferPoolUtils.clean(virtualBuffer);
+    } catch (Exception e) {
     }
     Tio.close(channelContext, exc, "Failed to read data: " + exc.getClass().getName(), ChannelCloseCode.READ_ERROR);
   }
@@ -0,0 +1,367 @@
+package com.litongjava.tio.core;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.litongjava.aio.Packet;
+import com.litongjava.aio.PacketMeta;
+import com.litongjava.tio.core.intf.AioListener;
+import com.litongjava.tio.core.stat.GroupStat;
+import com.litongjava.tio.core.stat.LatencyStats;
+
+/**
+ * 连接的发送队列，按packet数和字节数计量<br>
+ * 1、超过高水位后连接变为不可写，降到低水位后恢复可写，两次变化都会回调AioListener.onWritabilityChanged()<br>
+ * 2、超过连接（setMaxPackets、setMaxBytes，未设置时取TioConfig.sendQueueMaxPackets等）或TioConfig总量的上限后按SendQueueOverflowPolicy处理<br>
+ * 多个生产者并发入队时上限检查不加锁，可能会略微超出上限<br>
+ * 未预编码的packet编码前不知道长度，按byteCount计（未设置时不计入字节数）<br>
+ * 队列在第一次入队时创建，空闲连接不占用；统计耗时时每个packet包一层Entry记下入队时间，不统计时直接放packet
+ * @author Tong Li
+ */
+public class SendQueue {
+  private static final Logger log = LoggerFactory.getLogger(SendQueue.class);
+
+  private final ChannelContext channelContext;
+  @SuppressWarnings("rawtypes")
+  private static final AtomicReferenceFieldUpdater<SendQueue, ConcurrentLinkedQueue> QUEUE = AtomicReferenceFieldUpdater
+      .newUpdater(SendQueue.class, ConcurrentLinkedQueue.class, "queue");
+  private static final AtomicIntegerFieldUpdater<SendQueue> PACKETS = AtomicIntegerFieldUpdater.newUpdater(SendQueue.class, "packets");
+  private static final AtomicLongFieldUpdater<SendQueue> BYTES = AtomicLongFieldUpdater.newUpdater(SendQueue.class, "bytes");
+  private static final AtomicIntegerFieldUpdater<SendQueue> WRITABLE = AtomicIntegerFieldUpdater.newUpdater(SendQueue.class, "writable");
+
+  /** 元素是Packet，或者统计耗时时的Entry */
+  private volatile ConcurrentLinkedQueue<Object> queue;
+  private volatile int packets;
+  private volatile long bytes;
+  /** 1: 可写，0: 超过高水位 */
+  private volatile int writable = 1;
+  /** 本连接的packet数上限，大于0时代替TioConfig.sendQueueMaxPackets */
+  private int maxPackets;
+  /** 本连接的字节数上限，大于0时代替TioConfig.sendQueueMaxBytes */
+  private long maxBytes;
+  /** 发送线程最近一次通过pollForSend()取出的packet的入队时间，只有持有发送权的线程读写 */
+  private long polledOfferedNanos;
+
+  public SendQueue(ChannelContext channelContext) {
+    this.channelContext = channelContext;
+  }
+
+  /**
+   * 入队
+   * @param packet
+   * @return false: 超过上限被拒绝（或连接因此被关闭）
+   */
+  public boolean offer(Packet packet) {
+    TioConfig tioConfig = channelContext.tioConfig;
+    int size = sizeOf(packet);
+    // SSL握手等协议内部的数据不受限制
+    if (!packet.isSslEncrypted() && isOverflow(tioConfig, size)) {
+      GroupStat groupStat = tioConfig.groupStat;
+      SendQueueOverflowPolicy policy = tioConfig.getSendQueueOverflowPolicy();
+      if (policy == SendQueueOverflowPolicy.DROP_OLDEST) {
+        while (isOverflow(tioConfig, size)) {
+          Packet oldest = dropOldest();
+          if (oldest == null) {
+            break;
+          }
+          if (groupStat != null) {
+            groupStat.sendQueueOverflows.increment();
+          }
+          discard(oldest);
+        }
+        // 本连接的队列已经空了，仍超过TioConfig的上限（被其它连接占满）
+        if (isOverflow(tioConfig, size)) {
+          return reject(groupStat, packet);
+        }
+      } else if (policy == SendQueueOverflowPolicy.CLOSE) {
+        reject(groupStat, packet);
+        Tio.close(channelContext, "send queue overflow, packets:" + packets + ", bytes:" + bytes, ChannelCloseCode.SEND_QUEUE_OVERFLOW);
+        return false;
+      } else {
+        return reject(groupStat, packet);
+      }
+    }
+
+    queue().offer(LatencyStats.isOn(tioConfig) ? new Entry(packet, System.nanoTime()) : packet);
+    increase(tioConfig, 1, size);
+    return true;
+  }
+
+  /**
+   * @return 队列，第一次入队时创建
+   */
+  @SuppressWarnings("unchecked")
+  private ConcurrentLinkedQueue<Object> queue() {
+    ConcurrentLinkedQueue<Object> q = queue;
+    if (q == null) {
+      QUEUE.compareAndSet(this, null, new ConcurrentLinkedQueue<Object>());
+      q = queue;
+    }
+    return q;
+  }
+
+  private Object pollElement() {
+    ConcurrentLinkedQueue<Object> q = queue;
+    if (q == null) {
+      return null;
+    }
+    Object element = q.poll();
+    if (element != null) {
+      increase(channelContext.tioConfig, -1, -sizeOf(packetOf(element)));
+    }
+    return element;
+  }
+
+  private static Packet packetOf(Object element) {
+    return element instanceof Entry ? ((Entry) element).packet : (Packet) element;
+  }
+
+  public Packet poll() {
+    Object element = pollElement();
+    return element == null ? null : packetOf(element);
+  }
+
+  /**
+   * 出队，只有持有发送权（isSending）的线程调用；同时记下取出的packet的入队时间，见getPolledOfferedNanos()
+   */
+  public Packet pollForSend() {
+    Object element = pollElement();
+    if (element == null) {
+      return null;
+    }
+    polledOfferedNanos = element instanceof Entry ? ((Entry) element).offeredNanos : 0;
+    return packetOf(element);
+  }
+
+  /**
+   * @return 最近一次pollForSend()取出的packet入队时的System.nanoTime()，不统计耗时时为0
+   */
+  public long getPolledOfferedNanos() {
+    return polledOfferedNanos;
+  }
+
+  /**
+   * 聚合发送时取下一个packet，队首是文件packet时不取，由单独的文件传输流程处理
+   */
+  public synchronized Packet pollBatchable() {
+    ConcurrentLinkedQueue<Object> q = queue;
+    Object next = q == null ? null : q.peek();
+    if (next == null || packetOf(next).getFileBody() != null) {
+      return null;
+    }
+    return poll();
+  }
+
+  private synchronized Packet dropOldest() {
+    return poll();
+  }
+
+  public boolean isEmpty() {
+    ConcurrentLinkedQueue<Object> q = queue;
+    return q == null || q.isEmpty();
+  }
+
+  /**
+   * @return 队列中的packet数
+   */
+  public int size() {
+    return packets;
+  }
+
+  /**
+   * @return 队列中已知长度的字节数
+   */
+  public long bytes() {
+    return bytes;
+  }
+
+  /**
+   * 是否可写：队列没有超过高水位
+   */
+  public boolean isWritable() {
+    return writable == 1;
+  }
+
+  public int getMaxPackets() {
+    return maxPackets;
+  }
+
+  /**
+   * @param maxPackets 本连接的packet数上限，大于0时代替TioConfig.sendQueueMaxPackets，例如给已知的慢速客户端设置更小的上限
+   */
+  public void setMaxPackets(int maxPackets) {
+    this.maxPackets = maxPackets;
+  }
+
+  public long getMaxBytes() {
+    return maxBytes;
+  }
+
+  /**
+   * @param maxBytes 本连接的字节数上限，大于0时代替TioConfig.sendQueueMaxBytes
+   */
+  public void setMaxBytes(long maxBytes) {
+    this.maxBytes = maxBytes;
+  }
+
+  /**
+   * 清空队列，未发送的packet按发送失败处理
+   */
+  public void clear() {
+    Packet packet;
+    while ((packet = poll()) != null) {
+      discard(packet);
+    }
+  }
+
+  private boolean isOverflow(TioConfig tioConfig, int size) {
+    int maxPackets = this.maxPackets > 0 ? this.maxPackets : tioConfig.getSendQueueMaxPackets();
+    if (maxPackets > 0 && packets >= maxPackets) {
+      return true;
+    }
+    long maxBytes = this.maxBytes > 0 ? this.maxBytes : tioConfig.getSendQueueMaxBytes();
+    // 队列为空时不限制字节数，否则超过上限的单个大packet永远发不出去
+    long currentBytes = bytes;
+    if (maxBytes > 0 && currentBytes > 0 && currentBytes + size > maxBytes) {
+      return true;
+    }
+    GroupStat groupStat = tioConfig.groupStat;
+    if (groupStat != null) {
+      long totalMaxPackets = tioConfig.getSendQueueTotalMaxPackets();
+      if (totalMaxPackets > 0 && groupStat.sendQueuePackets.get() >= totalMaxPackets) {
+        return true;
+      }
+      long totalMaxBytes = tioConfig.getSendQueueTotalMaxBytes();
+      long totalBytes = groupStat.sendQueueBytes.get();
+      if (totalMaxBytes > 0 && totalBytes > 0 && totalBytes + size > totalMaxBytes) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private boolean reject(GroupStat groupStat, Packet packet) {
+    // 被拒绝的packet不会进入发送流程，群发共享的编码结果在这里释放引用
+    SharedPacket.release(packet);
+    if (groupStat != null) {
+      groupStat.sendQueueOverflows.increment();
+    }
+    if (log.isDebugEnabled()) {
+      log.debug("{}, send queue overflow, packets:{}, bytes:{}, reject {}", channelContext, packets, bytes, packet.logstr());
+    }
+    return false;
+  }
+
+  private void increase(TioConfig tioConfig, int packetDelta, int byteDelta) {
+    PACKETS.addAndGet(this, packetDelta);
+    BYTES.addAndGet(this, byteDelta);
+    channelContext.stat.addSendQueuePackets(packetDelta);
+    channelContext.stat.addSendQueueBytes(byteDelta);
+    GroupStat groupStat = tioConfig.groupStat;
+    if (groupStat != null) {
+      groupStat.sendQueuePackets.addAndGet(packetDelta);
+      groupStat.sendQueueBytes.addAndGet(byteDelta);
+    }
+
+    int highPackets = tioConfig.getSendQueueHighWaterMarkPackets();
+    long highBytes = tioConfig.getSendQueueHighWaterMarkBytes();
+    if (highPackets <= 0 && highBytes <= 0) {
+      return;
+    }
+    updateWritability(tioConfig, highPackets, highBytes);
+  }
+
+  /**
+   * 按当前的packet数和字节数更新可写状态<br>
+   * 每次状态变化后重新读取计数再判断：入队线程置为不可写的同时出队线程可能已经把队列取空，
+   * 只判断一次会让空队列停留在不可写状态
+   */
+  private void updateWritability(TioConfig tioConfig, int highPackets, long highBytes) {
+    for (;;) {
+      int currentPackets = packets;
+      long currentBytes = bytes;
+      if (writable == 1) {
+        boolean overHigh = (highPackets > 0 && currentPackets > highPackets) || (highBytes > 0 && currentBytes > highBytes);
+        if (!overHigh) {
+          return;
+        }
+        if (WRITABLE.compareAndSet(this, 1, 0)) {
+          fireWritabilityChanged(tioConfig, false);
+        }
+      } else {
+        boolean belowLow = (highPackets <= 0 || currentPackets <= tioConfig.getSendQueueLowWaterMarkPackets())
+            && (highBytes <= 0 || currentBytes <= tioConfig.getSendQueueLowWaterMarkBytes());
+        if (!belowLow) {
+          return;
+        }
+        if (WRITABLE.compareAndSet(this, 0, 1)) {
+          fireWritabilityChanged(tioConfig, true);
+        }
+      }
+    }
+  }
+
+  private void fireWritabilityChanged(TioConfig tioConfig, boolean isWritable) {
+    AioListener aioListener = tioConfig.getAioListener();
+    if (aioListener != null) {
+      try {
+        aioListener.onWritabilityChanged(channelContext, isWritable);
+      } catch (Throwable e) {
+        log.error(e.toString(), e);
+      }
+    }
+  }
+
+  /**
+   * 丢弃一个未发送的packet
+   */
+  private void discard(Packet packet) {
+    if (packet instanceof SharedPacket) {
+      ((SharedPacket) packet).release();
+      packet = ((SharedPacket) packet).getPacket();
+    }
+    PacketMeta meta = packet.getMeta();
+    if (meta != null) {
+      meta.setIsSentSuccess(false);
+      if (meta.getCountDownLatch() != null) {
+        meta.getCountDownLatch().countDown();
+      }
+    }
+    AioListener aioListener = channelContext.tioConfig.getAioListener();
+    if (aioListener != null) {
+      try {
+        aioListener.onAfterSent(channelContext, packet, false);
+      } catch (Throwable e) {
+        log.error(e.toString(), e);
+      }
+    }
+  }
+
+  private static int sizeOf(Packet packet) {
+    ByteBuffer byteBuffer = packet.getPreEncodedByteBuffer();
+    if (byteBuffer != null) {
+      return byteBuffer.remaining();
+    }
+    return Math.max(packet.getByteCount(), 0);
+  }
+
+  /**
+   * 统计耗时时入队的元素
+   */
+  private static final class Entry {
+    final Packet packet;
+    /** 入队时的System.nanoTime() */
+    final long offeredNanos;
+
+    Entry(Packet packet, long offeredNanos) {
+      this.packet = packet;
+      this.offeredNanos = offeredNanos;
+    }
+  }
+}
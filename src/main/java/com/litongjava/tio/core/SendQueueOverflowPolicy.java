@@ -0,0 +1,29 @@
+package com.litongjava.tio.core;
+
+/**
+ * 发送队列超过上限时的处理策略
+ * @author Tong Li
+ */
+public enum SendQueueOverflowPolicy {
+  /**
+   * 拒绝新packet，Tio.send()返回false
+   */
+  REJECT,
+  /**
+   * 丢弃队列中最早的packet，为新packet腾出空间
+   */
+  DROP_OLDEST,
+  /**
+   * 关闭这个消费太慢的连接，关闭码是ChannelCloseCode.SEND_QUEUE_OVERFLOW
+   */
+  CLOSE;
+
+  public static SendQueueOverflowPolicy from(String name) {
+    for (SendQueueOverflowPolicy v : values()) {
+      if (v.name().equalsIgnoreCase(name)) {
+        return v;
+      }
+    }
+    return REJECT;
+  }
+}
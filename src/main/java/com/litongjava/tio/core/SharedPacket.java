@@ -0,0 +1,75 @@
+package com.litongjava.tio.core;
+
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+import com.litongjava.aio.Packet;
+import com.litongjava.aio.PacketMeta;
+import com.litongjava.tio.core.pool.SharedByteBuffer;
+
+/**
+ * 群发时发给单个连接的包装packet，携带共享编码结果的一个视图<br>
+ * 发送完成后由WriteCompletionHandler释放引用，回调给业务层的仍然是原始packet
+ * @author Tong Li
+ */
+public class SharedPacket extends Packet {
+  private static final long serialVersionUID = 1L;
+  private static final AtomicIntegerFieldUpdater<SharedPacket> RELEASED = AtomicIntegerFieldUpdater.newUpdater(SharedPacket.class, "released");
+
+  private final Packet packet;
+  private final SharedByteBuffer sharedByteBuffer;
+  private volatile int released;
+
+  public SharedPacket(Packet packet, SharedByteBuffer sharedByteBuffer) {
+    this.packet = packet;
+    this.sharedByteBuffer = sharedByteBuffer;
+    this.keepConnection = packet.isKeepConnection();
+    setPreEncodedByteBuffer(sharedByteBuffer.retainedDuplicate());
+  }
+
+  /**
+   * 释放共享编码结果的引用，重复调用只释放一次（发送失败、连接关闭和发送完成可能走到不同的释放路径）
+   */
+  public void release() {
+    if (RELEASED.compareAndSet(this, 0, 1)) {
+      sharedByteBuffer.release();
+    }
+  }
+
+  /**
+   * 如果是SharedPacket则释放它持有的共享编码结果的引用
+   */
+  public static void release(Packet packet) {
+    if (packet instanceof SharedPacket) {
+      ((SharedPacket) packet).release();
+    }
+  }
+
+  public Packet getPacket() {
+    return packet;
+  }
+
+  @Override
+  public PacketMeta getMeta() {
+    return packet.getMeta();
+  }
+
+  @Override
+  public void setMeta(PacketMeta meta) {
+    packet.setMeta(meta);
+  }
+
+  @Override
+  public Long getId() {
+    return packet.getId();
+  }
+
+  @Override
+  public Integer getSynSeq() {
+    return packet.getSynSeq();
+  }
+
+  @Override
+  public String logstr() {
+    return packet.logstr();
+  }
+}
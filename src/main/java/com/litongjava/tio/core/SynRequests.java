@@ -0,0 +1,119 @@
+package com.litongjava.tio.core;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.litongjava.aio.Packet;
+import com.litongjava.tio.core.timer.HashedTimingWheel;
+
+/**
+ * 同步请求的响应关联表：synSeq -> 等待响应的CompletableFuture<br>
+ * 基于ConcurrentHashMap，不使用全局锁，也不阻塞线程等待；超时由共用的时间轮触发<br>
+ * 超时和响应在哪个线程完成future，依赖它的回调就在哪个线程执行（时间轮线程或解码/业务线程），回调中不要做耗时的工作
+ * @author Tong Li
+ */
+public class SynRequests {
+  private final ConcurrentHashMap<Integer, PendingRequest> pendings = new ConcurrentHashMap<>();
+  private final AtomicInteger seq = new AtomicInteger();
+
+  /**
+   * @return 下一个可用的synSeq，始终大于0
+   */
+  public int nextSeq() {
+    while (true) {
+      int next = seq.incrementAndGet();
+      if (next > 0) {
+        return next;
+      }
+      // 溢出后从1重新开始
+      seq.compareAndSet(next, 0);
+    }
+  }
+
+  /**
+   * 登记一个等待响应的请求
+   * @param synSeq
+   * @param timeout 超时时间，单位毫秒，超时后future以TimeoutException结束
+   */
+  public CompletableFuture<Packet> register(int synSeq, long timeout) {
+    PendingRequest pending = new PendingRequest(synSeq);
+    if (pendings.putIfAbsent(synSeq, pending) != null) {
+      pending.completeExceptionally(new IllegalStateException("synSeq " + synSeq + " is already waiting for a response"));
+      return pending;
+    }
+    pending.timeout = HashedTimingWheel.shared().newTimeout(pending, timeout, TimeUnit.MILLISECONDS);
+    return pending;
+  }
+
+  /**
+   * 收到响应
+   * @return false: 没有等待这个synSeq的请求（已超时或不是通过本表发出的）
+   */
+  public boolean complete(int synSeq, Packet response) {
+    PendingRequest pending = pendings.remove(synSeq);
+    if (pending == null) {
+      return false;
+    }
+    pending.cancelTimeout();
+    pending.complete(response);
+    return true;
+  }
+
+  /**
+   * 请求失败（例如发送失败）
+   */
+  public void fail(int synSeq, Throwable throwable) {
+    PendingRequest pending = pendings.remove(synSeq);
+    if (pending != null) {
+      pending.cancelTimeout();
+      pending.completeExceptionally(throwable);
+    }
+  }
+
+  /**
+   * @return 等待响应的请求数
+   */
+  public int size() {
+    return pendings.size();
+  }
+
+  private class PendingRequest extends CompletableFuture<Packet> implements Runnable {
+    private final int synSeq;
+    private volatile HashedTimingWheel.Timeout timeout;
+
+    PendingRequest(int synSeq) {
+      this.synSeq = synSeq;
+    }
+
+    /**
+     * 超时
+     */
+    @Override
+    public void run() {
+      if (pendings.remove(synSeq, this)) {
+        completeExceptionally(new TimeoutException("no response for synSeq " + synSeq));
+      }
+    }
+
+    /**
+     * 调用者放弃等待时从关联表中移除
+     */
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+      if (pendings.remove(synSeq, this)) {
+        cancelTimeout();
+      }
+      return super.cancel(mayInterruptIfRunning);
+    }
+
+    void cancelTimeout() {
+      HashedTimingWheel.Timeout t = timeout;
+      if (t != null) {
+        t.cancel();
+      }
+    }
+  }
+}
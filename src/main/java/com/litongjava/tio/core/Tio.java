@@ -1,9 +1,11 @@
 package com.litongjava.tio.core;
 
+import java.nio.ByteBuffer;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantReadWriteLock.ReadLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock.WriteLock;
 
@@ -18,7 +20,13 @@ import com.litongjava.tio.client.ClientChannelContext;
 import com.litongjava.tio.client.ClientTioConfig;
 import com.litongjava.tio.client.ReconnConf;
 import com.litongjava.tio.consts.TioCoreConfigKeys;
+import com.litongjava.tio.core.exception.TioSendException;
+import com.litongjava.tio.core.maintain.ConnectionSet;
+import com.litongjava.tio.core.maintain.GroupMemberSet;
+import com.litongjava.tio.core.maintain.MaintainUtils;
+import com.litongjava.tio.core.pool.SharedByteBuffer;
 import com.litongjava.tio.core.task.CloseTask;
+import com.litongjava.tio.core.task.FanOutTask;
 import com.litongjava.tio.core.task.SendPacketTask;
 import com.litongjava.tio.server.ServerTioConfig;
 import com.litongjava.tio.utils.environment.EnvUtils;
@@ -292,7 +300,7 @@ public class Tio {
     if (channelContext == null) {
       return;
     }
-    if (channelContext.isWaitingClose) {
+    if (channelContext.isWaitingClose()) {
       log.debug("{} Waiting to be closed", channelContext);
       return;
     }
@@ -300,16 +308,16 @@ public class Tio {
     // 先立即取消各项任务，这样可防止有新的任务被提交进来
     WriteLock writeLock = null;
     if (needCloseLock) {
-      writeLock = channelContext.closeLock.writeLock();
+      writeLock = channelContext.getCloseLock().writeLock();
 
       boolean tryLock = writeLock.tryLock();
       if (!tryLock) {
         return;
       }
-      channelContext.isWaitingClose = true;
+      channelContext.setWaitingClose(true);
       writeLock.unlock();
     } else {
-      channelContext.isWaitingClose = true;
+      channelContext.setWaitingClose(true);
     }
 
     if (closeCode == null) {
@@ -338,8 +346,8 @@ public class Tio {
       }
     }
 
-    channelContext.closeMeta.setRemark(remark);
-    channelContext.closeMeta.setThrowable(throwable);
+    channelContext.getCloseMeta().setRemark(remark);
+    channelContext.getCloseMeta().setThrowable(throwable);
     if (!isNeedRemove) {
       if (channelContext.isServer()) {
         isNeedRemove = true;
@@ -354,7 +362,7 @@ public class Tio {
     if (DIAGNOSTIC_LOG_ENABLED) {
       log.info("close {},remark:{}", channelContext, remark);
     }
-    channelContext.closeMeta.setNeedRemove(isNeedRemove);
+    channelContext.getCloseMeta().setNeedRemove(isNeedRemove);
     CloseTask.close(channelContext);
   }
 
@@ -865,6 +873,117 @@ public class Tio {
     return PageUtils.fromSetWithLock(setWithLock, pageIndex, pageSize, converter);
   }
 
+  /**
+   * 游标分页取所有连接，按id顺序，每次只遍历这一页，适合连接数很多时管理后台轮询
+   * @param tioConfig
+   * @param cursor 上一页返回的CursorPage.getCursor()，null表示第一页
+   * @param pageSize
+   * @param channelContextFilter 为null时不过滤
+   * @return
+   */
+  public static CursorPage<ChannelContext> getCursorOfAll(TioConfig tioConfig, String cursor, int pageSize, ChannelContextFilter channelContextFilter) {
+    return getCursorOfAll(tioConfig, cursor, pageSize, channelContextFilter, null);
+  }
+
+  /**
+   * 游标分页取所有连接
+   * @param tioConfig
+   * @param cursor
+   * @param pageSize
+   * @param channelContextFilter
+   * @param converter
+   * @return
+   */
+  public static <T> CursorPage<T> getCursorOfAll(TioConfig tioConfig, String cursor, int pageSize, ChannelContextFilter channelContextFilter,
+      Converter<T> converter) {
+    return MaintainUtils.cursorPage(Tio.getAllChannelContexts(tioConfig), cursor, pageSize, channelContextFilter, converter);
+  }
+
+  /**
+   * 游标分页取已连接的连接，这个方法是给客户器端用的
+   * @param clientTioConfig
+   * @param cursor
+   * @param pageSize
+   * @param channelContextFilter
+   * @return
+   */
+  public static CursorPage<ChannelContext> getCursorOfConnecteds(ClientTioConfig clientTioConfig, String cursor, int pageSize,
+      ChannelContextFilter channelContextFilter) {
+    return getCursorOfConnecteds(clientTioConfig, cursor, pageSize, channelContextFilter, null);
+  }
+
+  /**
+   * 游标分页取已连接的连接，这个方法是给客户器端用的
+   * @param clientTioConfig
+   * @param cursor
+   * @param pageSize
+   * @param channelContextFilter
+   * @param converter
+   * @return
+   */
+  public static <T> CursorPage<T> getCursorOfConnecteds(ClientTioConfig clientTioConfig, String cursor, int pageSize,
+      ChannelContextFilter channelContextFilter, Converter<T> converter) {
+    return MaintainUtils.cursorPage(Tio.getAllConnectedsChannelContexts(clientTioConfig), cursor, pageSize, channelContextFilter, converter);
+  }
+
+  /**
+   * 游标分页取组成员，按id顺序（不受Groups的排序比较器影响）
+   * @param tioConfig
+   * @param group
+   * @param cursor
+   * @param pageSize
+   * @param channelContextFilter
+   * @return
+   */
+  public static CursorPage<ChannelContext> getCursorOfGroup(TioConfig tioConfig, String group, String cursor, int pageSize,
+      ChannelContextFilter channelContextFilter) {
+    return getCursorOfGroup(tioConfig, group, cursor, pageSize, channelContextFilter, null);
+  }
+
+  /**
+   * 游标分页取组成员
+   * @param tioConfig
+   * @param group
+   * @param cursor
+   * @param pageSize
+   * @param channelContextFilter
+   * @param converter
+   * @return
+   */
+  public static <T> CursorPage<T> getCursorOfGroup(TioConfig tioConfig, String group, String cursor, int pageSize,
+      ChannelContextFilter channelContextFilter, Converter<T> converter) {
+    return MaintainUtils.cursorPage(Tio.getChannelContextsByGroup(tioConfig, group), cursor, pageSize, channelContextFilter, converter);
+  }
+
+  /**
+   * 游标分页取某个用户的连接
+   * @param tioConfig
+   * @param userId
+   * @param cursor
+   * @param pageSize
+   * @param channelContextFilter
+   * @return
+   */
+  public static CursorPage<ChannelContext> getCursorOfUser(TioConfig tioConfig, String userId, String cursor, int pageSize,
+      ChannelContextFilter channelContextFilter) {
+    return getCursorOfUser(tioConfig, userId, cursor, pageSize, channelContextFilter, null);
+  }
+
+  /**
+   * 游标分页取某个用户的连接
+   * @param tioConfig
+   * @param userId
+   * @param cursor
+   * @param pageSize
+   * @param channelContextFilter
+   * @param converter
+   * @return
+   */
+  public static <T> CursorPage<T> getCursorOfUser(TioConfig tioConfig, String userId, String cursor, int pageSize,
+      ChannelContextFilter channelContextFilter, Converter<T> converter) {
+    return MaintainUtils.cursorPage(Tio.getByUserId(tioConfig, userId), cursor, pageSize, channelContextFilter, converter);
+  }
+
   /**
    * 群组有多少个连接
    * @param tioConfig
@@ -1013,6 +1132,50 @@ public class Tio {
   public static boolean send(ChannelContext channelContext, Packet packet) {
     return send(channelContext, packet, null, null);
   }
+
+  /**
+   * 发送请求并异步等待响应，响应packet的synSeq必须与请求的相同（由编解码器负责传输synSeq）<br>
+   * packet没有设置synSeq时自动分配一个
+   * @param channelContext
+   * @param packet
+   * @param timeout 超时时间，单位毫秒，超时后future以TimeoutException结束
+   * @return 响应的future，发送失败时以TioSendException结束
+   */
+  public static CompletableFuture<Packet> request(ChannelContext channelContext, Packet packet, long timeout) {
+    if (channelContext == null || packet == null) {
+      CompletableFuture<Packet> future = new CompletableFuture<>();
+      future.completeExceptionally(new IllegalArgumentException("channelContext and packet must not be null"));
+      return future;
+    }
+    SynRequests synRequests = channelContext.tioConfig.synRequests;
+    Integer synSeq = packet.getSynSeq();
+    if (synSeq == null || synSeq <= 0) {
+      synSeq = synRequests.nextSeq();
+      packet.setSynSeq(synSeq);
+    }
+    CompletableFuture<Packet> future = synRequests.register(synSeq, timeout);
+    if (!future.isDone() && !send(channelContext, packet)) {
+      synRequests.fail(synSeq, new TioSendException(channelContext + ", failed to send request, synSeq:" + synSeq));
+    }
+    return future;
+  }
+
+  /**
+   * 发送请求并阻塞等待响应，是request()的阻塞版本
+   * @param timeout 超时时间，单位毫秒
+   * @return 响应packet，超时或发送失败时返回null
+   */
+  public static Packet synSend(ChannelContext channelContext, Packet packet, long timeout) {
+    try {
+      return request(channelContext, packet, timeout).get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return null;
+    } catch (ExecutionException e) {
+      log.warn("{}, synSend failed: {}", channelContext, e.getCause() == null ? e.toString() : e.getCause().toString());
+      return null;
+    }
+  }
   
   private static boolean send(final ChannelContext channelContext, Packet packet, CountDownLatch countDownLatch,
       //
@@ -1030,12 +1193,13 @@ public class Tio {
       return true;
     }
 
-    if (channelContext.isClosed || channelContext.isRemoved) {
+    if (channelContext.isClosed() || channelContext.isRemoved()) {
+      SharedPacket.release(packet);
       if (countDownLatch != null) {
         countDownLatch.countDown();
       }
       if (channelContext != null) {
-        log.error("cancel send data {}, closed:{}, removed:{}", channelContext, channelContext.isClosed, channelContext.isRemoved);
+        log.error("cancel send data {}, closed:{}, removed:{}", channelContext, channelContext.isClosed(), channelContext.isRemoved());
       }
       return false;
     }
@@ -1333,41 +1497,26 @@ public class Tio {
    * @author tanyaowu
    */
   private static Boolean sendToSet(TioConfig tioConfig, SetWithLock<ChannelContext> setWithLock, Packet packet, ChannelContextFilter channelContextFilter, boolean isBlock) {
-    boolean releasedLock = false;
-    Lock lock = setWithLock.readLock();
-    lock.lock();
     try {
-      Set<ChannelContext> set = setWithLock.getObj();
-      if (set.size() == 0) {
+      // 遍历成员快照，发送时不持有集合的锁，群发期间bind/unbind不会被阻塞
+      ChannelContext[] channelContexts = snapshot(setWithLock);
+      if (channelContexts.length == 0) {
         log.debug("{}, 集合为空", tioConfig.getName());
         return false;
       }
 
-      CountDownLatch countDownLatch = null;
-      if (isBlock) {
-        countDownLatch = new CountDownLatch(set.size());
-      }
+      final CountDownLatch countDownLatch = isBlock ? new CountDownLatch(channelContexts.length) : null;
       int sendCount = 0;
-      for (ChannelContext channelContext : set) {
-        if (channelContextFilter != null) {
-          boolean isfilter = channelContextFilter.filter(channelContext);
-          if (!isfilter) {
-            if (isBlock) {
-              countDownLatch.countDown();
-            }
-            continue;
-          }
-        }
-
-        sendCount++;
-        if (isBlock) {
-          send(channelContext, packet, countDownLatch, PacketSendMode.GROUP_BLOCK);
-        } else {
-          send(channelContext, packet, null, null);
+      final SharedByteBuffer sharedByteBuffer = encodeOnce(tioConfig, channelContexts.length, channelContexts[0], packet);
+      try {
+        // 大集合分片并行发送，所有分片都发送完后才返回，之后才能释放sharedByteBuffer
+        sendCount = FanOutTask.fanOut(tioConfig, channelContexts, (array, from, to) -> sendToShard(array, from, to, packet,
+            sharedByteBuffer, channelContextFilter, countDownLatch));
+      } finally {
+        if (sharedByteBuffer != null) {
+          sharedByteBuffer.release();
         }
       }
-      lock.unlock();
-      releasedLock = true;
 
       if (sendCount == 0) {
         return false;
@@ -1379,7 +1528,7 @@ public class Tio {
           timeout = Math.max(timeout, 10);// timeout < 10 ? 10 : timeout;
           boolean awaitFlag = countDownLatch.await(timeout, TimeUnit.SECONDS);
           if (!awaitFlag) {
-            log.error("{}, 同步群发超时, size:{}, timeout:{}, packet:{}", tioConfig.getName(), setWithLock.getObj().size(), timeout, packet.logstr());
+            log.error("{}, 同步群发超时, size:{}, timeout:{}, packet:{}", tioConfig.getName(), channelContexts.length, timeout, packet.logstr());
             return false;
           } else {
             return true;
@@ -1387,8 +1536,6 @@ public class Tio {
         } catch (InterruptedException e) {
           log.error(e.toString(), e);
           return false;
-        } finally {
-
         }
       } else {
         return true;
@@ -1396,13 +1543,115 @@ public class Tio {
     } catch (Throwable e) {
       log.error(e.toString(), e);
       return false;
+    }
+  }
+
+  /**
+   * 发送集合快照中的一个分片，并行群发时会在多个线程中同时调用，channelContextFilter需要线程安全
+   * @return 实际发送的数量
+   */
+  private static int sendToShard(ChannelContext[] channelContexts, int from, int to, Packet packet, SharedByteBuffer sharedByteBuffer,
+      ChannelContextFilter channelContextFilter, CountDownLatch countDownLatch) {
+    int sendCount = 0;
+    for (int i = from; i < to; i++) {
+      ChannelContext channelContext = channelContexts[i];
+      if (channelContextFilter != null) {
+        boolean isfilter = channelContextFilter.filter(channelContext);
+        if (!isfilter) {
+          if (countDownLatch != null) {
+            countDownLatch.countDown();
+          }
+          continue;
+        }
+      }
+
+      sendCount++;
+      if (countDownLatch != null) {
+        send(channelContext, share(channelContext, packet, sharedByteBuffer), countDownLatch, PacketSendMode.GROUP_BLOCK);
+      } else {
+        send(channelContext, share(channelContext, packet, sharedByteBuffer), null, null);
+      }
+    }
+    return sendCount;
+  }
+
+  /**
+   * 取集合成员的数组快照：GroupMemberSet、ConnectionSet直接返回它们的快照，其它集合在读锁内复制一份
+   * @param setWithLock
+   * @return 调用方不能修改返回的数组
+   */
+  private static ChannelContext[] snapshot(SetWithLock<ChannelContext> setWithLock) {
+    Set<ChannelContext> set = setWithLock.getObj();
+    if (set instanceof GroupMemberSet) {
+      return ((GroupMemberSet) set).snapshot();
+    }
+    if (set instanceof ConnectionSet) {
+      return ((ConnectionSet) set).snapshot();
+    }
+    ReadLock readLock = setWithLock.readLock();
+    readLock.lock();
+    try {
+      return set.toArray(new ChannelContext[set.size()]);
     } finally {
-      if (!releasedLock) {
-        lock.unlock();
+      readLock.unlock();
+    }
+  }
+
+  /**
+   * 群发时只编码一次，所有接收者共享同一个编码结果，需开启TioConfig.fanOutSharedEncode（编码结果不能依赖连接）<br>
+   * SSL（每个连接的加密结果不同）、文件、已预编码、配置了packetConverter（每个连接的packet可能不同）以及只有一个接收者时不共享
+   * @param tioConfig
+   * @param set
+   * @param packet
+   * @return 不共享时返回null
+   */
+  private static SharedByteBuffer encodeOnce(TioConfig tioConfig, Set<ChannelContext> set, Packet packet) {
+    if (set.size() <= 1) {
+      return null;
+    }
+    return encodeOnce(tioConfig, set.size(), set.iterator().next(), packet);
+  }
+
+  /**
+   * 群发时只编码一次
+   * @param tioConfig
+   * @param size 接收者数量
+   * @param channelContext 用于编码的任一接收者
+   * @param packet
+   * @return 不共享时返回null
+   */
+  private static SharedByteBuffer encodeOnce(TioConfig tioConfig, int size, ChannelContext channelContext, Packet packet) {
+    if (size <= 1 || !tioConfig.isFanOutSharedEncode() || tioConfig.isSsl() || tioConfig.packetConverter != null) {
+      return null;
+    }
+    if (packet.getPreEncodedByteBuffer() != null || packet.getFileBody() != null || packet.isSslEncrypted()) {
+      return null;
+    }
+    try {
+      ByteBuffer byteBuffer = tioConfig.getAioHandler().encode(packet, tioConfig, channelContext);
+      if (byteBuffer == null) {
+        return null;
       }
+      if (!byteBuffer.hasRemaining()) {
+        byteBuffer.flip();
+      }
+      return new SharedByteBuffer(byteBuffer);
+    } catch (Throwable e) {
+      log.error(e.toString(), e);
+      return null;
     }
   }
 
+  /**
+   * 为单个接收者生成携带共享编码结果的packet
+   */
+  private static Packet share(ChannelContext channelContext, Packet packet, SharedByteBuffer sharedByteBuffer) {
+    if (sharedByteBuffer == null || channelContext.isVirtual || channelContext.isClosed() || channelContext.isRemoved()) {
+      return packet;
+    }
+    return new SharedPacket(packet, sharedByteBuffer);
+  }
+
   /**
    * 发消息到指定token
    * @param tioConfig
@@ -1435,16 +1684,23 @@ public class Tio {
       try {
         Set<ChannelContext> set = setWithLock.getObj();
         boolean ret = false;
-        for (ChannelContext channelContext : set) {
-          boolean singleRet = false;
-          // 不要用 a = a || b()，容易漏执行后面的函数
-          if (isBlock) {
-            singleRet = bSend(channelContext, packet);
-          } else {
-            singleRet = send(channelContext, packet);
+        SharedByteBuffer sharedByteBuffer = encodeOnce(tioConfig, set, packet);
+        try {
+          for (ChannelContext channelContext : set) {
+            boolean singleRet = false;
+            // 不要用 a = a || b()，容易漏执行后面的函数
+            if (isBlock) {
+              singleRet = bSend(channelContext, share(channelContext, packet, sharedByteBuffer));
+            } else {
+              singleRet = send(channelContext, share(channelContext, packet, sharedByteBuffer));
+            }
+            if (singleRet) {
+              ret = true;
+            }
           }
-          if (singleRet) {
-            ret = true;
+        } finally {
+          if (sharedByteBuffer != null) {
+            sharedByteBuffer.release();
           }
         }
         return ret;
@@ -1489,16 +1745,23 @@ public class Tio {
       try {
         Set<ChannelContext> set = setWithLock.getObj();
         boolean ret = false;
-        for (ChannelContext channelContext : set) {
-          boolean singleRet = false;
-          // 不要用 a = a || b()，容易漏执行后面的函数
-          if (isBlock) {
-            singleRet = bSend(channelContext, packet);
-          } else {
-            singleRet = send(channelContext, packet);
+        SharedByteBuffer sharedByteBuffer = encodeOnce(tioConfig, set, packet);
+        try {
+          for (ChannelContext channelContext : set) {
+            boolean singleRet = false;
+            // 不要用 a = a || b()，容易漏执行后面的函数
+            if (isBlock) {
+              singleRet = bSend(channelContext, share(channelContext, packet, sharedByteBuffer));
+            } else {
+              singleRet = send(channelContext, share(channelContext, packet, sharedByteBuffer));
+            }
+            if (singleRet) {
+              ret = true;
+            }
           }
-          if (singleRet) {
-            ret = true;
+        } finally {
+          if (sharedByteBuffer != null) {
+            sharedByteBuffer.release();
           }
         }
         return ret;
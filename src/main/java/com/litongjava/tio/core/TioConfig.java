@@ -4,7 +4,10 @@ import java.nio.ByteOrder;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -27,13 +30,18 @@ import com.litongjava.tio.core.maintain.Groups;
 import com.litongjava.tio.core.maintain.Ids;
 import com.litongjava.tio.core.maintain.IpBlacklist;
 import com.litongjava.tio.core.maintain.IpStats;
+import com.litongjava.tio.core.maintain.MaintainUtils;
 import com.litongjava.tio.core.maintain.Ips;
 import com.litongjava.tio.core.maintain.Tokens;
 import com.litongjava.tio.core.maintain.Users;
+import com.litongjava.tio.core.pool.MemoryBudget;
 import com.litongjava.tio.core.ssl.SslConfig;
 import com.litongjava.tio.core.stat.DefaultIpStatListener;
 import com.litongjava.tio.core.stat.GroupStat;
+import com.litongjava.tio.core.stat.GroupStatSnapshot;
 import com.litongjava.tio.core.stat.IpStatListener;
+import com.litongjava.tio.core.task.FileTransferTask;
+import com.litongjava.tio.core.utils.BizExecutorUtils;
 import com.litongjava.tio.server.ServerTioConfig;
 import com.litongjava.tio.utils.SystemTimer;
 import com.litongjava.tio.utils.cache.CacheFactory;
@@ -116,6 +124,14 @@ public abstract class TioConfig extends MapWithLockPropSupport {
    * 心跳超时时间(单位: 毫秒)，如果用户不希望框架层面做心跳相关工作，请把此值设为0或负数
    */
   public long heartbeatTimeout = 1000 * 120;
+  /**
+   * 读空闲超时时间(单位: 毫秒)，超过这个时间没有收到数据时回调ServerAioListener.onIdle，小于等于0表示不检测
+   */
+  private long readIdleTimeout = EnvUtils.getLong(TioCoreConfigKeys.TIO_CORE_READ_IDLE_TIMEOUT, 0L);
+  /**
+   * 写空闲超时时间(单位: 毫秒)，超过这个时间没有发送packet时回调ServerAioListener.onIdle，小于等于0表示不检测
+   */
+  private long writeIdleTimeout = EnvUtils.getLong(TioCoreConfigKeys.TIO_CORE_WRITE_IDLE_TIMEOUT, 0L);
   /**
    * 解码出现异常时，是否打印异常日志
    */
@@ -125,10 +141,167 @@ public abstract class TioConfig extends MapWithLockPropSupport {
    * 接收数据的buffer size
    */
   private int readBufferSize = READ_BUFFER_SIZE;
+  /**
+   * 是否根据最近几次读的填充程度自动调整每个连接的读buffer大小，开启后readBufferSize不再用于读
+   */
+  private boolean readBufferAdaptive = EnvUtils.getBoolean(TioCoreConfigKeys.TIO_CORE_READ_BUFFER_ADAPTIVE, false);
+  /**
+   * 自适应读buffer的最小值
+   */
+  private int readBufferMinSize = EnvUtils.getInt(TioCoreConfigKeys.TIO_CORE_READ_BUFFER_MIN_SIZE, 512);
+  /**
+   * 自适应读buffer的初始值
+   */
+  private int readBufferInitialSize = EnvUtils.getInt(TioCoreConfigKeys.TIO_CORE_READ_BUFFER_INITIAL_SIZE, 2048);
+  /**
+   * 自适应读buffer的最大值
+   */
+  private int readBufferMaxSize = EnvUtils.getInt(TioCoreConfigKeys.TIO_CORE_READ_BUFFER_MAX_SIZE, 64 * 1024);
+  /**
+   * 读休眠：连接没有数据可读超过这个时间（毫秒）后归还读buffer，有数据到达时再分配<br>
+   * 小于0表示不休眠，0表示每次读不到数据立即归还；只对服务端生效，需在TioServer.start()之前设置
+   */
+  private long readHibernateTimeout = EnvUtils.getLong(TioCoreConfigKeys.TIO_CORE_READ_HIBERNATE_TIMEOUT, -1L);
+  /**
+   * 聚合发送：一次写操作最多合并多少个packet，小于等于1表示不聚合（每个packet一次写）
+   */
+  private int sendBatchMaxPackets = EnvUtils.getInt(TioCoreConfigKeys.TIO_CORE_SEND_BATCH_PACKETS, 1);
+  /**
+   * 聚合发送：一次写操作最多合并多少字节，达到后本批次不再从发送队列中取packet
+   */
+  private int sendBatchMaxBytes = EnvUtils.getInt(TioCoreConfigKeys.TIO_CORE_SEND_BATCH_BYTES, 64 * 1024);
+  /**
+   * 消息处理模式，没有设置bizExecutor时总是在解码线程中处理<br>
+   * SINGLE_THREAD：在解码线程中处理；QUEUE：提交给bizExecutor，同一连接的packet可能并发、乱序处理；
+   * ORDERED：每个连接一条串行通道，共享bizExecutor
+   */
+  private PacketHandlerMode packetHandlerMode = PacketHandlerMode
+      .from(EnvUtils.getStr(TioCoreConfigKeys.TIO_CORE_PACKET_HANDLER_MODE, PacketHandlerMode.QUEUE.name()));
+  /**
+   * ORDERED模式下每条串行通道被调度一次最多处理的packet数，处理完后重新排队，小于等于0表示不限制
+   */
+  private int laneMaxPacketsPerRun = EnvUtils.getInt(TioCoreConfigKeys.TIO_CORE_LANE_MAX_PACKETS_PER_RUN, 64);
+  /**
+   * 虚拟线程模式：没有设置bizExecutor时，init()（或init()之后开启时）创建虚拟线程线程池（Java 21以下退回平台线程池），
+   * 并使用ORDERED模式，每个连接的packet在虚拟线程中按顺序处理，适合业务中有阻塞的JDBC、HTTP调用
+   */
+  private boolean virtualThreadEnabled = EnvUtils.getBoolean(TioCoreConfigKeys.TIO_CORE_VIRTUAL_THREADS, false);
+  /**
+   * 虚拟线程模式下同时处理的packet数上限，小于等于0表示不限制；退回平台线程池时是线程数
+   */
+  private int virtualThreadMaxConcurrent = EnvUtils.getInt(TioCoreConfigKeys.TIO_CORE_VIRTUAL_THREADS_MAX_CONCURRENT, 0);
+  /**
+   * bizExecutor是否由框架创建（虚拟线程模式），是的话停止时由框架关闭
+   */
+  private boolean bizExecutorCreated = false;
+  /** 开启虚拟线程模式前的消息处理模式，关闭虚拟线程模式时恢复 */
+  private PacketHandlerMode packetHandlerModeBeforeVirtual;
+  /** init()是否已执行，之后修改虚拟线程配置立即生效 */
+  private boolean initialized = false;
+  /**
+   * 批量派发（QUEUE模式）：一次读解出的所有packet整体放入连接的串行通道（SerialLane），只提交一次bizExecutor，同一连接的packet按到达顺序处理
+   */
+  private boolean bizBatchDispatch = EnvUtils.getBoolean(TioCoreConfigKeys.TIO_CORE_BIZ_BATCH_DISPATCH, false);
+  /**
+   * 收发处理的计数只记在ChannelStat上，不在热点路径上累加GroupStat，取getGroupStatSnapshot()时再汇总，需在启动前设置
+   */
+  private boolean statGroupLazy = EnvUtils.getBoolean(TioCoreConfigKeys.TIO_CORE_STAT_GROUP_LAZY, false);
+  /**
+   * 是否用System.nanoTime()记录排队、业务处理、发送、编码的耗时分布（GroupStat.latency），statOn为false时不记录<br>
+   * 默认关闭：开启后每个packet多几次System.nanoTime()，所有IO线程和业务线程累加同一组直方图桶，发送队列中每个packet多一个对象
+   */
+  private boolean latencyStatOn = EnvUtils.getBoolean(TioCoreConfigKeys.TIO_CORE_STAT_LATENCY, false);
+  /**
+   * 是否为每个连接单独记录耗时分布，每个连接约多占20KB，latencyStatOn开启时才有效
+   */
+  private boolean channelLatencyStatOn = EnvUtils.getBoolean(TioCoreConfigKeys.TIO_CORE_STAT_CHANNEL_LATENCY, false);
+  /**
+   * 是否记录每次TCP读到的字节数分布（GroupStat.readSizes），statOn为false或statGroupLazy为true时不记录
+   */
+  private boolean readSizeStatOn = EnvUtils.getBoolean(TioCoreConfigKeys.TIO_CORE_STAT_READ_SIZE, false);
+  /**
+   * 是否为每个连接单独记录读到的字节数分布（ChannelStat.getReadSizes()），每个连接多占一个直方图，statOn为false时不记录
+   */
+  private boolean channelReadSizeStatOn = EnvUtils.getBoolean(TioCoreConfigKeys.TIO_CORE_STAT_CHANNEL_READ_SIZE, false);
+  /**
+   * 紧凑连接：ChannelContext不再创建已废弃的public字段（closeLock、closeMeta、isSending）和ChannelStat的AtomicLong计数器，
+   * 每个空闲连接少占约370字节；直接读写这些字段的代码需改用对应方法，需在创建连接前设置
+   */
+  private boolean compactChannelContext = EnvUtils.getBoolean(TioCoreConfigKeys.TIO_CORE_CHANNEL_COMPACT, false);
+  /**
+   * 文件传输：每个连接一次提交给socket的最大字节数（在途上限）
+   */
+  private int fileTransferChunkSize = EnvUtils.getInt(TioCoreConfigKeys.TIO_CORE_FILE_TRANSFER_CHUNK_SIZE, 64 * 1024);
+  /**
+   * 文件传输：同时进行的文件传输数上限，超过的排队等待，小于等于0表示不限制
+   */
+  private int fileTransferMaxConcurrent = EnvUtils.getInt(TioCoreConfigKeys.TIO_CORE_FILE_TRANSFER_MAX_CONCURRENT, 0);
+  /**
+   * 并行群发：每个分片的成员数，成员数不超过它的集合在调用线程中发送，小于等于0表示不分片
+   */
+  private int fanOutShardSize = EnvUtils.getInt(TioCoreConfigKeys.TIO_CORE_FAN_OUT_SHARD_SIZE, 4096);
+  /**
+   * 并行群发：fanOutPool的并行度，小于等于0表示取CPU核数，1表示不并行
+   */
+  private int fanOutConcurrency = EnvUtils.getInt(TioCoreConfigKeys.TIO_CORE_FAN_OUT_CONCURRENCY, 0);
+  /**
+   * 群发时只编码一次，所有接收者共享编码结果；编码时传入的是任一接收者的ChannelContext，
+   * 开启后AioHandler.encode不能依赖连接上的状态（用户、协议版本、压缩选项等），否则其它接收者会收到按这个连接编码的内容
+   */
+  private boolean fanOutSharedEncode = EnvUtils.getBoolean(TioCoreConfigKeys.TIO_CORE_FAN_OUT_SHARED_ENCODE, false);
+  /**
+   * 并行群发的线程池，第一次群发大集合时创建
+   */
+  private volatile ForkJoinPool fanOutPool;
+  /**
+   * 每个连接发送队列的packet数上限，超过后按sendQueueOverflowPolicy处理，小于等于0表示不限制
+   */
+  private int sendQueueMaxPackets = EnvUtils.getInt(TioCoreConfigKeys.TIO_CORE_SEND_QUEUE_MAX_PACKETS, 0);
+  /**
+   * 每个连接发送队列的字节数上限，小于等于0表示不限制
+   */
+  private long sendQueueMaxBytes = EnvUtils.getLong(TioCoreConfigKeys.TIO_CORE_SEND_QUEUE_MAX_BYTES, 0L);
+  /**
+   * 发送队列packet数高水位，超过后连接变为不可写（AioListener.onWritabilityChanged），小于等于0表示不启用
+   */
+  private int sendQueueHighWaterMarkPackets = EnvUtils.getInt(TioCoreConfigKeys.TIO_CORE_SEND_QUEUE_HIGH_WATER_MARK_PACKETS, 0);
+  /**
+   * 发送队列packet数低水位，降到这个值以下后连接恢复可写，不配置时取高水位的一半
+   */
+  private int sendQueueLowWaterMarkPackets = EnvUtils.getInt(TioCoreConfigKeys.TIO_CORE_SEND_QUEUE_LOW_WATER_MARK_PACKETS, 0);
+  /**
+   * 发送队列字节数高水位，小于等于0表示不启用
+   */
+  private long sendQueueHighWaterMarkBytes = EnvUtils.getLong(TioCoreConfigKeys.TIO_CORE_SEND_QUEUE_HIGH_WATER_MARK_BYTES, 0L);
+  /**
+   * 发送队列字节数低水位，不配置时取高水位的一半
+   */
+  private long sendQueueLowWaterMarkBytes = EnvUtils.getLong(TioCoreConfigKeys.TIO_CORE_SEND_QUEUE_LOW_WATER_MARK_BYTES, 0L);
+  /**
+   * 本TioConfig所有连接发送队列的packet总数上限，小于等于0表示不限制
+   */
+  private long sendQueueTotalMaxPackets = EnvUtils.getLong(TioCoreConfigKeys.TIO_CORE_SEND_QUEUE_TOTAL_MAX_PACKETS, 0L);
+  /**
+   * 本TioConfig所有连接发送队列的字节总数上限，小于等于0表示不限制
+   */
+  private long sendQueueTotalMaxBytes = EnvUtils.getLong(TioCoreConfigKeys.TIO_CORE_SEND_QUEUE_TOTAL_MAX_BYTES, 0L);
+  /**
+   * 发送队列超过上限时的处理策略
+   */
+  private SendQueueOverflowPolicy sendQueueOverflowPolicy = SendQueueOverflowPolicy
+      .from(EnvUtils.getStr(TioCoreConfigKeys.TIO_CORE_SEND_QUEUE_OVERFLOW_POLICY, SendQueueOverflowPolicy.REJECT.name()));
+  /**
+   * 正在进行的文件传输数
+   */
+  public final AtomicInteger fileTransferCount = new AtomicInteger();
+  /**
+   * 因超过fileTransferMaxConcurrent而等待的文件传输
+   */
+  public final ConcurrentLinkedQueue<FileTransferTask> pendingFileTransfers = new ConcurrentLinkedQueue<>();
   private GroupListener groupListener = null;
   private AioId tioUuid = new DefaultTAioId();
   public ClientNodes clientNodes = new ClientNodes();
-  public SetWithLock<ChannelContext> connections = new SetWithLock<ChannelContext>(new HashSet<ChannelContext>());
+  public SetWithLock<ChannelContext> connections = MaintainUtils.createIdOrderedSet();
   public Groups groups = new Groups();
   public Users users = new Users();
   public Tokens tokens = new Tokens();
@@ -149,6 +322,10 @@ public abstract class TioConfig extends MapWithLockPropSupport {
    */
   public IpBlacklist ipBlacklist = null;
   public MapWithLock<Integer, Packet> waitingResps = new MapWithLock<Integer, Packet>(new HashMap<Integer, Packet>());
+  /**
+   * Tio.request()发出的请求等待响应的关联表
+   */
+  public final SynRequests synRequests = new SynRequests();
 
   public TioConfig() {
 
@@ -214,6 +391,10 @@ public abstract class TioConfig extends MapWithLockPropSupport {
     return waitingResps;
   }
 
+  public SynRequests getSynRequests() {
+    return synRequests;
+  }
+
   /**
    * @return the isStop
    */
@@ -313,6 +494,433 @@ public abstract class TioConfig extends MapWithLockPropSupport {
     return sslConfig != null;
   }
 
+  public int getSendBatchMaxPackets() {
+    return sendBatchMaxPackets;
+  }
+
+  /**
+   * @param sendBatchMaxPackets 一次写操作最多合并多少个packet，小于等于1表示关闭聚合发送
+   */
+  public void setSendBatchMaxPackets(int sendBatchMaxPackets) {
+    this.sendBatchMaxPackets = sendBatchMaxPackets;
+  }
+
+  public int getSendBatchMaxBytes() {
+    return sendBatchMaxBytes;
+  }
+
+  public void setSendBatchMaxBytes(int sendBatchMaxBytes) {
+    this.sendBatchMaxBytes = sendBatchMaxBytes;
+  }
+
+  public int getFileTransferChunkSize() {
+    return fileTransferChunkSize;
+  }
+
+  public void setFileTransferChunkSize(int fileTransferChunkSize) {
+    this.fileTransferChunkSize = fileTransferChunkSize;
+  }
+
+  public int getSendQueueMaxPackets() {
+    return sendQueueMaxPackets;
+  }
+
+  public void setSendQueueMaxPackets(int sendQueueMaxPackets) {
+    this.sendQueueMaxPackets = sendQueueMaxPackets;
+  }
+
+  public long getSendQueueMaxBytes() {
+    return sendQueueMaxBytes;
+  }
+
+  public void setSendQueueMaxBytes(long sendQueueMaxBytes) {
+    this.sendQueueMaxBytes = sendQueueMaxBytes;
+  }
+
+  public int getSendQueueHighWaterMarkPackets() {
+    return sendQueueHighWaterMarkPackets;
+  }
+
+  public void setSendQueueHighWaterMarkPackets(int sendQueueHighWaterMarkPackets) {
+    this.sendQueueHighWaterMarkPackets = sendQueueHighWaterMarkPackets;
+  }
+
+  public int getSendQueueLowWaterMarkPackets() {
+    if (sendQueueLowWaterMarkPackets <= 0) {
+      return sendQueueHighWaterMarkPackets / 2;
+    }
+    return sendQueueLowWaterMarkPackets;
+  }
+
+  public void setSendQueueLowWaterMarkPackets(int sendQueueLowWaterMarkPackets) {
+    this.sendQueueLowWaterMarkPackets = sendQueueLowWaterMarkPackets;
+  }
+
+  public long getSendQueueHighWaterMarkBytes() {
+    return sendQueueHighWaterMarkBytes;
+  }
+
+  public void setSendQueueHighWaterMarkBytes(long sendQueueHighWaterMarkBytes) {
+    this.sendQueueHighWaterMarkBytes = sendQueueHighWaterMarkBytes;
+  }
+
+  public long getSendQueueLowWaterMarkBytes() {
+    if (sendQueueLowWaterMarkBytes <= 0) {
+      return sendQueueHighWaterMarkBytes / 2;
+    }
+    return sendQueueLowWaterMarkBytes;
+  }
+
+  public void setSendQueueLowWaterMarkBytes(long sendQueueLowWaterMarkBytes) {
+    this.sendQueueLowWaterMarkBytes = sendQueueLowWaterMarkBytes;
+  }
+
+  public long getSendQueueTotalMaxPackets() {
+    return sendQueueTotalMaxPackets;
+  }
+
+  public void setSendQueueTotalMaxPackets(long sendQueueTotalMaxPackets) {
+    this.sendQueueTotalMaxPackets = sendQueueTotalMaxPackets;
+  }
+
+  public long getSendQueueTotalMaxBytes() {
+    return sendQueueTotalMaxBytes;
+  }
+
+  public void setSendQueueTotalMaxBytes(long sendQueueTotalMaxBytes) {
+    this.sendQueueTotalMaxBytes = sendQueueTotalMaxBytes;
+  }
+
+  public SendQueueOverflowPolicy getSendQueueOverflowPolicy() {
+    return sendQueueOverflowPolicy;
+  }
+
+  public void setSendQueueOverflowPolicy(SendQueueOverflowPolicy sendQueueOverflowPolicy) {
+    this.sendQueueOverflowPolicy = sendQueueOverflowPolicy;
+  }
+
+  public PacketHandlerMode getPacketHandlerMode() {
+    return packetHandlerMode;
+  }
+
+  public void setPacketHandlerMode(PacketHandlerMode packetHandlerMode) {
+    this.packetHandlerMode = packetHandlerMode;
+  }
+
+  public int getLaneMaxPacketsPerRun() {
+    return laneMaxPacketsPerRun;
+  }
+
+  /**
+   * @param laneMaxPacketsPerRun 每条串行通道被调度一次最多处理的packet数，小于等于0表示不限制
+   */
+  public void setLaneMaxPacketsPerRun(int laneMaxPacketsPerRun) {
+    this.laneMaxPacketsPerRun = laneMaxPacketsPerRun;
+  }
+
+  public boolean isVirtualThreadEnabled() {
+    return virtualThreadEnabled;
+  }
+
+  /**
+   * init()之后（例如ClientTioConfig在构造方法中已经init）设置也立即生效：开启时创建线程池，关闭时关闭框架创建的线程池
+   * @param virtualThreadEnabled 是否在虚拟线程中处理packet
+   */
+  public synchronized void setVirtualThreadEnabled(boolean virtualThreadEnabled) {
+    this.virtualThreadEnabled = virtualThreadEnabled;
+    if (!initialized) {
+      return;
+    }
+    if (virtualThreadEnabled) {
+      initVirtualThreadExecutor();
+    } else if (bizExecutorCreated) {
+      bizExecutor.shutdown();
+      bizExecutor = null;
+      bizExecutorCreated = false;
+      packetHandlerMode = packetHandlerModeBeforeVirtual;
+    }
+  }
+
+  public int getVirtualThreadMaxConcurrent() {
+    return virtualThreadMaxConcurrent;
+  }
+
+  /**
+   * @param virtualThreadMaxConcurrent 同时处理的packet数上限，小于等于0表示不限制
+   */
+  public synchronized void setVirtualThreadMaxConcurrent(int virtualThreadMaxConcurrent) {
+    if (this.virtualThreadMaxConcurrent == virtualThreadMaxConcurrent) {
+      return;
+    }
+    this.virtualThreadMaxConcurrent = virtualThreadMaxConcurrent;
+    if (bizExecutorCreated) {
+      // 已经创建的线程池按新的上限重建，旧的处理完已提交的任务后退出
+      ExecutorService old = bizExecutor;
+      bizExecutor = BizExecutorUtils.newBizExecutor(this);
+      old.shutdown();
+    }
+  }
+
+  /**
+   * 虚拟线程模式下没有设置bizExecutor时创建，并切换到ORDERED模式
+   */
+  private synchronized void initVirtualThreadExecutor() {
+    if (virtualThreadEnabled && bizExecutor == null) {
+      this.bizExecutor = BizExecutorUtils.newBizExecutor(this);
+      this.bizExecutorCreated = true;
+      this.packetHandlerModeBeforeVirtual = packetHandlerMode;
+      this.packetHandlerMode = PacketHandlerMode.ORDERED;
+    }
+  }
+
+  /**
+   * 关闭由框架创建的bizExecutor，用户自己设置的不关闭
+   */
+  public void shutdownBizExecutor() {
+    if (bizExecutorCreated && bizExecutor != null) {
+      bizExecutor.shutdown();
+    }
+  }
+
+  public boolean isBizBatchDispatch() {
+    return bizBatchDispatch;
+  }
+
+  /**
+   * @param bizBatchDispatch 是否把一次读解出的所有packet整体提交给bizExecutor（经过连接的串行通道）
+   */
+  public void setBizBatchDispatch(boolean bizBatchDispatch) {
+    this.bizBatchDispatch = bizBatchDispatch;
+  }
+
+  public boolean isStatGroupLazy() {
+    return statGroupLazy;
+  }
+
+  /**
+   * @param statGroupLazy 是否在取快照时才把各连接的计数汇总到GroupStat，需在启动前设置
+   */
+  public void setStatGroupLazy(boolean statGroupLazy) {
+    this.statGroupLazy = statGroupLazy;
+  }
+
+  public boolean isCompactChannelContext() {
+    return compactChannelContext;
+  }
+
+  /**
+   * @param compactChannelContext 是否使用紧凑连接，只影响之后创建的连接
+   */
+  public void setCompactChannelContext(boolean compactChannelContext) {
+    this.compactChannelContext = compactChannelContext;
+  }
+
+  public boolean isLatencyStatOn() {
+    return latencyStatOn;
+  }
+
+  public void setLatencyStatOn(boolean latencyStatOn) {
+    this.latencyStatOn = latencyStatOn;
+  }
+
+  public boolean isChannelLatencyStatOn() {
+    return channelLatencyStatOn;
+  }
+
+  /**
+   * @param channelLatencyStatOn 是否为每个连接单独记录耗时分布（ChannelStat.getLatency()），latencyStatOn开启时才有效
+   */
+  public void setChannelLatencyStatOn(boolean channelLatencyStatOn) {
+    this.channelLatencyStatOn = channelLatencyStatOn;
+  }
+
+  public boolean isReadSizeStatOn() {
+    return readSizeStatOn;
+  }
+
+  /**
+   * @param readSizeStatOn 是否记录所有连接每次TCP读到的字节数分布（GroupStat.readSizes）
+   */
+  public void setReadSizeStatOn(boolean readSizeStatOn) {
+    this.readSizeStatOn = readSizeStatOn;
+  }
+
+  public boolean isChannelReadSizeStatOn() {
+    return channelReadSizeStatOn;
+  }
+
+  /**
+   * @param channelReadSizeStatOn 是否为每个连接单独记录读到的字节数分布（ChannelStat.getReadSizes()）
+   */
+  public void setChannelReadSizeStatOn(boolean channelReadSizeStatOn) {
+    this.channelReadSizeStatOn = channelReadSizeStatOn;
+  }
+
+  /**
+   * @return GroupStat的快照，statGroupLazy时汇总当前所有连接的计数
+   */
+  public GroupStatSnapshot getGroupStatSnapshot() {
+    return groupStat.snapshot(statGroupLazy ? connections.getObj() : null);
+  }
+
+  public boolean isReadBufferAdaptive() {
+    return readBufferAdaptive;
+  }
+
+  /**
+   * @param readBufferAdaptive 是否自动调整读buffer大小，只对之后建立的连接生效
+   */
+  public void setReadBufferAdaptive(boolean readBufferAdaptive) {
+    this.readBufferAdaptive = readBufferAdaptive;
+  }
+
+  public int getReadBufferMinSize() {
+    return readBufferMinSize;
+  }
+
+  public void setReadBufferMinSize(int readBufferMinSize) {
+    this.readBufferMinSize = readBufferMinSize;
+  }
+
+  public int getReadBufferInitialSize() {
+    return readBufferInitialSize;
+  }
+
+  public void setReadBufferInitialSize(int readBufferInitialSize) {
+    this.readBufferInitialSize = readBufferInitialSize;
+  }
+
+  public int getReadBufferMaxSize() {
+    return readBufferMaxSize;
+  }
+
+  public void setReadBufferMaxSize(int readBufferMaxSize) {
+    this.readBufferMaxSize = Math.min(readBufferMaxSize, TcpConst.MAX_DATA_LENGTH);
+  }
+
+  public long getReadHibernateTimeout() {
+    return readHibernateTimeout;
+  }
+
+  /**
+   * @param readHibernateTimeout 连接空闲多久（毫秒）后归还读buffer，小于0表示不休眠
+   */
+  public void setReadHibernateTimeout(long readHibernateTimeout) {
+    this.readHibernateTimeout = readHibernateTimeout;
+  }
+
+  /**
+   * @return 是否开启了读休眠
+   */
+  public boolean isReadHibernate() {
+    return readHibernateTimeout >= 0;
+  }
+
+  public int getFileTransferMaxConcurrent() {
+    return fileTransferMaxConcurrent;
+  }
+
+  /**
+   * @param fileTransferMaxConcurrent 同时进行的文件传输数上限，小于等于0表示不限制
+   */
+  public void setFileTransferMaxConcurrent(int fileTransferMaxConcurrent) {
+    this.fileTransferMaxConcurrent = fileTransferMaxConcurrent;
+  }
+
+  public long getReadIdleTimeout() {
+    return readIdleTimeout;
+  }
+
+  /**
+   * 只对设置之后建立的连接生效
+   * @param readIdleTimeout 读空闲超时时间(单位: 毫秒)，小于等于0表示不检测
+   */
+  public void setReadIdleTimeout(long readIdleTimeout) {
+    this.readIdleTimeout = readIdleTimeout;
+  }
+
+  public long getWriteIdleTimeout() {
+    return writeIdleTimeout;
+  }
+
+  /**
+   * 只对设置之后建立的连接生效
+   * @param writeIdleTimeout 写空闲超时时间(单位: 毫秒)，小于等于0表示不检测
+   */
+  public void setWriteIdleTimeout(long writeIdleTimeout) {
+    this.writeIdleTimeout = writeIdleTimeout;
+  }
+
+  public int getFanOutShardSize() {
+    return fanOutShardSize;
+  }
+
+  /**
+   * @param fanOutShardSize 并行群发每个分片的成员数，小于等于0表示不分片
+   */
+  public void setFanOutShardSize(int fanOutShardSize) {
+    this.fanOutShardSize = fanOutShardSize;
+  }
+
+  public int getFanOutConcurrency() {
+    return fanOutConcurrency;
+  }
+
+  /**
+   * 需在第一次群发之前设置
+   * @param fanOutConcurrency 并行群发的并行度，小于等于0表示取CPU核数，1表示不并行
+   */
+  public void setFanOutConcurrency(int fanOutConcurrency) {
+    this.fanOutConcurrency = fanOutConcurrency;
+  }
+
+  public boolean isFanOutSharedEncode() {
+    return fanOutSharedEncode;
+  }
+
+  /**
+   * @param fanOutSharedEncode 群发时是否只编码一次，开启前确认AioHandler.encode的结果与传入的ChannelContext无关
+   */
+  public void setFanOutSharedEncode(boolean fanOutSharedEncode) {
+    this.fanOutSharedEncode = fanOutSharedEncode;
+  }
+
+  /**
+   * @return 并行群发的线程池，并行度为1时返回null
+   */
+  public ForkJoinPool getFanOutPool() {
+    ForkJoinPool pool = fanOutPool;
+    if (pool != null) {
+      return pool;
+    }
+    int parallelism = fanOutConcurrency > 0 ? fanOutConcurrency : Runtime.getRuntime().availableProcessors();
+    if (parallelism <= 1) {
+      return null;
+    }
+    synchronized (this) {
+      if (fanOutPool == null) {
+        AtomicInteger threadNumber = new AtomicInteger();
+        String prefix = "tio-fan-out-" + name + "-";
+        fanOutPool = new ForkJoinPool(parallelism, p -> {
+          ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+          thread.setName(prefix + threadNumber.incrementAndGet());
+          return thread;
+        }, null, false);
+      }
+      return fanOutPool;
+    }
+  }
+
+  /**
+   * 关闭并行群发的线程池
+   */
+  public void shutdownFanOutPool() {
+    ForkJoinPool pool = fanOutPool;
+    if (pool != null) {
+      pool.shutdown();
+    }
+  }
+
   public void setCacheFactory(CacheFactory cacheFactory) {
     this.cacheFactory = cacheFactory;
   }
@@ -408,6 +1016,10 @@ public abstract class TioConfig extends MapWithLockPropSupport {
     if (this.ipStats == null) {
       this.ipStats = new IpStats(this, null);
     }
+
+    initVirtualThreadExecutor();
+    initialized = true;
+    MemoryBudget.start();
   }
 
 }
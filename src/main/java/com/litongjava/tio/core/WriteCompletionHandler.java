@@ -1,7 +1,9 @@
 package com.litongjava.tio.core;
 
+import java.nio.ByteBuffer;
 import java.nio.channels.CompletionHandler;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -10,12 +12,12 @@ import com.litongjava.aio.Packet;
 import com.litongjava.aio.PacketMeta;
 import com.litongjava.tio.consts.TioCoreConfigKeys;
 import com.litongjava.tio.core.pool.BufferPoolUtils;
-import com.litongjava.tio.core.stat.IpStat;
+import com.litongjava.tio.core.stat.IpStatRecord;
+import com.litongjava.tio.core.stat.LatencyStats;
 import com.litongjava.tio.core.task.SendPacketTask;
 import com.litongjava.tio.core.vo.WriteCompletionVo;
 import com.litongjava.tio.utils.SystemTimer;
 import com.litongjava.tio.utils.environment.EnvUtils;
-import com.litongjava.tio.utils.hutool.CollUtil;
 
 /**
  * @author tanyaowu
@@ -47,9 +49,9 @@ public class WriteCompletionHandler implements CompletionHandler<Integer, WriteC
     // This is not necessarily a fatal error. We should retry writing remaining
     // bytes.
     if (bytesWritten == 0) {
-      if (writeCompletionVo.getByteBuffer() != null && writeCompletionVo.getByteBuffer().hasRemaining()) {
+      if (writeCompletionVo.hasRemaining()) {
         // Re-issue write for the remaining data instead of closing the channel.
-        channelContext.asynchronousSocketChannel.write(writeCompletionVo.getByteBuffer(), writeCompletionVo, this);
+        write(writeCompletionVo);
         return;
       }
       // If buffer has no remaining and bytesWritten is 0, fall through to handle() as
@@ -62,11 +64,11 @@ public class WriteCompletionHandler implements CompletionHandler<Integer, WriteC
       channelContext.stat.latestTimeOfSentByte = SystemTimer.currTime;
     }
 
-    if (writeCompletionVo.getByteBuffer() != null && writeCompletionVo.getByteBuffer().hasRemaining()) {
-      channelContext.asynchronousSocketChannel.write(writeCompletionVo.getByteBuffer(), writeCompletionVo, this);
+    if (writeCompletionVo.hasRemaining()) {
+      write(writeCompletionVo);
     } else {
       handle(writeCompletionVo.getTotalWritten(), null, writeCompletionVo);
-      BufferPoolUtils.clean(writeCompletionVo.getByteBuffer());
+      clean(writeCompletionVo);
       processNextPacket(channelContext);
     }
   }
@@ -76,12 +78,45 @@ public class WriteCompletionHandler implements CompletionHandler<Integer, WriteC
     // When write fails, always report throwable to handle() so we can close with
     // real cause.
     handle(0, throwable, writeCompletionVo);
-    BufferPoolUtils.clean(writeCompletionVo.getByteBuffer());
+    clean(writeCompletionVo);
     processNextPacket(channelContext);
   }
 
+  /**
+   * 发起（或继续）写操作，多个buffer时走gathering write，一次系统调用写出整批packet
+   * @param writeCompletionVo
+   */
+  public void write(WriteCompletionVo writeCompletionVo) {
+    ByteBuffer[] byteBuffers = writeCompletionVo.getByteBuffers();
+    if (byteBuffers == null) {
+      channelContext.asynchronousSocketChannel.write(writeCompletionVo.getByteBuffer(), writeCompletionVo, this);
+    } else {
+      int offset = writeCompletionVo.getOffset();
+      channelContext.asynchronousSocketChannel.write(byteBuffers, offset, byteBuffers.length - offset, 0L,
+          TimeUnit.MILLISECONDS, writeCompletionVo, new GatheringWriteCompletionHandler(this));
+    }
+  }
+
+  private void clean(WriteCompletionVo writeCompletionVo) {
+    Object attachment = writeCompletionVo.getObj();
+    ByteBuffer[] byteBuffers = writeCompletionVo.getByteBuffers();
+    if (byteBuffers == null) {
+      if (attachment instanceof Packet) {
+        BufferPoolUtils.clean(writeCompletionVo.getByteBuffer(), (Packet) attachment);
+      } else {
+        BufferPoolUtils.clean(writeCompletionVo.getByteBuffer());
+      }
+    } else {
+      // 聚合写时buffer与packet一一对应
+      List<?> packets = (List<?>) attachment;
+      for (int i = 0; i < byteBuffers.length; i++) {
+        BufferPoolUtils.clean(byteBuffers[i], (Packet) packets.get(i));
+      }
+    }
+  }
+
   private void processNextPacket(ChannelContext channelContext) {
-    channelContext.isSending.set(false);
+    channelContext.releaseSending();
     new SendPacketTask(channelContext).processSendQueue();
   }
 
@@ -99,16 +134,19 @@ public class WriteCompletionHandler implements CompletionHandler<Integer, WriteC
     boolean isSentSuccess = (bytesWritten != null && bytesWritten > 0);
 
     if (isSentSuccess) {
+      long offeredNanos = writeCompletionVo.getOfferedNanos();
+      if (offeredNanos != 0 && LatencyStats.isOn(tioConfig)) {
+        LatencyStats.record(channelContext, LatencyStats.WRITE, System.nanoTime() - offeredNanos);
+      }
       if (tioConfig.statOn) {
-        tioConfig.groupStat.sentBytes.addAndGet(bytesWritten);
-        channelContext.stat.sentBytes.addAndGet(bytesWritten);
+        if (!tioConfig.isStatGroupLazy()) {
+          tioConfig.groupStat.sentBytes.add(bytesWritten);
+        }
+        channelContext.stat.addSentBytes(bytesWritten);
       }
 
-      if (CollUtil.isNotEmpty(tioConfig.ipStats.durationList)) {
-        for (Long v : tioConfig.ipStats.durationList) {
-          IpStat ipStat = (IpStat) channelContext.tioConfig.ipStats.get(v, channelContext);
-          ipStat.getSentBytes().addAndGet(bytesWritten);
-        }
+      if (tioConfig.ipStats.isOn()) {
+        tioConfig.ipStats.record(channelContext).add(IpStatRecord.SENT_BYTES, bytesWritten);
       }
     }
 
@@ -117,16 +155,17 @@ public class WriteCompletionHandler implements CompletionHandler<Integer, WriteC
 
       if (isPacket) {
         if (isSentSuccess) {
-          if (CollUtil.isNotEmpty(tioConfig.ipStats.durationList)) {
-            for (Long v : tioConfig.ipStats.durationList) {
-              IpStat ipStat = (IpStat) channelContext.tioConfig.ipStats.get(v, channelContext);
-              ipStat.getSentPackets().incrementAndGet();
-            }
+          if (tioConfig.ipStats.isOn()) {
+            tioConfig.ipStats.record(channelContext).add(IpStatRecord.SENT_PACKETS, 1);
           }
         }
         handleOne(bytesWritten, throwable, (Packet) attachment, isSentSuccess);
       } else {
         List<?> ps = (List<?>) attachment;
+        // 聚合写与逐个写的统计一致，每个packet都计入
+        if (isSentSuccess && tioConfig.ipStats.isOn()) {
+          tioConfig.ipStats.record(channelContext).add(IpStatRecord.SENT_PACKETS, ps.size());
+        }
         for (Object obj : ps) {
           handleOne(bytesWritten, throwable, (Packet) obj, isSentSuccess);
         }
@@ -150,6 +189,10 @@ public class WriteCompletionHandler implements CompletionHandler<Integer, WriteC
   }
 
   public void handleOne(Integer result, Throwable throwable, Packet packet, Boolean isSentSuccess) {
+    if (packet instanceof SharedPacket) {
+      // 群发包装，回调给业务层的是原始packet
+      packet = ((SharedPacket) packet).getPacket();
+    }
     PacketMeta meta = packet.getMeta();
     if (meta != null) {
       meta.setIsSentSuccess(isSentSuccess);
@@ -171,4 +214,25 @@ public class WriteCompletionHandler implements CompletionHandler<Integer, WriteC
       Tio.close(channelContext, msg);
     }
   }
-}
\ No newline at end of file
+
+  /**
+   * gathering write的回调是Long类型，转给WriteCompletionHandler处理
+   */
+  private static class GatheringWriteCompletionHandler implements CompletionHandler<Long, WriteCompletionVo> {
+    private final WriteCompletionHandler writeCompletionHandler;
+
+    GatheringWriteCompletionHandler(WriteCompletionHandler writeCompletionHandler) {
+      this.writeCompletionHandler = writeCompletionHandler;
+    }
+
+    @Override
+    public void completed(Long bytesWritten, WriteCompletionVo writeCompletionVo) {
+      writeCompletionHandler.completed(bytesWritten == null ? null : bytesWritten.intValue(), writeCompletionVo);
+    }
+
+    @Override
+    public void failed(Throwable throwable, WriteCompletionVo writeCompletionVo) {
+      writeCompletionHandler.failed(throwable, writeCompletionVo);
+    }
+  }
+}
@@ -0,0 +1,25 @@
+package com.litongjava.tio.core.exception;
+
+/**
+ * 发送packet失败（连接已关闭、发送队列已满等）
+ * @author Tong Li
+ */
+public class TioSendException extends java.lang.Exception {
+
+	private static final long serialVersionUID = 3870916410379016521L;
+
+	public TioSendException() {
+	}
+
+	public TioSendException(String message) {
+		super(message);
+	}
+
+	public TioSendException(String message, Throwable cause) {
+		super(message, cause);
+	}
+
+	public TioSendException(Throwable cause) {
+		super(cause);
+	}
+}
@@ -29,7 +29,8 @@ public interface AioHandler {
 	Packet decode(ByteBuffer buffer, int limit, int position, int readableLength, ChannelContext channelContext) throws Exception;
 
 	/**
-	 * 编码
+	 * 编码<br>
+	 * 开启TioConfig.fanOutSharedEncode后，群发时只用其中一个接收者调用一次，结果发给所有接收者，这时编码不能依赖channelContext
 	 * @param packet
 	 * @param tioConfig
 	 * @param channelContext
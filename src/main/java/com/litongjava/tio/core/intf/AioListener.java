@@ -59,6 +59,15 @@ public interface AioListener {
    */
   public void onAfterHandled(ChannelContext channelContext, Packet packet, long cost) throws Exception;
 
+  /**
+   * 发送队列越过高水位（变为不可写）或回落到低水位（恢复可写）时触发本方法，广播场景下可以据此暂停给慢连接发消息
+   * @param channelContext
+   * @param writable true:恢复可写，false:发送队列积压，变为不可写
+   * @throws Exception
+   */
+  public default void onWritabilityChanged(ChannelContext channelContext, boolean writable) throws Exception {
+  }
+
   /**
    * 连接关闭前触发本方法
    * @param channelContext the channelcontext
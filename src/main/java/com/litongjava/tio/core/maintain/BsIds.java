@@ -1,6 +1,6 @@
 package com.litongjava.tio.core.maintain;
 
-import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -13,6 +13,7 @@ import com.litongjava.tio.utils.lock.MapWithLock;
 /**
  * 一对一  (bsid <--> ChannelContext)<br>
  * Bs: business，业务id和ChannelContext绑定<br>
+ * 保存在ConcurrentHashMap中，bind/unbind不加锁，连接关闭时按ChannelContext.getBsId()解绑<br>
  * 需求见：https://gitee.com/tywo45/t-io/issues/IK30Q
  * @author tanyaowu 
  */
@@ -23,7 +24,7 @@ public class BsIds {
    * key: 业务id
    * value: ChannelContext
    */
-  private MapWithLock<String, ChannelContext> map = new MapWithLock<>(new HashMap<String, ChannelContext>());
+  private MapWithLock<String, ChannelContext> map = new MapWithLock<>(new ConcurrentHashMap<String, ChannelContext>());
 
   /**
    * 
@@ -92,7 +93,8 @@ public class BsIds {
       return;
     }
     try {
-      map.remove(bsId);
+      // 同一个bsId可能已经绑定到新的连接上了，只删除映射到自己的
+      map.getObj().remove(bsId, channelContext);
       channelContext.setBsId(null);
     } catch (Exception e) {
       log.error(e.toString(), e);
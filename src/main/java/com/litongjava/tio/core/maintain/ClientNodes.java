@@ -1,8 +1,7 @@
 package com.litongjava.tio.core.maintain;
 
-import java.util.Map;
+import java.util.HashMap;
 import java.util.Objects;
-import java.util.concurrent.locks.Lock;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -13,14 +12,15 @@ import com.litongjava.tio.utils.lock.MapWithLock;
 
 /**
  *一对一  (ip:port <--> ChannelContext)<br>
+ * 保存在NodeIndex中，查找不加锁、不创建对象
  * @author tanyaowu
  * 2017年4月1日 上午9:35:20
  */
 public class ClientNodes {
   private static final Logger log = LoggerFactory.getLogger(ClientNodes.class);
 
-  /** remoteAndChannelContext key: Node value: ChannelContext. */
-  private final MapWithLock<Node, ChannelContext> mapWithLock = new MapWithLock<>();
+  /** key: ip:port value: ChannelContext. */
+  private final NodeIndex<ChannelContext> index = new NodeIndex<>();
 
   /**
    *
@@ -40,14 +40,7 @@ public class ClientNodes {
    * @author tanyaowu
    */
   public ChannelContext find(Node clientNode) {
-    Lock lock = mapWithLock.readLock();
-    lock.lock();
-    try {
-      Map<Node, ChannelContext> m = mapWithLock.getObj();
-      return m.get(clientNode);
-    } finally {
-      lock.unlock();
-    }
+    return index.get(clientNode.getHost(), clientNode.getPort());
   }
 
   /**
@@ -58,16 +51,29 @@ public class ClientNodes {
    * @author tanyaowu
    */
   public ChannelContext find(String ip, int port) {
-    return find(new Node(ip, port));
+    return index.get(ip, port);
   }
 
   /**
-   *
-   * @return
+   * @return 当前的连接数
+   */
+  public int size() {
+    return index.size();
+  }
+
+  /**
+   * 每次调用都遍历索引、复制全部映射（O(n)，会创建Node和HashMap），不要在热点路径上调用<br>
+   * 返回的是调用时的拷贝：之后的put/remove不会反映到其中，修改它或持有它的锁也不会影响ClientNodes；
+   * IPv6的key是规范化后的形式（如"0:0:0:0:0:0:0:1"），不一定与连接的clientNode相同
+   * @return 所有映射的一份拷贝
+   * @deprecated 查找请用find()，数量请用size()
    * @author tanyaowu
    */
+  @Deprecated
   public MapWithLock<Node, ChannelContext> getObjWithLock() {
-    return mapWithLock;
+    HashMap<Node, ChannelContext> map = new HashMap<>();
+    index.forEach(map::put);
+    return new MapWithLock<>(map);
   }
 
   /**
@@ -81,7 +87,7 @@ public class ClientNodes {
     }
     try {
       Node clientNode = getKey(channelContext);
-      mapWithLock.put(clientNode, channelContext);
+      index.put(clientNode.getHost(), clientNode.getPort(), channelContext);
     } catch (Exception e) {
       log.error(e.toString(), e);
     }
@@ -98,9 +104,9 @@ public class ClientNodes {
     }
     try {
       Node clientNode = getKey(channelContext);
-      mapWithLock.remove(clientNode);
+      index.remove(clientNode.getHost(), clientNode.getPort());
     } catch (Throwable e) {
       log.error(e.toString(), e);
     }
   }
-}
\ No newline at end of file
+}
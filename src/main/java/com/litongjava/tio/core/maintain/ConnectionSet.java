@@ -0,0 +1,148 @@
+package com.litongjava.tio.core.maintain;
+
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import com.litongjava.tio.core.ChannelContext;
+
+/**
+ * 一个userid/token下的连接，一般只有一两个<br>
+ * 成员直接保存在一个按id排序的不可变数组中（写时复制），没有哈希表，比ConcurrentHashMap.KeySetView省内存；
+ * 遍历的是数组快照，不需要加锁，修改在对象锁内进行
+ * @author Tong Li
+ */
+public class ConnectionSet extends AbstractSet<ChannelContext> implements IdOrderedSet {
+  private static final ChannelContext[] EMPTY = new ChannelContext[0];
+
+  private volatile ChannelContext[] members = EMPTY;
+
+  /**
+   * @return 当前成员的数组快照，调用方不能修改它
+   */
+  public ChannelContext[] snapshot() {
+    return members;
+  }
+
+  @Override
+  public synchronized boolean add(ChannelContext channelContext) {
+    ChannelContext[] current = members;
+    if (indexOf(current, channelContext) >= 0) {
+      return false;
+    }
+    int index = after(current, channelContext.getId());
+    ChannelContext[] array = new ChannelContext[current.length + 1];
+    System.arraycopy(current, 0, array, 0, index);
+    array[index] = channelContext;
+    System.arraycopy(current, index, array, index + 1, current.length - index);
+    members = array;
+    return true;
+  }
+
+  @Override
+  public synchronized boolean remove(Object o) {
+    ChannelContext[] current = members;
+    int index = indexOf(current, o);
+    if (index < 0) {
+      return false;
+    }
+    if (current.length == 1) {
+      members = EMPTY;
+      return true;
+    }
+    ChannelContext[] array = new ChannelContext[current.length - 1];
+    System.arraycopy(current, 0, array, 0, index);
+    System.arraycopy(current, index + 1, array, index, array.length - index);
+    members = array;
+    return true;
+  }
+
+  @Override
+  public synchronized void clear() {
+    members = EMPTY;
+  }
+
+  @Override
+  public boolean contains(Object o) {
+    return indexOf(members, o) >= 0;
+  }
+
+  @Override
+  public int size() {
+    return members.length;
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return members.length == 0;
+  }
+
+  @Override
+  public Object[] toArray() {
+    return members.clone();
+  }
+
+  @Override
+  public Iterator<ChannelContext> iterator() {
+    return iteratorAfter(null);
+  }
+
+  @Override
+  public Iterator<ChannelContext> iteratorAfter(String id) {
+    final ChannelContext[] array = members;
+    final int from = id == null ? 0 : after(array, id);
+    return new Iterator<ChannelContext>() {
+      private int index = from;
+      private ChannelContext last;
+
+      @Override
+      public boolean hasNext() {
+        return index < array.length;
+      }
+
+      @Override
+      public ChannelContext next() {
+        if (index >= array.length) {
+          throw new NoSuchElementException();
+        }
+        last = array[index++];
+        return last;
+      }
+
+      @Override
+      public void remove() {
+        if (last == null) {
+          throw new IllegalStateException();
+        }
+        ConnectionSet.this.remove(last);
+        last = null;
+      }
+    };
+  }
+
+  /**
+   * @return 第一个id大于指定id的成员的下标
+   */
+  private static int after(ChannelContext[] array, String id) {
+    int low = 0;
+    int high = array.length;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (array[mid].getId().compareTo(id) <= 0) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  private static int indexOf(ChannelContext[] array, Object o) {
+    for (int i = 0; i < array.length; i++) {
+      if (array[i].equals(o)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+}
@@ -0,0 +1,145 @@
+package com.litongjava.tio.core.maintain;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+import com.litongjava.tio.core.ChannelContext;
+
+/**
+ * 一个组的成员<br>
+ * 1、成员保存在按id排序的IdOrderedChannelSet中，bind/unbind不加锁，游标分页从上一页最后的id接着遍历；跳表的bind/unbind是O(log n)，比哈希表的O(1)慢，换来的是分页不需要复制和排序整个组<br>
+ * 2、群发遍历的是成员数组快照，每次修改只让快照失效，下一次群发时重建一次（设置了排序比较器时按它排序），之后的群发直接复用；
+ * 遍历期间的bind/unbind互不阻塞，本次群发看到的是取快照时的成员<br>
+ * iterator()同样遍历快照，所以按SetWithLock的用法持有读锁遍历仍然可以，只是不再需要
+ * @author Tong Li
+ */
+public class GroupMemberSet extends AbstractSet<ChannelContext> implements IdOrderedSet {
+  private static final ChannelContext[] EMPTY = new ChannelContext[0];
+  private static final AtomicLongFieldUpdater<GroupMemberSet> VERSION = AtomicLongFieldUpdater.newUpdater(GroupMemberSet.class, "version");
+
+  private final IdOrderedChannelSet members = new IdOrderedChannelSet();
+  private final Comparator<ChannelContext> comparator;
+  /** 每次修改加1 */
+  private volatile long version;
+  /** 最近一次构建的快照 */
+  private volatile Snapshot snapshot = new Snapshot(0, EMPTY);
+
+  public GroupMemberSet() {
+    this(null);
+  }
+
+  /**
+   * @param comparator 不为null时快照按它排序
+   */
+  public GroupMemberSet(Comparator<ChannelContext> comparator) {
+    this.comparator = comparator;
+  }
+
+  /**
+   * @return 当前成员的数组快照，调用方不能修改它
+   */
+  public ChannelContext[] snapshot() {
+    Snapshot current = snapshot;
+    long v = version;
+    if (current.version == v) {
+      return current.members;
+    }
+    // 先读版本再复制：版本不大于v的修改都已经完成，一定包含在数组中
+    ChannelContext[] array = members.toArray(EMPTY);
+    if (comparator != null) {
+      Arrays.sort(array, comparator);
+    }
+    snapshot = new Snapshot(v, array);
+    return array;
+  }
+
+  @Override
+  public boolean add(ChannelContext channelContext) {
+    if (members.add(channelContext)) {
+      VERSION.incrementAndGet(this);
+      return true;
+    }
+    return false;
+  }
+
+  @Override
+  public boolean remove(Object o) {
+    if (members.remove(o)) {
+      VERSION.incrementAndGet(this);
+      return true;
+    }
+    return false;
+  }
+
+  @Override
+  public void clear() {
+    members.clear();
+    VERSION.incrementAndGet(this);
+  }
+
+  @Override
+  public boolean contains(Object o) {
+    return members.contains(o);
+  }
+
+  @Override
+  public int size() {
+    return members.size();
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return members.isEmpty();
+  }
+
+  @Override
+  public Iterator<ChannelContext> iteratorAfter(String id) {
+    return members.iteratorAfter(id);
+  }
+
+  @Override
+  public Iterator<ChannelContext> iterator() {
+    final ChannelContext[] array = snapshot();
+    return new Iterator<ChannelContext>() {
+      private int index = 0;
+      private ChannelContext last;
+
+      @Override
+      public boolean hasNext() {
+        return index < array.length;
+      }
+
+      @Override
+      public ChannelContext next() {
+        if (index >= array.length) {
+          throw new NoSuchElementException();
+        }
+        last = array[index++];
+        return last;
+      }
+
+      @Override
+      public void remove() {
+        if (last == null) {
+          throw new IllegalStateException();
+        }
+        GroupMemberSet.this.remove(last);
+        last = null;
+      }
+    };
+  }
+
+  private static final class Snapshot {
+    private final long version;
+    private final ChannelContext[] members;
+
+    Snapshot(long version, ChannelContext[] members) {
+      this.version = version;
+      this.members = members;
+    }
+  }
+}
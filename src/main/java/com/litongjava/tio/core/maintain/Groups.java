@@ -1,8 +1,8 @@
 package com.litongjava.tio.core.maintain;
 
 import java.util.Comparator;
-import java.util.HashMap;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.locks.ReentrantReadWriteLock.WriteLock;
 
 import org.slf4j.Logger;
@@ -12,12 +12,12 @@ import com.litongjava.tio.core.ChannelContext;
 import com.litongjava.tio.core.TioConfig;
 import com.litongjava.tio.core.intf.GroupListener;
 import com.litongjava.tio.utils.hutool.StrUtil;
-import com.litongjava.tio.utils.lock.LockUtils;
 import com.litongjava.tio.utils.lock.MapWithLock;
 import com.litongjava.tio.utils.lock.SetWithLock;
 
 /**
  * 多对多  (group <--> ChannelContext)<br>
+ * 组保存在ConcurrentHashMap中，成员是GroupMemberSet：bind/unbind不加锁，群发遍历成员快照，互不阻塞<br>
  * @author tanyaowu 
  * 2017年10月19日 上午9:40:21
  */
@@ -35,8 +35,15 @@ public class Groups {
    * value: SetWithLock<ChannelContext><br>
    */
   private MapWithLock<String, SetWithLock<ChannelContext>> groupmap = new MapWithLock<>(
-      new HashMap<String, SetWithLock<ChannelContext>>());
-  private String rwKey = "_tio_groups_bind__";
+      new ConcurrentHashMap<String, SetWithLock<ChannelContext>>());
+
+  private ConcurrentHashMap<String, SetWithLock<ChannelContext>> map() {
+    return (ConcurrentHashMap<String, SetWithLock<ChannelContext>>) groupmap.getObj();
+  }
+
+  private SetWithLock<ChannelContext> newChannelSet() {
+    return MaintainUtils.createSetWithLock(new GroupMemberSet(channelContextComparator));
+  }
 
   /**
    * 和组绑定
@@ -62,29 +69,14 @@ public class Groups {
       return;
     }
 
-    SetWithLock<ChannelContext> channelSet = groupmap.get(groupid);
-    if (channelSet == null) {
-      try {
-        LockUtils.runWriteOrWaitRead(rwKey + groupid, this, () -> {
-//					@Override
-//					public void read() {
-//					}
-//
-//					@Override
-//					public void write() {
-//						SetWithLock<ChannelContext> channelSet1 = groupmap.get(groupid);
-          if (groupmap.get(groupid) == null) {
-//							channelSet1 = new SetWithLock<>(MaintainUtils.createSet(channelContextComparator));
-            groupmap.put(groupid, new SetWithLock<>(MaintainUtils.createSet(channelContextComparator)));
-          }
-//					}
-        });
-      } catch (Exception e) {
-        log.error(e.toString(), e);
+    // 在compute中加入，与unbind时删除空组互斥（只锁这一个key所在的桶）
+    map().compute(groupid, (k, channelSet) -> {
+      if (channelSet == null) {
+        channelSet = newChannelSet();
       }
-      channelSet = groupmap.get(groupid);
-    }
-    channelSet.add(channelContext);
+      channelSet.getObj().add(channelContext);
+      return channelSet;
+    });
     channelContext.getGroups().add(groupid);
 
     if (callbackListener) {
@@ -113,7 +105,7 @@ public class Groups {
     if (StrUtil.isBlank(groupid)) {
       return null;
     }
-    return groupmap.get(groupid);
+    return map().get(groupid);
   }
 
   /**
@@ -153,7 +145,7 @@ public class Groups {
    * @param callbackListener 是否回调GroupListener
    */
   public void unbind(ChannelContext channelContext, boolean callbackListener) {
-    if (channelContext.tioConfig.isShortConnection) {
+    if (channelContext.tioConfig.isShortConnection || !channelContext.hasGroups()) {
       return;
     }
 
@@ -222,14 +214,14 @@ public class Groups {
     }
 
     try {
-      SetWithLock<ChannelContext> channelSet = groupmap.get(groupid);
+      SetWithLock<ChannelContext> channelSet = map().get(groupid);
       if (channelSet != null) {
-        boolean ss = channelSet.remove(channelContext);
+        boolean ss = channelSet.getObj().remove(channelContext);
         if (!ss) {
           log.warn("{}, 移除失败,group:{} cid:{}", channelContext, groupid, channelContext.getId());
         }
 
-        if (deleteFromChannelContext) {
+        if (deleteFromChannelContext && channelContext.hasGroups()) {
           channelContext.getGroups().remove(groupid);
         }
 
@@ -245,8 +237,8 @@ public class Groups {
         }
 
         // 如果该群组没有任何连接，就把这个群组从map中删除，以释放空间
-        if (channelSet.getObj().size() == 0) {
-          groupmap.remove(groupid);
+        if (channelSet.getObj().isEmpty()) {
+          map().computeIfPresent(groupid, (k, v) -> v.getObj().isEmpty() ? null : v);
         }
       }
     } catch (Exception e) {
@@ -0,0 +1,93 @@
+package com.litongjava.tio.core.maintain;
+
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.litongjava.tio.core.ChannelContext;
+
+/**
+ * 按id排序的连接集合，保存全部连接、客户端已连接的连接和组成员<br>
+ * 1、跳表实现，add/remove/contains不加锁，O(log n)<br>
+ * 2、单独计数，size()是O(1)（跳表自己的size()要遍历）<br>
+ * 3、可以从任意id之后接着遍历，游标分页每页只遍历这一页的连接，不复制整个集合
+ * @author Tong Li
+ */
+public class IdOrderedChannelSet extends AbstractSet<ChannelContext> implements IdOrderedSet {
+  private final ConcurrentSkipListMap<String, ChannelContext> map = new ConcurrentSkipListMap<>();
+  private final AtomicInteger size = new AtomicInteger();
+
+  @Override
+  public boolean add(ChannelContext channelContext) {
+    if (map.putIfAbsent(channelContext.getId(), channelContext) == null) {
+      size.incrementAndGet();
+      return true;
+    }
+    return false;
+  }
+
+  @Override
+  public boolean remove(Object o) {
+    if (o instanceof ChannelContext && map.remove(((ChannelContext) o).getId(), o)) {
+      size.decrementAndGet();
+      return true;
+    }
+    return false;
+  }
+
+  @Override
+  public boolean contains(Object o) {
+    return o instanceof ChannelContext && o.equals(map.get(((ChannelContext) o).getId()));
+  }
+
+  @Override
+  public int size() {
+    return size.get();
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return map.isEmpty();
+  }
+
+  @Override
+  public void clear() {
+    for (ChannelContext channelContext : map.values()) {
+      remove(channelContext);
+    }
+  }
+
+  @Override
+  public Iterator<ChannelContext> iterator() {
+    return iteratorAfter(null);
+  }
+
+  @Override
+  public Iterator<ChannelContext> iteratorAfter(String id) {
+    final Iterator<ChannelContext> iterator = id == null ? map.values().iterator() : map.tailMap(id, false).values().iterator();
+    return new Iterator<ChannelContext>() {
+      private ChannelContext last;
+
+      @Override
+      public boolean hasNext() {
+        return iterator.hasNext();
+      }
+
+      @Override
+      public ChannelContext next() {
+        last = iterator.next();
+        return last;
+      }
+
+      @Override
+      public void remove() {
+        if (last == null) {
+          throw new IllegalStateException();
+        }
+        IdOrderedChannelSet.this.remove(last);
+        last = null;
+      }
+    };
+  }
+}
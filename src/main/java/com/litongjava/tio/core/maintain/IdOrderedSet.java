@@ -0,0 +1,19 @@
+package com.litongjava.tio.core.maintain;
+
+import java.util.Iterator;
+
+import com.litongjava.tio.core.ChannelContext;
+
+/**
+ * 按ChannelContext id有序的集合，可以从某个id之后接着遍历，游标分页用它实现
+ * @author Tong Li
+ */
+public interface IdOrderedSet {
+
+  /**
+   * 按id从小到大遍历id大于指定id的连接，遍历期间的增删不影响遍历（弱一致）
+   * @param id 为null时从头开始；这个id对应的连接已经不在集合中也可以
+   * @return
+   */
+  Iterator<ChannelContext> iteratorAfter(String id);
+}
@@ -0,0 +1,156 @@
+package com.litongjava.tio.core.maintain;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+import com.litongjava.tio.core.ChannelContext;
+import com.litongjava.tio.utils.lock.MapWithLock;
+import com.litongjava.tio.utils.lock.SetWithLock;
+
+/**
+ * 一对多  (key <--> ChannelContext)，Users和Tokens共用<br>
+ * 1、key保存在ConcurrentHashMap中，bind/unbind只锁key所在的桶，不同key互不阻塞，没有全局锁<br>
+ * 2、每个key下的连接是ConnectionSet（写时复制的数组），一个key一般只有一两个连接<br>
+ * 3、ChannelContext上保存着它绑定的key（反向引用），连接关闭时按反向引用解绑，不需要遍历<br>
+ * 4、反向引用用CAS修改：先换反向引用，再在新key下加入、从被换掉的key下移除；加入和移除都在key的桶锁内按当前反向引用判断，
+ * 同一个连接并发绑定不同的key时，最终只留在反向引用指向的key下
+ * @author Tong Li
+ */
+public class IdentityIndex {
+  private final MapWithLock<String, SetWithLock<ChannelContext>> mapWithLock = new MapWithLock<>(
+      new ConcurrentHashMap<String, SetWithLock<ChannelContext>>());
+  /** 读取ChannelContext上的反向引用 */
+  private final Function<ChannelContext, String> keyGetter;
+  /** CAS修改ChannelContext上的反向引用 */
+  private final KeyUpdater keyUpdater;
+
+  /**
+   * CAS修改ChannelContext上的反向引用
+   */
+  public interface KeyUpdater {
+    boolean compareAndSet(ChannelContext channelContext, String expect, String update);
+  }
+
+  public IdentityIndex(Function<ChannelContext, String> keyGetter, KeyUpdater keyUpdater) {
+    this.keyGetter = keyGetter;
+    this.keyUpdater = keyUpdater;
+  }
+
+  private ConcurrentHashMap<String, SetWithLock<ChannelContext>> map() {
+    return (ConcurrentHashMap<String, SetWithLock<ChannelContext>>) mapWithLock.getObj();
+  }
+
+  private static SetWithLock<ChannelContext> newChannelSet() {
+    return MaintainUtils.createSetWithLock(new ConnectionSet());
+  }
+
+  /**
+   * 绑定，一个连接同时只绑定一个key，已经绑定了别的key时从那个key下解绑
+   * @param key
+   * @param channelContext
+   */
+  public void bind(String key, ChannelContext channelContext) {
+    for (;;) {
+      String old = keyGetter.apply(channelContext);
+      if (key.equals(old)) {
+        return;
+      }
+      if (!keyUpdater.compareAndSet(channelContext, old, key)) {
+        continue;
+      }
+      // 反向引用在加入前可能又被换走，那时不再加入
+      map().compute(key, (k, channelSet) -> {
+        if (!key.equals(keyGetter.apply(channelContext))) {
+          return channelSet;
+        }
+        if (channelSet == null) {
+          channelSet = newChannelSet();
+        }
+        channelSet.getObj().add(channelContext);
+        return channelSet;
+      });
+      if (old != null) {
+        removeFrom(old, channelContext);
+      }
+      return;
+    }
+  }
+
+  /**
+   * 按反向引用解除channelContext的绑定，O(1)
+   * @param channelContext
+   * @return 解绑前绑定的key，没有绑定时返回null
+   */
+  public String unbind(ChannelContext channelContext) {
+    for (;;) {
+      String key = keyGetter.apply(channelContext);
+      if (key == null) {
+        return null;
+      }
+      if (keyUpdater.compareAndSet(channelContext, key, null)) {
+        removeFrom(key, channelContext);
+        return key;
+      }
+    }
+  }
+
+  /**
+   * 把channelContext从key下移除，反向引用已经又指向key时（重新绑定了）不移除
+   */
+  private void removeFrom(String key, ChannelContext channelContext) {
+    map().computeIfPresent(key, (k, channelSet) -> {
+      if (key.equals(keyGetter.apply(channelContext))) {
+        return channelSet;
+      }
+      channelSet.getObj().remove(channelContext);
+      // 没有连接了就删除这个key，以释放空间
+      return channelSet.getObj().isEmpty() ? null : channelSet;
+    });
+  }
+
+  /**
+   * 解除key下所有连接的绑定
+   * @param key
+   * @return 解绑前key下的连接，没有时返回null
+   */
+  public SetWithLock<ChannelContext> unbind(String key) {
+    ConnectionSet[] removed = new ConnectionSet[1];
+    map().computeIfPresent(key, (k, channelSet) -> {
+      removed[0] = (ConnectionSet) channelSet.getObj();
+      for (ChannelContext channelContext : removed[0].snapshot()) {
+        // CAS按引用比较，用读到的反向引用
+        String current = keyGetter.apply(channelContext);
+        if (key.equals(current)) {
+          keyUpdater.compareAndSet(channelContext, current, null);
+        }
+      }
+      return null;
+    });
+    if (removed[0] == null) {
+      return null;
+    }
+    return MaintainUtils.createSetWithLock(removed[0]);
+  }
+
+  /**
+   * @param key
+   * @return key下的连接，没有时返回null
+   */
+  public SetWithLock<ChannelContext> find(String key) {
+    return map().get(key);
+  }
+
+  /**
+   * @return 绑定的key的数量
+   */
+  public int size() {
+    return map().size();
+  }
+
+  /**
+   * @return key和连接的映射，直接用ConcurrentHashMap访问即可，不需要再加锁
+   */
+  public MapWithLock<String, SetWithLock<ChannelContext>> getMap() {
+    return mapWithLock;
+  }
+}
@@ -1,6 +1,6 @@
 package com.litongjava.tio.core.maintain;
 
-import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -12,6 +12,7 @@ import com.litongjava.tio.utils.lock.MapWithLock;
 
 /**
  *一对一  (ChannelContext.id <--> ChannelContext)<br>
+ * 保存在ConcurrentHashMap中，bind/unbind不加锁<br>
  * @author tanyaowu
  * 2017年4月15日 下午12:13:19
  */
@@ -22,7 +23,7 @@ public class Ids {
 	 * key: ChannelContext对象的id字段
 	 * value: ChannelContext
 	 */
-	private MapWithLock<String, ChannelContext> map = new MapWithLock<>(new HashMap<String, ChannelContext>());
+	private MapWithLock<String, ChannelContext> map = new MapWithLock<>(new ConcurrentHashMap<String, ChannelContext>());
 
 	/**
 	 *
@@ -83,7 +84,8 @@ public class Ids {
 			if (StrUtil.isBlank(key)) {
 				return;
 			}
-			map.remove(key);
+			// 只删除映射到自己的，不影响同id的新连接
+			map.getObj().remove(key, channelContext);
 		} catch (Exception e) {
 			log.error(e.toString(), e);
 		}
@@ -6,40 +6,64 @@ import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.litongjava.enhance.buffer.GlobalScheduler;
 import com.litongjava.tio.core.ChannelContext;
 import com.litongjava.tio.core.TioConfig;
+import com.litongjava.tio.core.stat.DefaultIpStatListener;
 import com.litongjava.tio.core.stat.IpStat;
+import com.litongjava.tio.core.stat.IpStatListener;
+import com.litongjava.tio.core.stat.IpStatRecord;
+import com.litongjava.tio.utils.SystemTimer;
 import com.litongjava.tio.utils.cache.AbsCache;
-import com.litongjava.tio.utils.cache.RemovalListenerWrapper;
-import com.litongjava.tio.utils.hutool.CollUtil;
 
 /**
  * 使用方法（注意顺序）：<br>
  * 1、serverTioConfig.setIpStatListener(ShowcaseIpStatListener.me);
- * 2、serverTioConfig.ipStats.addDuration(Time.MINUTE_1 * 5);
+ * 2、serverTioConfig.ipStats.addDuration(Time.MINUTE_1 * 5);<br>
+ * 每个IP一个IpStatRecord，所有时段的滑动窗口都在里面；连接建立后第一次统计时找到它并保存在ChannelContext上，
+ * 之后每次收发只是给它的计数器加数，不再按时段查缓存<br>
+ * 连接删除后ChannelContext上保存的是IpStatRecord.RELEASED，之后的统计什么也不做，不会再创建IpStatRecord<br>
+ * 配置了时段后由GlobalScheduler定时清理所有时段都没有数据、也没有连接在用的IpStatRecord，间隔是最长时段的1/BUCKETS（1秒到60秒之间）
  * @author tanyaowu
  * 2017年4月15日 下午12:13:19
  */
 public class IpStats {
-  @SuppressWarnings("unused")
   private static Logger log = LoggerFactory.getLogger(IpStats.class);
 
   private final static String CACHE_NAME = "TIO_IP_STAT";
+  /** 清理过期IpStatRecord的最短和最长间隔，单位：毫秒 */
+  private static final long MIN_SWEEP_INTERVAL = 1000;
+  private static final long MAX_SWEEP_INTERVAL = 60000;
+  private static final Long[] NO_DURATIONS = new Long[0];
 
   private String tioConfigId;
   private TioConfig tioConfig;
 
   /**
-   * key: 时长，单位：秒
+   * 已不再使用，统计数据保存在IpStatRecord中
    */
+  @Deprecated
   public final Map<Long, AbsCache> cacheMap = new HashMap<>();
 
   public List<Long> durationList = null;// new ArrayList<>();
 
+  /** 与durationList一致，热点路径上读它，不用判断list */
+  private volatile Long[] durations = NO_DURATIONS;
+  /** 时段每变化一次加1，旧的IpStatRecord随之作废 */
+  private volatile int generation = 0;
+  /** 所有时段中最长的，单位：毫秒 */
+  private volatile long maxDurationMillis = 0;
+  private final ConcurrentHashMap<String, IpStatRecord> records = new ConcurrentHashMap<>();
+  /** 定时清理任务，没有时段时为null，在synchronized (this)中读写 */
+  private ScheduledFuture<?> sweepFuture = null;
+
   public IpStats(TioConfig tioConfig, Long[] durations) {
     this.tioConfig = tioConfig;
     this.tioConfigId = tioConfig.getId();
@@ -49,26 +73,22 @@ public class IpStats {
   }
 
   /**
-   * 添加监控时段，不要添加过多的时间段，因为每个时间段都要消耗一份内存，一般加一个时间段就可以了
+   * 添加监控时段，每个时段在每个IpStatRecord中占一份滑动窗口，一般加一两个时间段就可以了
    * @param duration 单位：秒
    * @author: tanyaowu
    */
-  @SuppressWarnings({ "unchecked", "rawtypes" })
   public void addDuration(Long duration) {
     synchronized (this) {
       if (durationList == null) {
         durationList = new ArrayList<>();
       }
-      RemovalListenerWrapper removalListenerWrapper=tioConfig.getIpRemovalListenerWrapper();
-      AbsCache caffeineCache = tioConfig.getCacheFactory().register(getCacheName(duration), duration, null,
-          removalListenerWrapper);
-      cacheMap.put(duration, caffeineCache);
       durationList.add(duration);
+      durationsChanged();
     }
   }
 
   /**
-   * 添加监控时段，不要添加过多的时间段，因为每个时间段都要消耗一份内存，一般加一个时间段就可以了
+   * 添加监控时段，每个时段在每个IpStatRecord中占一份滑动窗口，一般加一两个时间段就可以了
    * @param durations 单位：秒
    * @author: tanyaowu
    */
@@ -86,16 +106,58 @@ public class IpStats {
    * @author: tanyaowu
    */
   public void removeDuration(Long duration) {
-    clear(duration);
-    cacheMap.remove(duration);
+    synchronized (this) {
+      if (durationList != null && durationList.remove(duration)) {
+        durationsChanged();
+      }
+    }
+  }
 
-    if (CollUtil.isNotEmpty(durationList)) {
-      durationList.remove(duration);
+  /**
+   * 时段变化后所有IpStatRecord作废，连接下次统计时重新创建
+   */
+  private void durationsChanged() {
+    Long[] array = durationList.toArray(new Long[durationList.size()]);
+    long max = 0;
+    for (Long duration : array) {
+      max = Math.max(max, duration * 1000);
+    }
+    maxDurationMillis = max;
+    generation++;
+    durations = array;
+    records.clear();
+    scheduleSweep();
+  }
+
+  /**
+   * 按最长的时段重新安排定时清理，所有时段都删除后停止
+   */
+  private void scheduleSweep() {
+    cancelSweep();
+    if (durations.length == 0) {
+      return;
     }
+    long interval = Math.max(MIN_SWEEP_INTERVAL, Math.min(MAX_SWEEP_INTERVAL, maxDurationMillis / IpStatRecord.BUCKETS));
+    sweepFuture = GlobalScheduler.scheduleWithFixedDelay(this::sweep, interval, interval, TimeUnit.MILLISECONDS);
   }
 
   /**
-   * 
+   * @return 是否配置了监控时段
+   */
+  public boolean isOn() {
+    return durations.length > 0;
+  }
+
+  /**
+   * @return 是否设置了自己的IpStatListener，没有设置时不需要为回调生成IpStat快照
+   */
+  public boolean hasListener() {
+    IpStatListener ipStatListener = tioConfig.getIpStatListener();
+    return ipStatListener != null && ipStatListener != DefaultIpStatListener.me;
+  }
+
+  /**
+   *
    * @param duration
    * @return
    * @author: tanyaowu
@@ -110,18 +172,185 @@ public class IpStats {
    * @author: tanyaowu
    */
   public void clear(Long duration) {
-    AbsCache cache = cacheMap.get(duration);
-    if (cache == null) {
+    int d = indexOf(duration);
+    if (d < 0) {
+      return;
+    }
+    for (IpStatRecord record : records.values()) {
+      if (d < record.durationCount()) {
+        record.clear(d);
+      }
+    }
+  }
+
+  private int indexOf(Long duration) {
+    Long[] array = durations;
+    for (int i = 0; i < array.length; i++) {
+      if (array[i].equals(duration)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * 连接所在IP的统计，第一次调用时找到（或创建）并保存在ChannelContext上，之后直接返回
+   * @param channelContext
+   * @return 没有配置监控时段时返回null，连接已删除时返回IpStatRecord.RELEASED
+   */
+  public IpStatRecord record(ChannelContext channelContext) {
+    IpStatRecord record = channelContext.getIpStatRecord();
+    if (record == IpStatRecord.RELEASED) {
+      // 连接已删除，关闭途中的统计不再创建IpStatRecord
+      return record;
+    }
+    if (record != null && record.getGeneration() == generation && !record.isRemoved()) {
+      return record;
+    }
+    if (!isOn()) {
+      return null;
+    }
+    IpStatRecord created = acquire(ip(channelContext, true));
+    if (channelContext.compareAndSetIpStatRecord(record, created)) {
+      return created;
+    }
+    // 别的线程已经设置了
+    created.release();
+    return channelContext.getIpStatRecord();
+  }
+
+  /**
+   * 连接删除时调用，释放后没有连接在用的IpStatRecord可以过期；之后这个连接的record()返回IpStatRecord.RELEASED
+   * @param channelContext
+   */
+  public void release(ChannelContext channelContext) {
+    for (;;) {
+      IpStatRecord record = channelContext.getIpStatRecord();
+      if (record == IpStatRecord.RELEASED) {
+        return;
+      }
+      if (channelContext.compareAndSetIpStatRecord(record, IpStatRecord.RELEASED)) {
+        if (record != null) {
+          record.release();
+        }
+        return;
+      }
+    }
+  }
+
+  private IpStatRecord acquire(String ip) {
+    return records.compute(ip, (k, old) -> {
+      if (old == null || old.isRemoved()) {
+        old = new IpStatRecord(ip, durations, generation);
+      }
+      old.acquire();
+      return old;
+    });
+  }
+
+  /**
+   * 定时任务：检查所有IpStatRecord，没有连接在用、并且最长的时段内都没有数据的删除，删除前回调IpStatListener.onExpired
+   */
+  private void sweep() {
+    if (tioConfig.isStopped()) {
+      synchronized (this) {
+        cancelSweep();
+      }
+      return;
+    }
+    try {
+      sweepExpired();
+    } catch (Throwable e) {
+      log.error(e.toString(), e);
+    }
+  }
+
+  private void cancelSweep() {
+    if (sweepFuture != null) {
+      sweepFuture.cancel(false);
+      sweepFuture = null;
+    }
+  }
+
+  private void sweepExpired() {
+    long now = SystemTimer.currTime;
+    long maxDuration = maxDurationMillis;
+    List<IpStatRecord> expired = null;
+    for (IpStatRecord candidate : records.values()) {
+      if (!candidate.isIdle(now, maxDuration)) {
+        continue;
+      }
+      IpStatRecord removed = records.computeIfPresent(candidate.getIp(), (k, record) -> {
+        if (record == candidate && record.isIdle(now, maxDuration)) {
+          record.markRemoved();
+          return null;
+        }
+        return record;
+      });
+      if (removed == null && candidate.isRemoved()) {
+        if (expired == null) {
+          expired = new ArrayList<>();
+        }
+        expired.add(candidate);
+      }
+    }
+    if (expired != null && hasListener()) {
+      IpStatListener ipStatListener = tioConfig.getIpStatListener();
+      for (IpStatRecord record : expired) {
+        for (int d = 0; d < record.durationCount(); d++) {
+          try {
+            // 以最后一次活跃的时间为窗口截止时间
+            ipStatListener.onExpired(tioConfig, record.snapshot(d, record.getLastAccess()));
+          } catch (Throwable e) {
+            log.error(e.toString(), e);
+          }
+        }
+      }
+    }
+  }
+
+  private static String ip(ChannelContext channelContext, boolean useProxyClient) {
+    if (useProxyClient && channelContext.getProxyClientNode() != null) {
+      return channelContext.getProxyClientNode().getHost();
+    } else {
+      return channelContext.getClientNode().getHost();
+    }
+  }
+
+  /**
+   * 连接设置了代理前的真实客户端后，把这个连接已有的统计从代理ip转到客户端ip
+   * @param channelContext
+   */
+  public void switchIp(ChannelContext channelContext) {
+    IpStatRecord old = channelContext.getIpStatRecord();
+    if (!isOn() || old == null || old == IpStatRecord.RELEASED || !channelContext.compareAndSetIpStatRecord(old, null)) {
       return;
     }
-    cache.clear();
+    IpStatRecord record = record(channelContext);
+    if (record != old) {
+      move(channelContext, old, -1);
+      move(channelContext, record, 1);
+    }
+    old.release();
+  }
+
+  private static void move(ChannelContext channelContext, IpStatRecord record, int sign) {
+    record.add(IpStatRecord.REQUEST_COUNT, sign);
+    record.add(IpStatRecord.HANDLED_BYTES, sign * channelContext.stat.getHandledBytesValue());
+    record.add(IpStatRecord.HANDLED_PACKET_COSTS, sign * channelContext.stat.getHandledPacketCostsValue());
+    record.add(IpStatRecord.HANDLED_PACKETS, sign * channelContext.stat.getHandledPacketsValue());
+    record.add(IpStatRecord.RECEIVED_BYTES, sign * channelContext.stat.getReceivedBytesValue());
+    record.add(IpStatRecord.RECEIVED_PACKETS, sign * channelContext.stat.getReceivedPacketsValue());
+    record.add(IpStatRecord.RECEIVED_TCPS, sign * channelContext.stat.getReceivedTcpsValue());
+    record.add(IpStatRecord.SENT_BYTES, sign * channelContext.stat.getSentBytesValue());
+    record.add(IpStatRecord.SENT_PACKETS, sign * channelContext.stat.getSentPacketsValue());
   }
 
   /**
-   * 根据ip获取IpStat，如果缓存中不存在，则创建
+   * 根据ip获取IpStat
    * @param duration
    * @param channelContext
-   * @return
+   * @return 这个时段当前滑动窗口的快照
    * @author: tanyaowu
    */
   public IpStat get(Long duration, ChannelContext channelContext) {
@@ -129,11 +358,11 @@ public class IpStats {
   }
 
   /**
-   * 根据ip获取IpStat，如果缓存中不存在，则根据forceCreate的值决定是否创建
+   * 根据ip获取IpStat，如果不存在，则根据forceCreate的值决定是否创建
    * @param duration
    * @param channelContext
    * @param forceCreate
-   * @return
+   * @return 这个时段当前滑动窗口的快照
    * @author: tanyaowu
    */
   public IpStat get(Long duration, ChannelContext channelContext, boolean forceCreate) {
@@ -141,53 +370,50 @@ public class IpStats {
   }
 
   /**
-   * 
+   *
    * @param duration
    * @param channelContext
    * @param forceCreate
    * @param useProxyClient
-   * @return
+   * @return 这个时段当前滑动窗口的快照，修改它不影响统计
    * @author tanyaowu
    */
   public IpStat _get(Long duration, ChannelContext channelContext, boolean forceCreate, boolean useProxyClient) {
     if (channelContext == null) {
       return null;
     }
-    AbsCache cache = cacheMap.get(duration);
-    if (cache == null) {
+    int d = indexOf(duration);
+    if (d < 0) {
       return null;
     }
-
-    String ip = null;
-    if (useProxyClient && channelContext.getProxyClientNode() != null) {
-      ip = channelContext.getProxyClientNode().getHost();
-    } else {
-      ip = channelContext.getClientNode().getHost();
-    }
-    IpStat ipStat = (IpStat) cache.get(ip);
-    if (ipStat == null && forceCreate) {
-      synchronized (this) {
-        ipStat = (IpStat) cache.get(ip);
-        if (ipStat == null) {
-          ipStat = new IpStat(ip, duration);
-          cache.put(ip, ipStat);
-        }
+    String ip = ip(channelContext, useProxyClient);
+    IpStatRecord record = records.get(ip);
+    if (record == null) {
+      if (!forceCreate) {
+        return null;
       }
+      record = acquire(ip);
+      record.release();
     }
-    return ipStat;
+    return d < record.durationCount() ? record.snapshot(d) : null;
   }
 
   /**
    *
-   * @return
+   * @return ip和这个时段的IpStat快照
    * @author: tanyaowu
    */
   public Map<String, Serializable> map(Long duration) {
-    AbsCache cache = cacheMap.get(duration);
-    if (cache == null) {
+    int d = indexOf(duration);
+    if (d < 0) {
       return null;
     }
-    Map<String, Serializable> map = cache.asMap();
+    Map<String, Serializable> map = new HashMap<>();
+    for (IpStatRecord record : records.values()) {
+      if (d < record.durationCount()) {
+        map.put(record.getIp(), record.snapshot(d));
+      }
+    }
     return map;
   }
 
@@ -197,11 +423,10 @@ public class IpStats {
    * @author: tanyaowu
    */
   public Long size(Long duration) {
-    AbsCache cache = cacheMap.get(duration);
-    if (cache == null) {
+    if (indexOf(duration) < 0) {
       return null;
     }
-    return cache.size();
+    return (long) records.size();
   }
 
   /**
@@ -210,11 +435,10 @@ public class IpStats {
    * @author: tanyaowu
    */
   public Collection<Serializable> values(Long duration) {
-    AbsCache cache = cacheMap.get(duration);
-    if (cache == null) {
+    Map<String, Serializable> map = map(duration);
+    if (map == null) {
       return null;
     }
-    Collection<Serializable> set = cache.asMap().values();
-    return set;
+    return map.values();
   }
 }
@@ -1,18 +1,27 @@
 package com.litongjava.tio.core.maintain;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.locks.ReentrantReadWriteLock.ReadLock;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.litongjava.model.func.Converter;
 import com.litongjava.tio.client.ClientTioConfig;
 import com.litongjava.tio.core.ChannelContext;
+import com.litongjava.tio.core.ChannelContextFilter;
+import com.litongjava.tio.core.CursorPage;
 import com.litongjava.tio.core.TioConfig;
 import com.litongjava.tio.utils.hutool.FileUtil;
+import com.litongjava.tio.utils.lock.SetWithLock;
 
 /**
  * 
@@ -25,6 +34,11 @@ public class MaintainUtils {
 
   public static final String TEMP_DIR = "TIO_TEMP_FILE/";
 
+  /**
+   * 游标分页每次最多遍历的连接数，ChannelContextFilter过滤掉的也算在内，过滤掉的太多时本页条数会少于pageSize
+   */
+  public static final int CURSOR_MAX_SCAN = 10000;
+
   /**
    * 彻底删除，不再维护
    * @param channelContext
@@ -38,6 +52,12 @@ public class MaintainUtils {
     }
 
     tioConfig.connections.remove(channelContext);
+    if (tioConfig.isStatGroupLazy()) {
+      // 先从connections中删除再并入GroupStat：并入之后快照不会再遍历到它；
+      // 两步之间取的快照可能少算它一次，但不会重复计入
+      tioConfig.groupStat.retire(channelContext.stat);
+    }
+    tioConfig.ipStats.release(channelContext);
     if (channelContext.isBind) {
       tioConfig.ips.unbind(channelContext);
       tioConfig.ids.unbind(channelContext);
@@ -47,7 +67,7 @@ public class MaintainUtils {
   }
 
   /**
-   * 
+   * 按ChannelContext上保存的userid、token、组和bsId逐个解绑，只涉及它自己的绑定，不加全局锁
    * @param channelContext
    * @author tanyaowu
    */
@@ -75,6 +95,82 @@ public class MaintainUtils {
     }
   }
 
+  /**
+   * 创建按id排序的连接集合，用于全部连接、客户端已连接的连接
+   * @return
+   */
+  public static SetWithLock<ChannelContext> createIdOrderedSet() {
+    return createSetWithLock(new IdOrderedChannelSet());
+  }
+
+  /**
+   * 用指定的集合创建SetWithLock<br>
+   * SetWithLock的构造方法总是新建一个ConcurrentHashMap.KeySetView并复制元素，所以先传null再用setObj换成指定的集合
+   * @param set
+   * @return
+   */
+  public static SetWithLock<ChannelContext> createSetWithLock(Set<ChannelContext> set) {
+    SetWithLock<ChannelContext> setWithLock = new SetWithLock<ChannelContext>(null);
+    setWithLock.setObj(set);
+    return setWithLock;
+  }
+
+  /**
+   * 游标分页：从游标之后按id顺序取一页，不复制整个集合，不跨页持有锁
+   * @param setWithLock
+   * @param cursor 上一页返回的游标，null表示第一页
+   * @param pageSize
+   * @param channelContextFilter 为null时不过滤
+   * @param converter 为null时返回ChannelContext
+   * @return
+   */
+  @SuppressWarnings("unchecked")
+  public static <T> CursorPage<T> cursorPage(SetWithLock<ChannelContext> setWithLock, String cursor, int pageSize,
+      ChannelContextFilter channelContextFilter, Converter<T> converter) {
+    List<T> list = new ArrayList<>(Math.min(pageSize, 1024));
+    if (setWithLock == null || pageSize <= 0) {
+      return new CursorPage<>(list, null);
+    }
+    Iterator<ChannelContext> iterator = iteratorAfter(setWithLock, cursor);
+    int maxScan = Math.max(pageSize, CURSOR_MAX_SCAN);
+    int scanned = 0;
+    String last = null;
+    while (list.size() < pageSize && scanned < maxScan && iterator.hasNext()) {
+      ChannelContext channelContext = iterator.next();
+      scanned++;
+      last = channelContext.getId();
+      if (channelContextFilter != null && !channelContextFilter.filter(channelContext)) {
+        continue;
+      }
+      list.add(converter == null ? (T) channelContext : converter.convert(channelContext));
+    }
+    return new CursorPage<>(list, iterator.hasNext() ? last : null);
+  }
+
+  private static Iterator<ChannelContext> iteratorAfter(SetWithLock<ChannelContext> setWithLock, String cursor) {
+    Set<ChannelContext> set = setWithLock.getObj();
+    if (set instanceof IdOrderedSet) {
+      return ((IdOrderedSet) set).iteratorAfter(cursor);
+    }
+    // 业务层换成了别的集合，只能在读锁内复制一份按id排序
+    ChannelContext[] array;
+    ReadLock readLock = setWithLock.readLock();
+    readLock.lock();
+    try {
+      array = set.toArray(new ChannelContext[set.size()]);
+    } finally {
+      readLock.unlock();
+    }
+    Arrays.sort(array, Comparator.comparing(ChannelContext::getId));
+    int from = 0;
+    if (cursor != null) {
+      while (from < array.length && array[from].getId().compareTo(cursor) <= 0) {
+        from++;
+      }
+    }
+    return Arrays.asList(array).subList(from, array.length).iterator();
+  }
+
   public static void deleteTempDir(ChannelContext channelContext) {
     if (channelContext.hasTempDir) {
       try {
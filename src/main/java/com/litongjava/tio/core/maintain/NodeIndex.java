@@ -0,0 +1,349 @@
+package com.litongjava.tio.core.maintain;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.BiConsumer;
+
+import com.litongjava.tio.core.Node;
+
+/**
+ * 按ip:port索引的并发map，ip按数值而不是字符串作key<br>
+ * 1、IPv4和端口打包成一个long；IPv6按128位地址（两个long）加端口作key，"::1"和"0:0:0:0:0:0:0:1"是同一个key<br>
+ * 2、查找不加锁、不创建对象：直接解析ip字符串，沿着不可变的链表查找；put/remove在对象锁内进行（只在连接建立和关闭时发生）<br>
+ * 3、不是数字ip的host（比如域名）和带%zone的IPv6放到一个ConcurrentHashMap中，查找时需要创建Node；
+ * 链路本地地址在不同网卡上是不同的对端，所以"fe80::1%eth0"和"fe80::1%eth1"是不同的key，按原字符串区分
+ * @author Tong Li
+ */
+public class NodeIndex<V> {
+  /** IPv4 key的port字段，与任何IPv6端口都不同 */
+  private static final int IPV4 = -1;
+  private static final int INITIAL_CAPACITY = 64;
+  /** 解析IPv6用的临时数组，避免每次查找创建对象 */
+  private static final ThreadLocal<long[]> IPV6_SCRATCH = ThreadLocal.withInitial(() -> new long[2]);
+  private static final ThreadLocal<int[]> IPV6_GROUPS = ThreadLocal.withInitial(() -> new int[8]);
+
+  private volatile AtomicReferenceArray<Entry<V>> table = new AtomicReferenceArray<>(INITIAL_CAPACITY);
+  private final ConcurrentHashMap<Node, V> others = new ConcurrentHashMap<>();
+  /** 数值key的数量，只在对象锁内修改 */
+  private volatile int size;
+
+  public V get(String ip, int port) {
+    if (ip == null) {
+      return null;
+    }
+    if ((port & ~0xFFFF) == 0) {
+      long ipv4 = parseIpv4(ip);
+      if (ipv4 >= 0) {
+        return get(0, ipv4 << 16 | port, IPV4);
+      }
+      long[] ipv6 = IPV6_SCRATCH.get();
+      if (ip.indexOf('%') < 0 && parseIpv6(ip, ipv6)) {
+        return get(ipv6[0], ipv6[1], port);
+      }
+    }
+    return others.get(new Node(ip, port));
+  }
+
+  public V put(String ip, int port, V value) {
+    if ((port & ~0xFFFF) == 0) {
+      long ipv4 = parseIpv4(ip);
+      if (ipv4 >= 0) {
+        return put(0, ipv4 << 16 | port, IPV4, value);
+      }
+      long[] ipv6 = IPV6_SCRATCH.get();
+      if (ip.indexOf('%') < 0 && parseIpv6(ip, ipv6)) {
+        return put(ipv6[0], ipv6[1], port, value);
+      }
+    }
+    return others.put(new Node(ip, port), value);
+  }
+
+  public V remove(String ip, int port) {
+    if ((port & ~0xFFFF) == 0) {
+      long ipv4 = parseIpv4(ip);
+      if (ipv4 >= 0) {
+        return remove(0, ipv4 << 16 | port, IPV4);
+      }
+      long[] ipv6 = IPV6_SCRATCH.get();
+      if (ip.indexOf('%') < 0 && parseIpv6(ip, ipv6)) {
+        return remove(ipv6[0], ipv6[1], port);
+      }
+    }
+    return others.remove(new Node(ip, port));
+  }
+
+  public int size() {
+    return size + others.size();
+  }
+
+  /**
+   * 遍历所有的值，key是索引中的Node（IPv6是规范化后的形式）
+   */
+  public void forEach(BiConsumer<Node, V> action) {
+    AtomicReferenceArray<Entry<V>> tab = table;
+    for (int i = 0; i < tab.length(); i++) {
+      for (Entry<V> e = tab.get(i); e != null; e = e.next) {
+        V value = e.value;
+        if (value != null) {
+          action.accept(e.toNode(), value);
+        }
+      }
+    }
+    others.forEach(action);
+  }
+
+  private V get(long hi, long lo, int port) {
+    int hash = hash(hi, lo, port);
+    AtomicReferenceArray<Entry<V>> tab = table;
+    for (Entry<V> e = tab.get(hash & (tab.length() - 1)); e != null; e = e.next) {
+      if (e.hash == hash && e.lo == lo && e.hi == hi && e.port == port) {
+        return e.value;
+      }
+    }
+    return null;
+  }
+
+  private synchronized V put(long hi, long lo, int port, V value) {
+    int hash = hash(hi, lo, port);
+    AtomicReferenceArray<Entry<V>> tab = table;
+    int index = hash & (tab.length() - 1);
+    Entry<V> head = tab.get(index);
+    for (Entry<V> e = head; e != null; e = e.next) {
+      if (e.hash == hash && e.lo == lo && e.hi == hi && e.port == port) {
+        V old = e.value;
+        e.value = value;
+        return old;
+      }
+    }
+    tab.set(index, new Entry<>(hi, lo, port, hash, value, head));
+    size = size + 1;
+    if (size > tab.length() * 3 / 4) {
+      resize(tab);
+    }
+    return null;
+  }
+
+  private synchronized V remove(long hi, long lo, int port) {
+    int hash = hash(hi, lo, port);
+    AtomicReferenceArray<Entry<V>> tab = table;
+    int index = hash & (tab.length() - 1);
+    Entry<V> head = tab.get(index);
+    for (Entry<V> e = head; e != null; e = e.next) {
+      if (e.hash == hash && e.lo == lo && e.hi == hi && e.port == port) {
+        // 链表节点不可变，复制e之前的节点，正在查找的线程看到的仍然是完整的旧链表
+        Entry<V> newHead = e.next;
+        for (Entry<V> p = head; p != e; p = p.next) {
+          newHead = new Entry<>(p.hi, p.lo, p.port, p.hash, p.value, newHead);
+        }
+        tab.set(index, newHead);
+        size = size - 1;
+        return e.value;
+      }
+    }
+    return null;
+  }
+
+  private void resize(AtomicReferenceArray<Entry<V>> oldTable) {
+    int length = oldTable.length() << 1;
+    AtomicReferenceArray<Entry<V>> newTable = new AtomicReferenceArray<>(length);
+    for (int i = 0; i < oldTable.length(); i++) {
+      for (Entry<V> e = oldTable.get(i); e != null; e = e.next) {
+        int index = e.hash & (length - 1);
+        newTable.set(index, new Entry<>(e.hi, e.lo, e.port, e.hash, e.value, newTable.get(index)));
+      }
+    }
+    table = newTable;
+  }
+
+  private static int hash(long hi, long lo, int port) {
+    long h = (hi * 31 + lo) * 31 + port;
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    return (int) h;
+  }
+
+  /**
+   * @return 点分十进制的IPv4地址，不是IPv4时返回-1
+   */
+  static long parseIpv4(String ip) {
+    return parseIpv4(ip, 0, ip.length());
+  }
+
+  private static long parseIpv4(String ip, int from, int to) {
+    int length = to - from;
+    if (length < 7 || length > 15) {
+      return -1;
+    }
+    long result = 0;
+    int part = 0;
+    int digits = 0;
+    int dots = 0;
+    for (int i = from; i < to; i++) {
+      char c = ip.charAt(i);
+      if (c >= '0' && c <= '9') {
+        part = part * 10 + (c - '0');
+        if (++digits > 3 || part > 255) {
+          return -1;
+        }
+      } else if (c == '.') {
+        if (digits == 0 || ++dots > 3) {
+          return -1;
+        }
+        result = result << 8 | part;
+        part = 0;
+        digits = 0;
+      } else {
+        return -1;
+      }
+    }
+    if (digits == 0 || dots != 3) {
+      return -1;
+    }
+    return result << 8 | part;
+  }
+
+  /**
+   * 解析IPv6地址（支持::缩写、末尾内嵌IPv4、[]和%zone），高64位放在out[0]，低64位放在out[1]
+   * @return false: 不是IPv6地址
+   */
+  static boolean parseIpv6(String ip, long[] out) {
+    int start = 0;
+    int end = ip.length();
+    if (end > 0 && ip.charAt(0) == '[') {
+      start = 1;
+      end = ip.indexOf(']');
+      if (end < 0) {
+        return false;
+      }
+    }
+    int zone = ip.indexOf('%', start);
+    if (zone >= 0 && zone < end) {
+      end = zone;
+    }
+    if (end - start < 2 || ip.indexOf(':', start) < 0) {
+      return false;
+    }
+
+    int[] groups = IPV6_GROUPS.get();
+    int count = 0;
+    // ::出现在第几组之前
+    int compressAt = -1;
+    int i = start;
+    if (ip.charAt(i) == ':') {
+      if (ip.charAt(i + 1) != ':') {
+        return false;
+      }
+      compressAt = 0;
+      i += 2;
+    }
+    while (i < end) {
+      int groupStart = i;
+      int value = 0;
+      int digit;
+      while (i < end && i - groupStart < 4 && (digit = hex(ip.charAt(i))) >= 0) {
+        value = value << 4 | digit;
+        i++;
+      }
+      if (i < end && ip.charAt(i) == '.') {
+        // 末尾内嵌IPv4，占两组
+        long ipv4 = parseIpv4(ip, groupStart, end);
+        if (ipv4 < 0 || count > 6) {
+          return false;
+        }
+        groups[count++] = (int) (ipv4 >>> 16);
+        groups[count++] = (int) (ipv4 & 0xFFFF);
+        break;
+      }
+      if (i == groupStart || count == 8) {
+        return false;
+      }
+      groups[count++] = value;
+      if (i == end) {
+        break;
+      }
+      if (ip.charAt(i) != ':') {
+        return false;
+      }
+      i++;
+      if (i < end && ip.charAt(i) == ':') {
+        if (compressAt >= 0) {
+          return false;
+        }
+        compressAt = count;
+        i++;
+      } else if (i == end) {
+        return false;
+      }
+    }
+    if (compressAt < 0 ? count != 8 : count > 7) {
+      return false;
+    }
+    if (compressAt >= 0) {
+      // ::之后的组移到末尾，中间补0
+      int tail = count - compressAt;
+      for (int g = 0; g < tail; g++) {
+        groups[7 - g] = groups[count - 1 - g];
+      }
+      for (int g = compressAt; g < 8 - tail; g++) {
+        groups[g] = 0;
+      }
+    }
+    long hi = 0;
+    long lo = 0;
+    for (int g = 0; g < 4; g++) {
+      hi = hi << 16 | groups[g];
+      lo = lo << 16 | groups[g + 4];
+    }
+    out[0] = hi;
+    out[1] = lo;
+    return true;
+  }
+
+  private static int hex(char c) {
+    if (c >= '0' && c <= '9') {
+      return c - '0';
+    }
+    if (c >= 'a' && c <= 'f') {
+      return c - 'a' + 10;
+    }
+    if (c >= 'A' && c <= 'F') {
+      return c - 'A' + 10;
+    }
+    return -1;
+  }
+
+  static final class Entry<V> {
+    final long hi;
+    final long lo;
+    final int port;
+    final int hash;
+    volatile V value;
+    final Entry<V> next;
+
+    Entry(long hi, long lo, int port, int hash, V value, Entry<V> next) {
+      this.hi = hi;
+      this.lo = lo;
+      this.port = port;
+      this.hash = hash;
+      this.value = value;
+      this.next = next;
+    }
+
+    Node toNode() {
+      if (port == IPV4) {
+        long ip = lo >>> 16;
+        return new Node((ip >>> 24) + "." + (ip >>> 16 & 0xFF) + "." + (ip >>> 8 & 0xFF) + "." + (ip & 0xFF), (int) (lo & 0xFFFF));
+      }
+      StringBuilder builder = new StringBuilder(39);
+      for (int g = 0; g < 8; g++) {
+        if (g > 0) {
+          builder.append(':');
+        }
+        long group = g < 4 ? hi >>> (48 - 16 * g) : lo >>> (48 - 16 * (g - 4));
+        builder.append(Long.toHexString(group & 0xFFFF));
+      }
+      return new Node(builder.toString(), port);
+    }
+  }
+}
@@ -1,25 +1,18 @@
 package com.litongjava.tio.core.maintain;
 
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Map;
-import java.util.Set;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantReadWriteLock.WriteLock;
-
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.litongjava.tio.core.ChannelContext;
 import com.litongjava.tio.core.TioConfig;
 import com.litongjava.tio.utils.hutool.StrUtil;
-import com.litongjava.tio.utils.lock.LockUtils;
 import com.litongjava.tio.utils.lock.MapWithLock;
 import com.litongjava.tio.utils.lock.SetWithLock;
 
 /**
  *一对多  (token <--> ChannelContext)<br>
- * @author tanyaowu 
+ * 保存在IdentityIndex中，bind/unbind不加全局锁，连接关闭时按ChannelContext.getToken()解绑
+ * @author tanyaowu
  * 2017年10月19日 上午9:40:40
  */
 public class Tokens {
@@ -29,10 +22,7 @@ public class Tokens {
    * key: token
    * value: SetWithLock<ChannelContext>
    */
-  private MapWithLock<String, SetWithLock<ChannelContext>> mapWithLock = new MapWithLock<>(
-      new HashMap<String, SetWithLock<ChannelContext>>());
-
-  private final Object synLockObj1 = new Object();
+  private final IdentityIndex index = new IdentityIndex(ChannelContext::getToken, ChannelContext::compareAndSetToken);
 
   /**
    * 绑定token.
@@ -51,33 +41,10 @@ public class Tokens {
     }
 
     try {
-      SetWithLock<ChannelContext> setWithLock = mapWithLock.get(token);
-      if (setWithLock == null) {
-        LockUtils.runWriteOrWaitRead("_tio_tokens_bind__" + token, synLockObj1, () -> {
-//					@Override
-//					public void read() {
-//					}
-
-//					@Override
-//					public void write() {
-//						SetWithLock<ChannelContext> setWithLock  = mapWithLock.get(token);
-          if (mapWithLock.get(token) == null) {
-//							setWithLock = new SetWithLock<>(new HashSet<>());
-            mapWithLock.put(token, new SetWithLock<>(new HashSet<>()));
-          }
-//					}
-        });
-        setWithLock = mapWithLock.get(token);
-      }
-      setWithLock.add(channelContext);
-
-      channelContext.setToken(token);
+      index.bind(token, channelContext);
     } catch (Throwable e) {
       log.error("", e);
-    } finally {
-      // lock.unlock();
     }
-
   }
 
   /**
@@ -94,24 +61,21 @@ public class Tokens {
     if (StrUtil.isBlank(token)) {
       return null;
     }
-    String key = token;
-    Lock lock = mapWithLock.readLock();
-    lock.lock();
-    try {
-      Map<String, SetWithLock<ChannelContext>> m = mapWithLock.getObj();
-      return m.get(key);
-    } catch (Throwable e) {
-      throw e;
-    } finally {
-      lock.unlock();
-    }
+    return index.find(token);
+  }
+
+  /**
+   * @return 绑定的token数量
+   */
+  public int size() {
+    return index.size();
   }
 
   /**
    * @return the mapWithLock
    */
   public MapWithLock<String, SetWithLock<ChannelContext>> getMap() {
-    return mapWithLock;
+    return index.getMap();
   }
 
   /**
@@ -123,29 +87,13 @@ public class Tokens {
     if (channelContext.tioConfig.isShortConnection) {
       return;
     }
-    try {
-      String token = channelContext.getToken();
-      if (StrUtil.isBlank(token)) {
-        log.debug("{}, {}, unbind token", channelContext.tioConfig.getName(), channelContext.toString());
-        return;
-      }
-
-      try {
-        SetWithLock<ChannelContext> setWithLock = mapWithLock.get(token);
-        if (setWithLock == null) {
-          log.warn("{}, {}, token:{}, can't find SetWithLock", channelContext.tioConfig.getName(),
-              channelContext.toString(), token);
-          return;
-        }
-        channelContext.setToken(null);
-        setWithLock.remove(channelContext);
+    if (StrUtil.isBlank(channelContext.getToken())) {
+      log.debug("{}, {}, unbind token", channelContext.tioConfig.getName(), channelContext.toString());
+      return;
+    }
 
-        if (setWithLock.size() == 0) {
-          mapWithLock.remove(token);
-        }
-      } catch (Throwable e) {
-        throw e;
-      }
+    try {
+      index.unbind(channelContext);
     } catch (Throwable e) {
       log.error(e.toString(), e);
     }
@@ -166,30 +114,9 @@ public class Tokens {
     }
 
     try {
-      SetWithLock<ChannelContext> setWithLock = mapWithLock.get(token);
-      if (setWithLock == null) {
-        return;
-      }
-
-      WriteLock writeLock = setWithLock.writeLock();
-      writeLock.lock();
-      try {
-        Set<ChannelContext> set = setWithLock.getObj();
-        if (set.size() > 0) {
-          for (ChannelContext channelContext : set) {
-            channelContext.setToken(null);
-          }
-          set.clear();
-        }
-
-        mapWithLock.remove(token);
-      } catch (Throwable e) {
-        log.error(e.getMessage(), e);
-      } finally {
-        writeLock.unlock();
-      }
+      index.unbind(token);
     } catch (Throwable e) {
-      throw e;
+      log.error(e.toString(), e);
     }
   }
 }
@@ -1,24 +1,18 @@
 package com.litongjava.tio.core.maintain;
 
-import java.util.HashSet;
-import java.util.Map;
-import java.util.Set;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantReadWriteLock.WriteLock;
-
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.litongjava.tio.core.ChannelContext;
 import com.litongjava.tio.core.TioConfig;
 import com.litongjava.tio.utils.hutool.StrUtil;
-import com.litongjava.tio.utils.lock.LockUtils;
 import com.litongjava.tio.utils.lock.MapWithLock;
 import com.litongjava.tio.utils.lock.SetWithLock;
 
 /**
  * 一对多  (userid <--> ChannelContext)<br>
- * @author tanyaowu 
+ * 保存在IdentityIndex中，bind/unbind不加全局锁，连接关闭时按ChannelContext.userId解绑
+ * @author tanyaowu
  * 2017年10月19日 上午9:40:40
  */
 public class Users {
@@ -27,7 +21,7 @@ public class Users {
    * key: userid
    * value: ChannelContext
    */
-  private MapWithLock<String, SetWithLock<ChannelContext>> mapStrWithLock = new MapWithLock<>();
+  private final IdentityIndex index = new IdentityIndex(channelContext -> channelContext.userId, ChannelContext::compareAndSetUserId);
 
   /**
    * 绑定userid.
@@ -45,19 +39,9 @@ public class Users {
     }
 
     try {
-      SetWithLock<ChannelContext> setWithLock = mapStrWithLock.get(userId);
-      if (setWithLock == null) {
-        LockUtils.runWriteOrWaitRead("_tio_users_bind__" + userId, this, () -> {
-          if (mapStrWithLock.get(userId) == null) {
-            mapStrWithLock.put(userId, new SetWithLock<>(new HashSet<ChannelContext>()));
-          }
-        });
-        setWithLock = mapStrWithLock.get(userId);
-      }
-      setWithLock.add(channelContext);
-      channelContext.setUserId(userId);
+      index.bind(userId, channelContext);
     } catch (Throwable e) {
-      e.printStackTrace();
+      log.error(e.toString(), e);
     }
   }
 
@@ -76,15 +60,21 @@ public class Users {
       return null;
     }
 
-    return mapStrWithLock.get(userid);
+    return index.find(userid);
   }
 
+  /**
+   * @return 绑定的userid数量
+   */
+  public int size() {
+    return index.size();
+  }
 
   /**
    * @return the mapWithLock
    */
   public MapWithLock<String, SetWithLock<ChannelContext>> getMap() {
-    return mapStrWithLock;
+    return index.getMap();
   }
 
   /**
@@ -97,26 +87,13 @@ public class Users {
       return;
     }
 
-    String userid = channelContext.userId;
-    if (StrUtil.isBlank(userid)) {
+    if (StrUtil.isBlank(channelContext.userId)) {
       log.debug("{}, {}, unbind user", channelContext.tioConfig.getName(), channelContext.toString());
       return;
     }
 
     try {
-      SetWithLock<ChannelContext> setWithLock = mapStrWithLock.get(userid);
-      if (setWithLock == null) {
-        log.warn("{}, {}, userid:{}, can't find SetWithLock", channelContext.tioConfig.getName(), channelContext.toString(), userid);
-        return;
-      }
-
-      setWithLock.remove(channelContext);
-
-      if (setWithLock.size() == 0) {
-        mapStrWithLock.remove(userid);
-      }
-
-      channelContext.setUserId(null);
+      index.unbind(channelContext);
     } catch (Throwable e) {
       log.error(e.toString(), e);
     }
@@ -137,38 +114,7 @@ public class Users {
     }
 
     try {
-      Lock lock = mapStrWithLock.writeLock();
-      lock.lock();
-      try {
-        Map<String, SetWithLock<ChannelContext>> m = mapStrWithLock.getObj();
-        SetWithLock<ChannelContext> setWithLock = m.get(userid);
-        if (setWithLock == null) {
-          return;
-        }
-
-        WriteLock writeLock = setWithLock.writeLock();
-        writeLock.lock();
-        try {
-          Set<ChannelContext> set = setWithLock.getObj();
-          if (set.size() > 0) {
-            for (ChannelContext channelContext : set) {
-              channelContext.setUserId(null);
-            }
-            set.clear();
-          }
-
-          m.remove(userid);
-        } catch (Throwable e) {
-          log.error(e.getMessage(), e);
-        } finally {
-          writeLock.unlock();
-        }
-
-      } catch (Throwable e) {
-        throw e;
-      } finally {
-        lock.unlock();
-      }
+      index.unbind(userid);
     } catch (Throwable e) {
       log.error(e.toString(), e);
     }
@@ -0,0 +1,65 @@
+package com.litongjava.tio.core.pool;
+
+/**
+ * 根据最近几次读的填充程度决定下一次读用多大的buffer<br>
+ * 1、读满了buffer：下次加倍，直到maxSize<br>
+ * 2、连续两次读到的字节数不超过当前大小的一半：下次减半，直到minSize<br>
+ * 大小都取2的幂次，同一档位的buffer在BufferPoolUtils.allocateRequest()中可以复用<br>
+ * 只由连接的读回调线程访问，不需要同步
+ * @author Tong Li
+ */
+public class AdaptiveReadBufferSizer {
+  private final int minSize;
+  private final int maxSize;
+  private int size;
+  private boolean decreaseNow = false;
+
+  public AdaptiveReadBufferSizer(int minSize, int initialSize, int maxSize) {
+    this.minSize = sizeClass(Math.max(minSize, 64));
+    this.maxSize = Math.max(sizeClass(maxSize), this.minSize);
+    this.size = Math.min(Math.max(sizeClass(initialSize), this.minSize), this.maxSize);
+  }
+
+  /**
+   * 记录一次读的结果
+   * @param bytesRead 读到的字节数
+   * @param capacity 本次读使用的buffer大小
+   */
+  public void record(int bytesRead, int capacity) {
+    if (bytesRead >= capacity) {
+      decreaseNow = false;
+      if (size <= capacity) {
+        size = Math.min(capacity << 1, maxSize);
+      }
+    } else if (bytesRead <= (size >> 1)) {
+      if (decreaseNow) {
+        size = Math.max(size >> 1, minSize);
+        decreaseNow = false;
+      } else {
+        decreaseNow = true;
+      }
+    } else {
+      decreaseNow = false;
+    }
+  }
+
+  /**
+   * @return 下一次读使用的buffer大小
+   */
+  public int nextSize() {
+    return size;
+  }
+
+  /**
+   * 向上取到2的幂次
+   */
+  static int sizeClass(int size) {
+    if (size <= 1) {
+      return 1;
+    }
+    if (size > (1 << 30)) {
+      return 1 << 30;
+    }
+    return Integer.highestOneBit(size - 1) << 1;
+  }
+}
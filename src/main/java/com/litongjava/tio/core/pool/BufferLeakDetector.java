@@ -0,0 +1,317 @@
+package com.litongjava.tio.core.pool;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.litongjava.enhance.buffer.GlobalScheduler;
+import com.litongjava.enhance.buffer.VirtualBuffer;
+import com.litongjava.tio.consts.TioCoreConfigKeys;
+import com.litongjava.tio.core.ChannelContext;
+import com.litongjava.tio.core.timer.HashedTimingWheel;
+import com.litongjava.tio.utils.environment.EnvUtils;
+
+/**
+ * 池化缓冲区（ByteBuffer、VirtualBuffer）的泄漏检测<br>
+ * 1、DISABLED：不检测，只有一次volatile读<br>
+ * 2、SAMPLED：按采样间隔跟踪少量分配，记录分配时的调用栈，被GC回收时仍未归还的报告为泄漏，可以在生产环境开启<br>
+ * 3、PARANOID：跟踪每次分配，另外检测重复归还，重复归还的缓冲区不会再次进入池，只用于排查问题<br>
+ * 连接关闭一段时间后仍未归还的、属于该连接的缓冲区也会被报告<br>
+ * 被GC回收的记录除了在分配时处理，还由定时任务每秒处理一次，分配停止后泄漏也能被报告；记录只保存连接的id和名称，不持有连接
+ * @author Tong Li
+ */
+public class BufferLeakDetector {
+  private static final Logger log = LoggerFactory.getLogger(BufferLeakDetector.class);
+
+  public enum Level {
+    DISABLED, SAMPLED, PARANOID;
+
+    public static Level from(String name) {
+      for (Level v : values()) {
+        if (v.name().equalsIgnoreCase(name)) {
+          return v;
+        }
+      }
+      return DISABLED;
+    }
+  }
+
+  private static volatile Level level = Level.from(EnvUtils.get(TioCoreConfigKeys.TIO_CORE_BUFFER_LEAK_DETECTION));
+  /** SAMPLED模式下平均每多少次分配跟踪一次 */
+  private static volatile int samplingInterval = Math
+      .max(EnvUtils.getInt(TioCoreConfigKeys.TIO_CORE_BUFFER_LEAK_DETECTION_SAMPLING_INTERVAL, 1024), 1);
+  /** 连接关闭后多久检查它的缓冲区是否都已归还，留出时间给仍在进行的读写回调 */
+  private static volatile long closeCheckDelay = 10000;
+
+  private static final ConcurrentHashMap<Ref, Record> records = new ConcurrentHashMap<>();
+  private static final ReferenceQueue<Object> referenceQueue = new ReferenceQueue<>();
+
+  private static final LongAdder leaks = new LongAdder();
+  private static final LongAdder doubleReleases = new LongAdder();
+  private static final LongAdder unreleasedOnClose = new LongAdder();
+
+  static {
+    GlobalScheduler.scheduleWithFixedDelay(BufferLeakDetector::drain, 1000, 1000, TimeUnit.MILLISECONDS);
+  }
+
+  public static boolean isEnabled() {
+    return level != Level.DISABLED;
+  }
+
+  /**
+   * 缓冲区被分配
+   * @param buffer ByteBuffer或VirtualBuffer
+   * @param owner 使用它的连接，可以为null
+   */
+  public static void track(Object buffer, ChannelContext owner) {
+    Level current = level;
+    if (current == Level.DISABLED) {
+      return;
+    }
+    reportCollected();
+    if (current == Level.PARANOID) {
+      // 复用的缓冲区替换上一次分配的记录
+      records.remove(new Lookup(buffer));
+    } else if (ThreadLocalRandom.current().nextInt(samplingInterval) != 0) {
+      return;
+    }
+    Record record = new Record(buffer, owner);
+    records.put(record, record);
+  }
+
+  /**
+   * 缓冲区被归还
+   * @return false: 重复归还，调用方不能再把它放回池中
+   */
+  public static boolean release(Object buffer) {
+    Level current = level;
+    if (current == Level.DISABLED || records.isEmpty()) {
+      return true;
+    }
+    Record record = records.get(new Lookup(buffer));
+    if (record == null) {
+      // 没有被采样，或者不是从池中分配的
+      return true;
+    }
+    synchronized (record) {
+      if (record.released != null) {
+        doubleReleases.increment();
+        Throwable cause = new Throwable("released again at");
+        cause.addSuppressed(record.released);
+        cause.addSuppressed(record.allocated);
+        log.error("DOUBLE RELEASE: {} was returned to the pool more than once, owner:{}", describe(buffer), record.ownerName, cause);
+        return false;
+      }
+      if (current == Level.PARANOID) {
+        // 保留记录用于检测重复归还，直到缓冲区再次被分配
+        record.released = new Throwable("released at");
+        return true;
+      }
+    }
+    records.remove(record);
+    return true;
+  }
+
+  /**
+   * 连接关闭，延迟检查它是否还持有未归还的缓冲区
+   */
+  public static void checkOnClose(ChannelContext channelContext) {
+    if (level == Level.DISABLED || records.isEmpty()) {
+      return;
+    }
+    // 只捕获id，不让定时任务持有已关闭的连接
+    String ownerId = channelContext.getId();
+    HashedTimingWheel.shared().newTimeout(() -> checkOwner(ownerId), closeCheckDelay, TimeUnit.MILLISECONDS);
+  }
+
+  static int checkOwner(ChannelContext channelContext) {
+    return checkOwner(channelContext.getId());
+  }
+
+  /**
+   * @return 该连接还持有的被跟踪的缓冲区个数，并逐个报告
+   */
+  static int checkOwner(String ownerId) {
+    int count = 0;
+    for (Record record : records.values()) {
+      if (ownerId != null && ownerId.equals(record.ownerId) && record.released == null && record.get() != null) {
+        count++;
+        unreleasedOnClose.increment();
+        log.error("LEAK: {} is still held by closed channel {}", describe(record.get()), record.ownerName, record.allocated);
+      }
+    }
+    return count;
+  }
+
+  /**
+   * 定时任务：开启检测时处理被GC回收的记录
+   */
+  static void drain() {
+    if (level != Level.DISABLED) {
+      reportCollected();
+    }
+  }
+
+  /**
+   * 报告已被GC回收但未归还的缓冲区
+   */
+  static void reportCollected() {
+    Object ref;
+    while ((ref = referenceQueue.poll()) != null) {
+      Record record = (Record) ref;
+      records.remove(record);
+      if (record.released == null) {
+        leaks.increment();
+        log.error("LEAK: a buffer of {} bytes was garbage collected without being returned to the pool, owner:{}", record.capacity,
+            record.ownerName, record.allocated);
+      }
+    }
+  }
+
+  private static String describe(Object buffer) {
+    return buffer == null ? "buffer" : buffer.getClass().getSimpleName() + "@" + Integer.toHexString(System.identityHashCode(buffer));
+  }
+
+  private static int capacityOf(Object buffer) {
+    if (buffer instanceof ByteBuffer) {
+      return ((ByteBuffer) buffer).capacity();
+    }
+    if (buffer instanceof VirtualBuffer) {
+      return ((VirtualBuffer) buffer).buffer().capacity();
+    }
+    return -1;
+  }
+
+  public static Level getLevel() {
+    return level;
+  }
+
+  public static void setLevel(Level level) {
+    BufferLeakDetector.level = level;
+    if (level == Level.DISABLED) {
+      records.clear();
+    }
+  }
+
+  public static int getSamplingInterval() {
+    return samplingInterval;
+  }
+
+  public static void setSamplingInterval(int samplingInterval) {
+    BufferLeakDetector.samplingInterval = Math.max(samplingInterval, 1);
+  }
+
+  public static long getCloseCheckDelay() {
+    return closeCheckDelay;
+  }
+
+  public static void setCloseCheckDelay(long closeCheckDelay) {
+    BufferLeakDetector.closeCheckDelay = closeCheckDelay;
+  }
+
+  /**
+   * @return 被GC回收但未归还的缓冲区个数
+   */
+  public static long getLeaks() {
+    return leaks.sum();
+  }
+
+  /**
+   * @return 重复归还的次数
+   */
+  public static long getDoubleReleases() {
+    return doubleReleases.sum();
+  }
+
+  /**
+   * @return 连接关闭后仍未归还的缓冲区个数
+   */
+  public static long getUnreleasedOnClose() {
+    return unreleasedOnClose.sum();
+  }
+
+  /**
+   * @return 正在跟踪的缓冲区个数
+   */
+  public static int getTracked() {
+    return records.size();
+  }
+
+  /**
+   * 按缓冲区对象的identity比较，ByteBuffer的equals()比较的是内容
+   */
+  private interface Ref {
+    Object referent();
+  }
+
+  private static final class Lookup implements Ref {
+    private final Object buffer;
+
+    Lookup(Object buffer) {
+      this.buffer = buffer;
+    }
+
+    @Override
+    public Object referent() {
+      return buffer;
+    }
+
+    @Override
+    public int hashCode() {
+      return System.identityHashCode(buffer);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      return obj instanceof Ref && ((Ref) obj).referent() == buffer;
+    }
+  }
+
+  /**
+   * 一次分配的记录，弱引用缓冲区，缓冲区被回收后进入referenceQueue
+   */
+  private static final class Record extends WeakReference<Object> implements Ref {
+    private final int hash;
+    private final int capacity;
+    private final Throwable allocated;
+    /** 使用它的连接的id和toString()，不引用连接本身，避免延长已关闭连接的生命周期 */
+    private final String ownerId;
+    private final String ownerName;
+    private volatile Throwable released;
+
+    Record(Object buffer, ChannelContext owner) {
+      super(buffer, referenceQueue);
+      this.hash = System.identityHashCode(buffer);
+      this.capacity = capacityOf(buffer);
+      this.allocated = new Throwable("allocated at");
+      this.ownerId = owner == null ? null : owner.getId();
+      this.ownerName = owner == null ? null : owner.toString();
+    }
+
+    @Override
+    public Object referent() {
+      return get();
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (obj == this) {
+        return true;
+      }
+      Object buffer = get();
+      return buffer != null && obj instanceof Ref && ((Ref) obj).referent() == buffer;
+    }
+  }
+}
@@ -2,19 +2,30 @@ package com.litongjava.tio.core.pool;
 
 import java.lang.management.BufferPoolMXBean;
 import java.lang.management.ManagementFactory;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Method;
 import java.nio.ByteBuffer;
 import java.util.List;
+import java.util.concurrent.ConcurrentLinkedDeque;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.concurrent.atomic.LongAdder;
 
+import com.litongjava.aio.Packet;
 import com.litongjava.enhance.buffer.BufferMemoryStat;
 import com.litongjava.enhance.buffer.BufferMomeryInfo;
 import com.litongjava.enhance.buffer.BufferPagePool;
 import com.litongjava.enhance.buffer.DirectBufferCleaner;
 import com.litongjava.enhance.buffer.GlobalScheduler;
 import com.litongjava.enhance.buffer.VirtualBuffer;
+import com.litongjava.tio.consts.TioCoreConfigKeys;
+import com.litongjava.tio.core.ChannelContext;
+import com.litongjava.tio.core.SharedPacket;
 import com.litongjava.tio.core.TioConfig;
+import com.litongjava.tio.utils.environment.EnvUtils;
 
 public class BufferPoolUtils {
   /** 是否使用直接内存缓冲区（可通过环境变量开关） */
@@ -26,54 +37,6 @@ public class BufferPoolUtils {
   /** “系统是否空闲”的标记，由分配与清理线程共享，需保障可见性 */
   private static volatile boolean idle = true;
 
-  /** 待复用/待清理的缓冲区队列（简单实现用一条队列） */
-  private static final ConcurrentLinkedQueue<ByteBuffer> cleanBuffers = new ConcurrentLinkedQueue<>();
-
-  static {
-    // 初始延迟 500ms，之后每 1000ms 执行一次
-    GlobalScheduler.scheduleWithFixedDelay(BufferPoolUtils::tryClean, 500, 1000, TimeUnit.MILLISECONDS);
-  }
-
-  /**
-   * 尝试清理：采用“两次空闲”策略。 第一次检测到非空闲 -> 置空闲并返回； 下一周期若仍为空闲 -> 逐步清理（每轮最多 10 个，避免抖动）。
-   */
-  public static void tryClean() {
-    // 若上个周期内发生过分配（idle=false），本周期仅将其置回 true，不清理
-    if (!idle) {
-      idle = true;
-      return;
-    }
-    // 已连续空闲 -> 执行有限度清理
-    int count = 0;
-    ByteBuffer buf;
-    while (idle && count++ < 10 && (buf = cleanBuffers.poll()) != null) {
-      clean0(buf);
-    }
-  }
-
-  /** 实际释放直接缓冲区（堆缓冲区无需显式清理） */
-  private static void clean0(ByteBuffer buffer) {
-    if (buffer != null) {
-      statCleanCount.increment();
-      if (buffer.isDirect()) {
-        try {
-          DirectBufferCleaner.clean(buffer);
-        } catch (Throwable e) {
-          // 释放失败不影响后续逻辑
-          e.printStackTrace();
-        }
-      }
-    }
-  }
-
-  /** 释放队列中所有缓冲区资源（用于停止/卸载阶段） */
-  public static void release() {
-    ByteBuffer temp;
-    while ((temp = cleanBuffers.poll()) != null) {
-      clean0(temp);
-    }
-  }
-
   /*
    * ====================== VirtualBuffer 分配 ======================
    */
@@ -82,14 +45,35 @@ public class BufferPoolUtils {
    * 按线程维度分配 Request 用 VirtualBuffer
    */
   public static VirtualBuffer allocateRequest(Integer size) {
-    return bufferPool.allocateRequestByThreadId(size);
+    return allocateRequest(size, null);
+  }
+
+  /**
+   * 按线程维度分配 Request 用 VirtualBuffer
+   * @param owner 使用它的连接，用于泄漏检测
+   */
+  public static VirtualBuffer allocateRequest(Integer size, ChannelContext owner) {
+    VirtualBuffer virtualBuffer = bufferPool.allocateRequestByThreadId(size);
+    BufferLeakDetector.track(virtualBuffer, owner);
+    return virtualBuffer;
   }
 
   /**
    * 按线程维度分配 Response 用 VirtualBuffer
    **/
   public static VirtualBuffer allocateResponse(Integer size) {
-    return bufferPool.allocateResponseByThreadId(size);
+    VirtualBuffer virtualBuffer = bufferPool.allocateResponseByThreadId(size);
+    BufferLeakDetector.track(virtualBuffer, null);
+    return virtualBuffer;
+  }
+
+  /**
+   * 归还 VirtualBuffer
+   */
+  public static void clean(VirtualBuffer virtualBuffer) {
+    if (virtualBuffer != null && BufferLeakDetector.release(virtualBuffer)) {
+      virtualBuffer.clean();
+    }
   }
 
   /**
@@ -120,13 +104,134 @@ public class BufferPoolUtils {
     return allocateResponse((int) need);
   }
 
-  private static final LongAdder statReuseHit = new LongAdder(); // 复用命中（容量+direct一致）
-  private static final LongAdder statNewAlloc = new LongAdder(); // 新分配次数
-  private static final LongAdder statCleanCount = new LongAdder(); // 实际清理次数
-
   /*
    * ====================== ByteBuffer 分配/回收 ======================
+   * 按2的幂次分档：每个线程先用自己的小缓存（magazine），再用每档共享的depot；
+   * 线程缓存和depot保留的总字节数有上限，超出的直接释放；超过最大档位的缓冲区不池化
+   */
+
+  /** 最小档位：64B */
+  private static final int MIN_SHIFT = 6;
+  /** 最大档位，默认4MB */
+  private static final int MAX_SHIFT = shiftOf(
+      Math.max(EnvUtils.getInt(TioCoreConfigKeys.TIO_CORE_BUFFER_POOL_MAX_CLASS_SIZE, 4 * 1024 * 1024), 1 << MIN_SHIFT));
+  private static final int CLASSES = MAX_SHIFT - MIN_SHIFT + 1;
+  /** 线程缓存只缓存不超过64KB的档位 */
+  private static final int MAGAZINE_MAX_SHIFT = Math.min(16, MAX_SHIFT);
+  /** 线程缓存每档最多缓存的字节数和个数 */
+  private static final int MAGAZINE_BYTES = 64 * 1024;
+  private static final int MAGAZINE_MAX_BUFFERS = 16;
+
+  /** 线程缓存和depot中保留的字节数上限 */
+  private static volatile long maxRetainedBytes = EnvUtils.getLong(TioCoreConfigKeys.TIO_CORE_BUFFER_POOL_MAX_RETAINED_BYTES,
+      64L * 1024 * 1024);
+  private static final AtomicLong retainedBytes = new AtomicLong();
+
+  @SuppressWarnings({ "unchecked", "rawtypes" })
+  private static final ConcurrentLinkedDeque<ByteBuffer>[] depots = new ConcurrentLinkedDeque[CLASSES];
+  private static final AtomicIntegerArray depotSizes = new AtomicIntegerArray(CLASSES);
+
+  /** 统计按档位拆分，最后一个是不池化的缓冲区 */
+  private static final LongAdder[] statReuseHit = newAdders(CLASSES + 1); // 复用命中
+  private static final LongAdder[] statNewAlloc = newAdders(CLASSES + 1); // 新分配次数
+  private static final LongAdder[] statCleanCount = newAdders(CLASSES + 1); // 实际清理次数
+
+  private static final Method IS_VIRTUAL = isVirtualMethod();
+
+  /** 所有线程缓存，清理时回收其中的缓冲区，所属线程结束后移除 */
+  private static final ConcurrentLinkedQueue<Magazine> allMagazines = new ConcurrentLinkedQueue<>();
+
+  /** 虚拟线程数量多、生命周期短，不使用线程缓存 */
+  private static final ThreadLocal<Magazine> magazines = ThreadLocal
+      .withInitial(() -> isVirtual(Thread.currentThread()) ? Magazine.EMPTY : Magazine.register(Thread.currentThread()));
+
+  static {
+    for (int i = 0; i < CLASSES; i++) {
+      depots[i] = new ConcurrentLinkedDeque<>();
+    }
+    // 初始延迟 500ms，之后每 1000ms 执行一次
+    GlobalScheduler.scheduleWithFixedDelay(BufferPoolUtils::tryClean, 500, 1000, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * 线程缓存，由所属线程存取；清理线程可以取走其中的缓冲区，每个槽位用CAS存取，一个缓冲区只会被一方取走<br>
+   * 所属线程结束后由清理线程回收其中的缓冲区并移除
    */
+  private static final class Magazine {
+    static final Magazine EMPTY = new Magazine(null, 0);
+
+    private final WeakReference<Thread> owner;
+    /** 所有档位的槽位，档位i占用[offsets[i], offsets[i + 1]) */
+    private final AtomicReferenceArray<ByteBuffer> slots;
+    private final int[] offsets;
+
+    Magazine(Thread owner, int classes) {
+      this.owner = new WeakReference<>(owner);
+      offsets = new int[classes + 1];
+      for (int i = 0; i < classes; i++) {
+        int max = Math.min(MAGAZINE_MAX_BUFFERS, MAGAZINE_BYTES >> (i + MIN_SHIFT));
+        offsets[i + 1] = offsets[i] + Math.max(max, 1);
+      }
+      slots = new AtomicReferenceArray<>(offsets[classes]);
+    }
+
+    static Magazine register(Thread owner) {
+      Magazine magazine = new Magazine(owner, MAGAZINE_MAX_SHIFT - MIN_SHIFT + 1);
+      allMagazines.add(magazine);
+      return magazine;
+    }
+
+    ByteBuffer pop(int index) {
+      if (index >= offsets.length - 1) {
+        return null;
+      }
+      for (int i = offsets[index + 1] - 1; i >= offsets[index]; i--) {
+        if (slots.get(i) != null) {
+          ByteBuffer buffer = slots.getAndSet(i, null);
+          if (buffer != null) {
+            return buffer;
+          }
+        }
+      }
+      return null;
+    }
+
+    boolean push(int index, ByteBuffer buffer) {
+      if (index >= offsets.length - 1) {
+        return false;
+      }
+      for (int i = offsets[index]; i < offsets[index + 1]; i++) {
+        if (slots.get(i) == null && slots.compareAndSet(i, null, buffer)) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    /**
+     * 取走并释放最多max个缓冲区，从大档位开始
+     * @return 释放的个数
+     */
+    int trim(int max) {
+      int count = 0;
+      for (int index = offsets.length - 2; index >= 0 && count < max; index--) {
+        for (int i = offsets[index]; i < offsets[index + 1] && count < max; i++) {
+          ByteBuffer buffer = slots.getAndSet(i, null);
+          if (buffer != null) {
+            retainedBytes.addAndGet(-buffer.capacity());
+            clean0(buffer, index);
+            count++;
+          }
+        }
+      }
+      return count;
+    }
+
+    boolean isOwnerAlive() {
+      Thread thread = owner.get();
+      return thread != null && thread.isAlive();
+    }
+  }
 
   /**
    * 对齐到 chunkSize 的 Request 分配
@@ -144,51 +249,289 @@ public class BufferPoolUtils {
   }
 
   /**
-   * 分配原生 ByteBuffer（走简单的复用与延迟清理策略）
+   * 分配原生 ByteBuffer：position=0, limit=size，capacity是size所在档位的大小，可能大于size
    **/
   public static ByteBuffer allocate(final int size) {
+    return allocate(size, null);
+  }
+
+  /**
+   * 分配原生 ByteBuffer
+   * @param owner 使用它的连接，用于泄漏检测
+   **/
+  public static ByteBuffer allocate(final int size, ChannelContext owner) {
     if (size <= 0) {
       throw new IllegalArgumentException("size must be > 0");
     }
     // 有分配发生 -> 标记非空闲（让清理器下一轮先观察期）
     idle = false;
 
-    // 优先尝试从复用队列取出匹配的缓冲区
-    ByteBuffer bb = cleanBuffers.poll();
+    int index = indexOf(size);
+    if (index < 0) {
+      statNewAlloc[CLASSES].increment();
+      ByteBuffer bb = newBuffer(size);
+      BufferLeakDetector.track(bb, owner);
+      return bb;
+    }
 
+    // 先取本线程缓存，再取共享depot
+    ByteBuffer bb = magazines.get().pop(index);
     if (bb != null) {
-      boolean sizeMatch = (bb.capacity() == size);
-      boolean typeMatch = (bb.isDirect() == direct);
-      if (sizeMatch && typeMatch) {
-        bb.clear(); // 复用：position=0, limit=capacity
-        statReuseHit.increment();
-        return bb;
-      } else {
-        clean0(bb);
-      }
+      retainedBytes.addAndGet(-bb.capacity());
+    } else {
+      bb = pollDepot(index, true);
     }
-    // 新分配
-    statNewAlloc.increment();
-    return direct ? ByteBuffer.allocateDirect(size) : ByteBuffer.allocate(size);
 
+    if (bb != null) {
+      bb.clear();
+      statReuseHit[index].increment();
+    } else {
+      bb = newBuffer(sizeOfClass(index));
+      statNewAlloc[index].increment();
+    }
+    bb.limit(size);
+    BufferLeakDetector.track(bb, owner);
+    return bb;
   }
 
   /**
-   * 归还一个缓冲区，进入延迟清理/复用队列
+   * 归还一个缓冲区：超过保留上限的直接释放，否则先放本线程缓存，再放共享depot
    */
   public static void clean(ByteBuffer cleanBuffer) {
     if (cleanBuffer == null) {
       return;
     }
-    cleanBuffers.offer(cleanBuffer);
+    // 只读视图（共享的预编码数据）和类型不一致的缓冲区不是从这里分配的，不回收
+    if (cleanBuffer.isReadOnly() || cleanBuffer.isDirect() != direct) {
+      return;
+    }
+    // 重复归还的缓冲区如果再进入池，会同时被两处使用
+    if (!BufferLeakDetector.release(cleanBuffer)) {
+      return;
+    }
+    int capacity = cleanBuffer.capacity();
+    int index = classOf(capacity);
+    if (index < 0) {
+      clean0(cleanBuffer, CLASSES);
+      return;
+    }
+    if (retainedBytes.addAndGet(capacity) > maxRetainedBytes) {
+      retainedBytes.addAndGet(-capacity);
+      clean0(cleanBuffer, index);
+      return;
+    }
+    if (magazines.get().push(index, cleanBuffer)) {
+      return;
+    }
+    depots[index].offerFirst(cleanBuffer);
+    depotSizes.incrementAndGet(index);
+  }
+
+  /**
+   * 归还某个packet发送用的缓冲区，群发共享的编码结果只释放引用
+   */
+  public static void clean(ByteBuffer cleanBuffer, Packet packet) {
+    if (packet instanceof SharedPacket) {
+      ((SharedPacket) packet).release();
+    } else {
+      clean(cleanBuffer);
+    }
+  }
+
+  /**
+   * 尝试清理：已结束的线程的缓存每次都回收；其余采用“两次空闲”策略。 第一次检测到非空闲 -> 置空闲并返回；
+   * 下一周期若仍为空闲 -> 逐步清理（每轮最多 10 个，避免抖动）。 先清理depot，从大档位开始，每档先清理最久未用的，再清理线程缓存
+   */
+  public static void tryClean() {
+    for (Magazine magazine : allMagazines) {
+      if (!magazine.isOwnerAlive()) {
+        allMagazines.remove(magazine);
+        magazine.trim(Integer.MAX_VALUE);
+      }
+    }
+    // 若上个周期内发生过分配（idle=false），本周期仅将其置回 true，不清理
+    if (!idle) {
+      idle = true;
+      return;
+    }
+    // 已连续空闲 -> 执行有限度清理
+    int count = 0;
+    for (int i = CLASSES - 1; i >= 0 && idle && count < 10; i--) {
+      ByteBuffer buf;
+      while (idle && count < 10 && (buf = pollDepot(i, false)) != null) {
+        clean0(buf, i);
+        count++;
+      }
+    }
+    for (Magazine magazine : allMagazines) {
+      if (!idle || count >= 10) {
+        break;
+      }
+      count += magazine.trim(10 - count);
+    }
+  }
+
+  /** 释放线程缓存和depot中所有缓冲区资源（用于停止/卸载阶段） */
+  public static void release() {
+    for (Magazine magazine : allMagazines) {
+      magazine.trim(Integer.MAX_VALUE);
+      if (!magazine.isOwnerAlive()) {
+        allMagazines.remove(magazine);
+      }
+    }
+    for (int i = 0; i < CLASSES; i++) {
+      ByteBuffer buf;
+      while ((buf = pollDepot(i, true)) != null) {
+        clean0(buf, i);
+      }
+    }
+  }
+
+  private static ByteBuffer pollDepot(int index, boolean first) {
+    ByteBuffer buf = first ? depots[index].pollFirst() : depots[index].pollLast();
+    if (buf != null) {
+      depotSizes.decrementAndGet(index);
+      retainedBytes.addAndGet(-buf.capacity());
+    }
+    return buf;
+  }
+
+  /** 实际释放直接缓冲区（堆缓冲区无需显式清理） */
+  private static void clean0(ByteBuffer buffer, int index) {
+    statCleanCount[index].increment();
+    if (buffer.isDirect()) {
+      try {
+        DirectBufferCleaner.clean(buffer);
+      } catch (Throwable e) {
+        // 释放失败不影响后续逻辑
+        e.printStackTrace();
+      }
+    }
+  }
+
+  private static ByteBuffer newBuffer(int capacity) {
+    if (!direct) {
+      return ByteBuffer.allocate(capacity);
+    }
+    try {
+      return ByteBuffer.allocateDirect(capacity);
+    } catch (OutOfMemoryError e) {
+      // 直接内存不足：释放池中缓存的缓冲区后再试一次
+      release();
+      return ByteBuffer.allocateDirect(capacity);
+    }
+  }
+
+  /**
+   * @return size所在档位，超过最大档位时返回-1
+   */
+  static int indexOf(int size) {
+    if (size <= 1 << MIN_SHIFT) {
+      return 0;
+    }
+    if (size > 1 << MAX_SHIFT) {
+      return -1;
+    }
+    return shiftOf(size) - MIN_SHIFT;
+  }
+
+  /**
+   * @return 容量正好是某个档位时返回该档位，否则返回-1
+   */
+  static int classOf(int capacity) {
+    if (Integer.bitCount(capacity) != 1) {
+      return -1;
+    }
+    int shift = Integer.numberOfTrailingZeros(capacity);
+    return shift < MIN_SHIFT || shift > MAX_SHIFT ? -1 : shift - MIN_SHIFT;
+  }
+
+  /** 不小于size的最小2的幂次的指数 */
+  private static int shiftOf(int size) {
+    return size <= 1 ? 0 : Math.min(32 - Integer.numberOfLeadingZeros(size - 1), 30);
+  }
+
+  private static LongAdder[] newAdders(int n) {
+    LongAdder[] adders = new LongAdder[n];
+    for (int i = 0; i < n; i++) {
+      adders[i] = new LongAdder();
+    }
+    return adders;
+  }
+
+  private static Method isVirtualMethod() {
+    try {
+      return Thread.class.getMethod("isVirtual");
+    } catch (Throwable e) {
+      // Java 21以下没有虚拟线程
+      return null;
+    }
+  }
+
+  private static boolean isVirtual(Thread thread) {
+    if (IS_VIRTUAL == null) {
+      return false;
+    }
+    try {
+      return (Boolean) IS_VIRTUAL.invoke(thread);
+    } catch (Throwable e) {
+      return false;
+    }
+  }
+
+  /**
+   * @return 档位数，getSizeClassStats()的最后一项是不池化的缓冲区
+   */
+  public static int getSizeClasses() {
+    return CLASSES;
+  }
+
+  /**
+   * @return 档位的缓冲区大小
+   */
+  public static int sizeOfClass(int index) {
+    return 1 << (index + MIN_SHIFT);
+  }
+
+  public static long getMaxRetainedBytes() {
+    return maxRetainedBytes;
+  }
+
+  public static void setMaxRetainedBytes(long maxRetainedBytes) {
+    BufferPoolUtils.maxRetainedBytes = maxRetainedBytes;
+  }
+
+  /**
+   * @return 线程缓存和depot中保留的字节数
+   */
+  public static long getRetainedBytes() {
+    return retainedBytes.get();
+  }
+
+  /**
+   * @return 每个档位的统计，bufferSize是depot中的缓冲区个数；最后一项是超过最大档位、不池化的缓冲区
+   */
+  public static BufferMemoryStat[] getSizeClassStats() {
+    BufferMemoryStat[] stats = new BufferMemoryStat[CLASSES + 1];
+    for (int i = 0; i <= CLASSES; i++) {
+      BufferMemoryStat memoryStat = new BufferMemoryStat();
+      memoryStat.statNewAlloc = statNewAlloc[i].longValue();
+      memoryStat.statCleanCount = statCleanCount[i].longValue();
+      memoryStat.statReuseHit = statReuseHit[i].longValue();
+      memoryStat.bufferSize = i < CLASSES ? depotSizes.get(i) : 0;
+      stats[i] = memoryStat;
+    }
+    return stats;
   }
 
   public static BufferMemoryStat getStat() {
     BufferMemoryStat memoryStat = new BufferMemoryStat();
-    memoryStat.statNewAlloc = statNewAlloc.longValue();
-    memoryStat.statCleanCount = statCleanCount.longValue();
-    memoryStat.statReuseHit = statReuseHit.longValue();
-    memoryStat.bufferSize = cleanBuffers.size();
+    for (BufferMemoryStat stat : getSizeClassStats()) {
+      memoryStat.statNewAlloc += stat.statNewAlloc;
+      memoryStat.statCleanCount += stat.statCleanCount;
+      memoryStat.statReuseHit += stat.statReuseHit;
+      memoryStat.bufferSize += stat.bufferSize;
+    }
     return memoryStat;
   }
 
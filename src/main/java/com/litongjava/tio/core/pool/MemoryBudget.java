@@ -0,0 +1,344 @@
+package com.litongjava.tio.core.pool;
+
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.litongjava.enhance.buffer.GlobalScheduler;
+import com.litongjava.tio.consts.TioCoreConfigKeys;
+import com.litongjava.tio.core.ChannelContext;
+import com.litongjava.tio.core.ReadCompletionHandler;
+import com.litongjava.tio.core.TioConfig;
+import com.litongjava.tio.core.task.DecodeTask;
+import com.litongjava.tio.utils.environment.EnvUtils;
+import com.litongjava.tio.utils.lock.SetWithLock;
+
+/**
+ * 直接内存预算<br>
+ * 读缓冲区、半包累积缓冲区、SSL缓冲区、池化的写缓冲区都是直接内存，连接数突增时可能超过-XX:MaxDirectMemorySize，
+ * 在完成回调深处抛出OutOfMemoryError: Direct buffer memory<br>
+ * 1、超过软上限：先释放BufferPoolUtils缓存的缓冲区，仍超过则暂停占用最多的连接的读，降到软上限的80%以下后恢复。
+ * 暂停时立即归还读休眠中暂存的读缓冲区、收缩半包累积缓冲区；已经发起的读仍持有读缓冲区，要等这次读完成后才归还，
+ * 不支持读休眠的通道上，一直没有数据到达的空闲连接会一直持有读缓冲区<br>
+ * 2、超过硬上限：AcceptCompletionHandler在创建ChannelContext之前直接关闭新连接，以ChannelCloseCode.MEMORY_BUDGET_EXCEEDED回调ServerAioListener.onRejected<br>
+ * 用量取JVM统计的直接内存（包含池化和未池化的），默认关闭；未配置上限时取最大直接内存的70%和90%
+ * @author Tong Li
+ */
+public class MemoryBudget {
+  private static final Logger log = LoggerFactory.getLogger(MemoryBudget.class);
+
+  /** 检查间隔 */
+  private static final long CHECK_INTERVAL_MS = 100;
+  /** 降到软上限的这个比例以下才恢复读，避免来回抖动 */
+  private static final double RESUME_RATIO = 0.8;
+
+  private static final BufferPoolMXBean DIRECT_POOL = directPool();
+
+  private static volatile boolean enabled = EnvUtils.getBoolean(TioCoreConfigKeys.TIO_CORE_MEMORY_BUDGET_ENABLED, false);
+  private static volatile long softLimit = EnvUtils.getLong(TioCoreConfigKeys.TIO_CORE_MEMORY_BUDGET_SOFT_LIMIT, 0L);
+  private static volatile long hardLimit = EnvUtils.getLong(TioCoreConfigKeys.TIO_CORE_MEMORY_BUDGET_HARD_LIMIT, 0L);
+  private static volatile boolean started = false;
+
+  /** 被暂停读的连接 */
+  private static final Set<ChannelContext> paused = Collections.newSetFromMap(new ConcurrentHashMap<>());
+  private static final LongAdder pausedReads = new LongAdder();
+  private static final LongAdder rejectedConnections = new LongAdder();
+  private static final LongAdder softLimitExceeded = new LongAdder();
+
+  static {
+    long maxDirectMemory = maxDirectMemory();
+    if (hardLimit <= 0) {
+      hardLimit = (long) (maxDirectMemory * 0.9);
+    }
+    if (softLimit <= 0 || softLimit > hardLimit) {
+      softLimit = Math.min((long) (maxDirectMemory * 0.7), hardLimit);
+    }
+  }
+
+  /**
+   * 开启时启动定时检查，由TioConfig.init()和setEnabled(true)调用，多次调用只启动一次
+   */
+  public static void start() {
+    if (!enabled || started) {
+      return;
+    }
+    synchronized (MemoryBudget.class) {
+      if (started) {
+        return;
+      }
+      started = true;
+      log.info("direct memory budget, soft limit:{}, hard limit:{}", softLimit, hardLimit);
+      GlobalScheduler.scheduleWithFixedDelay(MemoryBudget::check, CHECK_INTERVAL_MS, CHECK_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  /**
+   * 是否超过硬上限，超过时应拒绝新连接
+   */
+  public static boolean isOverHardLimit() {
+    return enabled && used() >= hardLimit;
+  }
+
+  /**
+   * 拒绝了一个新连接
+   */
+  public static void rejected() {
+    rejectedConnections.increment();
+  }
+
+  /**
+   * 定时检查：超过软上限时暂停读，降下来后恢复
+   */
+  public static void check() {
+    if (!enabled) {
+      resumeAll();
+      return;
+    }
+    try {
+      long used = used();
+      if (used >= softLimit) {
+        softLimitExceeded.increment();
+        // 先释放池中缓存的缓冲区
+        BufferPoolUtils.release();
+        used = used();
+        if (used >= softLimit) {
+          pauseLargest(connectedContexts(), used - (long) (softLimit * RESUME_RATIO));
+        }
+      } else if (used < softLimit * RESUME_RATIO) {
+        resumeAll();
+      }
+    } catch (Throwable e) {
+      log.error(e.toString(), e);
+    }
+  }
+
+  /**
+   * 按占用从大到小暂停连接的读，直到暂停的连接的占用合计不小于excess，至少暂停一个
+   * @return 本次暂停的连接数
+   */
+  static int pauseLargest(List<ChannelContext> candidates, long excess) {
+    List<long[]> held = new ArrayList<>(candidates.size());
+    for (int i = 0; i < candidates.size(); i++) {
+      ChannelContext channelContext = candidates.get(i);
+      if (!paused.contains(channelContext) && channelContext.readCompletionHandler != null) {
+        held.add(new long[] { heldBytes(channelContext), i });
+      }
+    }
+    held.sort((a, b) -> Long.compare(b[0], a[0]));
+    int count = 0;
+    long freed = 0;
+    for (long[] h : held) {
+      if (count > 0 && freed >= excess) {
+        break;
+      }
+      ChannelContext channelContext = candidates.get((int) h[1]);
+      ReadCompletionHandler readCompletionHandler = channelContext.readCompletionHandler;
+      if (readCompletionHandler != null && paused.add(channelContext)) {
+        readCompletionHandler.pauseRead();
+        pausedReads.increment();
+        freed += h[0];
+        count++;
+      }
+    }
+    if (count > 0) {
+      log.warn("direct memory used {} is over soft limit {}, paused reading {} channels", used(), softLimit, count);
+    }
+    return count;
+  }
+
+  /**
+   * 恢复所有被暂停的连接的读
+   */
+  public static void resumeAll() {
+    if (paused.isEmpty()) {
+      return;
+    }
+    for (ChannelContext channelContext : paused) {
+      paused.remove(channelContext);
+      ReadCompletionHandler readCompletionHandler = channelContext.readCompletionHandler;
+      if (readCompletionHandler != null) {
+        readCompletionHandler.resumeRead();
+      }
+    }
+  }
+
+  /**
+   * 连接关闭时调用
+   */
+  public static void remove(ChannelContext channelContext) {
+    paused.remove(channelContext);
+  }
+
+  /**
+   * 估算连接占用的直接内存字节数：池化的读缓冲区和半包累积缓冲区；发送队列中是还没有编码的packet，不占用直接内存，不计入<br>
+   * 缓冲区不是直接内存（tio.core.buffer.direct=false）时为0
+   */
+  static long heldBytes(ChannelContext channelContext) {
+    if (!BufferPoolUtils.direct) {
+      return 0;
+    }
+    long bytes = 0;
+    DecodeTask decodeTask = channelContext.decodeTask;
+    if (decodeTask != null) {
+      bytes += decodeTask.getCumulationCapacity();
+    }
+    ReadCompletionHandler readCompletionHandler = channelContext.readCompletionHandler;
+    if (readCompletionHandler != null && !readCompletionHandler.isHibernating()) {
+      bytes += readCompletionHandler.nextReadBufferSize();
+    }
+    return bytes;
+  }
+
+  private static List<ChannelContext> connectedContexts() {
+    List<ChannelContext> list = new ArrayList<>();
+    for (TioConfig tioConfig : TioConfig.ALL_GROUPCONTEXTS.toArray(new TioConfig[0])) {
+      SetWithLock<ChannelContext> connections = tioConfig.connections;
+      if (connections == null) {
+        continue;
+      }
+      connections.readLock().lock();
+      try {
+        list.addAll(connections.getObj());
+      } finally {
+        connections.readLock().unlock();
+      }
+    }
+    return list;
+  }
+
+  /**
+   * @return 已使用的直接内存字节数
+   */
+  public static long used() {
+    return DIRECT_POOL == null ? 0 : DIRECT_POOL.getMemoryUsed();
+  }
+
+  /**
+   * @return 已使用的直接内存占硬上限的比例
+   */
+  public static double getUtilization() {
+    return hardLimit <= 0 ? 0 : (double) used() / hardLimit;
+  }
+
+  /**
+   * 最大直接内存：-XX:MaxDirectMemorySize，未设置时与最大堆内存相同
+   */
+  static long maxDirectMemory() {
+    try {
+      // Java 8
+      Class<?> vm = Class.forName("sun.misc.VM");
+      return (Long) vm.getMethod("maxDirectMemory").invoke(null);
+    } catch (Throwable e) {
+      // Java 9+不能直接访问，从启动参数中解析
+    }
+    try {
+      for (String arg : ManagementFactory.getRuntimeMXBean().getInputArguments()) {
+        if (arg.startsWith("-XX:MaxDirectMemorySize=")) {
+          return parseSize(arg.substring("-XX:MaxDirectMemorySize=".length()));
+        }
+      }
+    } catch (Throwable e) {
+      log.warn("Failed to read -XX:MaxDirectMemorySize: {}", e.toString());
+    }
+    return Runtime.getRuntime().maxMemory();
+  }
+
+  static long parseSize(String value) {
+    String v = value.trim().toLowerCase();
+    long unit = 1;
+    char last = v.charAt(v.length() - 1);
+    if (last == 'k') {
+      unit = 1024L;
+    } else if (last == 'm') {
+      unit = 1024L * 1024;
+    } else if (last == 'g') {
+      unit = 1024L * 1024 * 1024;
+    } else if (last == 't') {
+      unit = 1024L * 1024 * 1024 * 1024;
+    }
+    if (unit > 1) {
+      v = v.substring(0, v.length() - 1);
+    }
+    return Long.parseLong(v) * unit;
+  }
+
+  private static BufferPoolMXBean directPool() {
+    for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+      if ("direct".equalsIgnoreCase(pool.getName())) {
+        return pool;
+      }
+    }
+    return null;
+  }
+
+  public static boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * 开启时同时启动定时检查（TioConfig.init()之后再开启也生效）
+   */
+  public static void setEnabled(boolean enabled) {
+    MemoryBudget.enabled = enabled;
+    if (enabled) {
+      start();
+    }
+  }
+
+  static boolean isStarted() {
+    return started;
+  }
+
+  public static long getSoftLimit() {
+    return softLimit;
+  }
+
+  public static void setSoftLimit(long softLimit) {
+    MemoryBudget.softLimit = softLimit;
+  }
+
+  public static long getHardLimit() {
+    return hardLimit;
+  }
+
+  public static void setHardLimit(long hardLimit) {
+    MemoryBudget.hardLimit = hardLimit;
+  }
+
+  /**
+   * @return 当前被暂停读的连接数
+   */
+  public static int getPausedChannels() {
+    return paused.size();
+  }
+
+  /**
+   * @return 累计暂停读的次数
+   */
+  public static long getPausedReads() {
+    return pausedReads.sum();
+  }
+
+  /**
+   * @return 因超过硬上限被拒绝的连接数
+   */
+  public static long getRejectedConnections() {
+    return rejectedConnections.sum();
+  }
+
+  /**
+   * @return 检查时超过软上限的次数
+   */
+  public static long getSoftLimitExceeded() {
+    return softLimitExceeded.sum();
+  }
+}
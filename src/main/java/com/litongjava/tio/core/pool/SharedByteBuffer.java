@@ -0,0 +1,44 @@
+package com.litongjava.tio.core.pool;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 群发时被多个连接共享的编码结果（引用计数）<br>
+ * 每个接收者拿到的是只读buffer的duplicate视图，互不影响position/limit，不复制字节；
+ * 最后一个引用释放后，原始buffer才归还给{@link BufferPoolUtils}
+ */
+public class SharedByteBuffer {
+  /** 原始编码结果，引用归零后归还 */
+  private final ByteBuffer source;
+  /** 只读视图，所有duplicate都从它产生 */
+  private final ByteBuffer readOnly;
+  /** 创建者持有一个引用，群发结束后由创建者释放 */
+  private final AtomicInteger refCnt = new AtomicInteger(1);
+
+  public SharedByteBuffer(ByteBuffer source) {
+    this.source = source;
+    this.readOnly = source.asReadOnlyBuffer();
+  }
+
+  /**
+   * 增加一个引用并返回独立的视图
+   */
+  public ByteBuffer retainedDuplicate() {
+    refCnt.incrementAndGet();
+    return readOnly.duplicate();
+  }
+
+  /**
+   * 释放一个引用，最后一个引用释放时归还buffer
+   */
+  public void release() {
+    if (refCnt.decrementAndGet() == 0) {
+      BufferPoolUtils.clean(source);
+    }
+  }
+
+  public int refCnt() {
+    return refCnt.get();
+  }
+}
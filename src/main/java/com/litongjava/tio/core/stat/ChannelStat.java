@@ -1,11 +1,17 @@
 package com.litongjava.tio.core.stat;
 
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
 import com.litongjava.tio.utils.SystemTimer;
 
 /**
+ * 连接的统计<br>
+ * 每个连接一份，计数器默认是AtomicLong；紧凑连接（TioConfig.compactChannelContext）时不创建AtomicLong，
+ * 计数记在volatile long上，通过FieldUpdater原子更新。add*()和get*Value()两种模式下都可用
  * @author tanyaowu
  * 2017年4月1日 下午2:17:35
  */
@@ -48,51 +54,139 @@ public class ChannelStat implements java.io.Serializable {
    */
   public long timeInReconnQueue = SystemTimer.currTime;
   /**
-   * 本连接已发送的字节数
+   * 本连接已发送的字节数<br>
+   * 紧凑连接（TioConfig.compactChannelContext）时为null，请用addSentBytes()和getSentBytesValue()
    */
-  public final AtomicLong sentBytes = new AtomicLong();
+  public final AtomicLong sentBytes;
   /**
-   * 本连接已发送的packet数
+   * 本连接已发送的packet数<br>
+   * 紧凑连接（TioConfig.compactChannelContext）时为null，请用addSentPackets()和getSentPacketsValue()
    */
-  public final AtomicLong sentPackets = new AtomicLong();
+  public final AtomicLong sentPackets;
   /**
-   * 本连接已处理的字节数
+   * 本连接已处理的字节数<br>
+   * 紧凑连接（TioConfig.compactChannelContext）时为null，请用addHandledBytes()和getHandledBytesValue()
    */
-  public final AtomicLong handledBytes = new AtomicLong();
+  public final AtomicLong handledBytes;
   /**
-   * 本连接已处理的packet数
+   * 本连接已处理的packet数<br>
+   * 紧凑连接（TioConfig.compactChannelContext）时为null，请用addHandledPackets()和getHandledPacketsValue()
    */
-  public final AtomicLong handledPackets = new AtomicLong();
+  public final AtomicLong handledPackets;
   /**
    * 处理消息包耗时，单位：毫秒
-   * 拿这个值除以handledPackets，就是处理每个消息包的平均耗时
+   * 拿这个值除以handledPackets，就是处理每个消息包的平均耗时<br>
+   * 紧凑连接（TioConfig.compactChannelContext）时为null，请用addHandledPacketCosts()和getHandledPacketCostsValue()
    */
-  public final AtomicLong handledPacketCosts = new AtomicLong();
+  public final AtomicLong handledPacketCosts;
   /**
-   * 本连接已接收的字节数
+   * 本连接已接收的字节数<br>
+   * 紧凑连接（TioConfig.compactChannelContext）时为null，请用addReceivedBytes()和getReceivedBytesValue()
    */
-  public final AtomicLong receivedBytes = new AtomicLong();
+  public final AtomicLong receivedBytes;
   /**
-   * 本连接已接收了多少次TCP数据包
+   * 本连接已接收了多少次TCP数据包<br>
+   * 紧凑连接（TioConfig.compactChannelContext）时为null，请用addReceivedTcps()和getReceivedTcpsValue()
    */
-  public final AtomicLong receivedTcps = new AtomicLong();
+  public final AtomicLong receivedTcps;
   /**
-   * 本连接已接收的packet数
+   * 本连接已接收的packet数<br>
+   * 紧凑连接（TioConfig.compactChannelContext）时为null，请用addReceivedPackets()和getReceivedPacketsValue()
    */
-  public final AtomicLong receivedPackets = new AtomicLong();
+  public final AtomicLong receivedPackets;
   /**
-   * 心跳超时次数
+   * 心跳超时次数<br>
+   * 紧凑连接时为null，请用incrementHeartbeatTimeoutCount()和getHeartbeatTimeoutCount()
    */
-  public AtomicInteger heartbeatTimeoutCount = new AtomicInteger();
+  public AtomicInteger heartbeatTimeoutCount;
+  /** 紧凑连接时的计数，volatile long通过FieldUpdater原子更新，不为每个计数器创建AtomicLong */
+  private volatile long sentBytesCount;
+  private volatile long sentPacketsCount;
+  private volatile long handledBytesCount;
+  private volatile long handledPacketsCount;
+  private volatile long handledPacketCostsCount;
+  private volatile long receivedBytesCount;
+  private volatile long receivedTcpsCount;
+  private volatile long receivedPacketsCount;
+  private volatile int heartbeatTimeouts;
+  /**
+   * 发送队列中等待发送的packet数
+   */
+  private volatile long sendQueuePackets;
+  /**
+   * 发送队列中等待发送的字节数（只统计已知长度的packet）
+   */
+  private volatile long sendQueueBytes;
+  /**
+   * 每次TCP读到的字节数分布，TioConfig.channelReadSizeStatOn时第一次读到数据时创建
+   */
+  private volatile SizeHistogram readSizes;
+  /**
+   * 各阶段的耗时分布，TioConfig.channelLatencyStatOn时第一次记录时创建
+   */
+  private volatile LatencyStats latency;
+  /**
+   * 是否已经并入GroupStat，见GroupStat.retire()
+   */
+  private volatile int retired;
+
+  private static final AtomicLongFieldUpdater<ChannelStat> SENT_BYTES = AtomicLongFieldUpdater.newUpdater(ChannelStat.class, "sentBytesCount");
+  private static final AtomicLongFieldUpdater<ChannelStat> SENT_PACKETS = AtomicLongFieldUpdater.newUpdater(ChannelStat.class, "sentPacketsCount");
+  private static final AtomicLongFieldUpdater<ChannelStat> HANDLED_BYTES = AtomicLongFieldUpdater.newUpdater(ChannelStat.class, "handledBytesCount");
+  private static final AtomicLongFieldUpdater<ChannelStat> HANDLED_PACKETS = AtomicLongFieldUpdater.newUpdater(ChannelStat.class, "handledPacketsCount");
+  private static final AtomicLongFieldUpdater<ChannelStat> HANDLED_PACKET_COSTS = AtomicLongFieldUpdater.newUpdater(ChannelStat.class, "handledPacketCostsCount");
+  private static final AtomicLongFieldUpdater<ChannelStat> RECEIVED_BYTES = AtomicLongFieldUpdater.newUpdater(ChannelStat.class, "receivedBytesCount");
+  private static final AtomicLongFieldUpdater<ChannelStat> RECEIVED_TCPS = AtomicLongFieldUpdater.newUpdater(ChannelStat.class, "receivedTcpsCount");
+  private static final AtomicLongFieldUpdater<ChannelStat> RECEIVED_PACKETS = AtomicLongFieldUpdater.newUpdater(ChannelStat.class, "receivedPacketsCount");
+  private static final AtomicLongFieldUpdater<ChannelStat> SEND_QUEUE_PACKETS = AtomicLongFieldUpdater.newUpdater(ChannelStat.class, "sendQueuePackets");
+  private static final AtomicLongFieldUpdater<ChannelStat> SEND_QUEUE_BYTES = AtomicLongFieldUpdater.newUpdater(ChannelStat.class, "sendQueueBytes");
+  private static final AtomicIntegerFieldUpdater<ChannelStat> HEARTBEAT_TIMEOUT_COUNT = AtomicIntegerFieldUpdater.newUpdater(ChannelStat.class,
+      "heartbeatTimeouts");
+  private static final AtomicIntegerFieldUpdater<ChannelStat> RETIRED = AtomicIntegerFieldUpdater.newUpdater(ChannelStat.class, "retired");
+  private static final AtomicReferenceFieldUpdater<ChannelStat, LatencyStats> LATENCY = AtomicReferenceFieldUpdater.newUpdater(ChannelStat.class,
+      LatencyStats.class, "latency");
+  private static final AtomicReferenceFieldUpdater<ChannelStat, SizeHistogram> READ_SIZES = AtomicReferenceFieldUpdater
+      .newUpdater(ChannelStat.class, SizeHistogram.class, "readSizes");
+
+  public ChannelStat() {
+    this(false);
+  }
+
+  /**
+   * @param compact 是否不创建AtomicLong计数器，见TioConfig.compactChannelContext
+   */
+  public ChannelStat(boolean compact) {
+    if (compact) {
+      sentBytes = null;
+      sentPackets = null;
+      handledBytes = null;
+      handledPackets = null;
+      handledPacketCosts = null;
+      receivedBytes = null;
+      receivedTcps = null;
+      receivedPackets = null;
+    } else {
+      sentBytes = new AtomicLong();
+      sentPackets = new AtomicLong();
+      handledBytes = new AtomicLong();
+      handledPackets = new AtomicLong();
+      handledPacketCosts = new AtomicLong();
+      receivedBytes = new AtomicLong();
+      receivedTcps = new AtomicLong();
+      receivedPackets = new AtomicLong();
+      heartbeatTimeoutCount = new AtomicInteger();
+    }
+  }
 
   /**
    * 平均每次TCP接收到的字节数，这个可以用来监控慢攻击，配置PacketsPerTcpReceive定位慢攻击
    */
   public double getBytesPerTcpReceive() {
-    if (receivedTcps.get() == 0) {
+    long tcps = getReceivedTcpsValue();
+    if (tcps == 0) {
       return 0;
     }
-    double ret = (double) receivedBytes.get() / (double) receivedTcps.get();
+    double ret = (double) getReceivedBytesValue() / (double) tcps;
     return ret;
   }
 
@@ -100,10 +194,11 @@ public class ChannelStat implements java.io.Serializable {
    * 平均每次TCP接收到的业务包数，这个可以用来监控慢攻击，此值越小越有攻击嫌疑
    */
   public double getPacketsPerTcpReceive() {
-    if (receivedTcps.get() == 0) {
+    long tcps = getReceivedTcpsValue();
+    if (tcps == 0) {
       return 0;
     }
-    double ret = (double) receivedPackets.get() / (double) receivedTcps.get();
+    double ret = (double) getReceivedPacketsValue() / (double) tcps;
     return ret;
   }
 
@@ -117,15 +212,33 @@ public class ChannelStat implements java.io.Serializable {
   /**
    * @return the countHandledByte
    */
+  /**
+   * 紧凑连接时返回当前值的快照，修改它不影响计数
+   */
   public AtomicLong getHandledBytes() {
-    return handledBytes;
+    AtomicLong counter = handledBytes;
+    return counter != null ? counter : new AtomicLong(handledBytesCount);
+  }
+
+  public long getHandledBytesValue() {
+    AtomicLong counter = handledBytes;
+    return counter != null ? counter.get() : handledBytesCount;
   }
 
   /**
    * @return the countHandledPacket
    */
+  /**
+   * 紧凑连接时返回当前值的快照，修改它不影响计数
+   */
   public AtomicLong getHandledPackets() {
-    return handledPackets;
+    AtomicLong counter = handledPackets;
+    return counter != null ? counter : new AtomicLong(handledPacketsCount);
+  }
+
+  public long getHandledPacketsValue() {
+    AtomicLong counter = handledPackets;
+    return counter != null ? counter.get() : handledPacketsCount;
   }
 
   /**
@@ -145,29 +258,65 @@ public class ChannelStat implements java.io.Serializable {
   /**
    * @return the countReceivedByte
    */
+  /**
+   * 紧凑连接时返回当前值的快照，修改它不影响计数
+   */
   public AtomicLong getReceivedBytes() {
-    return receivedBytes;
+    AtomicLong counter = receivedBytes;
+    return counter != null ? counter : new AtomicLong(receivedBytesCount);
+  }
+
+  public long getReceivedBytesValue() {
+    AtomicLong counter = receivedBytes;
+    return counter != null ? counter.get() : receivedBytesCount;
   }
 
   /**
    * @return the countReceivedPacket
    */
+  /**
+   * 紧凑连接时返回当前值的快照，修改它不影响计数
+   */
   public AtomicLong getReceivedPackets() {
-    return receivedPackets;
+    AtomicLong counter = receivedPackets;
+    return counter != null ? counter : new AtomicLong(receivedPacketsCount);
+  }
+
+  public long getReceivedPacketsValue() {
+    AtomicLong counter = receivedPackets;
+    return counter != null ? counter.get() : receivedPacketsCount;
   }
 
   /**
    * @return the countSentByte
    */
+  /**
+   * 紧凑连接时返回当前值的快照，修改它不影响计数
+   */
   public AtomicLong getSentBytes() {
-    return sentBytes;
+    AtomicLong counter = sentBytes;
+    return counter != null ? counter : new AtomicLong(sentBytesCount);
+  }
+
+  public long getSentBytesValue() {
+    AtomicLong counter = sentBytes;
+    return counter != null ? counter.get() : sentBytesCount;
   }
 
   /**
    * @return the countSentPacket
    */
+  /**
+   * 紧凑连接时返回当前值的快照，修改它不影响计数
+   */
   public AtomicLong getSentPackets() {
-    return sentPackets;
+    AtomicLong counter = sentPackets;
+    return counter != null ? counter : new AtomicLong(sentPacketsCount);
+  }
+
+  public long getSentPacketsValue() {
+    AtomicLong counter = sentPackets;
+    return counter != null ? counter.get() : sentPacketsCount;
   }
 
   /**
@@ -257,12 +406,38 @@ public class ChannelStat implements java.io.Serializable {
   /**
    * @return the receivedTcps
    */
+  /**
+   * 紧凑连接时返回当前值的快照，修改它不影响计数
+   */
   public AtomicLong getReceivedTcps() {
-    return receivedTcps;
+    AtomicLong counter = receivedTcps;
+    return counter != null ? counter : new AtomicLong(receivedTcpsCount);
   }
 
+  public long getReceivedTcpsValue() {
+    AtomicLong counter = receivedTcps;
+    return counter != null ? counter.get() : receivedTcpsCount;
+  }
+
+  public long getSendQueuePackets() {
+    return sendQueuePackets;
+  }
+
+  public long getSendQueueBytes() {
+    return sendQueueBytes;
+  }
+
+  /**
+   * 紧凑连接时返回当前值的快照，修改它不影响计数
+   */
   public AtomicLong getHandledPacketCosts() {
-    return handledPacketCosts;
+    AtomicLong counter = handledPacketCosts;
+    return counter != null ? counter : new AtomicLong(handledPacketCostsCount);
+  }
+
+  public long getHandledPacketCostsValue() {
+    AtomicLong counter = handledPacketCosts;
+    return counter != null ? counter.get() : handledPacketCostsCount;
   }
 
   /**
@@ -270,9 +445,120 @@ public class ChannelStat implements java.io.Serializable {
    * @return
    */
   public double getHandledCostsPerPacket() {
-    if (handledPackets.get() > 0) {
-      return handledPacketCosts.get() / handledPackets.get();
+    long packets = getHandledPacketsValue();
+    if (packets > 0) {
+      return getHandledPacketCostsValue() / packets;
     }
     return 0;
   }
+
+  public long addSentBytes(long delta) {
+    AtomicLong counter = sentBytes;
+    return counter != null ? counter.addAndGet(delta) : SENT_BYTES.addAndGet(this, delta);
+  }
+
+  public long addSentPackets(long delta) {
+    AtomicLong counter = sentPackets;
+    return counter != null ? counter.addAndGet(delta) : SENT_PACKETS.addAndGet(this, delta);
+  }
+
+  public long addHandledBytes(long delta) {
+    AtomicLong counter = handledBytes;
+    return counter != null ? counter.addAndGet(delta) : HANDLED_BYTES.addAndGet(this, delta);
+  }
+
+  public long addHandledPackets(long delta) {
+    AtomicLong counter = handledPackets;
+    return counter != null ? counter.addAndGet(delta) : HANDLED_PACKETS.addAndGet(this, delta);
+  }
+
+  public long addHandledPacketCosts(long delta) {
+    AtomicLong counter = handledPacketCosts;
+    return counter != null ? counter.addAndGet(delta) : HANDLED_PACKET_COSTS.addAndGet(this, delta);
+  }
+
+  public long addReceivedBytes(long delta) {
+    AtomicLong counter = receivedBytes;
+    return counter != null ? counter.addAndGet(delta) : RECEIVED_BYTES.addAndGet(this, delta);
+  }
+
+  public long addReceivedTcps(long delta) {
+    AtomicLong counter = receivedTcps;
+    return counter != null ? counter.addAndGet(delta) : RECEIVED_TCPS.addAndGet(this, delta);
+  }
+
+  public long addReceivedPackets(long delta) {
+    AtomicLong counter = receivedPackets;
+    return counter != null ? counter.addAndGet(delta) : RECEIVED_PACKETS.addAndGet(this, delta);
+  }
+
+  public long addSendQueuePackets(long delta) {
+    return SEND_QUEUE_PACKETS.addAndGet(this, delta);
+  }
+
+  public long addSendQueueBytes(long delta) {
+    return SEND_QUEUE_BYTES.addAndGet(this, delta);
+  }
+
+  /**
+   * @return 加1后的心跳超时次数
+   */
+  public int incrementHeartbeatTimeoutCount() {
+    AtomicInteger counter = heartbeatTimeoutCount;
+    return counter != null ? counter.incrementAndGet() : HEARTBEAT_TIMEOUT_COUNT.incrementAndGet(this);
+  }
+
+  public int getHeartbeatTimeoutCount() {
+    AtomicInteger counter = heartbeatTimeoutCount;
+    return counter != null ? counter.get() : heartbeatTimeouts;
+  }
+
+  /**
+   * 记录一次TCP读到的字节数
+   */
+  public void recordReadSize(int size) {
+    SizeHistogram histogram = readSizes;
+    if (histogram == null) {
+      READ_SIZES.compareAndSet(this, null, new SizeHistogram());
+      histogram = readSizes;
+    }
+    histogram.record(size);
+  }
+
+  /**
+   * @return 本连接的耗时分布，不存在时创建
+   */
+  public LatencyStats getOrCreateLatency() {
+    LatencyStats stats = latency;
+    if (stats == null) {
+      LATENCY.compareAndSet(this, null, new LatencyStats());
+      stats = latency;
+    }
+    return stats;
+  }
+
+  /**
+   * @return 本连接的耗时分布，没有开启TioConfig.channelLatencyStatOn或还没有记录过时为null
+   */
+  public LatencyStats getLatency() {
+    return latency;
+  }
+
+  /**
+   * @return 每次TCP读到的字节数分布，没有开启TioConfig.channelReadSizeStatOn或还没有记录过时为null
+   */
+  public SizeHistogram getReadSizes() {
+    return readSizes;
+  }
+
+  /**
+   * @return 是否由本次调用标记为已并入GroupStat，已经标记过的返回false
+   */
+  public boolean markRetired() {
+    return RETIRED.compareAndSet(this, 0, 1);
+  }
+
+  public boolean isRetired() {
+    return retired == 1;
+  }
 }
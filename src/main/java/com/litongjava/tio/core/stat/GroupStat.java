@@ -2,8 +2,17 @@ package com.litongjava.tio.core.stat;
 
 import java.util.concurrent.atomic.AtomicLong;
 
+import com.litongjava.tio.core.ChannelContext;
+
 /**
- * 
+ * 一个TioConfig下所有连接的统计<br>
+ * 只增不减的计数器是StatCounter（LongAdder），多个IO线程同时累加时不争抢同一缓存行；
+ * 有增有减、需要随时准确读取的（发送队列、串行通道、读休眠）仍是AtomicLong<br>
+ * 读取时用snapshot()，各项计数只读一次；TioConfig.statGroupLazy为true时，收发处理的计数只记在ChannelStat上，
+ * 取快照时再把还在的连接汇总进来，连接删除时通过retire()并入本对象<br>
+ * 注意：statGroupLazy为true时，receivedPackets、receivedBytes、receivedTcps、handledPackets、handledBytes、handledPacketCosts、
+ * sentPackets、sentBytes这几个字段（以及对应的getter和getBytesPerTcpReceive()等平均值）只包含已删除的连接，
+ * 不是整个TioConfig的合计，这时要用TioConfig.getGroupStatSnapshot()
  * @author tanyaowu 2017年10月19日 上午9:40:48
  */
 public class GroupStat implements java.io.Serializable {
@@ -11,48 +20,89 @@ public class GroupStat implements java.io.Serializable {
   /**
    * 关闭了多少连接
    */
-  public final AtomicLong closed = new AtomicLong();
+  public final StatCounter closed = new StatCounter();
   /**
-   * 接收到的消息包
+   * 接收到的消息包<br>
+   * statGroupLazy时只包含已删除的连接
    */
-  public final AtomicLong receivedPackets = new AtomicLong();
+  public final StatCounter receivedPackets = new StatCounter();
   /**
-   * 接收到的消息字节数
+   * 接收到的消息字节数<br>
+   * statGroupLazy时只包含已删除的连接
    */
-  public final AtomicLong receivedBytes = new AtomicLong();
+  public final StatCounter receivedBytes = new StatCounter();
   /**
-   * 处理了的消息包数
+   * 处理了的消息包数<br>
+   * statGroupLazy时只包含已删除的连接
    */
-  public final AtomicLong handledPackets = new AtomicLong();
+  public final StatCounter handledPackets = new StatCounter();
   /**
-   * 处理消息包耗时，单位：毫秒
+   * 处理消息包耗时，单位：毫秒<br>
+   * statGroupLazy时只包含已删除的连接
+   */
+  public final StatCounter handledPacketCosts = new StatCounter();
+  /**
+   * 处理了多少字节<br>
+   * statGroupLazy时只包含已删除的连接
+   */
+  public final StatCounter handledBytes = new StatCounter();
+  /**
+   * 发送了的消息包数<br>
+   * statGroupLazy时只包含已删除的连接
+   */
+  public final StatCounter sentPackets = new StatCounter();
+  /**
+   * 发送了的字节数<br>
+   * statGroupLazy时只包含已删除的连接
+   */
+  public final StatCounter sentBytes = new StatCounter();
+  /**
+   * 所有连接发送队列中等待发送的packet数
+   */
+  public final AtomicLong sendQueuePackets = new AtomicLong();
+  /**
+   * 所有连接发送队列中等待发送的字节数（只统计已知长度的packet）
+   */
+  public final AtomicLong sendQueueBytes = new AtomicLong();
+  /**
+   * 因发送队列超过上限而被拒绝或丢弃的packet数
+   */
+  public final StatCounter sendQueueOverflows = new StatCounter();
+  /**
+   * ORDERED模式下所有连接串行通道中等待处理的packet数
+   */
+  public final AtomicLong laneQueuedPackets = new AtomicLong();
+  /**
+   * 本IP已接收了多少次TCP数据包<br>
+   * statGroupLazy时只包含已删除的连接
    */
-  public final AtomicLong handledPacketCosts = new AtomicLong();
+  public final StatCounter receivedTcps = new StatCounter();
   /**
-   * 处理了多少字节
+   * 所有连接每次TCP读到的字节数分布，TioConfig.readSizeStatOn时记录
    */
-  public final AtomicLong handledBytes = new AtomicLong();
+  public final SizeHistogram readSizes = new SizeHistogram();
   /**
-   * 发送了的消息包数
+   * 排队、业务处理、发送、编码的耗时分布
    */
-  public final AtomicLong sentPackets = new AtomicLong();
+  public final LatencyStats latency = new LatencyStats();
   /**
-   * 发送了的字节数
+   * 读休眠：因连接空闲而归还读buffer的次数
    */
-  public final AtomicLong sentBytes = new AtomicLong();
+  public final StatCounter hibernatedReads = new StatCounter();
   /**
-   * 本IP已接收了多少次TCP数据包
+   * 读休眠：当前不持有读buffer的连接数
    */
-  public final AtomicLong receivedTcps = new AtomicLong();
+  public final AtomicLong hibernatingChannels = new AtomicLong();
 
   /**
    * 平均每次TCP接收到的字节数，这个可以用来监控慢攻击，配置PacketsPerTcpReceive定位慢攻击
    */
   public double getBytesPerTcpReceive() {
-    if (receivedTcps.get() == 0) {
+    long tcps = receivedTcps.sum();
+    if (tcps == 0) {
       return 0;
     }
-    double ret = (double) receivedBytes.get() / (double) receivedTcps.get();
+    double ret = (double) receivedBytes.sum() / (double) tcps;
     return ret;
   }
 
@@ -60,66 +110,67 @@ public class GroupStat implements java.io.Serializable {
    * 平均每次TCP接收到的业务包数，这个可以用来监控慢攻击，此值越小越有攻击嫌疑
    */
   public double getPacketsPerTcpReceive() {
-    if (receivedTcps.get() == 0) {
+    long tcps = receivedTcps.sum();
+    if (tcps == 0) {
       return 0;
     }
-    double ret = (double) receivedPackets.get() / (double) receivedTcps.get();
+    double ret = (double) receivedPackets.sum() / (double) tcps;
     return ret;
   }
 
   /**
    * @return the closed
    */
-  public AtomicLong getClosed() {
+  public StatCounter getClosed() {
     return closed;
   }
 
   /**
    * @return the handledBytes
    */
-  public AtomicLong getHandledBytes() {
+  public StatCounter getHandledBytes() {
     return handledBytes;
   }
 
   /**
    * @return the handledPackets
    */
-  public AtomicLong getHandledPackets() {
+  public StatCounter getHandledPackets() {
     return handledPackets;
   }
 
   /**
    * @return the receivedBytes
    */
-  public AtomicLong getReceivedBytes() {
+  public StatCounter getReceivedBytes() {
     return receivedBytes;
   }
 
   /**
    * @return the receivedPackets
    */
-  public AtomicLong getReceivedPackets() {
+  public StatCounter getReceivedPackets() {
     return receivedPackets;
   }
 
   /**
    * @return the sentBytes
    */
-  public AtomicLong getSentBytes() {
+  public StatCounter getSentBytes() {
     return sentBytes;
   }
 
   /**
    * @return the sentPacket
    */
-  public AtomicLong getSentPackets() {
+  public StatCounter getSentPackets() {
     return sentPackets;
   }
 
   /**
    * @return the receivedTcps
    */
-  public AtomicLong getReceivedTcps() {
+  public StatCounter getReceivedTcps() {
     return receivedTcps;
   }
 
@@ -128,19 +179,82 @@ public class GroupStat implements java.io.Serializable {
    * 
    * @return
    */
-  public AtomicLong getHandledPacketCosts() {
+  public StatCounter getHandledPacketCosts() {
     return handledPacketCosts;
   }
 
+  public AtomicLong getSendQueuePackets() {
+    return sendQueuePackets;
+  }
+
+  public AtomicLong getSendQueueBytes() {
+    return sendQueueBytes;
+  }
+
+  public StatCounter getSendQueueOverflows() {
+    return sendQueueOverflows;
+  }
+
   /**
    * 处理packet平均耗时，单位：毫秒
    * 
    * @return
    */
   public double getHandledCostsPerPacket() {
-    if (handledPackets.get() > 0) {
-      return handledPacketCosts.get() / handledPackets.get();
+    long packets = handledPackets.sum();
+    if (packets > 0) {
+      return handledPacketCosts.sum() / packets;
     }
     return 0;
   }
+
+  /**
+   * statGroupLazy时，连接删除后把它的收发处理计数并入本对象，之后取快照不再汇总它
+   * @param stat
+   */
+  public void retire(ChannelStat stat) {
+    if (!stat.markRetired()) {
+      return;
+    }
+    receivedPackets.add(stat.getReceivedPacketsValue());
+    receivedBytes.add(stat.getReceivedBytesValue());
+    receivedTcps.add(stat.getReceivedTcpsValue());
+    handledPackets.add(stat.getHandledPacketsValue());
+    handledBytes.add(stat.getHandledBytesValue());
+    handledPacketCosts.add(stat.getHandledPacketCostsValue());
+    sentPackets.add(stat.getSentPacketsValue());
+    sentBytes.add(stat.getSentBytesValue());
+  }
+
+  /**
+   * @param channelContexts 需要汇总进来的连接（statGroupLazy时传入当前所有连接），null表示不汇总
+   * @return 各项计数的快照
+   */
+  public GroupStatSnapshot snapshot(Iterable<ChannelContext> channelContexts) {
+    GroupStatSnapshot snapshot = new GroupStatSnapshot();
+    snapshot.closed = closed.sum();
+    snapshot.receivedPackets = receivedPackets.sum();
+    snapshot.receivedBytes = receivedBytes.sum();
+    snapshot.receivedTcps = receivedTcps.sum();
+    snapshot.handledPackets = handledPackets.sum();
+    snapshot.handledBytes = handledBytes.sum();
+    snapshot.handledPacketCosts = handledPacketCosts.sum();
+    snapshot.sentPackets = sentPackets.sum();
+    snapshot.sentBytes = sentBytes.sum();
+    snapshot.sendQueuePackets = sendQueuePackets.get();
+    snapshot.sendQueueBytes = sendQueueBytes.get();
+    snapshot.sendQueueOverflows = sendQueueOverflows.sum();
+    snapshot.laneQueuedPackets = laneQueuedPackets.get();
+    snapshot.hibernatedReads = hibernatedReads.sum();
+    snapshot.hibernatingChannels = hibernatingChannels.get();
+    if (channelContexts != null) {
+      for (ChannelContext channelContext : channelContexts) {
+        // 已经并入本对象的不再重复汇总
+        if (!channelContext.stat.isRetired()) {
+          snapshot.add(channelContext.stat);
+        }
+      }
+    }
+    return snapshot;
+  }
 }
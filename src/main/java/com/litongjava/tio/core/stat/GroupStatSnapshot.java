@@ -0,0 +1,121 @@
+package com.litongjava.tio.core.stat;
+
+/**
+ * GroupStat的快照<br>
+ * 每个计数器只读取一次，平均值等由同一组数值算出，打印统计时不会出现前后对不上的情况
+ * @author Tong Li
+ */
+public class GroupStatSnapshot implements java.io.Serializable {
+  private static final long serialVersionUID = -2514727805812097383L;
+
+  long closed;
+  long receivedPackets;
+  long receivedBytes;
+  long receivedTcps;
+  long handledPackets;
+  long handledBytes;
+  long handledPacketCosts;
+  long sentPackets;
+  long sentBytes;
+  long sendQueuePackets;
+  long sendQueueBytes;
+  long sendQueueOverflows;
+  long laneQueuedPackets;
+  long hibernatedReads;
+  long hibernatingChannels;
+
+  void add(ChannelStat stat) {
+    receivedPackets += stat.getReceivedPacketsValue();
+    receivedBytes += stat.getReceivedBytesValue();
+    receivedTcps += stat.getReceivedTcpsValue();
+    handledPackets += stat.getHandledPacketsValue();
+    handledBytes += stat.getHandledBytesValue();
+    handledPacketCosts += stat.getHandledPacketCostsValue();
+    sentPackets += stat.getSentPacketsValue();
+    sentBytes += stat.getSentBytesValue();
+  }
+
+  public long getClosed() {
+    return closed;
+  }
+
+  public long getReceivedPackets() {
+    return receivedPackets;
+  }
+
+  public long getReceivedBytes() {
+    return receivedBytes;
+  }
+
+  public long getReceivedTcps() {
+    return receivedTcps;
+  }
+
+  public long getHandledPackets() {
+    return handledPackets;
+  }
+
+  public long getHandledBytes() {
+    return handledBytes;
+  }
+
+  /**
+   * 处理消息包耗时，单位：毫秒
+   */
+  public long getHandledPacketCosts() {
+    return handledPacketCosts;
+  }
+
+  public long getSentPackets() {
+    return sentPackets;
+  }
+
+  public long getSentBytes() {
+    return sentBytes;
+  }
+
+  public long getSendQueuePackets() {
+    return sendQueuePackets;
+  }
+
+  public long getSendQueueBytes() {
+    return sendQueueBytes;
+  }
+
+  public long getSendQueueOverflows() {
+    return sendQueueOverflows;
+  }
+
+  public long getLaneQueuedPackets() {
+    return laneQueuedPackets;
+  }
+
+  public long getHibernatedReads() {
+    return hibernatedReads;
+  }
+
+  public long getHibernatingChannels() {
+    return hibernatingChannels;
+  }
+
+  /**
+   * 平均每次TCP接收到的字节数
+   */
+  public double getBytesPerTcpReceive() {
+    return receivedTcps == 0 ? 0 : (double) receivedBytes / (double) receivedTcps;
+  }
+
+  /**
+   * 平均每次TCP接收到的业务包数
+   */
+  public double getPacketsPerTcpReceive() {
+    return receivedTcps == 0 ? 0 : (double) receivedPackets / (double) receivedTcps;
+  }
+
+  /**
+   * 处理packet平均耗时，单位：毫秒
+   */
+  public double getHandledCostsPerPacket() {
+    return handledPackets == 0 ? 0 : (double) handledPacketCosts / (double) handledPackets;
+  }
+}
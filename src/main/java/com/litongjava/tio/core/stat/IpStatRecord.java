@@ -0,0 +1,268 @@
+package com.litongjava.tio.core.stat;
+
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.litongjava.tio.utils.SystemTimer;
+
+/**
+ * 一个IP的统计，所有监控时段共用一个对象<br>
+ * 1、每个时段是一个环形的滑动窗口，窗口分成BUCKETS个桶，所有时段、所有桶、所有指标放在同一个long数组中<br>
+ * 2、桶过期不需要定时任务：写入时发现桶属于旧的轮次就清零重用，读取时跳过旧轮次的桶<br>
+ * 3、计数器按需分片：没有竞争时直接CAS写一份数组；出现竞争（NAT后面的大量连接）后按线程分散写到多份数组中，读取时求和<br>
+ * 4、给IpStatListener回调用的快照按SystemTimer的时刻缓存，同一时刻内的回调共用，不再每个packet生成一次
+ * @author Tong Li
+ */
+public class IpStatRecord {
+  public static final int REQUEST_COUNT = 0;
+  public static final int DECODE_ERROR_COUNT = 1;
+  public static final int RECEIVED_BYTES = 2;
+  public static final int RECEIVED_TCPS = 3;
+  public static final int RECEIVED_PACKETS = 4;
+  public static final int HANDLED_PACKETS = 5;
+  public static final int HANDLED_BYTES = 6;
+  public static final int HANDLED_PACKET_COSTS = 7;
+  public static final int SENT_BYTES = 8;
+  public static final int SENT_PACKETS = 9;
+  private static final int METRICS = 10;
+  /** 每个时段分成多少个桶，滑动窗口的精度是时段的1/BUCKETS */
+  public static final int BUCKETS = 8;
+  /** 连接已从IpStats释放后使用的记录：没有时段，add什么也不做，snapshots返回空数组 */
+  public static final IpStatRecord RELEASED = new IpStatRecord("$RELEASED", new Long[0], -1);
+  private static final int MAX_STRIPES = Math.min(8, Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors() - 1) << 1));
+
+  private final String ip;
+  /** 监控时段，单位：秒 */
+  private final Long[] durations;
+  /** 每个桶的时长，单位：毫秒 */
+  private final long[] bucketMillis;
+  /** 每个桶当前属于第几轮（时间/桶时长） */
+  private final AtomicLongArray epochs;
+  private final AtomicLongArray base;
+  private volatile AtomicLongArray[] stripes;
+  /** 最近一次有桶轮换或有连接释放的时间 */
+  private volatile long lastAccess = SystemTimer.currTime;
+  /** 正在使用这个对象的连接数，大于0时不会过期 */
+  private final AtomicInteger connections = new AtomicInteger();
+  /** IpStats的时段配置版本，时段变化后旧对象不再使用 */
+  private final int generation;
+  private volatile boolean removed = false;
+  /** 最近一次生成的所有时段的快照 */
+  private volatile Snapshots cachedSnapshots;
+
+  public IpStatRecord(String ip, Long[] durations, int generation) {
+    this.ip = ip;
+    this.durations = durations;
+    this.generation = generation;
+    this.bucketMillis = new long[durations.length];
+    for (int i = 0; i < durations.length; i++) {
+      bucketMillis[i] = Math.max(1, durations[i] * 1000 / BUCKETS);
+    }
+    this.epochs = new AtomicLongArray(durations.length * BUCKETS);
+    this.base = new AtomicLongArray(durations.length * BUCKETS * METRICS);
+  }
+
+  public String getIp() {
+    return ip;
+  }
+
+  public int durationCount() {
+    return durations.length;
+  }
+
+  public int getGeneration() {
+    return generation;
+  }
+
+  public long getLastAccess() {
+    return lastAccess;
+  }
+
+  public boolean isRemoved() {
+    return removed;
+  }
+
+  public void markRemoved() {
+    removed = true;
+  }
+
+  /**
+   * 连接开始使用
+   */
+  public void acquire() {
+    connections.incrementAndGet();
+  }
+
+  /**
+   * 连接不再使用
+   */
+  public void release() {
+    connections.decrementAndGet();
+    lastAccess = SystemTimer.currTime;
+  }
+
+  /**
+   * @param now
+   * @param maxDurationMillis 最长的时段
+   * @return 是否没有连接在用、并且最长的时段内没有数据
+   */
+  public boolean isIdle(long now, long maxDurationMillis) {
+    return connections.get() <= 0 && now - lastAccess > maxDurationMillis;
+  }
+
+  /**
+   * 所有时段的当前桶加上delta
+   * @param metric REQUEST_COUNT等
+   * @param delta
+   */
+  public void add(int metric, long delta) {
+    long now = SystemTimer.currTime;
+    for (int d = 0; d < bucketMillis.length; d++) {
+      addAt(slot(d, now) * METRICS + metric, delta);
+    }
+  }
+
+  private int slot(int d, long now) {
+    long epoch = now / bucketMillis[d];
+    int slot = d * BUCKETS + (int) (epoch % BUCKETS);
+    long old = epochs.get(slot);
+    if (old < epoch && epochs.compareAndSet(slot, old, epoch)) {
+      // 桶属于旧的轮次，清零后重用；清零期间并发写入的少量计数可能丢失
+      reset(slot);
+      lastAccess = now;
+    }
+    return slot;
+  }
+
+  private void reset(int slot) {
+    int from = slot * METRICS;
+    AtomicLongArray[] s = stripes;
+    for (int m = 0; m < METRICS; m++) {
+      base.set(from + m, 0);
+      if (s != null) {
+        for (AtomicLongArray stripe : s) {
+          stripe.set(from + m, 0);
+        }
+      }
+    }
+  }
+
+  private void addAt(int index, long delta) {
+    AtomicLongArray[] s = stripes;
+    if (s == null) {
+      long v = base.get(index);
+      if (base.compareAndSet(index, v, v + delta)) {
+        return;
+      }
+      s = inflate();
+    }
+    long id = Thread.currentThread().getId();
+    s[(int) (id ^ (id >>> 16)) & (s.length - 1)].getAndAdd(index, delta);
+  }
+
+  private synchronized AtomicLongArray[] inflate() {
+    AtomicLongArray[] s = stripes;
+    if (s == null) {
+      s = new AtomicLongArray[MAX_STRIPES];
+      for (int i = 0; i < s.length; i++) {
+        s[i] = new AtomicLongArray(base.length());
+      }
+      stripes = s;
+    }
+    return s;
+  }
+
+  /**
+   * @param d 第几个时段
+   * @param metric
+   * @return 截止到now的滑动窗口内的合计
+   */
+  public long sum(int d, int metric, long now) {
+    long epoch = now / bucketMillis[d];
+    AtomicLongArray[] s = stripes;
+    long sum = 0;
+    for (int b = 0; b < BUCKETS; b++) {
+      int slot = d * BUCKETS + b;
+      long e = epochs.get(slot);
+      if (e > epoch - BUCKETS && e <= epoch) {
+        int index = slot * METRICS + metric;
+        sum += base.get(index);
+        if (s != null) {
+          for (AtomicLongArray stripe : s) {
+            sum += stripe.get(index);
+          }
+        }
+      }
+    }
+    return sum;
+  }
+
+  /**
+   * 清空某个时段的数据
+   * @param d
+   */
+  public void clear(int d) {
+    for (int b = 0; b < BUCKETS; b++) {
+      reset(d * BUCKETS + b);
+    }
+  }
+
+  /**
+   * @param d 第几个时段
+   * @return 这个时段当前滑动窗口的IpStat快照
+   */
+  public IpStat snapshot(int d) {
+    return snapshot(d, SystemTimer.currTime);
+  }
+
+  /**
+   * @param d 第几个时段
+   * @param now 窗口的截止时间
+   * @return 截止到now的滑动窗口的IpStat快照，修改它不影响统计
+   */
+  public IpStat snapshot(int d, long now) {
+    IpStat ipStat = new IpStat(ip, durations[d]);
+    ipStat.setStart(new Date(now - durations[d] * 1000));
+    ipStat.getRequestCount().set((int) sum(d, REQUEST_COUNT, now));
+    ipStat.getDecodeErrorCount().set((int) sum(d, DECODE_ERROR_COUNT, now));
+    ipStat.getReceivedBytes().set(sum(d, RECEIVED_BYTES, now));
+    ipStat.getReceivedTcps().set(sum(d, RECEIVED_TCPS, now));
+    ipStat.getReceivedPackets().set(sum(d, RECEIVED_PACKETS, now));
+    ipStat.getHandledPackets().set(sum(d, HANDLED_PACKETS, now));
+    ipStat.getHandledBytes().set(sum(d, HANDLED_BYTES, now));
+    ipStat.getHandledPacketCosts().set(sum(d, HANDLED_PACKET_COSTS, now));
+    ipStat.getSentBytes().set(sum(d, SENT_BYTES, now));
+    ipStat.getSentPackets().set(sum(d, SENT_PACKETS, now));
+    return ipStat;
+  }
+
+  /**
+   * 同一时刻（SystemTimer.currTime，默认10毫秒更新一次）内多次调用返回同一个数组，其中的计数最多落后一个时刻；
+   * 数组和其中的IpStat由同一时刻的所有回调共用，只能读，需要修改时用snapshot(d)
+   * @return 所有时段的快照，顺序与IpStats.durationList一致
+   */
+  public IpStat[] snapshots() {
+    long now = SystemTimer.currTime;
+    Snapshots cached = cachedSnapshots;
+    if (cached != null && cached.time == now) {
+      return cached.ipStats;
+    }
+    IpStat[] ipStats = new IpStat[durations.length];
+    for (int d = 0; d < ipStats.length; d++) {
+      ipStats[d] = snapshot(d, now);
+    }
+    cachedSnapshots = new Snapshots(now, ipStats);
+    return ipStats;
+  }
+
+  private static final class Snapshots {
+    final long time;
+    final IpStat[] ipStats;
+
+    Snapshots(long time, IpStat[] ipStats) {
+      this.time = time;
+      this.ipStats = ipStats;
+    }
+  }
+}
@@ -0,0 +1,101 @@
+package com.litongjava.tio.core.stat;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+/**
+ * 耗时直方图，单位：纳秒<br>
+ * 按2的幂次分段，每段再线性分成SUB_BUCKETS个桶（与HdrHistogram相同的分桶方式），相对误差不超过1/SUB_BUCKETS；
+ * 小于SUB_BUCKETS纳秒的值精确记录，超过2^MAX_EXPONENT纳秒（约18分钟）的记入最后一个桶<br>
+ * 记录只是一次数组元素的原子加，不加锁；多个直方图可以合并，读取用snapshot()
+ * @author Tong Li
+ */
+public class LatencyHistogram implements java.io.Serializable {
+  private static final long serialVersionUID = -4406420924624591834L;
+  private static final int SUB_BITS = 4;
+  public static final int SUB_BUCKETS = 1 << SUB_BITS;
+  private static final int MAX_EXPONENT = 40;
+  public static final int BUCKETS = (MAX_EXPONENT - SUB_BITS + 2) * SUB_BUCKETS;
+
+  private static final AtomicLongFieldUpdater<LatencyHistogram> MAX = AtomicLongFieldUpdater.newUpdater(LatencyHistogram.class, "max");
+
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+  private final StatCounter sum = new StatCounter();
+  private volatile long max;
+
+  /**
+   * @param nanos 耗时，单位：纳秒，小于0的按0记录
+   */
+  public void record(long nanos) {
+    if (nanos < 0) {
+      nanos = 0;
+    }
+    counts.incrementAndGet(indexOf(nanos));
+    sum.add(nanos);
+    long current;
+    while (nanos > (current = max) && !MAX.compareAndSet(this, current, nanos)) {
+    }
+  }
+
+  /**
+   * 把另一个直方图的数据合并进来
+   * @param other
+   */
+  public void merge(LatencyHistogram other) {
+    for (int i = 0; i < BUCKETS; i++) {
+      long count = other.counts.get(i);
+      if (count > 0) {
+        counts.addAndGet(i, count);
+      }
+    }
+    sum.add(other.sum.sum());
+    long otherMax = other.max;
+    long current;
+    while (otherMax > (current = max) && !MAX.compareAndSet(this, current, otherMax)) {
+    }
+  }
+
+  /**
+   * @return 当前数据的快照，记录期间读取的各桶之间不保证是同一时刻的
+   */
+  public LatencySnapshot snapshot() {
+    long[] array = new long[BUCKETS];
+    for (int i = 0; i < BUCKETS; i++) {
+      array[i] = counts.get(i);
+    }
+    return new LatencySnapshot(array, sum.sum(), max);
+  }
+
+  static int indexOf(long nanos) {
+    if (nanos < SUB_BUCKETS) {
+      return (int) nanos;
+    }
+    int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+    if (exponent > MAX_EXPONENT) {
+      return BUCKETS - 1;
+    }
+    // 最高位之后的SUB_BITS位决定段内的桶
+    return (exponent - SUB_BITS + 1) * SUB_BUCKETS + (int) ((nanos >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1));
+  }
+
+  /**
+   * @return 第index个桶的下限（含）
+   */
+  static long lowerBound(int index) {
+    if (index < SUB_BUCKETS) {
+      return index;
+    }
+    int exponent = index / SUB_BUCKETS + SUB_BITS - 1;
+    return (long) (SUB_BUCKETS + index % SUB_BUCKETS) << (exponent - SUB_BITS);
+  }
+
+  /**
+   * @return 第index个桶的上限（含），最后一个桶返回Long.MAX_VALUE
+   */
+  static long upperBound(int index) {
+    if (index >= BUCKETS - 1) {
+      return Long.MAX_VALUE;
+    }
+    return lowerBound(index + 1) - 1;
+  }
+}
@@ -0,0 +1,101 @@
+package com.litongjava.tio.core.stat;
+
+/**
+ * LatencyHistogram的快照，单位：纳秒<br>
+ * 百分位取所在桶的上限（不超过最大值），与真实值的相对误差不超过1/LatencyHistogram.SUB_BUCKETS
+ * @author Tong Li
+ */
+public class LatencySnapshot implements java.io.Serializable {
+  private static final long serialVersionUID = 6913367032453536811L;
+
+  private final long[] counts;
+  private final long count;
+  private final long sum;
+  private final long max;
+
+  LatencySnapshot(long[] counts, long sum, long max) {
+    this.counts = counts;
+    long total = 0;
+    for (long c : counts) {
+      total += c;
+    }
+    this.count = total;
+    this.sum = sum;
+    this.max = max;
+  }
+
+  /**
+   * @return 与另一个快照合并后的新快照，例如汇总多个连接或多个TioConfig
+   */
+  public LatencySnapshot merge(LatencySnapshot other) {
+    long[] array = counts.clone();
+    for (int i = 0; i < array.length; i++) {
+      array[i] += other.counts[i];
+    }
+    return new LatencySnapshot(array, sum + other.sum, Math.max(max, other.max));
+  }
+
+  /**
+   * @param percentile 0到100，例如99.9
+   * @return 不小于percentile%的记录的耗时，没有记录时返回0
+   */
+  public long getPercentile(double percentile) {
+    if (count == 0) {
+      return 0;
+    }
+    long rank = (long) Math.ceil(Math.min(100, Math.max(0, percentile)) / 100 * count);
+    if (rank < 1) {
+      rank = 1;
+    }
+    long seen = 0;
+    for (int i = 0; i < counts.length; i++) {
+      seen += counts[i];
+      if (seen >= rank) {
+        return Math.min(LatencyHistogram.upperBound(i), max);
+      }
+    }
+    return max;
+  }
+
+  public long getCount() {
+    return count;
+  }
+
+  public long getSum() {
+    return sum;
+  }
+
+  public long getMax() {
+    return max;
+  }
+
+  public double getMean() {
+    return count == 0 ? 0 : (double) sum / count;
+  }
+
+  public long getP50() {
+    return getPercentile(50);
+  }
+
+  public long getP90() {
+    return getPercentile(90);
+  }
+
+  public long getP99() {
+    return getPercentile(99);
+  }
+
+  public long getP999() {
+    return getPercentile(99.9);
+  }
+
+  @Override
+  public String toString() {
+    return "count=" + count + ", mean=" + micros((long) getMean()) + ", p50=" + micros(getP50()) + ", p90=" + micros(getP90()) + ", p99="
+        + micros(getP99()) + ", p999=" + micros(getP999()) + ", max=" + micros(max);
+  }
+
+  private static String micros(long nanos) {
+    return nanos / 1000 + "us";
+  }
+}
@@ -0,0 +1,92 @@
+package com.litongjava.tio.core.stat;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.litongjava.tio.core.ChannelContext;
+import com.litongjava.tio.core.TioConfig;
+
+/**
+ * 各阶段的耗时直方图，单位：纳秒<br>
+ * 每个TioConfig一份（GroupStat.latency），TioConfig.channelLatencyStatOn时每个连接再记一份（ChannelStat.getLatency()）
+ * @author Tong Li
+ */
+public class LatencyStats implements java.io.Serializable {
+  private static final long serialVersionUID = -1880407107862611745L;
+
+  /** 解码完成到业务处理开始：在业务线程池（或串行通道）中排队的时间 */
+  public static final int QUEUE = 0;
+  /** 业务处理（AioHandler.handler）耗时 */
+  public static final int HANDLE = 1;
+  /** 进入发送队列到写完成，聚合写时从这次写出的最早入队的packet算起，每次写操作记一次 */
+  public static final int WRITE = 2;
+  /** AioHandler.encode耗时，预编码的packet不记录 */
+  public static final int ENCODE = 3;
+  private static final String[] NAMES = { "queue", "handle", "write", "encode" };
+
+  private final LatencyHistogram[] histograms = new LatencyHistogram[NAMES.length];
+
+  public LatencyStats() {
+    for (int i = 0; i < histograms.length; i++) {
+      histograms[i] = new LatencyHistogram();
+    }
+  }
+
+  /**
+   * 记录到TioConfig的直方图，开启了channelLatencyStatOn时同时记录到连接的直方图
+   * @param channelContext
+   * @param stage QUEUE等
+   * @param nanos
+   */
+  public static void record(ChannelContext channelContext, int stage, long nanos) {
+    TioConfig tioConfig = channelContext.tioConfig;
+    tioConfig.groupStat.latency.record(stage, nanos);
+    if (tioConfig.isChannelLatencyStatOn()) {
+      channelContext.stat.getOrCreateLatency().record(stage, nanos);
+    }
+  }
+
+  /**
+   * @return 是否需要记录耗时，不需要时热点路径上不调用System.nanoTime()
+   */
+  public static boolean isOn(TioConfig tioConfig) {
+    return tioConfig.statOn && tioConfig.isLatencyStatOn() && tioConfig.groupStat != null;
+  }
+
+  public void record(int stage, long nanos) {
+    histograms[stage].record(nanos);
+  }
+
+  public LatencyHistogram get(int stage) {
+    return histograms[stage];
+  }
+
+  public LatencySnapshot snapshot(int stage) {
+    return histograms[stage].snapshot();
+  }
+
+  /**
+   * 把另一个LatencyStats的数据合并进来
+   */
+  public void merge(LatencyStats other) {
+    for (int i = 0; i < histograms.length; i++) {
+      histograms[i].merge(other.histograms[i]);
+    }
+  }
+
+  /**
+   * @return key是阶段名（queue、handle、write、encode），value是快照，用于输出统计
+   */
+  public Map<String, LatencySnapshot> snapshots() {
+    Map<String, LatencySnapshot> map = new LinkedHashMap<>();
+    for (int i = 0; i < histograms.length; i++) {
+      map.put(NAMES[i], histograms[i].snapshot());
+    }
+    return map;
+  }
+
+  @Override
+  public String toString() {
+    return snapshots().toString();
+  }
+}
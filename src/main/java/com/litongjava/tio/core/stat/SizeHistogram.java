@@ -0,0 +1,78 @@
+package com.litongjava.tio.core.stat;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 按2的幂次分桶的大小直方图，例如每次TCP读到的字节数<br>
+ * 第0个桶统计小于等于64的值，第i个桶统计(64 << (i - 1), 64 << i]，最后一个桶统计大于64KB的值<br>
+ * 每个桶是一个LongAdder，多个IO线程同时记录时不争抢同一缓存行
+ * @author Tong Li
+ */
+public class SizeHistogram implements java.io.Serializable {
+  private static final long serialVersionUID = 2461097395413460231L;
+  private static final int MIN_SHIFT = 6;
+  private static final int MAX_SHIFT = 16;
+  public static final int BUCKETS = MAX_SHIFT - MIN_SHIFT + 2;
+
+  private final LongAdder[] counts = new LongAdder[BUCKETS];
+
+  public SizeHistogram() {
+    for (int i = 0; i < BUCKETS; i++) {
+      counts[i] = new LongAdder();
+    }
+  }
+
+  public void record(int size) {
+    counts[indexOf(size)].increment();
+  }
+
+  public long getCount(int index) {
+    return counts[index].sum();
+  }
+
+  public long getTotal() {
+    long total = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      total += counts[i].sum();
+    }
+    return total;
+  }
+
+  /**
+   * @return 第index个桶的上限（含），最后一个桶返回Integer.MAX_VALUE
+   */
+  public static int upperBound(int index) {
+    if (index >= BUCKETS - 1) {
+      return Integer.MAX_VALUE;
+    }
+    return 1 << (MIN_SHIFT + index);
+  }
+
+  static int indexOf(int size) {
+    if (size <= (1 << MIN_SHIFT)) {
+      return 0;
+    }
+    // size-1的最高位决定了它落在哪个(2^(k-1), 2^k]区间
+    int shift = 32 - Integer.numberOfLeadingZeros(size - 1);
+    return Math.min(shift - MIN_SHIFT, BUCKETS - 1);
+  }
+
+  /**
+   * @return key是桶的上限（"<=64"、">65536"），value是次数，用于输出统计
+   */
+  public Map<String, Long> toMap() {
+    Map<String, Long> map = new LinkedHashMap<>();
+    for (int i = 0; i < BUCKETS - 1; i++) {
+      map.put("<=" + upperBound(i), counts[i].sum());
+    }
+    map.put(">" + upperBound(BUCKETS - 2), counts[BUCKETS - 1].sum());
+    return map;
+  }
+
+  @Override
+  public String toString() {
+    return toMap().toString();
+  }
+}
@@ -0,0 +1,63 @@
+package com.litongjava.tio.core.stat;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 只增不减、很少读取的统计计数器<br>
+ * 基于LongAdder：出现竞争后分散到多个带缓存行填充的cell中累加，读取时求和<br>
+ * 保留AtomicLong的get()、incrementAndGet()、addAndGet()等方法，原来按AtomicLong使用计数器的代码不用修改；
+ * 但带返回值的方法每次都要求和，热点路径上用increment()、add()
+ * @author Tong Li
+ */
+public class StatCounter extends LongAdder {
+  private static final long serialVersionUID = 3525047163264918377L;
+
+  /**
+   * @return 当前合计，与sum()相同
+   */
+  public long get() {
+    return sum();
+  }
+
+  /**
+   * 与AtomicLong.set()的用法一致；先清零再加，与并发的累加不是原子的
+   * @param newValue
+   */
+  public void set(long newValue) {
+    reset();
+    add(newValue);
+  }
+
+  /**
+   * @return 加1之后的合计，并发累加时只是近似值
+   */
+  public long incrementAndGet() {
+    increment();
+    return sum();
+  }
+
+  /**
+   * @param delta
+   * @return 加delta之后的合计，并发累加时只是近似值
+   */
+  public long addAndGet(long delta) {
+    add(delta);
+    return sum();
+  }
+
+  /**
+   * @return 加1之前的合计，并发累加时只是近似值
+   */
+  public long getAndIncrement() {
+    return getAndAdd(1);
+  }
+
+  /**
+   * @param delta
+   * @return 加delta之前的合计，并发累加时只是近似值
+   */
+  public long getAndAdd(long delta) {
+    add(delta);
+    return sum() - delta;
+  }
+}
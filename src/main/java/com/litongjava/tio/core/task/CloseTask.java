@@ -4,34 +4,38 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.litongjava.tio.client.ClientChannelContext;
+import com.litongjava.tio.client.ClientHeartbeat;
 import com.litongjava.tio.client.ClientTioConfig;
 import com.litongjava.tio.client.ReconnConf;
 import com.litongjava.tio.core.ChannelContext;
 import com.litongjava.tio.core.maintain.MaintainUtils;
+import com.litongjava.tio.core.pool.BufferLeakDetector;
+import com.litongjava.tio.core.pool.MemoryBudget;
+import com.litongjava.tio.core.timer.IdleDetector;
 import com.litongjava.tio.utils.SystemTimer;
 
 public class CloseTask {
   private static final Logger log = LoggerFactory.getLogger(CloseTask.class);
   public static void close(ChannelContext channelContext) {
-    boolean isNeedRemove = channelContext.closeMeta.isNeedRemove;
-    String remark = channelContext.closeMeta.remark;
-    Throwable throwable = channelContext.closeMeta.throwable;
+    boolean isNeedRemove = channelContext.getCloseMeta().isNeedRemove;
+    String remark = channelContext.getCloseMeta().remark;
+    Throwable throwable = channelContext.getCloseMeta().throwable;
     channelContext.stat.timeClosed = SystemTimer.currTime;
 
     if (channelContext.tioConfig.getAioListener() != null) {
       try {
         channelContext.tioConfig.getAioListener().onBeforeClose(channelContext, throwable, remark, isNeedRemove);
       } catch (Throwable e) {
-        channelContext.isWaitingClose = false;
+        channelContext.setWaitingClose(false);
         log.error(e.toString(), e);
       }
     }
 
-    if (channelContext.isClosed && !isNeedRemove) {
+    if (channelContext.isClosed() && !isNeedRemove) {
       return;
     }
 
-    if (channelContext.isRemoved) {
+    if (channelContext.isRemoved()) {
       return;
     }
 
@@ -46,20 +50,38 @@ public class CloseTask {
       }
 
       channelContext.setRemoved(isNeedRemove);
+      DecodeTask decodeTask = channelContext.decodeTask;
+      if (decodeTask != null) {
+        channelContext.decodeTask = null;
+        decodeTask.release();
+      }
+      if (channelContext.readCompletionHandler != null) {
+        channelContext.readCompletionHandler.release();
+      }
+      IdleDetector.cancel(channelContext);
+      if (!channelContext.isServer()) {
+        ClientHeartbeat.cancel((ClientChannelContext) channelContext);
+      }
+      if (isNeedRemove) {
+        // 未发送的packet不会再发送，从发送队列的统计中扣除
+        channelContext.sendQueue.clear();
+      }
       if (channelContext.tioConfig.statOn) {
-        channelContext.tioConfig.groupStat.closed.incrementAndGet();
+        channelContext.tioConfig.groupStat.closed.increment();
       }
       channelContext.stat.timeClosed = SystemTimer.currTime;
       channelContext.setClosed(true);
+      MemoryBudget.remove(channelContext);
+      BufferLeakDetector.checkOnClose(channelContext);
     } catch (Throwable e) {
       log.error(e.toString(), e);
     } finally {
-      if (!isNeedRemove && channelContext.isClosed && !channelContext.isServer()) // 不删除且没有连接上，则加到重连队列中
+      if (!isNeedRemove && channelContext.isClosed() && !channelContext.isServer()) // 不删除且没有连接上，则加到重连队列中
       {
         ClientChannelContext clientChannelContext = (ClientChannelContext) channelContext;
         ReconnConf.put(clientChannelContext);
       }
-      channelContext.isWaitingClose = false;
+      channelContext.setWaitingClose(false);
     }
 
   }
@@ -2,8 +2,10 @@ package com.litongjava.tio.core.task;
 
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -11,40 +13,170 @@ import org.slf4j.LoggerFactory;
 import com.litongjava.aio.Packet;
 import com.litongjava.tio.core.ChannelCloseCode;
 import com.litongjava.tio.core.ChannelContext;
+import com.litongjava.tio.core.PacketHandlerMode;
 import com.litongjava.tio.core.Tio;
 import com.litongjava.tio.core.TioConfig;
 import com.litongjava.tio.core.exception.AioDecodeException;
 import com.litongjava.tio.core.exception.TioDecodeException;
+import com.litongjava.tio.core.pool.BufferPoolUtils;
 import com.litongjava.tio.core.stat.ChannelStat;
 import com.litongjava.tio.core.stat.IpStat;
-import com.litongjava.tio.core.utils.ByteBufferUtils;
+import com.litongjava.tio.core.stat.IpStatRecord;
+import com.litongjava.tio.core.stat.LatencyStats;
 import com.litongjava.tio.exception.TioHandlePacketException;
 import com.litongjava.tio.utils.SystemTimer;
-import com.litongjava.tio.utils.hutool.CollUtil;
 
 @SuppressWarnings("deprecation")
 public class DecodeTask {
   private static final Logger log = LoggerFactory.getLogger(DecodeTask.class);
   private final static boolean DIAGNOSTIC_LOG_ENABLED = TioConfig.disgnostic;
 
+  /** 累积缓冲区的最小容量 */
+  private static final int MIN_CUMULATION_CAPACITY = 1024;
+
   /**
-   * 上一次解码剩下的数据
+   * 累积缓冲区，保存上一次解码剩下的半包（处于读模式：position..limit是未解码的数据）<br>
+   * 从BufferPoolUtils借用，新数据直接追加到末尾，不足时先原地compact，仍不够再按2倍扩容；
+   * 数据全部解码完（连接空闲）或连接关闭时归还
    */
-  private ByteBuffer lastByteBuffer = null;
+  private ByteBuffer cumulation = null;
+
+  private static final AtomicIntegerFieldUpdater<DecodeTask> STATE = AtomicIntegerFieldUpdater.newUpdater(DecodeTask.class, "state");
+  /** 正在使用累积缓冲区（解码、收缩，或release()正在归还），此时release()只做标记，由使用者结束时归还 */
+  private static final int BUSY = 1;
+  /** 连接已关闭，不再累积数据 */
+  private static final int RELEASED = 2;
+  /**
+   * BUSY、RELEASED的组合<br>
+   * release()由关闭连接的线程调用，不与decode()共用锁，不会因为一次耗时的解码（或业务处理）而阻塞
+   */
+  private volatile int state;
 
   /**
    * 上次解码进度百分比
    */
   private int lastPercentage = 0;
 
-  public void decode(ChannelContext channelContext, ByteBuffer byteBuffer) {
+  /**
+   * 批量派发时，本次读解出的packet（按到达顺序）
+   */
+  private List<Packet> batch = null;
+
+  public synchronized void decode(ChannelContext channelContext, ByteBuffer byteBuffer) {
+    if (!acquire()) {
+      return;
+    }
+    try {
+      decode0(channelContext, byteBuffer);
+    } finally {
+      if (batch != null) {
+        dispatch(channelContext, batch);
+        batch = null;
+      }
+      exit();
+    }
+  }
+
+  /**
+   * 开始使用累积缓冲区，decode()和shrink()之间由synchronized互斥，这里只与release()竞争
+   * @return false: 已经release()
+   */
+  private boolean acquire() {
+    for (;;) {
+      int current = state;
+      if ((current & RELEASED) != 0) {
+        return false;
+      }
+      if (STATE.compareAndSet(this, current, current | BUSY)) {
+        return true;
+      }
+    }
+  }
+
+  /**
+   * 结束使用累积缓冲区，期间被release()的话在这里归还
+   */
+  private void exit() {
+    for (;;) {
+      int current = state;
+      if (STATE.compareAndSet(this, current, current & ~BUSY)) {
+        if ((current & RELEASED) != 0) {
+          releaseCumulation();
+        }
+        return;
+      }
+    }
+  }
+
+  /**
+   * 把本次读解出的所有packet整体放入连接的串行通道，通道空闲时只提交一次业务线程池<br>
+   * 经过串行通道，前后两次读的批次不会在两个线程中并发处理，同一连接的packet按到达顺序处理
+   */
+  private void dispatch(ChannelContext channelContext, List<Packet> packets) {
+    channelContext.getSerialLane().offerAll(packets);
+  }
+
+  /**
+   * @return 累积缓冲区的容量，没有半包时为0；不加锁，只用于估算连接占用的内存
+   */
+  public int getCumulationCapacity() {
+    ByteBuffer buffer = cumulation;
+    return buffer == null ? 0 : buffer.capacity();
+  }
+
+  /**
+   * 连接进入读休眠时调用：半包占用的累积缓冲区比需要的大时换成刚好够用的，减少空闲连接占用的内存
+   * @return 释放的字节数
+   */
+  public synchronized int shrink(ChannelContext channelContext) {
+    if (cumulation == null || !acquire()) {
+      return 0;
+    }
+    try {
+      int capacity = capacityFor(channelContext, cumulation.remaining());
+      if (capacity >= cumulation.capacity()) {
+        return 0;
+      }
+      ByteBuffer old = cumulation;
+      cumulation = BufferPoolUtils.allocate(capacity, channelContext);
+      cumulation.put(old);
+      cumulation.flip();
+      BufferPoolUtils.clean(old);
+      return old.capacity() - cumulation.capacity();
+    } finally {
+      exit();
+    }
+  }
+
+  /**
+   * 归还累积缓冲区，连接关闭时调用<br>
+   * 正在解码（例如业务处理时关闭了连接，或者解码线程与关闭线程并发）时只做标记，由decode()结束时归还
+   */
+  public void release() {
+    for (;;) {
+      int current = state;
+      if ((current & RELEASED) != 0) {
+        return;
+      }
+      if ((current & BUSY) != 0) {
+        if (STATE.compareAndSet(this, current, current | RELEASED)) {
+          return;
+        }
+      } else if (STATE.compareAndSet(this, current, RELEASED | BUSY)) {
+        releaseCumulation();
+        state = RELEASED;
+        return;
+      }
+    }
+  }
+
+  private void decode0(ChannelContext channelContext, ByteBuffer byteBuffer) {
     TioConfig tioConfig = channelContext.tioConfig;
     if (DIAGNOSTIC_LOG_ENABLED) {
       log.info("decode:{}", channelContext.getClientNode());
     }
-    if (lastByteBuffer != null) {
-      byteBuffer = ByteBufferUtils.composite(lastByteBuffer, byteBuffer);
-      lastByteBuffer = null;
+    if (cumulation != null) {
+      byteBuffer = append(channelContext, byteBuffer);
     }
     label_2: while (true) {
       int initPosition = byteBuffer.position();
@@ -67,7 +199,7 @@ public class DecodeTask {
                     channelContext.packetNeededLength);
               }
             }
-            lastByteBuffer = ByteBufferUtils.copy(byteBuffer, initPosition, limit);
+            cumulate(channelContext, byteBuffer, initPosition, limit);
             return;
           }
         } else {
@@ -80,7 +212,7 @@ public class DecodeTask {
 
         if (packet == null) {
           // 数据不够，解不了码
-          lastByteBuffer = ByteBufferUtils.copy(byteBuffer, initPosition, limit);
+          cumulate(channelContext, byteBuffer, initPosition, limit);
           ChannelStat channelStat = channelContext.stat;
           channelStat.decodeFailCount++;
           // 检查慢包攻击
@@ -124,16 +256,20 @@ public class DecodeTask {
           packet.setByteCount(packetSize);
 
           if (tioConfig.statOn) {
-            tioConfig.groupStat.receivedPackets.incrementAndGet();
-            channelContext.stat.receivedPackets.incrementAndGet();
+            if (!tioConfig.isStatGroupLazy()) {
+              tioConfig.groupStat.receivedPackets.increment();
+            }
+            channelContext.stat.addReceivedPackets(1);
           }
 
-          if (CollUtil.isNotEmpty(tioConfig.ipStats.durationList)) {
+          if (tioConfig.ipStats.isOn()) {
             try {
-              for (Long v : tioConfig.ipStats.durationList) {
-                IpStat ipStat = tioConfig.ipStats.get(v, channelContext);
-                ipStat.getReceivedPackets().incrementAndGet();
-                tioConfig.getIpStatListener().onAfterDecoded(channelContext, packet, packetSize, ipStat);
+              IpStatRecord ipStatRecord = tioConfig.ipStats.record(channelContext);
+              ipStatRecord.add(IpStatRecord.RECEIVED_PACKETS, 1);
+              if (tioConfig.ipStats.hasListener()) {
+                for (IpStat ipStat : ipStatRecord.snapshots()) {
+                  tioConfig.getIpStatListener().onAfterDecoded(channelContext, packet, packetSize, ipStat);
+                }
               }
             } catch (Exception e1) {
               log.error(packet.logstr(), e1);
@@ -153,13 +289,25 @@ public class DecodeTask {
           }
 
           ExecutorService biz = tioConfig.getBizExecutor();
-          if (biz != null) {
+          PacketHandlerMode packetHandlerMode = tioConfig.getPacketHandlerMode();
+          if (packetHandlerMode == PacketHandlerMode.SINGLE_THREAD) {
+            biz = null;
+          }
+          if (biz != null && packetHandlerMode == PacketHandlerMode.ORDERED) {
+            channelContext.getSerialLane().offer(packet);
+          } else if (biz != null && tioConfig.isBizBatchDispatch()) {
+            if (batch == null) {
+              batch = new ArrayList<>();
+            }
+            batch.add(packet);
+          } else if (biz != null) {
             final Packet p = packet;
+            final long decodedNanos = LatencyStats.isOn(tioConfig) ? System.nanoTime() : 0;
             biz.execute(new Runnable() {
               @Override
               public void run() {
                 try {
-                  new HandlePacketTask().handle(channelContext, p);
+                  new HandlePacketTask().handle(channelContext, p, decodedNanos);
                 } catch (Throwable e) {
                   log.error("HandlePacketTask error, {}", channelContext, e);
                 }
@@ -184,7 +332,7 @@ public class DecodeTask {
             continue label_2;
           } else {
             // 组包后，数据刚好用完
-            lastByteBuffer = null;
+            releaseCumulation();
             if (log.isDebugEnabled()) {
               log.debug("{},After grouping the packets, the data just ran out", channelContext);
             }
@@ -197,14 +345,15 @@ public class DecodeTask {
         }
 
         channelContext.setPacketNeededLength(null);
+        releaseCumulation();
 
         if (e instanceof AioDecodeException || e instanceof TioDecodeException) {
-          List<Long> list = tioConfig.ipStats.durationList;
-          if (list != null && list.size() > 0) {
+          if (tioConfig.ipStats.isOn()) {
             try {
-              for (Long v : list) {
-                IpStat ipStat = tioConfig.ipStats.get(v, channelContext);
-                ipStat.getDecodeErrorCount().incrementAndGet();
+              IpStatRecord ipStatRecord = tioConfig.ipStats.record(channelContext);
+              ipStatRecord.add(IpStatRecord.DECODE_ERROR_COUNT, 1);
+              // 解码失败较少，不管有没有设置IpStatListener都回调
+              for (IpStat ipStat : ipStatRecord.snapshots()) {
                 tioConfig.getIpStatListener().onDecodeError(channelContext, ipStat);
               }
             } catch (Exception e1) {
@@ -219,4 +368,78 @@ public class DecodeTask {
       }
     }
   }
+
+  /**
+   * 把新读到的数据追加到累积缓冲区末尾，已累积的数据不再复制
+   * @return 累积缓冲区
+   */
+  private ByteBuffer append(ChannelContext channelContext, ByteBuffer byteBuffer) {
+    int incoming = byteBuffer.remaining();
+    if (cumulation.capacity() - cumulation.limit() < incoming) {
+      int required = cumulation.remaining() + incoming;
+      if (cumulation.capacity() >= required) {
+        // 前面已解码的部分腾出来就够了
+        cumulation.compact();
+        cumulation.flip();
+      } else {
+        ByteBuffer old = cumulation;
+        cumulation = BufferPoolUtils.allocate(capacityFor(channelContext, required), channelContext);
+        cumulation.put(old);
+        cumulation.flip();
+        BufferPoolUtils.clean(old);
+      }
+    }
+    int position = cumulation.position();
+    cumulation.position(cumulation.limit());
+    cumulation.limit(cumulation.capacity());
+    cumulation.put(byteBuffer);
+    cumulation.limit(cumulation.position());
+    cumulation.position(position);
+    return cumulation;
+  }
+
+  /**
+   * 保留未能解码的数据，等下次读到数据后继续解码
+   */
+  private void cumulate(ChannelContext channelContext, ByteBuffer byteBuffer, int initPosition, int limit) {
+    // 解码器可能移动了position/limit
+    byteBuffer.limit(limit);
+    byteBuffer.position(initPosition);
+    if (byteBuffer == cumulation) {
+      return;
+    }
+    if ((state & RELEASED) != 0) {
+      return;
+    }
+    int length = limit - initPosition;
+    cumulation = BufferPoolUtils.allocate(capacityFor(channelContext, length), channelContext);
+    cumulation.put(byteBuffer);
+    cumulation.flip();
+    channelContext.decodeTask = this;
+  }
+
+  private void releaseCumulation() {
+    if (cumulation != null) {
+      BufferPoolUtils.clean(cumulation);
+      cumulation = null;
+    }
+  }
+
+  /**
+   * 按2的幂次增长，已知整包长度时一次分配到位
+   */
+  private static int capacityFor(ChannelContext channelContext, int required) {
+    Integer packetNeededLength = channelContext.packetNeededLength;
+    if (packetNeededLength != null && packetNeededLength > required) {
+      required = packetNeededLength;
+    }
+    int capacity = Math.max(channelContext.getReadBufferSize(), MIN_CUMULATION_CAPACITY);
+    while (capacity < required) {
+      if (capacity > (Integer.MAX_VALUE >> 1)) {
+        return required;
+      }
+      capacity <<= 1;
+    }
+    return capacity;
+  }
 }
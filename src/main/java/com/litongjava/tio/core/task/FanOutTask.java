@@ -0,0 +1,77 @@
+package com.litongjava.tio.core.task;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.RejectedExecutionException;
+
+import com.litongjava.tio.core.ChannelContext;
+import com.litongjava.tio.core.TioConfig;
+
+/**
+ * 大集合群发：把成员数组按fanOutShardSize切成分片，提交给fanOutPool（ForkJoinPool，工作窃取）并行发送<br>
+ * fanOut()在所有分片都发送完后才返回，返回值是各分片实际发送数之和
+ * @author Tong Li
+ */
+public class FanOutTask extends RecursiveTask<Integer> {
+  private static final long serialVersionUID = 1L;
+
+  /**
+   * 发送一个分片
+   */
+  public interface ShardSender {
+    /**
+     * 发送channelContexts[from, to)
+     * @return 实际发送的数量
+     */
+    int send(ChannelContext[] channelContexts, int from, int to);
+  }
+
+  private final ChannelContext[] channelContexts;
+  private final int from;
+  private final int to;
+  private final int shardSize;
+  private final ShardSender sender;
+
+  private FanOutTask(ChannelContext[] channelContexts, int from, int to, int shardSize, ShardSender sender) {
+    this.channelContexts = channelContexts;
+    this.from = from;
+    this.to = to;
+    this.shardSize = shardSize;
+    this.sender = sender;
+  }
+
+  /**
+   * 成员数不超过fanOutShardSize或者没有fanOutPool时在当前线程发送
+   * @param tioConfig
+   * @param channelContexts
+   * @param sender
+   * @return 实际发送的数量
+   */
+  public static int fanOut(TioConfig tioConfig, ChannelContext[] channelContexts, ShardSender sender) {
+    int shardSize = tioConfig.getFanOutShardSize();
+    if (shardSize > 0 && channelContexts.length > shardSize) {
+      ForkJoinPool pool = tioConfig.getFanOutPool();
+      if (pool != null) {
+        try {
+          return pool.invoke(new FanOutTask(channelContexts, 0, channelContexts.length, shardSize, sender));
+        } catch (RejectedExecutionException e) {
+          // 已经停止，退回当前线程发送
+        }
+      }
+    }
+    return sender.send(channelContexts, 0, channelContexts.length);
+  }
+
+  @Override
+  protected Integer compute() {
+    if (to - from <= shardSize) {
+      return sender.send(channelContexts, from, to);
+    }
+    int mid = (from + to) >>> 1;
+    FanOutTask left = new FanOutTask(channelContexts, from, mid, shardSize, sender);
+    FanOutTask right = new FanOutTask(channelContexts, mid, to, shardSize, sender);
+    left.fork();
+    int count = right.compute();
+    return count + left.join();
+  }
+}
@@ -0,0 +1,248 @@
+package com.litongjava.tio.core.task;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousSocketChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.StandardOpenOption;
+
+import javax.net.ssl.SSLException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.litongjava.aio.Packet;
+import com.litongjava.enhance.channel.EnhanceAsynchronousSocketChannel;
+import com.litongjava.tio.core.ChannelCloseCode;
+import com.litongjava.tio.core.ChannelContext;
+import com.litongjava.tio.core.Tio;
+import com.litongjava.tio.core.TioConfig;
+import com.litongjava.tio.core.WriteCompletionHandler;
+import com.litongjava.tio.core.pool.BufferPoolUtils;
+import com.litongjava.tio.core.ssl.SslUtils;
+import com.litongjava.tio.core.ssl.SslVo;
+import com.litongjava.tio.core.utils.TioUtils;
+import com.litongjava.tio.core.vo.WriteCompletionVo;
+import com.litongjava.tio.utils.SystemTimer;
+
+/**
+ * 非阻塞的文件发送：先写header，再按socket的可写能力分段发送文件内容<br>
+ * 非SSL的EnhanceAsynchronousSocketChannel优先用transferTo零拷贝，socket写满后提交一段普通的异步写，
+ * 写完成（socket重新可写）时再继续，整个过程不会占着线程等待慢速的对端<br>
+ * 传输期间一直持有连接的发送权（isSending），结束后再发送队列中后续的packet
+ * @author Tong Li
+ */
+public class FileTransferTask implements CompletionHandler<Integer, ByteBuffer> {
+  private static final Logger log = LoggerFactory.getLogger(FileTransferTask.class);
+  /** 每轮最多连续transferTo的次数，用完后提交一次异步写，让出线程 */
+  private static final int MAX_TRANSFER_ROUNDS = 16;
+
+  private final ChannelContext channelContext;
+  private final TioConfig tioConfig;
+  private final Packet packet;
+  private final File fileBody;
+  private final boolean isSsl;
+  private final int chunkSize;
+  /** 可以零拷贝时不为null */
+  private final SocketChannel socketChannel;
+
+  private ByteBuffer header;
+  private FileChannel fileChannel;
+  /** 非零拷贝时读文件用的buffer，整个传输过程复用 */
+  private ByteBuffer chunk;
+  private long position;
+  private long size;
+  private long totalWritten;
+
+  public FileTransferTask(ChannelContext channelContext, Packet packet, ByteBuffer header) {
+    this.channelContext = channelContext;
+    this.tioConfig = channelContext.tioConfig;
+    this.packet = packet;
+    this.fileBody = packet.getFileBody();
+    this.header = header;
+    this.isSsl = SslUtils.isSsl(tioConfig);
+    this.chunkSize = Math.max(tioConfig.getFileTransferChunkSize(), 1024);
+
+    AsynchronousSocketChannel asc = channelContext.asynchronousSocketChannel;
+    if (!isSsl && asc instanceof EnhanceAsynchronousSocketChannel) {
+      this.socketChannel = ((EnhanceAsynchronousSocketChannel) asc).getSocketChannel();
+    } else {
+      this.socketChannel = null;
+    }
+  }
+
+  /**
+   * 开始传输，超过fileTransferMaxConcurrent时排队，等其它传输结束后再开始
+   */
+  public void start() {
+    int max = tioConfig.getFileTransferMaxConcurrent();
+    if (tioConfig.fileTransferCount.incrementAndGet() > max && max > 0) {
+      tioConfig.fileTransferCount.decrementAndGet();
+      tioConfig.pendingFileTransfers.offer(this);
+      // 入队后再检查一次，防止在此期间正在进行的传输都已结束
+      startPending(tioConfig);
+      return;
+    }
+    run();
+  }
+
+  private static void startPending(TioConfig tioConfig) {
+    int max = tioConfig.getFileTransferMaxConcurrent();
+    while (!tioConfig.pendingFileTransfers.isEmpty()) {
+      if (tioConfig.fileTransferCount.incrementAndGet() > max && max > 0) {
+        tioConfig.fileTransferCount.decrementAndGet();
+        return;
+      }
+      FileTransferTask task = tioConfig.pendingFileTransfers.poll();
+      if (task == null) {
+        tioConfig.fileTransferCount.decrementAndGet();
+        continue;
+      }
+      task.run();
+    }
+  }
+
+  private void run() {
+    if (!TioUtils.checkBeforeIO(channelContext)) {
+      finish(null);
+      return;
+    }
+    try {
+      fileChannel = FileChannel.open(fileBody.toPath(), StandardOpenOption.READ);
+      size = fileChannel.size();
+    } catch (IOException e) {
+      log.error("{}, open file error: {}", channelContext, fileBody, e);
+      finish(e);
+      return;
+    }
+    write(header);
+  }
+
+  private void write(ByteBuffer byteBuffer) {
+    try {
+      channelContext.asynchronousSocketChannel.write(byteBuffer, byteBuffer, this);
+    } catch (Throwable e) {
+      failed(e, byteBuffer);
+    }
+  }
+
+  @Override
+  public void completed(Integer result, ByteBuffer byteBuffer) {
+    if (result == null || result < 0) {
+      failed(new IOException("write return " + result), byteBuffer);
+      return;
+    }
+    if (result > 0) {
+      totalWritten += result;
+      channelContext.stat.latestTimeOfSentByte = SystemTimer.currTime;
+    }
+    if (byteBuffer.hasRemaining()) {
+      write(byteBuffer);
+      return;
+    }
+    if (byteBuffer == header) {
+      BufferPoolUtils.clean(header);
+      header = null;
+    }
+    sendBody();
+  }
+
+  @Override
+  public void failed(Throwable throwable, ByteBuffer byteBuffer) {
+    finish(throwable);
+  }
+
+  /**
+   * 发送文件内容，直到socket写不动或本轮额度用完，然后提交一次异步写并返回
+   */
+  private void sendBody() {
+    try {
+      if (socketChannel != null) {
+        for (int i = 0; i < MAX_TRANSFER_ROUNDS && position < size; i++) {
+          if (!TioUtils.checkBeforeIO(channelContext)) {
+            finish(null);
+            return;
+          }
+          long sent = fileChannel.transferTo(position, Math.min(chunkSize, size - position), socketChannel);
+          if (sent <= 0) {
+            // socket发送缓冲区已满
+            break;
+          }
+          position += sent;
+          totalWritten += sent;
+          channelContext.stat.latestTimeOfSentByte = SystemTimer.currTime;
+        }
+      }
+
+      if (position >= size) {
+        finish(null);
+        return;
+      }
+      if (!TioUtils.checkBeforeIO(channelContext)) {
+        finish(null);
+        return;
+      }
+
+      if (chunk == null) {
+        chunk = BufferPoolUtils.allocate(chunkSize, channelContext);
+      }
+      chunk.clear();
+      chunk.limit((int) Math.min(chunkSize, size - position));
+      int readBytes = fileChannel.read(chunk, position);
+      if (readBytes < 0) {
+        finish(new EOFException(fileBody + " was truncated during transfer"));
+        return;
+      }
+      position += readBytes;
+      chunk.flip();
+
+      ByteBuffer out = chunk;
+      if (isSsl) {
+        SslVo sslVo = new SslVo(chunk, packet);
+        channelContext.sslFacadeContext.getSslFacade().encrypt(sslVo);
+        out = sslVo.getByteBuffer();
+      }
+      write(out);
+    } catch (SSLException e) {
+      log.error("Failed to encrypt data using ssl", e);
+      Tio.close(channelContext, "Failed to encrypt data using ssl", ChannelCloseCode.SSL_ENCRYPTION_ERROR);
+      finish(e);
+    } catch (IOException e) {
+      log.error("file transfer error, channel: {}", channelContext, e);
+      finish(e);
+    }
+  }
+
+  private void finish(Throwable throwable) {
+    if (fileChannel != null) {
+      try {
+        fileChannel.close();
+      } catch (IOException e) {
+        log.error(e.toString(), e);
+      }
+    }
+    if (chunk != null) {
+      BufferPoolUtils.clean(chunk);
+      chunk = null;
+    }
+    if (header != null) {
+      BufferPoolUtils.clean(header);
+      header = null;
+    }
+    tioConfig.fileTransferCount.decrementAndGet();
+
+    int bytesWritten = 0;
+    if (throwable == null && position >= size) {
+      bytesWritten = (int) Math.min(totalWritten, Integer.MAX_VALUE);
+    }
+    new WriteCompletionHandler(channelContext).handle(bytesWritten, throwable, new WriteCompletionVo((ByteBuffer) null, packet));
+
+    channelContext.releaseSending();
+    new SendPacketTask(channelContext).processSendQueue();
+    startPending(tioConfig);
+  }
+}
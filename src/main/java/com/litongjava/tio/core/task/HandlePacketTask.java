@@ -1,6 +1,5 @@
 package com.litongjava.tio.core.task;
 
-import java.util.HashSet;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
@@ -12,11 +11,11 @@ import com.litongjava.tio.core.ChannelContext;
 import com.litongjava.tio.core.Node;
 import com.litongjava.tio.core.TioConfig;
 import com.litongjava.tio.core.stat.IpStat;
+import com.litongjava.tio.core.stat.IpStatRecord;
+import com.litongjava.tio.core.stat.LatencyStats;
 import com.litongjava.tio.utils.SystemTimer;
 import com.litongjava.tio.utils.environment.EnvUtils;
-import com.litongjava.tio.utils.hutool.CollUtil;
 import com.litongjava.tio.utils.lock.MapWithLock;
-import com.litongjava.tio.utils.lock.SetWithLock;
 
 public class HandlePacketTask {
   private static final Logger log = LoggerFactory.getLogger(HandlePacketTask.class);
@@ -32,23 +31,43 @@ public class HandlePacketTask {
    * @author tanyaowu
    * @throws Throwable 
    */
-  @SuppressWarnings({ "unchecked", "rawtypes" })
   public void handle(ChannelContext channelContext, Packet packet) throws Throwable {
+    handle(channelContext, packet, 0);
+  }
+
+  /**
+   * 处理packet
+   * @param channelContext
+   * @param packet
+   * @param decodedNanos 解码完成时的System.nanoTime()，用于统计排队耗时，0表示没有排队（或不统计）
+   * @throws Throwable
+   */
+  @SuppressWarnings({ "unchecked", "rawtypes" })
+  public void handle(ChannelContext channelContext, Packet packet, long decodedNanos) throws Throwable {
     // int ret = 0;
     TioConfig tioConfig = channelContext.tioConfig;
+    boolean latencyOn = LatencyStats.isOn(tioConfig);
+    long startNanos = 0;
+    if (latencyOn) {
+      startNanos = System.nanoTime();
+      if (decodedNanos != 0) {
+        LatencyStats.record(channelContext, LatencyStats.QUEUE, startNanos - decodedNanos);
+      }
+    }
     boolean keepConnection = packet.isKeepConnection();
     // log.info("keepConnection:{}", keepConnection);
     if (keepConnection && !channelContext.isBind) {
       tioConfig.ips.bind(channelContext);
       tioConfig.ids.bind(channelContext);
-      channelContext.groups = new SetWithLock(new HashSet());
       channelContext.isBind = true;
     }
 
     long start = SystemTimer.currTime;
     try {
       Integer synSeq = packet.getSynSeq();
-      if (synSeq != null && synSeq > 0) {
+      if (synSeq != null && synSeq > 0 && tioConfig.synRequests.complete(synSeq, packet)) {
+        // Tio.request()发出的请求收到了响应
+      } else if (synSeq != null && synSeq > 0) {
         MapWithLock<Integer, Packet> syns = tioConfig.getWaitingResps();
         Packet initPacket = syns.remove(synSeq);
         if (initPacket != null) {
@@ -73,26 +92,33 @@ public class HandlePacketTask {
         tioConfig.getAioHandler().handler(packet, channelContext);
       }
     } finally {
+      if (latencyOn) {
+        LatencyStats.record(channelContext, LatencyStats.HANDLE, System.nanoTime() - startNanos);
+      }
       long end = SystemTimer.currTime;
       long iv = end - start;
       if (tioConfig.statOn) {
-        channelContext.stat.handledPackets.incrementAndGet();
-        channelContext.stat.handledBytes.addAndGet(packet.getByteCount());
-        channelContext.stat.handledPacketCosts.addAndGet(iv);
+        channelContext.stat.addHandledPackets(1);
+        channelContext.stat.addHandledBytes(packet.getByteCount());
+        channelContext.stat.addHandledPacketCosts(iv);
 
-        tioConfig.groupStat.handledPackets.incrementAndGet();
-        tioConfig.groupStat.handledBytes.addAndGet(packet.getByteCount());
-        tioConfig.groupStat.handledPacketCosts.addAndGet(iv);
+        if (!tioConfig.isStatGroupLazy()) {
+          tioConfig.groupStat.handledPackets.increment();
+          tioConfig.groupStat.handledBytes.add(packet.getByteCount());
+          tioConfig.groupStat.handledPacketCosts.add(iv);
+        }
       }
 
-      if (CollUtil.isNotEmpty(tioConfig.ipStats.durationList)) {
+      if (tioConfig.ipStats.isOn()) {
         try {
-          for (Long v : tioConfig.ipStats.durationList) {
-            IpStat ipStat = (IpStat) tioConfig.ipStats.get(v, channelContext);
-            ipStat.getHandledPackets().incrementAndGet();
-            ipStat.getHandledBytes().addAndGet(packet.getByteCount());
-            ipStat.getHandledPacketCosts().addAndGet(iv);
-            tioConfig.getIpStatListener().onAfterHandled(channelContext, packet, ipStat, iv);
+          IpStatRecord ipStatRecord = tioConfig.ipStats.record(channelContext);
+          ipStatRecord.add(IpStatRecord.HANDLED_PACKETS, 1);
+          ipStatRecord.add(IpStatRecord.HANDLED_BYTES, packet.getByteCount());
+          ipStatRecord.add(IpStatRecord.HANDLED_PACKET_COSTS, iv);
+          if (tioConfig.ipStats.hasListener()) {
+            for (IpStat ipStat : ipStatRecord.snapshots()) {
+              tioConfig.getIpStatListener().onAfterHandled(channelContext, packet, ipStat, iv);
+            }
           }
         } catch (Exception e1) {
           e1.printStackTrace();
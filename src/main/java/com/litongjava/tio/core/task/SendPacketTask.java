@@ -1,13 +1,8 @@
 package com.litongjava.tio.core.task;
 
-import java.io.File;
-import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.nio.channels.AsynchronousSocketChannel;
-import java.nio.channels.FileChannel;
-import java.nio.channels.SocketChannel;
-import java.nio.file.StandardOpenOption;
-import java.util.concurrent.locks.LockSupport;
+import java.util.ArrayList;
+import java.util.List;
 
 import javax.net.ssl.SSLException;
 
@@ -25,6 +20,7 @@ import com.litongjava.tio.core.intf.AioHandler;
 import com.litongjava.tio.core.pool.BufferPoolUtils;
 import com.litongjava.tio.core.ssl.SslUtils;
 import com.litongjava.tio.core.ssl.SslVo;
+import com.litongjava.tio.core.stat.LatencyStats;
 import com.litongjava.tio.core.utils.TioUtils;
 import com.litongjava.tio.core.vo.WriteCompletionVo;
 
@@ -54,7 +50,13 @@ public class SendPacketTask {
     ByteBuffer byteBuffer = packet.getPreEncodedByteBuffer();
     try {
       if (byteBuffer == null) {
-        byteBuffer = aioHandler.encode(packet, tioConfig, channelContext);
+        if (LatencyStats.isOn(tioConfig)) {
+          long start = System.nanoTime();
+          byteBuffer = aioHandler.encode(packet, tioConfig, channelContext);
+          LatencyStats.record(channelContext, LatencyStats.ENCODE, System.nanoTime() - start);
+        } else {
+          byteBuffer = aioHandler.encode(packet, tioConfig, channelContext);
+        }
       }
       if (!byteBuffer.hasRemaining()) {
         byteBuffer.flip();
@@ -69,121 +71,35 @@ public class SendPacketTask {
     if (disgnostic) {
       log.info("send:{},{}", channelContext.getClientNode(), packet);
     }
-    // 将数据包加入队列
-    channelContext.sendQueue.offer(packet);
-    // 如果当前没有发送且队列不为空，则开始发送
-    if (channelContext.isSending.compareAndSet(false, true)) {
-      Packet nextPacket = channelContext.sendQueue.poll();
-      if (nextPacket != null) {
-        ByteBuffer byteBuffer = getByteBuffer(nextPacket);
-        if (isSsl) {
-          if (!nextPacket.isSslEncrypted()) {
-            SslVo sslVo = new SslVo(byteBuffer, nextPacket);
-            try {
-              channelContext.sslFacadeContext.getSslFacade().encrypt(sslVo);
-              byteBuffer = sslVo.getByteBuffer();
-            } catch (SSLException e) {
-              log.error(channelContext.toString() + ", An exception occurred while performing SSL encryption", e);
-              Tio.close(channelContext, "An exception occurred during SSL encryption.", ChannelCloseCode.SSL_ENCRYPTION_ERROR);
-              return false;
-            }
-          }
-        }
-
-        AsynchronousSocketChannel asc = channelContext.asynchronousSocketChannel;
-        File fileBody = packet.getFileBody();
-        if (fileBody != null && asc instanceof EnhanceAsynchronousSocketChannel) {
-          boolean keepConnection = nextPacket.isKeepConnection();
-          // send header
-          nextPacket.setKeepConnection(true);
-          sendByteBuffer(byteBuffer, nextPacket);
-
-          transfer(fileBody, nextPacket, asc);
-
-          if (!keepConnection) {
-            Tio.close(channelContext, "Send file finish");
-          }
-        } else {
-          sendByteBuffer(byteBuffer, nextPacket);
-        }
-      } else {
-        channelContext.isSending.set(false);
-      }
+    // 将数据包加入队列，超过发送队列上限时按配置的策略处理
+    if (!channelContext.sendQueue.offer(packet)) {
+      return false;
     }
-
-    return true;
+    // 如果当前没有发送且队列不为空，则开始发送
+    return processSendQueue();
   }
 
-  private void transfer(File fileBody, Packet nextPacket, AsynchronousSocketChannel asc) {
-    SocketChannel sc = ((EnhanceAsynchronousSocketChannel) asc).getSocketChannel();
-    if (!isSsl) {
-      // —— 零拷贝：加退避，避免死循环打满 CPU ——
-      try (FileChannel fc = FileChannel.open(fileBody.toPath(), StandardOpenOption.READ)) {
-        long pos = 0, size = fc.size();
-
-        // 自旋次数 + 指数退避
-        int idleRounds = 0;
-        final int MAX_SPIN = 16; // 前几轮稍微积极一点
-        long backoffNanos = 1_000L; // 初始 1 微秒
-        final long MAX_BACKOFF_NANOS = 1_000_000L; // 最大退避到 1 毫秒
-
-        while (pos < size && TioUtils.checkBeforeIO(channelContext)) {
-          long sent = fc.transferTo(pos, size - pos, sc);
-          if (sent > 0) {
-            pos += sent;
-            // 一旦写出成功，重置退避状态
-            idleRounds = 0;
-            backoffNanos = 1_000L;
-          } else {
-            // 写不动：说明内核缓冲区满了或对端太慢
-            idleRounds++;
-            if (idleRounds <= MAX_SPIN) {
-              // 前几次：短暂退避 + 指数退避，兼顾吞吐和延迟
-              LockSupport.parkNanos(backoffNanos);
-              backoffNanos = Math.min(backoffNanos << 1, MAX_BACKOFF_NANOS);
-            } else {
-              // 再不行就稳定按最大退避，防止占死一个 CPU 核
-              LockSupport.parkNanos(MAX_BACKOFF_NANOS);
-            }
-          }
-        }
-      } catch (IOException e) {
-        log.error("zero-copy transfer file error, channel: {}", channelContext, e);
-      }
-    } else {
-      // —— SSL 分支暂时保持原样（下方可以再一起优化） ——
-      try (FileChannel fc = FileChannel.open(fileBody.toPath(), StandardOpenOption.READ)) {
-        ByteBuffer buf = BufferPoolUtils.allocate(TioConfig.WRITE_CHUNK_SIZE, 64 * 1024);
+  /**
+   * 编码并在需要时进行SSL加密
+   * @param packet
+   * @return 加密失败时返回null，此时连接已被关闭
+   */
+  private ByteBuffer getSendByteBuffer(Packet packet) {
+    ByteBuffer byteBuffer = getByteBuffer(packet);
+    if (isSsl) {
+      if (!packet.isSslEncrypted()) {
+        SslVo sslVo = new SslVo(byteBuffer, packet);
         try {
-          int readBytes;
-          while ((readBytes = fc.read(buf)) != -1) {
-            if (readBytes == 0) {
-              continue;
-            }
-            buf.flip();
-
-            SslVo sslVo = new SslVo(buf, nextPacket);
-            try {
-              channelContext.sslFacadeContext.getSslFacade().encrypt(sslVo);
-            } catch (SSLException e) {
-              log.error("Failed to encrypt data using ssl", e);
-              Tio.close(channelContext, "Failed to encrypt data using ssl", ChannelCloseCode.SSL_ENCRYPTION_ERROR);
-              break;
-            }
-            ByteBuffer encrypted = sslVo.getByteBuffer();
-            // 同步写出（这里之后也可以用类似退避逻辑再优化）
-            while (encrypted.hasRemaining()) {
-              sc.write(encrypted);
-            }
-            buf.clear();
-          }
-        } finally {
-          BufferPoolUtils.clean(buf);
+          channelContext.sslFacadeContext.getSslFacade().encrypt(sslVo);
+          byteBuffer = sslVo.getByteBuffer();
+        } catch (SSLException e) {
+          log.error(channelContext.toString() + ", An exception occurred while performing SSL encryption", e);
+          Tio.close(channelContext, "An exception occurred during SSL encryption.", ChannelCloseCode.SSL_ENCRYPTION_ERROR);
+          return null;
         }
-      } catch (IOException e1) {
-        log.error("ssl file transfer error, channel: {}", channelContext, e1);
       }
     }
+    return byteBuffer;
   }
 
   /**
@@ -192,43 +108,143 @@ public class SendPacketTask {
    * @param packets    Packet or List<Packet>
    * @author tanyaowu
    */
-  private void sendByteBuffer(ByteBuffer byteBuffer, Object packets) {
+  private void sendByteBuffer(ByteBuffer byteBuffer, Object packets, long offeredNanos) {
     if (byteBuffer == null) {
       log.error("{},byteBuffer is null", channelContext);
       return;
     }
     if (!TioUtils.checkBeforeIO(channelContext)) {
+      // 连接已关闭，这次写不会再进入WriteCompletionHandler，在这里归还编码结果
+      if (packets instanceof Packet) {
+        BufferPoolUtils.clean(byteBuffer, (Packet) packets);
+      }
       return;
     }
 
     // WriteCompletionVo：支持 returnToPool 参数
     WriteCompletionVo writeCompletionVo = new WriteCompletionVo(byteBuffer, packets);
+    writeCompletionVo.setOfferedNanos(offeredNanos);
     WriteCompletionHandler writeCompletionHandler = new WriteCompletionHandler(this.channelContext);
-    this.channelContext.asynchronousSocketChannel.write(byteBuffer, writeCompletionVo, writeCompletionHandler);
+    writeCompletionHandler.write(writeCompletionVo);
+  }
+
+  /**
+   * 聚合写：一批packet一次写出
+   * @param byteBuffers
+   * @param packets
+   */
+  private void sendByteBuffers(List<ByteBuffer> byteBuffers, List<Packet> packets, long offeredNanos) {
+    if (!TioUtils.checkBeforeIO(channelContext)) {
+      for (int i = 0; i < byteBuffers.size(); i++) {
+        BufferPoolUtils.clean(byteBuffers.get(i), packets.get(i));
+      }
+      return;
+    }
+
+    WriteCompletionVo writeCompletionVo;
+    if (channelContext.asynchronousSocketChannel instanceof EnhanceAsynchronousSocketChannel) {
+      // EnhanceAsynchronousSocketChannel不支持gathering write，合并到一个buffer中再写，同样是一次系统调用
+      int capacity = 0;
+      for (ByteBuffer byteBuffer : byteBuffers) {
+        capacity += byteBuffer.remaining();
+      }
+      ByteBuffer allByteBuffer = BufferPoolUtils.allocate(capacity, channelContext);
+      for (int i = 0; i < byteBuffers.size(); i++) {
+        ByteBuffer byteBuffer = byteBuffers.get(i);
+        allByteBuffer.put(byteBuffer);
+        BufferPoolUtils.clean(byteBuffer, packets.get(i));
+      }
+      allByteBuffer.flip();
+      writeCompletionVo = new WriteCompletionVo(allByteBuffer, packets);
+    } else {
+      writeCompletionVo = new WriteCompletionVo(byteBuffers.toArray(new ByteBuffer[byteBuffers.size()]), packets);
+    }
+    writeCompletionVo.setOfferedNanos(offeredNanos);
+    new WriteCompletionHandler(this.channelContext).write(writeCompletionVo);
   }
 
-  public void processSendQueue() {
+  /**
+   * 从发送队列中取出packet并发送，同一时刻每个连接只有一个写操作
+   * @return false: SSL加密失败
+   */
+  public boolean processSendQueue() {
     // 如果当前没有发送且队列不为空，则开始发送
-    if (channelContext.isSending.compareAndSet(false, true)) {
-      Packet nextPacket = channelContext.sendQueue.poll();
-      if (nextPacket != null) {
-        ByteBuffer byteBuffer = getByteBuffer(nextPacket);
-        if (isSsl) {
-          if (!nextPacket.isSslEncrypted()) {
-            SslVo sslVo = new SslVo(byteBuffer, nextPacket);
-            try {
-              channelContext.sslFacadeContext.getSslFacade().encrypt(sslVo);
-              byteBuffer = sslVo.getByteBuffer();
-            } catch (SSLException e) {
-              log.error(channelContext.toString() + ", An exception occurred while performing SSL encryption", e);
-              Tio.close(channelContext, "An exception occurred during SSL encryption.", ChannelCloseCode.SSL_ENCRYPTION_ERROR);
-            }
-          }
+    while (channelContext.tryAcquireSending()) {
+      Packet nextPacket = channelContext.sendQueue.pollForSend();
+      if (nextPacket == null) {
+        channelContext.releaseSending();
+        // 释放发送权后再检查一次，防止其它线程在poll与set(false)之间入队的packet无人发送
+        if (channelContext.sendQueue.isEmpty()) {
+          return true;
+        }
+        continue;
+      }
+
+      if (nextPacket.getFileBody() != null) {
+        ByteBuffer byteBuffer = getSendByteBuffer(nextPacket);
+        if (byteBuffer == null) {
+          return false;
         }
-        sendByteBuffer(byteBuffer, nextPacket);
-      } else {
-        channelContext.isSending.set(false);
+        // 文件传输由事件驱动，结束后才释放发送权
+        new FileTransferTask(channelContext, nextPacket, byteBuffer).start();
+        return true;
       }
+
+      long offeredNanos = channelContext.sendQueue.getPolledOfferedNanos();
+      if (tioConfig.getSendBatchMaxPackets() > 1) {
+        return sendBatch(nextPacket, offeredNanos);
+      }
+
+      ByteBuffer byteBuffer = getSendByteBuffer(nextPacket);
+      if (byteBuffer == null) {
+        return false;
+      }
+      sendByteBuffer(byteBuffer, nextPacket, offeredNanos);
+      return true;
     }
+    return true;
+  }
+
+  /**
+   * 从发送队列中最多取sendBatchMaxPackets个packet（或累计sendBatchMaxBytes字节）合并成一次写操作
+   * @param firstPacket 已经从队列中取出的第一个packet
+   * @param offeredNanos 第一个packet的入队时间
+   * @return false: SSL加密失败
+   */
+  private boolean sendBatch(Packet firstPacket, long offeredNanos) {
+    int maxPackets = tioConfig.getSendBatchMaxPackets();
+    int maxBytes = tioConfig.getSendBatchMaxBytes();
+    List<Packet> packets = new ArrayList<>(Math.min(maxPackets, 16));
+    List<ByteBuffer> byteBuffers = new ArrayList<>(Math.min(maxPackets, 16));
+    int allBytes = 0;
+    Packet packet = firstPacket;
+    while (true) {
+      ByteBuffer byteBuffer = getSendByteBuffer(packet);
+      if (byteBuffer == null) {
+        for (int i = 0; i < byteBuffers.size(); i++) {
+          BufferPoolUtils.clean(byteBuffers.get(i), packets.get(i));
+        }
+        return false;
+      }
+      packets.add(packet);
+      byteBuffers.add(byteBuffer);
+      allBytes += byteBuffer.remaining();
+      if (packets.size() >= maxPackets || allBytes >= maxBytes) {
+        break;
+      }
+
+      // 队首是文件packet时不取，文件packet走单独的传输流程
+      packet = channelContext.sendQueue.pollBatchable();
+      if (packet == null) {
+        break;
+      }
+    }
+
+    if (packets.size() == 1) {
+      sendByteBuffer(byteBuffers.get(0), firstPacket, offeredNanos);
+    } else {
+      sendByteBuffers(byteBuffers, packets, offeredNanos);
+    }
+    return true;
   }
-}
\ No newline at end of file
+}
@@ -0,0 +1,185 @@
+package com.litongjava.tio.core.task;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.litongjava.aio.Packet;
+import com.litongjava.tio.core.ChannelCloseCode;
+import com.litongjava.tio.core.ChannelContext;
+import com.litongjava.tio.core.ReadCompletionHandler;
+import com.litongjava.tio.core.Tio;
+import com.litongjava.tio.core.TioConfig;
+import com.litongjava.tio.core.stat.GroupStat;
+import com.litongjava.tio.core.stat.LatencyStats;
+import com.litongjava.tio.core.timer.HashedTimingWheel;
+
+/**
+ * 连接的串行通道：一个无锁队列加一个"已调度"标记，复用共享的bizExecutor<br>
+ * 同一时刻每个连接最多只有一个任务在线程池中运行，保证同一连接的packet按到达顺序处理，不同连接之间完全并行<br>
+ * 每次被调度最多处理laneMaxPacketsPerRun个packet，然后重新排队，避免一个繁忙的连接长期占用线程
+ * @author Tong Li
+ */
+public class SerialLane implements Runnable {
+  private static final Logger log = LoggerFactory.getLogger(SerialLane.class);
+  /** 被线程池拒绝后重新提交的间隔，毫秒 */
+  static final long REJECT_RETRY_DELAY = 10;
+
+  private final ChannelContext channelContext;
+  private final ConcurrentLinkedQueue<Entry> queue = new ConcurrentLinkedQueue<>();
+  private final AtomicInteger size = new AtomicInteger();
+  private final AtomicBoolean scheduled = new AtomicBoolean(false);
+  private final HandlePacketTask handlePacketTask = new HandlePacketTask();
+  /** 被线程池拒绝后等待重新提交，此时连接的读已暂停；只在持有scheduled时读写 */
+  private volatile boolean backoff = false;
+
+  public SerialLane(ChannelContext channelContext) {
+    this.channelContext = channelContext;
+  }
+
+  /**
+   * 一次读解出的一批packet整体入队，通道空闲时只提交一次线程池（批量派发）
+   * @param packets 按到达顺序
+   */
+  public void offerAll(List<Packet> packets) {
+    long offeredNanos = LatencyStats.isOn(channelContext.tioConfig) ? System.nanoTime() : 0;
+    for (Packet packet : packets) {
+      queue.offer(new Entry(packet, offeredNanos));
+    }
+    size.addAndGet(packets.size());
+    GroupStat groupStat = channelContext.tioConfig.groupStat;
+    if (groupStat != null) {
+      groupStat.laneQueuedPackets.addAndGet(packets.size());
+    }
+    schedule();
+  }
+
+  /**
+   * 入队，通道空闲时提交到线程池
+   */
+  public void offer(Packet packet) {
+    queue.offer(new Entry(packet, LatencyStats.isOn(channelContext.tioConfig) ? System.nanoTime() : 0));
+    size.incrementAndGet();
+    GroupStat groupStat = channelContext.tioConfig.groupStat;
+    if (groupStat != null) {
+      groupStat.laneQueuedPackets.incrementAndGet();
+    }
+    schedule();
+  }
+
+  private void schedule() {
+    if (!scheduled.compareAndSet(false, true)) {
+      return;
+    }
+    submit();
+  }
+
+  /**
+   * 提交到线程池。被拒绝时不在当前线程（通常是I/O线程）处理：<br>
+   * 线程池已满则暂停连接的读，保持scheduled并在REJECT_RETRY_DELAY毫秒后重新提交，提交成功后恢复读；<br>
+   * 线程池已关闭则以BIZ_EXECUTOR_REJECTED关闭连接
+   */
+  private void submit() {
+    Executor executor = channelContext.tioConfig.getBizExecutor();
+    try {
+      executor.execute(this);
+      if (backoff) {
+        backoff = false;
+        ReadCompletionHandler readCompletionHandler = channelContext.readCompletionHandler;
+        if (readCompletionHandler != null) {
+          readCompletionHandler.resumeRead(ReadCompletionHandler.PAUSE_BIZ_EXECUTOR);
+        }
+      }
+    } catch (RejectedExecutionException e) {
+      if (channelContext.isClosed() || (executor instanceof ExecutorService && ((ExecutorService) executor).isShutdown())) {
+        drop();
+        if (!channelContext.isClosed()) {
+          log.warn("{}, biz executor has been shut down", channelContext);
+          Tio.close(channelContext, "biz executor has been shut down", ChannelCloseCode.BIZ_EXECUTOR_REJECTED);
+        }
+        return;
+      }
+      if (!backoff) {
+        backoff = true;
+        log.warn("{}, biz executor rejected the lane, pause reading and retry in {}ms", channelContext, REJECT_RETRY_DELAY);
+        ReadCompletionHandler readCompletionHandler = channelContext.readCompletionHandler;
+        if (readCompletionHandler != null) {
+          readCompletionHandler.pauseRead(ReadCompletionHandler.PAUSE_BIZ_EXECUTOR);
+        }
+      }
+      HashedTimingWheel.shared().newTimeout(this::submit, REJECT_RETRY_DELAY, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  /**
+   * 丢弃队列中的packet并释放调度标记
+   */
+  private void drop() {
+    int dropped = 0;
+    while (queue.poll() != null) {
+      dropped++;
+    }
+    size.addAndGet(-dropped);
+    GroupStat groupStat = channelContext.tioConfig.groupStat;
+    if (groupStat != null) {
+      groupStat.laneQueuedPackets.addAndGet(-dropped);
+    }
+    backoff = false;
+    scheduled.set(false);
+  }
+
+  @Override
+  public void run() {
+    TioConfig tioConfig = channelContext.tioConfig;
+    int max = tioConfig.getLaneMaxPacketsPerRun();
+    int handled = 0;
+    Entry entry;
+    while ((max <= 0 || handled < max) && (entry = queue.poll()) != null) {
+      size.decrementAndGet();
+      if (tioConfig.groupStat != null) {
+        tioConfig.groupStat.laneQueuedPackets.decrementAndGet();
+      }
+      handled++;
+      try {
+        handlePacketTask.handle(channelContext, entry.packet, entry.offeredNanos);
+      } catch (Throwable e) {
+        log.error("HandlePacketTask error, {}", channelContext, e);
+      }
+    }
+    scheduled.set(false);
+    // 释放标记后再检查一次，防止入队的线程看到scheduled为true而没有提交
+    if (!queue.isEmpty()) {
+      schedule();
+    }
+  }
+
+  /**
+   * @return 队列中等待处理的packet数
+   */
+  public int size() {
+    return size.get();
+  }
+
+  public boolean isScheduled() {
+    return scheduled.get();
+  }
+
+  private static final class Entry {
+    final Packet packet;
+    /** 入队时的System.nanoTime()，不统计耗时时为0 */
+    final long offeredNanos;
+
+    Entry(Packet packet, long offeredNanos) {
+      this.packet = packet;
+      this.offeredNanos = offeredNanos;
+    }
+  }
+}
@@ -0,0 +1,344 @@
+package com.litongjava.tio.core.timer;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 哈希时间轮：大量短期定时任务（超时、心跳）只占一个线程，添加和取消都是O(1)<br>
+ * 精度是一个tick，任务在时间轮线程中执行，应尽量短小，耗时的工作交给其它线程池<br>
+ * 时间轮线程是守护线程，不会阻止JVM退出；没有任何任务超过idleTimeout后自动退出，添加任务时重新启动
+ * @author Tong Li
+ */
+public class HashedTimingWheel {
+  private static final Logger log = LoggerFactory.getLogger(HashedTimingWheel.class);
+
+  private static volatile HashedTimingWheel shared;
+
+  private final long tickNanos;
+  private final Bucket[] wheel;
+  private final int mask;
+  private final String name;
+  /** 新添加的任务先放这里，由时间轮线程在下一个tick放入对应的格子 */
+  private final ConcurrentLinkedQueue<Timeout> pendingTimeouts = new ConcurrentLinkedQueue<>();
+  /** 已取消的任务，由时间轮线程在下一个tick从格子中移除，不必等到经过它的格子 */
+  private final ConcurrentLinkedQueue<Timeout> cancelledTimeouts = new ConcurrentLinkedQueue<>();
+  private volatile Thread workerThread;
+  private volatile boolean stopped = false;
+  private volatile long startTime;
+  private long tick;
+  /** 格子中的任务数，只由时间轮线程修改 */
+  private volatile int bucketed;
+  /** 没有任务超过这个时长后时间轮线程退出，纳秒 */
+  private volatile long idleTimeoutNanos = TimeUnit.SECONDS.toNanos(60);
+
+  /**
+   * @param name 线程名
+   * @param tickDuration 每格的时长
+   * @param unit tickDuration的单位
+   * @param ticksPerWheel 格子数，会向上取到2的幂次
+   */
+  public HashedTimingWheel(String name, long tickDuration, TimeUnit unit, int ticksPerWheel) {
+    if (tickDuration <= 0 || ticksPerWheel <= 0) {
+      throw new IllegalArgumentException("tickDuration and ticksPerWheel must be > 0");
+    }
+    int size = 1;
+    while (size < ticksPerWheel) {
+      size <<= 1;
+    }
+    this.name = name;
+    this.tickNanos = Math.max(unit.toNanos(tickDuration), TimeUnit.MILLISECONDS.toNanos(1));
+    this.wheel = new Bucket[size];
+    for (int i = 0; i < size; i++) {
+      wheel[i] = new Bucket();
+    }
+    this.mask = size - 1;
+  }
+
+  /**
+   * @return 框架共用的时间轮，tick为10ms，512格
+   */
+  public static HashedTimingWheel shared() {
+    HashedTimingWheel timingWheel = shared;
+    if (timingWheel == null) {
+      synchronized (HashedTimingWheel.class) {
+        timingWheel = shared;
+        if (timingWheel == null) {
+          timingWheel = new HashedTimingWheel("tio-timing-wheel", 10, TimeUnit.MILLISECONDS, 512);
+          shared = timingWheel;
+        }
+      }
+    }
+    return timingWheel;
+  }
+
+  /**
+   * 在delay之后执行task
+   */
+  public Timeout newTimeout(Runnable task, long delay, TimeUnit unit) {
+    if (stopped) {
+      throw new IllegalStateException(name + " has been stopped");
+    }
+    start();
+    long deadline = System.nanoTime() - startTime + unit.toNanos(Math.max(delay, 0));
+    Timeout timeout = new Timeout(this, task, deadline);
+    pendingTimeouts.offer(timeout);
+    // 时间轮线程可能在offer之前刚好空闲退出
+    start();
+    return timeout;
+  }
+
+  private void start() {
+    if (workerThread == null) {
+      synchronized (this) {
+        if (workerThread == null && !stopped) {
+          if (startTime == 0) {
+            startTime = System.nanoTime();
+          } else {
+            // 空闲退出后重新启动，格子都是空的，从当前时间对应的tick继续
+            tick = (System.nanoTime() - startTime) / tickNanos;
+          }
+          Thread thread = new Thread(this::run, name);
+          thread.setDaemon(true);
+          workerThread = thread;
+          thread.start();
+        }
+      }
+    }
+  }
+
+  /**
+   * @param idleTimeout 没有任何任务超过这个时长后时间轮线程退出
+   */
+  public void setIdleTimeout(long idleTimeout, TimeUnit unit) {
+    this.idleTimeoutNanos = unit.toNanos(idleTimeout);
+  }
+
+  /**
+   * @return 格子中的任务数（不含还没放入格子的新任务）
+   */
+  int bucketed() {
+    return bucketed;
+  }
+
+  /**
+   * @return 时间轮线程是否在运行
+   */
+  public boolean isRunning() {
+    return workerThread != null;
+  }
+
+  public void stop() {
+    stopped = true;
+    Thread thread = workerThread;
+    if (thread != null) {
+      thread.interrupt();
+    }
+  }
+
+  private void run() {
+    long idleSince = System.nanoTime();
+    while (!stopped) {
+      long deadline = tickNanos * (tick + 1);
+      long sleepNanos = deadline - (System.nanoTime() - startTime);
+      if (sleepNanos > 0) {
+        try {
+          TimeUnit.NANOSECONDS.sleep(sleepNanos);
+        } catch (InterruptedException e) {
+          if (stopped) {
+            return;
+          }
+        }
+        continue;
+      }
+      purgeCancelledTimeouts();
+      transferPendingTimeouts();
+      bucketed -= wheel[(int) (tick & mask)].expire(deadline);
+      tick++;
+      if (bucketed > 0 || !pendingTimeouts.isEmpty()) {
+        idleSince = System.nanoTime();
+      } else if (System.nanoTime() - idleSince >= idleTimeoutNanos && exitIfIdle()) {
+        return;
+      }
+    }
+  }
+
+  /**
+   * 空闲退出：清除workerThread后再检查一次，防止newTimeout()看到线程还在而没有启动新线程
+   */
+  private boolean exitIfIdle() {
+    synchronized (this) {
+      workerThread = null;
+    }
+    if (pendingTimeouts.isEmpty()) {
+      log.debug("{} is idle, exit", name);
+      return true;
+    }
+    synchronized (this) {
+      if (workerThread == null) {
+        workerThread = Thread.currentThread();
+        return false;
+      }
+    }
+    // 已经有新线程接手
+    return true;
+  }
+
+  private void purgeCancelledTimeouts() {
+    Timeout timeout;
+    while ((timeout = cancelledTimeouts.poll()) != null) {
+      Bucket bucket = timeout.bucket;
+      if (bucket != null) {
+        bucket.remove(timeout);
+        bucketed--;
+      }
+    }
+  }
+
+  private void transferPendingTimeouts() {
+    // 每个tick最多转移10万个，防止持续大量添加时饿死到期处理
+    for (int i = 0; i < 100000; i++) {
+      Timeout timeout = pendingTimeouts.poll();
+      if (timeout == null) {
+        return;
+      }
+      if (timeout.isCancelled()) {
+        continue;
+      }
+      long calculated = timeout.deadline / tickNanos;
+      timeout.remainingRounds = (calculated - tick) / wheel.length;
+      // 已经过期的放到当前格子，本tick就执行
+      long ticks = Math.max(calculated, tick);
+      wheel[(int) (ticks & mask)].add(timeout);
+      bucketed++;
+    }
+  }
+
+  /**
+   * 一个定时任务
+   */
+  public static class Timeout {
+    private static final int ST_INIT = 0;
+    private static final int ST_CANCELLED = 1;
+    private static final int ST_EXPIRED = 2;
+    private static final AtomicIntegerFieldUpdater<Timeout> STATE = AtomicIntegerFieldUpdater.newUpdater(Timeout.class, "state");
+
+    private final HashedTimingWheel timer;
+    private final Runnable task;
+    private final long deadline;
+    private volatile int state = ST_INIT;
+    long remainingRounds;
+    /** 所在的格子，还在pendingTimeouts中或已移除时为null，只由时间轮线程访问 */
+    Bucket bucket;
+    Timeout next;
+    Timeout prev;
+
+    Timeout(HashedTimingWheel timer, Runnable task, long deadline) {
+      this.timer = timer;
+      this.task = task;
+      this.deadline = deadline;
+    }
+
+    /**
+     * 取消，已取消的任务由时间轮线程在下一个tick移除，不会在格子中堆积
+     * @return false: 已经执行或已经取消
+     */
+    public boolean cancel() {
+      if (!STATE.compareAndSet(this, ST_INIT, ST_CANCELLED)) {
+        return false;
+      }
+      timer.cancelledTimeouts.offer(this);
+      return true;
+    }
+
+    public boolean isCancelled() {
+      return state == ST_CANCELLED;
+    }
+
+    public boolean isExpired() {
+      return state == ST_EXPIRED;
+    }
+
+    void expire() {
+      if (!STATE.compareAndSet(this, ST_INIT, ST_EXPIRED)) {
+        return;
+      }
+      try {
+        task.run();
+      } catch (Throwable e) {
+        log.error("timeout task error", e);
+      }
+    }
+  }
+
+  /**
+   * 一个格子，双向链表，只由时间轮线程访问
+   */
+  static class Bucket {
+    private Timeout head;
+    private Timeout tail;
+
+    void add(Timeout timeout) {
+      timeout.bucket = this;
+      if (head == null) {
+        head = tail = timeout;
+      } else {
+        tail.next = timeout;
+        timeout.prev = tail;
+        tail = timeout;
+      }
+    }
+
+    /**
+     * @return 从格子中移除的任务数
+     */
+    int expire(long deadline) {
+      int removed = 0;
+      Timeout timeout = head;
+      while (timeout != null) {
+        Timeout next = timeout.next;
+        if (timeout.isCancelled()) {
+          // 已在cancelledTimeouts中，由purgeCancelledTimeouts()移除
+        } else if (timeout.remainingRounds <= 0) {
+          remove(timeout);
+          removed++;
+          if (timeout.deadline <= deadline) {
+            timeout.expire();
+          } else {
+            // 不应该发生：放错了格子
+            log.error("timeout.deadline {} > deadline {}", timeout.deadline, deadline);
+          }
+        } else {
+          timeout.remainingRounds--;
+        }
+        timeout = next;
+      }
+      return removed;
+    }
+
+    void remove(Timeout timeout) {
+      if (timeout.bucket != this) {
+        return;
+      }
+      Timeout next = timeout.next;
+      if (timeout.prev != null) {
+        timeout.prev.next = next;
+      }
+      if (next != null) {
+        next.prev = timeout.prev;
+      }
+      if (timeout == head) {
+        head = next;
+      }
+      if (timeout == tail) {
+        tail = timeout.prev;
+      }
+      timeout.prev = null;
+      timeout.next = null;
+      timeout.bucket = null;
+    }
+  }
+}
@@ -0,0 +1,218 @@
+package com.litongjava.tio.core.timer;
+
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.litongjava.tio.core.ChannelCloseCode;
+import com.litongjava.tio.core.ChannelContext;
+import com.litongjava.tio.core.IdleState;
+import com.litongjava.tio.core.Tio;
+import com.litongjava.tio.core.TioConfig;
+import com.litongjava.tio.core.intf.AioListener;
+import com.litongjava.tio.core.stat.ChannelStat;
+import com.litongjava.tio.server.intf.ServerAioListener;
+import com.litongjava.tio.utils.SystemTimer;
+
+/**
+ * 连接空闲检测：每个连接在时间轮上只有一个定时任务，到期时才比较收发时间<br>
+ * 收发数据只更新ChannelStat中的时间，不操作时间轮；到期时没有空闲就按剩余时间重新放入时间轮，
+ * 不需要扫描全部连接，也不持有connections的锁<br>
+ * 支持读空闲（readIdleTimeout）、写空闲（writeIdleTimeout）和读写都空闲（heartbeatTimeout，可被ChannelContext.heartbeatTimeout覆盖）
+ * @author Tong Li
+ */
+public class IdleDetector implements Runnable {
+  private static final Logger log = LoggerFactory.getLogger(IdleDetector.class);
+  /** 时间轮的tick，也是空闲事件最多的延迟 */
+  public static final long TICK_MILLIS = 100;
+
+  private static volatile HashedTimingWheel wheel;
+
+  private final ChannelContext channelContext;
+  /** 上一次触发各类空闲的时间，触发后从这个时间重新计时 */
+  private long readIdleFiredAt;
+  private long writeIdleFiredAt;
+  private long allIdleFiredAt;
+  private volatile HashedTimingWheel.Timeout timeout;
+  private volatile boolean cancelled = false;
+
+  private IdleDetector(ChannelContext channelContext) {
+    this.channelContext = channelContext;
+  }
+
+  /**
+   * @return 空闲检测和客户端心跳共用的时间轮，tick为100ms，1024格（一圈约102秒，更长的超时按圈数计）
+   */
+  public static HashedTimingWheel wheel() {
+    HashedTimingWheel timingWheel = wheel;
+    if (timingWheel == null) {
+      synchronized (IdleDetector.class) {
+        timingWheel = wheel;
+        if (timingWheel == null) {
+          timingWheel = new HashedTimingWheel("tio-idle-wheel", TICK_MILLIS, TimeUnit.MILLISECONDS, 1024);
+          wheel = timingWheel;
+        }
+      }
+    }
+    return timingWheel;
+  }
+
+  /**
+   * 连接建立后开始检测，没有配置任何空闲超时时不检测
+   * @param channelContext
+   */
+  public static void register(ChannelContext channelContext) {
+    IdleDetector idleDetector = new IdleDetector(channelContext);
+    long delay = idleDetector.nextDelay(SystemTimer.currTime);
+    if (delay < 0) {
+      return;
+    }
+    channelContext.setIdleDetector(idleDetector);
+    idleDetector.schedule(delay);
+  }
+
+  /**
+   * 连接关闭时停止检测
+   * @param channelContext
+   */
+  public static void cancel(ChannelContext channelContext) {
+    IdleDetector idleDetector = channelContext.getIdleDetector();
+    if (idleDetector != null) {
+      channelContext.setIdleDetector(null);
+      idleDetector.cancel();
+    }
+  }
+
+  /**
+   * 超时时间变化后（比如修改了ChannelContext.heartbeatTimeout）按新的超时重新计时
+   */
+  public void reschedule() {
+    HashedTimingWheel.Timeout current = timeout;
+    if (current != null && current.cancel()) {
+      long delay = nextDelay(SystemTimer.currTime);
+      if (delay >= 0) {
+        schedule(delay);
+      }
+    }
+  }
+
+  private void cancel() {
+    cancelled = true;
+    HashedTimingWheel.Timeout current = timeout;
+    if (current != null) {
+      current.cancel();
+    }
+  }
+
+  private void schedule(long delay) {
+    if (cancelled) {
+      return;
+    }
+    timeout = wheel().newTimeout(this, delay, TimeUnit.MILLISECONDS);
+  }
+
+  @Override
+  public void run() {
+    if (cancelled || channelContext.isClosed() || channelContext.isRemoved() || channelContext.tioConfig.isStopped()) {
+      return;
+    }
+    TioConfig tioConfig = channelContext.tioConfig;
+    ChannelStat stat = channelContext.stat;
+    long now = SystemTimer.currTime;
+
+    long readIdleTimeout = tioConfig.getReadIdleTimeout();
+    if (readIdleTimeout > 0 && now - Math.max(stat.latestTimeOfReceivedByte, readIdleFiredAt) > readIdleTimeout) {
+      readIdleFiredAt = now;
+      if (!fire(IdleState.READER_IDLE, now - stat.latestTimeOfReceivedByte)) {
+        return;
+      }
+    }
+
+    long writeIdleTimeout = tioConfig.getWriteIdleTimeout();
+    if (writeIdleTimeout > 0 && now - Math.max(stat.latestTimeOfSentPacket, writeIdleFiredAt) > writeIdleTimeout) {
+      writeIdleFiredAt = now;
+      if (!fire(IdleState.WRITER_IDLE, now - stat.latestTimeOfSentPacket)) {
+        return;
+      }
+    }
+
+    long allIdleTimeout = allIdleTimeout();
+    long latest = Math.max(stat.latestTimeOfReceivedByte, stat.latestTimeOfSentPacket);
+    if (allIdleTimeout > 0 && now - Math.max(latest, allIdleFiredAt) > allIdleTimeout) {
+      allIdleFiredAt = now;
+      if (!fire(IdleState.ALL_IDLE, now - latest)) {
+        return;
+      }
+    }
+
+    long delay = nextDelay(now);
+    if (delay >= 0) {
+      schedule(delay);
+    }
+  }
+
+  /**
+   * @return 距离最早一个可能到期的空闲超时还有多少毫秒，没有配置任何空闲超时时返回-1
+   */
+  private long nextDelay(long now) {
+    TioConfig tioConfig = channelContext.tioConfig;
+    ChannelStat stat = channelContext.stat;
+    long next = Long.MAX_VALUE;
+    long readIdleTimeout = tioConfig.getReadIdleTimeout();
+    if (readIdleTimeout > 0) {
+      next = Math.min(next, Math.max(stat.latestTimeOfReceivedByte, readIdleFiredAt) + readIdleTimeout);
+    }
+    long writeIdleTimeout = tioConfig.getWriteIdleTimeout();
+    if (writeIdleTimeout > 0) {
+      next = Math.min(next, Math.max(stat.latestTimeOfSentPacket, writeIdleFiredAt) + writeIdleTimeout);
+    }
+    long allIdleTimeout = allIdleTimeout();
+    if (allIdleTimeout > 0) {
+      long latest = Math.max(stat.latestTimeOfReceivedByte, stat.latestTimeOfSentPacket);
+      next = Math.min(next, Math.max(latest, allIdleFiredAt) + allIdleTimeout);
+    }
+    if (next == Long.MAX_VALUE) {
+      return -1;
+    }
+    // SystemTimer.currTime每10ms更新一次，多等10ms，保证到期时一定判断为超时，不会空转一圈
+    return Math.max(next - now, 0) + 10;
+  }
+
+  private long allIdleTimeout() {
+    Long heartbeatTimeout = channelContext.heartbeatTimeout;
+    if (heartbeatTimeout != null && heartbeatTimeout > 0) {
+      return heartbeatTimeout;
+    }
+    return channelContext.tioConfig.heartbeatTimeout;
+  }
+
+  /**
+   * @return false: 连接已被关闭，不再检测
+   */
+  private boolean fire(IdleState idleState, long interval) {
+    AioListener aioListener = channelContext.tioConfig.getAioListener();
+    if (!(aioListener instanceof ServerAioListener)) {
+      return true;
+    }
+    ServerAioListener serverAioListener = (ServerAioListener) aioListener;
+    boolean keep;
+    try {
+      if (idleState == IdleState.ALL_IDLE) {
+        keep = serverAioListener.onHeartbeatTimeout(channelContext, interval, channelContext.stat.incrementHeartbeatTimeoutCount());
+      } else {
+        keep = serverAioListener.onIdle(channelContext, idleState, interval);
+      }
+    } catch (Throwable e) {
+      log.error(e.toString(), e);
+      keep = true;
+    }
+    if (keep) {
+      return true;
+    }
+    log.info("{}, {} ms {}", channelContext, interval, idleState);
+    channelContext.setCloseCode(ChannelCloseCode.HEARTBEAT_TIMEOUT);
+    Tio.remove(channelContext, interval + " ms " + idleState);
+    return false;
+  }
+}
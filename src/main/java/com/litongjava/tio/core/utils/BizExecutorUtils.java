@@ -0,0 +1,144 @@
+package com.litongjava.tio.core.utils;
+
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.litongjava.tio.core.TioConfig;
+
+/**
+ * 业务线程池工具<br>
+ * Java 21+使用虚拟线程（每个任务一个虚拟线程），更早的JVM退回到平台线程池；
+ * 编译目标仍是Java 8，虚拟线程相关的API通过反射调用
+ * @author Tong Li
+ */
+public class BizExecutorUtils {
+  private static final Logger log = LoggerFactory.getLogger(BizExecutorUtils.class);
+  /** 不限制并发时平台线程池的线程数 */
+  private static final int DEFAULT_PLATFORM_THREADS = Math.max(TioConfig.cpuNum * 8, 16);
+
+  /**
+   * 按TioConfig的配置创建处理业务的线程池，优先使用虚拟线程
+   */
+  public static ExecutorService newBizExecutor(TioConfig tioConfig) {
+    String name = "tio-biz-" + tioConfig.getName();
+    int maxConcurrent = tioConfig.getVirtualThreadMaxConcurrent();
+    ExecutorService executor = newVirtualThreadExecutor(name);
+    if (executor != null) {
+      log.info("{} handles packets on virtual threads, max concurrent:{}", tioConfig.getName(), maxConcurrent);
+      if (maxConcurrent > 0) {
+        return new LimitedExecutorService(executor, maxConcurrent);
+      }
+      return executor;
+    }
+    int threads = maxConcurrent > 0 ? maxConcurrent : DEFAULT_PLATFORM_THREADS;
+    log.warn("{} virtual threads are not supported on java {}, fall back to {} platform threads", tioConfig.getName(),
+        System.getProperty("java.version"), threads);
+    return newPlatformExecutor(name, threads);
+  }
+
+  /**
+   * @return 每个任务一个虚拟线程的线程池，JVM不支持虚拟线程时返回null
+   */
+  public static ExecutorService newVirtualThreadExecutor(String name) {
+    try {
+      Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+      Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+      builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, name + "-", 0L);
+      ThreadFactory threadFactory = (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+      Method method = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+      return (ExecutorService) method.invoke(null, threadFactory);
+    } catch (Throwable e) {
+      // Java 21以下没有这些API，Java 19/20未开启preview时抛出UnsupportedOperationException
+      return null;
+    }
+  }
+
+  public static boolean isVirtualThreadSupported() {
+    ExecutorService executor = newVirtualThreadExecutor("tio-probe");
+    if (executor == null) {
+      return false;
+    }
+    executor.shutdown();
+    return true;
+  }
+
+  public static ExecutorService newPlatformExecutor(String name, int threads) {
+    AtomicInteger threadNumber = new AtomicInteger(1);
+    ThreadFactory threadFactory = r -> {
+      Thread thread = new Thread(r, name + "-" + threadNumber.getAndIncrement());
+      thread.setDaemon(true);
+      return thread;
+    };
+    ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+        new LinkedBlockingQueue<>(), threadFactory);
+    executor.allowCoreThreadTimeOut(true);
+    return executor;
+  }
+
+  /**
+   * 限制同时运行的任务数，超出的任务在自己的（虚拟）线程中等待许可，不占用平台线程
+   */
+  static class LimitedExecutorService extends AbstractExecutorService {
+    private final ExecutorService executor;
+    private final Semaphore semaphore;
+
+    LimitedExecutorService(ExecutorService executor, int maxConcurrent) {
+      this.executor = executor;
+      this.semaphore = new Semaphore(maxConcurrent);
+    }
+
+    @Override
+    public void execute(Runnable command) {
+      executor.execute(() -> {
+        try {
+          semaphore.acquire();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          return;
+        }
+        try {
+          command.run();
+        } finally {
+          semaphore.release();
+        }
+      });
+    }
+
+    @Override
+    public void shutdown() {
+      executor.shutdown();
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+      return executor.shutdownNow();
+    }
+
+    @Override
+    public boolean isShutdown() {
+      return executor.isShutdown();
+    }
+
+    @Override
+    public boolean isTerminated() {
+      return executor.isTerminated();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+      return executor.awaitTermination(timeout, unit);
+    }
+  }
+}
@@ -0,0 +1,93 @@
+package com.litongjava.tio.core.utils;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+import com.litongjava.tio.utils.lock.MapWithLock;
+import com.litongjava.tio.utils.prop.IPropSupport;
+
+/**
+ * 与MapWithLockPropSupport用法相同，区别是第一次set时才创建属性map<br>
+ * 大部分连接从不设置属性，不必为每个连接预先创建MapWithLock（读写锁）和HashMap
+ * @author Tong Li
+ */
+public class LazyPropSupport implements IPropSupport {
+  @SuppressWarnings("rawtypes")
+  private static final AtomicReferenceFieldUpdater<LazyPropSupport, MapWithLock> PROPS = AtomicReferenceFieldUpdater
+      .newUpdater(LazyPropSupport.class, MapWithLock.class, "props");
+
+  private volatile MapWithLock<String, Object> props;
+
+  @SuppressWarnings("unchecked")
+  private MapWithLock<String, Object> props() {
+    MapWithLock<String, Object> map = props;
+    if (map == null) {
+      PROPS.compareAndSet(this, null, new MapWithLock<String, Object>(new HashMap<String, Object>(8)));
+      map = props;
+    }
+    return map;
+  }
+
+  @Override
+  public void clearAttribute() {
+    MapWithLock<String, Object> map = props;
+    if (map != null) {
+      map.clear();
+    }
+  }
+
+  public void clear() {
+    clearAttribute();
+  }
+
+  @Override
+  public Object getAttribute(String key) {
+    return get(key);
+  }
+
+  public Object get(String key) {
+    MapWithLock<String, Object> map = props;
+    if (map == null) {
+      return null;
+    }
+    Map<String, Object> obj = map.getObj();
+    return obj.get(key);
+  }
+
+  @Override
+  public String getString(String key) {
+    return (String) get(key);
+  }
+
+  @Override
+  public Long getLong(String key) {
+    return (Long) get(key);
+  }
+
+  @Override
+  public Integer getInteger(String key) {
+    return (Integer) get(key);
+  }
+
+  @Override
+  public void removeAttribute(String key) {
+    remove(key);
+  }
+
+  public void remove(String key) {
+    MapWithLock<String, Object> map = props;
+    if (map != null) {
+      map.remove(key);
+    }
+  }
+
+  @Override
+  public void setAttribute(String key, Object value) {
+    set(key, value);
+  }
+
+  public void set(String key, Object value) {
+    props().put(key, value);
+  }
+}
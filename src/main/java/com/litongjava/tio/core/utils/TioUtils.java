@@ -16,7 +16,7 @@ public class TioUtils {
   private static final Logger log = LoggerFactory.getLogger(TioUtils.class);
   
   public static boolean checkBeforeIO(ChannelContext channelContext) {
-    if (channelContext.isWaitingClose) {
+    if (channelContext.isWaitingClose()) {
       return false;
     }
 
@@ -24,10 +24,10 @@ public class TioUtils {
     if (channelContext.asynchronousSocketChannel != null) {
       isopen = channelContext.asynchronousSocketChannel.isOpen();
 
-      if (channelContext.isClosed || channelContext.isRemoved) {
+      if (channelContext.isClosed() || channelContext.isRemoved()) {
         if (isopen) {
           try {
-            Tio.close(channelContext, "asynchronousSocketChannel is open, but channelContext isClosed: " + channelContext.isClosed + ", isRemoved: " + channelContext.isRemoved,
+            Tio.close(channelContext, "asynchronousSocketChannel is open, but channelContext isClosed: " + channelContext.isClosed() + ", isRemoved: " + channelContext.isRemoved(),
                 ChannelCloseCode.CHANNEL_NOT_OPEN);
           } catch (Throwable e) {
             log.error(e.toString(), e);
@@ -36,12 +36,12 @@ public class TioUtils {
         return false;
       }
     } else {
-      log.error("{}, Plese check, asynchronousSocketChannel is null, isClosed:{}, isRemoved:{}, {} ", channelContext, channelContext.isClosed, channelContext.isRemoved);
+      log.error("{}, Plese check, asynchronousSocketChannel is null, isClosed:{}, isRemoved:{}, {} ", channelContext, channelContext.isClosed(), channelContext.isRemoved());
       return false;
     }
 
     if (!isopen) {
-      log.info("connection might close by peer,{}, isOpen:{}, isClosed:{}, isRemoved:{}", channelContext, isopen, channelContext.isClosed, channelContext.isRemoved);
+      log.info("connection might close by peer,{}, isOpen:{}, isClosed:{}, isRemoved:{}", channelContext, isopen, channelContext.isClosed(), channelContext.isRemoved());
       Tio.close(channelContext, "asynchronousSocketChannel is not open, connection might close by peer", ChannelCloseCode.CHANNEL_NOT_OPEN);
       return false;
     }
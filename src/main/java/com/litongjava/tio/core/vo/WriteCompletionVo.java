@@ -4,14 +4,53 @@ import java.nio.ByteBuffer;
 
 public class WriteCompletionVo {
   private ByteBuffer byteBuffer;
+  /**
+   * 聚合写时的多个buffer，非聚合写时为null
+   */
+  private ByteBuffer[] byteBuffers;
   private Object obj;
   private int totalWritten;
+  /**
+   * 这次写出的最早入队的packet入队时的System.nanoTime()，不统计耗时时为0
+   */
+  private long offeredNanos;
 
   public WriteCompletionVo(ByteBuffer byteBuffer, Object obj) {
     this.byteBuffer = byteBuffer;
     this.obj = obj;
   }
 
+  public WriteCompletionVo(ByteBuffer[] byteBuffers, Object obj) {
+    this.byteBuffers = byteBuffers;
+    this.obj = obj;
+  }
+
+  /**
+   * 是否还有未写完的数据
+   */
+  public boolean hasRemaining() {
+    if (byteBuffers != null) {
+      for (ByteBuffer b : byteBuffers) {
+        if (b.hasRemaining()) {
+          return true;
+        }
+      }
+      return false;
+    }
+    return byteBuffer != null && byteBuffer.hasRemaining();
+  }
+
+  /**
+   * 聚合写时第一个还有剩余数据的buffer下标
+   */
+  public int getOffset() {
+    int offset = 0;
+    while (offset < byteBuffers.length - 1 && !byteBuffers[offset].hasRemaining()) {
+      offset++;
+    }
+    return offset;
+  }
+
   public ByteBuffer getByteBuffer() {
     return byteBuffer;
   }
@@ -20,6 +59,14 @@ public class WriteCompletionVo {
     this.byteBuffer = byteBuffer;
   }
 
+  public ByteBuffer[] getByteBuffers() {
+    return byteBuffers;
+  }
+
+  public void setByteBuffers(ByteBuffer[] byteBuffers) {
+    this.byteBuffers = byteBuffers;
+  }
+
   public Object getObj() {
     return obj;
   }
@@ -36,4 +83,12 @@ public class WriteCompletionVo {
     this.totalWritten = totalWritten;
   }
 
+  public long getOfferedNanos() {
+    return offeredNanos;
+  }
+
+  public void setOfferedNanos(long offeredNanos) {
+    this.offeredNanos = offeredNanos;
+  }
+
 }
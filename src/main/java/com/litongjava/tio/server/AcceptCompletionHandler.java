@@ -13,14 +13,17 @@ import org.slf4j.LoggerFactory;
 
 import com.litongjava.enhance.buffer.VirtualBuffer;
 import com.litongjava.tio.consts.TioCoreConfigKeys;
+import com.litongjava.tio.core.ChannelCloseCode;
 import com.litongjava.tio.core.ReadCompletionHandler;
 import com.litongjava.tio.core.pool.BufferPoolUtils;
+import com.litongjava.tio.core.pool.MemoryBudget;
 import com.litongjava.tio.core.ssl.SslUtils;
 import com.litongjava.tio.core.stat.IpStat;
+import com.litongjava.tio.core.stat.IpStatRecord;
+import com.litongjava.tio.core.timer.IdleDetector;
 import com.litongjava.tio.core.utils.IpBlacklistUtils;
 import com.litongjava.tio.utils.SystemTimer;
 import com.litongjava.tio.utils.environment.EnvUtils;
-import com.litongjava.tio.utils.hutool.CollUtil;
 
 /**
  * @author tanyaowu 2017年4月4日 上午9:27:45
@@ -83,7 +86,7 @@ public class AcceptCompletionHandler implements CompletionHandler<AsynchronousSo
       }
 
       if (serverTioConfig.statOn) {
-        ((ServerGroupStat) serverTioConfig.groupStat).accepted.incrementAndGet();
+        ((ServerGroupStat) serverTioConfig.groupStat).accepted.increment();
       }
 
       clientSocketChannel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
@@ -91,6 +94,25 @@ public class AcceptCompletionHandler implements CompletionHandler<AsynchronousSo
       clientSocketChannel.setOption(StandardSocketOptions.SO_SNDBUF, 64 * 1024);
       clientSocketChannel.setOption(StandardSocketOptions.SO_KEEPALIVE, true);
 
+      // 直接内存超过硬上限，在创建ChannelContext（发送队列、统计、SSL引擎等）之前直接关闭
+      if (MemoryBudget.isOverHardLimit()) {
+        MemoryBudget.rejected();
+        if (serverTioConfig.statOn) {
+          ((ServerGroupStat) serverTioConfig.groupStat).memoryBudgetRejected.increment();
+        }
+        log.warn("{}:{}, {}, direct memory used {} is over hard limit {}, reject", clientIp, port, ChannelCloseCode.MEMORY_BUDGET_EXCEEDED,
+            MemoryBudget.used(), MemoryBudget.getHardLimit());
+        clientSocketChannel.close();
+        if (serverTioConfig.getServerAioListener() != null) {
+          try {
+            serverTioConfig.getServerAioListener().onRejected(serverTioConfig, clientIp, port, ChannelCloseCode.MEMORY_BUDGET_EXCEEDED);
+          } catch (Throwable e) {
+            log.error("ServerAioListener onRejected:", e);
+          }
+        }
+        return;
+      }
+
       ServerChannelContext channelContext = new ServerChannelContext(serverTioConfig, clientSocketChannel,
           //
           clientIp, port);
@@ -110,12 +132,17 @@ public class AcceptCompletionHandler implements CompletionHandler<AsynchronousSo
         }
       }
 
-      if (CollUtil.isNotEmpty(serverTioConfig.ipStats.durationList)) {
+      // 放在onAfterConnected之后，业务可以在onAfterConnected中设置ChannelContext.heartbeatTimeout
+      IdleDetector.register(channelContext);
+
+      if (serverTioConfig.ipStats.isOn()) {
         try {
-          for (Long v : serverTioConfig.ipStats.durationList) {
-            IpStat ipStat = (IpStat) serverTioConfig.ipStats.get(v, channelContext);
-            ipStat.getRequestCount().incrementAndGet();
-            serverTioConfig.getIpStatListener().onAfterConnected(channelContext, isConnected, isReconnect, ipStat);
+          IpStatRecord ipStatRecord = serverTioConfig.ipStats.record(channelContext);
+          ipStatRecord.add(IpStatRecord.REQUEST_COUNT, 1);
+          if (serverTioConfig.ipStats.hasListener()) {
+            for (IpStat ipStat : ipStatRecord.snapshots()) {
+              serverTioConfig.getIpStatListener().onAfterConnected(channelContext, isConnected, isReconnect, ipStat);
+            }
           }
         } catch (Exception e) {
           log.error("IpStatListener onAfterConnected:", e);
@@ -124,7 +151,7 @@ public class AcceptCompletionHandler implements CompletionHandler<AsynchronousSo
 
       if (!tioServer.isWaitingStop()) {
         ReadCompletionHandler readCompletionHandler = new ReadCompletionHandler(channelContext);
-        VirtualBuffer attachment = BufferPoolUtils.allocateRequest(channelContext.getReadBufferSize());
+        VirtualBuffer attachment = BufferPoolUtils.allocateRequest(readCompletionHandler.nextReadBufferSize(), channelContext);
         ByteBuffer readByteBuffer = attachment.buffer();
         readByteBuffer.position(0);
         readByteBuffer.limit(readByteBuffer.capacity());
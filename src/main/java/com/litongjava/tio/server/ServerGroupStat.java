@@ -1,8 +1,7 @@
 package com.litongjava.tio.server;
 
-import java.util.concurrent.atomic.AtomicLong;
-
 import com.litongjava.tio.core.stat.GroupStat;
+import com.litongjava.tio.core.stat.StatCounter;
 
 /**
  *
@@ -15,7 +14,11 @@ public class ServerGroupStat extends GroupStat {
   /**
    * 接受了多少连接
    */
-  public final AtomicLong accepted = new AtomicLong();
+  public final StatCounter accepted = new StatCounter();
+  /**
+   * 直接内存超过预算的硬上限被拒绝的连接
+   */
+  public final StatCounter memoryBudgetRejected = new StatCounter();
 
   /**
    *
@@ -30,7 +33,11 @@ public class ServerGroupStat extends GroupStat {
   /**
    * @return the accepted
    */
-  public AtomicLong getAccepted() {
+  public StatCounter getAccepted() {
     return accepted;
   }
+
+  public StatCounter getMemoryBudgetRejected() {
+    return memoryBudgetRejected;
+  }
 }
@@ -2,9 +2,9 @@ package com.litongjava.tio.server;
 
 import java.io.FileNotFoundException;
 import java.io.InputStream;
-import java.util.Set;
+import java.util.Iterator;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.locks.ReentrantReadWriteLock.ReadLock;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -14,15 +14,17 @@ import com.litongjava.enhance.buffer.BufferMomeryInfo;
 import com.litongjava.enhance.buffer.GlobalScheduler;
 import com.litongjava.model.sys.SysConst;
 import com.litongjava.tio.consts.TioCoreConfigKeys;
-import com.litongjava.tio.core.ChannelCloseCode;
-import com.litongjava.tio.core.ChannelContext;
-import com.litongjava.tio.core.Tio;
 import com.litongjava.tio.core.TioConfig;
 import com.litongjava.tio.core.intf.AioHandler;
 import com.litongjava.tio.core.intf.AioListener;
 import com.litongjava.tio.core.maintain.GlobalIpBlacklist;
+import com.litongjava.tio.core.pool.BufferLeakDetector;
 import com.litongjava.tio.core.pool.BufferPoolUtils;
+import com.litongjava.tio.core.pool.MemoryBudget;
 import com.litongjava.tio.core.ssl.SslConfig;
+import com.litongjava.tio.core.stat.GroupStatSnapshot;
+import com.litongjava.tio.core.stat.LatencySnapshot;
+import com.litongjava.tio.core.stat.LatencyStats;
 import com.litongjava.tio.server.intf.ServerAioHandler;
 import com.litongjava.tio.server.intf.ServerAioListener;
 import com.litongjava.tio.utils.AppendJsonConverter;
@@ -30,7 +32,6 @@ import com.litongjava.tio.utils.SystemTimer;
 import com.litongjava.tio.utils.executor.TioThreadPoolStats;
 import com.litongjava.tio.utils.hutool.CollUtil;
 import com.litongjava.tio.utils.hutool.StrUtil;
-import com.litongjava.tio.utils.lock.SetWithLock;
 
 /**
  * 
@@ -40,8 +41,6 @@ public class ServerTioConfig extends TioConfig {
   private static final Logger log = LoggerFactory.getLogger(ServerTioConfig.class);
   private ServerAioHandler serverAioHandler = null;
   private ServerAioListener serverAioListener = null;
-  private Thread checkHeartbeatThread = null;
-  private boolean needCheckHeartbeat = true;
   private boolean isShared = false;
   /**
    * 服务端backlog
@@ -150,17 +149,6 @@ public class ServerTioConfig extends TioConfig {
       this.ipBlacklist = tioConfig.ipBlacklist;
       this.ips = tioConfig.ips;
 
-      if (!tioConfig.isShared && !this.isShared) {
-        this.needCheckHeartbeat = false;
-      }
-      if (tioConfig.isShared && !this.isShared) {
-        this.needCheckHeartbeat = false;
-      }
-      if (!tioConfig.isShared && this.isShared) {
-        tioConfig.needCheckHeartbeat = false;
-      }
-
-      // 下面这两行代码要放到前面if的后面
       tioConfig.isShared = true;
       this.isShared = true;
     }
@@ -182,102 +170,52 @@ public class ServerTioConfig extends TioConfig {
     super.init();
     this.groupStat = new ServerGroupStat();
     GlobalIpBlacklist.INSTANCE.init(this);
-    if (needCheckHeartbeat && heartbeatTimeout > 0) {
-      startHeartbeatCheck();
-    }
     if (printStats) {
       GlobalScheduler.scheduleWithFixedDelay(this::printStats, 60, 60, TimeUnit.SECONDS);
     }
 
   }
 
-  private void startHeartbeatCheck() {
-    Runnable check = new Runnable() {
-      @Override
-      public void run() {
-        // 第一次先休息一下
-        try {
-          Thread.sleep(1000 * 10);
-        } catch (InterruptedException e1) {
-          log.error(e1.toString(), e1);
-        }
-
-        while (needCheckHeartbeat && !isStopped()) {
-          // long sleeptime = heartbeatTimeout;
-          if (heartbeatTimeout <= 0) {
-            break;
-          }
-          try {
-            Thread.sleep(heartbeatTimeout);
-          } catch (InterruptedException e1) {
-            log.error(e1.toString(), e1);
-          }
-          SetWithLock<ChannelContext> setWithLock = connections;
-          Set<ChannelContext> set = null;
-          ReadLock readLock = setWithLock.readLock();
-          readLock.lock();
-          try {
-            set = setWithLock.getObj();
-
-            for (ChannelContext channelContext : set) {
-              long compareTime = Math.max(channelContext.stat.latestTimeOfReceivedByte, channelContext.stat.latestTimeOfSentPacket);
-              long currtime = SystemTimer.currTime;
-              long interval = currtime - compareTime;
-
-              boolean needRemove = false;
-              if (channelContext.heartbeatTimeout != null && channelContext.heartbeatTimeout > 0) {
-                needRemove = interval > channelContext.heartbeatTimeout;
-              } else {
-                needRemove = interval > heartbeatTimeout;
-              }
-
-              if (needRemove) {
-                if (!ServerTioConfig.this.serverAioListener.onHeartbeatTimeout(channelContext, interval,
-                    channelContext.stat.heartbeatTimeoutCount.incrementAndGet())) {
-                  log.info("{}, {} ms or not send and receive message", channelContext, interval);
-                  channelContext.setCloseCode(ChannelCloseCode.HEARTBEAT_TIMEOUT);
-                  Tio.remove(channelContext, interval + " ms not send and receive message");
-                }
-              }
-            }
-          } catch (Throwable e) {
-            log.error(e.getMessage(), e);
-          } finally {
-            try {
-              readLock.unlock();
-            } catch (Throwable e) {
-              log.error(e.getMessage(), e);
-            }
-          }
-        }
-      }
-    };
-
-    checkHeartbeatThread = new Thread(check, "tio-timer-checkheartbeat-" + id + "-" + name);
-    checkHeartbeatThread.setDaemon(true);
-    checkHeartbeatThread.setPriority(Thread.MIN_PRIORITY);
-    checkHeartbeatThread.start();
-  }
-
   private void printStats() {
+    GroupStatSnapshot groupStatSnapshot = getGroupStatSnapshot();
     StringBuilder builder = new StringBuilder();
     builder.append(SysConst.CRLF).append(name);
     builder.append("\r\n ├ Current Time: ").append(SystemTimer.currTime);
 
     builder.append("\r\n ├ Connection Statistics");
     builder.append("\r\n │ \t ├ Total Accepted Connections: ").append(((ServerGroupStat) groupStat).accepted.get());
+    if (MemoryBudget.isEnabled()) {
+      builder.append("\r\n │ \t ├ Rejected By Memory Budget: ").append(((ServerGroupStat) groupStat).memoryBudgetRejected.get());
+    }
     builder.append("\r\n │ \t ├ Current Connections: ").append(this.connections.getObj().size());
+    if (isReadHibernate()) {
+      builder.append("\r\n │ \t ├ Hibernating Connections / Hibernated Reads: ").append(groupStatSnapshot.getHibernatingChannels())
+          .append(" / ").append(groupStatSnapshot.getHibernatedReads());
+    }
     builder.append("\r\n │ \t ├ Unique IP Connections: ").append(this.ips.getIpmap().getObj().size());
-    builder.append("\r\n │ \t └ Closed Connections: ").append(groupStat.closed.get());
+    builder.append("\r\n │ \t └ Closed Connections: ").append(groupStatSnapshot.getClosed());
 
     builder.append("\r\n ├ Message Statistics");
-    builder.append("\r\n │ \t ├ Processed Messages: ").append(groupStat.handledPackets.get());
-    builder.append("\r\n │ \t ├ Received Messages (packet/byte): ").append(groupStat.receivedPackets.get()).append("/")
-        .append(groupStat.receivedBytes.get());
-    builder.append("\r\n │ \t ├ Sent Messages (packet/byte): ").append(groupStat.sentPackets.get()).append("/")
-        .append(groupStat.sentBytes.get()).append("b");
-    builder.append("\r\n │ \t ├ Avg Bytes Per TCP Receive: ").append(groupStat.getBytesPerTcpReceive());
-    builder.append("\r\n │ \t └ Avg Packets Per TCP Receive: ").append(groupStat.getPacketsPerTcpReceive());
+    builder.append("\r\n │ \t ├ Processed Messages: ").append(groupStatSnapshot.getHandledPackets());
+    builder.append("\r\n │ \t ├ Received Messages (packet/byte): ").append(groupStatSnapshot.getReceivedPackets()).append("/")
+        .append(groupStatSnapshot.getReceivedBytes());
+    builder.append("\r\n │ \t ├ Sent Messages (packet/byte): ").append(groupStatSnapshot.getSentPackets()).append("/")
+        .append(groupStatSnapshot.getSentBytes()).append("b");
+    builder.append("\r\n │ \t ├ Avg Bytes Per TCP Receive: ").append(groupStatSnapshot.getBytesPerTcpReceive());
+    builder.append("\r\n │ \t ├ Avg Packets Per TCP Receive: ").append(groupStatSnapshot.getPacketsPerTcpReceive());
+    if (isReadSizeStatOn()) {
+      builder.append("\r\n │ \t ├ Bytes Per TCP Receive: ").append(groupStat.readSizes);
+    }
+    builder.append("\r\n │ \t └ Lane Queued Packets: ").append(groupStatSnapshot.getLaneQueuedPackets());
+
+    if (LatencyStats.isOn(this)) {
+      builder.append("\r\n ├ Latency");
+      Iterator<Map.Entry<String, LatencySnapshot>> iterator = groupStat.latency.snapshots().entrySet().iterator();
+      while (iterator.hasNext()) {
+        Map.Entry<String, LatencySnapshot> entry = iterator.next();
+        builder.append(iterator.hasNext() ? "\r\n │ \t ├ " : "\r\n │ \t └ ").append(entry.getKey()).append(": ").append(entry.getValue());
+      }
+    }
 
     builder.append("\r\n └ IP Statistics Duration");
     if (CollUtil.isNotEmpty(ipStats.durationList)) {
@@ -287,11 +225,11 @@ public class ServerTioConfig extends TioConfig {
     }
 
     builder.append("\r\n ├ Node Statistics");
-    builder.append("\r\n │ \t ├ Client Nodes: ").append(this.clientNodes.getObjWithLock().getObj().size());
+    builder.append("\r\n │ \t ├ Client Nodes: ").append(this.clientNodes.size());
     builder.append("\r\n │ \t ├ All Connections: ").append(this.connections.getObj().size());
-    builder.append("\r\n │ \t ├ Bound Users: ").append(this.users.getMap().getObj().size());
-    builder.append("\r\n │ \t ├ Bound Tokens: ").append(this.tokens.getMap().getObj().size());
-    builder.append("\r\n │ \t └ Pending Response Messages: ").append(this.waitingResps.getObj().size());
+    builder.append("\r\n │ \t ├ Bound Users: ").append(this.users.size());
+    builder.append("\r\n │ \t ├ Bound Tokens: ").append(this.tokens.size());
+    builder.append("\r\n │ \t └ Pending Response Messages: ").append(this.waitingResps.getObj().size() + this.synRequests.size());
 
     builder.append("\r\n ├ Groups");
     builder.append("\r\n │ \t └ Group Map Size: ").append(this.groups.getGroupmap().getObj().size());
@@ -313,6 +251,29 @@ public class ServerTioConfig extends TioConfig {
 
       if (bufferMomeryInfo.responseMemoryStat != null) {
         builder.append("\r\n   \t ├ Response Memory Stat: ").append(formatStat(bufferMomeryInfo.responseMemoryStat));
+        if (BufferLeakDetector.isEnabled()) {
+          builder.append("\r\n   \t ├ Leak Detection (").append(BufferLeakDetector.getLevel()).append(") Tracked / Leaks / Double Releases / Unreleased On Close: ")
+              .append(BufferLeakDetector.getTracked()).append(" / ").append(BufferLeakDetector.getLeaks()).append(" / ")
+              .append(BufferLeakDetector.getDoubleReleases()).append(" / ").append(BufferLeakDetector.getUnreleasedOnClose());
+        }
+        if (MemoryBudget.isEnabled()) {
+          builder.append("\r\n   \t ├ Memory Budget Used / Soft / Hard: ").append(MemoryBudget.used()).append(" / ")
+              .append(MemoryBudget.getSoftLimit()).append(" / ").append(MemoryBudget.getHardLimit())
+              .append(String.format(" (%.1f%%)", MemoryBudget.getUtilization() * 100));
+          builder.append("\r\n   \t ├ Memory Budget Paused Channels / Paused Reads: ").append(MemoryBudget.getPausedChannels())
+              .append(" / ").append(MemoryBudget.getPausedReads());
+        }
+        builder.append("\r\n   \t ├ Retained Bytes: ").append(BufferPoolUtils.getRetainedBytes()).append(" / ")
+            .append(BufferPoolUtils.getMaxRetainedBytes());
+        BufferMemoryStat[] sizeClassStats = BufferPoolUtils.getSizeClassStats();
+        for (int i = 0; i < sizeClassStats.length; i++) {
+          BufferMemoryStat stat = sizeClassStats[i];
+          if (stat.statNewAlloc == 0 && stat.statReuseHit == 0 && stat.statCleanCount == 0) {
+            continue;
+          }
+          String sizeClass = i < BufferPoolUtils.getSizeClasses() ? String.valueOf(BufferPoolUtils.sizeOfClass(i)) : "unpooled";
+          builder.append("\r\n   \t │ ").append(sizeClass).append(": ").append(formatStat(stat));
+        }
       }
 
       if (bufferMomeryInfo.requestBufferMemoryStat != null) {
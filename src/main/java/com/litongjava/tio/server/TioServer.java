@@ -113,7 +113,8 @@ public class TioServer {
         TioServerExecutorService.tioThreadPoolExecutor = tioThreadPoolExecutor;
         readExecutor = tioThreadPoolExecutor;
       }
-      EnhanceAsynchronousChannelProvider provider = new EnhanceAsynchronousChannelProvider(false);
+      // 开启读休眠时使用lowMemory模式：读不到数据时通道交还读缓冲区，数据到达后再发起读
+      EnhanceAsynchronousChannelProvider provider = new EnhanceAsynchronousChannelProvider(serverTioConfig.isReadHibernate());
       channelGroup = provider.openAsynchronousChannelGroup(readExecutor, workerThreads);
 
       // 使用提供者创建服务器通道
@@ -180,6 +181,8 @@ public class TioServer {
         log.error("Failed to close serverSocketChannel", e);
       }
     }
+    serverTioConfig.shutdownBizExecutor();
+    serverTioConfig.shutdownFanOutPool();
     log.info(this.serverNode + " stopped");
     
     boolean ret = false;
@@ -1,7 +1,10 @@
 package com.litongjava.tio.server.intf;
 
+import com.litongjava.tio.core.ChannelCloseCode;
 import com.litongjava.tio.core.ChannelContext;
+import com.litongjava.tio.core.IdleState;
 import com.litongjava.tio.core.intf.AioListener;
+import com.litongjava.tio.server.ServerTioConfig;
 
 /**
  *
@@ -16,8 +19,32 @@ public interface ServerAioListener extends AioListener {
    * 
    * @param channelContext
    * @param interval              已经多久没有收发消息了，单位：毫秒
-   * @param heartbeatTimeoutCount 心跳超时次数，第一次超时此值是1，以此类推。此值被保存在：channelContext.stat.heartbeatTimeoutCount
+   * @param heartbeatTimeoutCount 心跳超时次数，第一次超时此值是1，以此类推。此值被保存在：channelContext.stat.getHeartbeatTimeoutCount()
    * @return 返回true，那么服务器则不关闭此连接；返回false，服务器将按心跳超时关闭该连接
    */
   public boolean onHeartbeatTimeout(ChannelContext channelContext, Long interval, int heartbeatTimeoutCount);
+
+  /**
+   * 读空闲（超过readIdleTimeout没有收到数据）或写空闲（超过writeIdleTimeout没有发送packet）时调用，
+   * 没有恢复活动时每隔一个超时时间调用一次
+   * 
+   * @param channelContext
+   * @param idleState             READER_IDLE或WRITER_IDLE
+   * @param interval              已经多久没有收（或发）了，单位：毫秒
+   * @return 返回true，那么服务器则不关闭此连接；返回false，服务器将关闭该连接。默认读空闲关闭，写空闲不关闭
+   */
+  public default boolean onIdle(ChannelContext channelContext, IdleState idleState, long interval) {
+    return idleState == IdleState.WRITER_IDLE;
+  }
+
+  /**
+   * 新连接在创建ChannelContext之前被拒绝时调用，此时连接已关闭（例如直接内存超过预算的硬上限：MEMORY_BUDGET_EXCEEDED）
+   * 
+   * @param serverTioConfig
+   * @param clientIp
+   * @param port
+   * @param closeCode             拒绝原因
+   */
+  public default void onRejected(ServerTioConfig serverTioConfig, String clientIp, int port, ChannelCloseCode closeCode) {
+  }
 }
@@ -0,0 +1,147 @@
+package com.litongjava.tio.client;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.litongjava.aio.Packet;
+import com.litongjava.tio.client.intf.ClientAioHandler;
+import com.litongjava.tio.core.ChannelContext;
+import com.litongjava.tio.core.TioConfig;
+import com.litongjava.tio.core.pool.BufferLeakDetector;
+import com.litongjava.tio.core.pool.BufferPoolUtils;
+import com.litongjava.tio.utils.SystemTimer;
+
+/**
+ * 客户端心跳：只在空闲时发，同时建立的连接心跳时间错开，预编码的心跳包只编码一次、附在heartbeatPacket()返回的packet上
+ */
+public class ClientHeartbeatTest {
+
+  @Test
+  public void testIdleOnlyAndJitter() throws Exception {
+    CountingHandler handler = new CountingHandler();
+    ClientTioConfig clientTioConfig = new ClientTioConfig(handler, null);
+    clientTioConfig.setHeartbeatTimeout(400);
+
+    int count = 200;
+    ClientChannelContext[] channels = new ClientChannelContext[count];
+    for (int i = 0; i < count; i++) {
+      channels[i] = open(clientTioConfig);
+      ClientHeartbeat.register(channels[i]);
+    }
+    // 这个连接一直有数据收发，不发心跳
+    ClientChannelContext active = open(clientTioConfig);
+    ClientHeartbeat.register(active);
+
+    long end = System.currentTimeMillis() + 700;
+    while (System.currentTimeMillis() < end) {
+      active.stat.latestTimeOfReceivedByte = SystemTimer.currTime;
+      Thread.sleep(20);
+    }
+    for (ClientChannelContext channelContext : channels) {
+      ClientHeartbeat.cancel(channelContext);
+    }
+    ClientHeartbeat.cancel(active);
+
+    Assert.assertNull(handler.first.get(active));
+    long min = Long.MAX_VALUE;
+    long max = Long.MIN_VALUE;
+    for (ClientChannelContext channelContext : channels) {
+      Long first = handler.first.get(channelContext);
+      Assert.assertNotNull(first);
+      Assert.assertTrue(handler.counts.get(channelContext).get() >= 2);
+      min = Math.min(min, first);
+      max = Math.max(max, first);
+    }
+    Assert.assertTrue(max - min >= 20);
+  }
+
+  @Test
+  public void testPreEncoded() throws Exception {
+    CountingHandler handler = new CountingHandler();
+    handler.pooled = true;
+    ClientTioConfig clientTioConfig = new ClientTioConfig(handler, null);
+    clientTioConfig.setHeartbeatTimeout(200);
+    clientTioConfig.setHeartbeatPreEncoded(true);
+
+    BufferLeakDetector.setLevel(BufferLeakDetector.Level.PARANOID);
+    ClientChannelContext[] channels = new ClientChannelContext[50];
+    try {
+      for (int i = 0; i < channels.length; i++) {
+        channels[i] = open(clientTioConfig);
+        ClientHeartbeat.register(channels[i]);
+      }
+      Thread.sleep(500);
+      for (ClientChannelContext channelContext : channels) {
+        ClientHeartbeat.cancel(channelContext);
+      }
+      // 编码用的池化缓冲区复制后已经归还，再归还一次是重复归还
+      Assert.assertNotNull(handler.encoded);
+      Assert.assertFalse(BufferLeakDetector.release(handler.encoded));
+    } finally {
+      BufferLeakDetector.setLevel(BufferLeakDetector.Level.DISABLED);
+    }
+
+    Assert.assertEquals(1, handler.encodes.get());
+    // 每个连接的心跳包都由heartbeatPacket()生成，附上共用的编码结果
+    Assert.assertEquals(channels.length, handler.counts.size());
+    Assert.assertFalse(handler.packets.isEmpty());
+    for (Packet packet : handler.packets) {
+      Assert.assertNotNull(packet.getPreEncodedByteBuffer());
+      Assert.assertTrue(packet.getPreEncodedByteBuffer().isReadOnly());
+    }
+    ByteBuffer byteBuffer = clientTioConfig.heartbeatByteBuffer;
+    Assert.assertNotNull(byteBuffer);
+    Assert.assertTrue(byteBuffer.isReadOnly());
+    Assert.assertEquals(4, byteBuffer.remaining());
+  }
+
+  private static ClientChannelContext open(ClientTioConfig clientTioConfig) {
+    ClientChannelContext channelContext = new ClientChannelContext(clientTioConfig);
+    channelContext.setClosed(false);
+    return channelContext;
+  }
+
+  private static class CountingHandler implements ClientAioHandler {
+    private final Map<ChannelContext, Long> first = new ConcurrentHashMap<>();
+    private final Map<ChannelContext, AtomicInteger> counts = new ConcurrentHashMap<>();
+    private final AtomicInteger encodes = new AtomicInteger();
+    private final Queue<Packet> packets = new ConcurrentLinkedQueue<>();
+    /** encode从BufferPoolUtils分配 */
+    private boolean pooled = false;
+    private volatile ByteBuffer encoded;
+
+    @Override
+    public Packet heartbeatPacket(ChannelContext channelContext) {
+      first.putIfAbsent(channelContext, System.currentTimeMillis());
+      counts.computeIfAbsent(channelContext, k -> new AtomicInteger()).incrementAndGet();
+      Packet packet = new Packet();
+      packets.add(packet);
+      return packet;
+    }
+
+    @Override
+    public Packet decode(ByteBuffer buffer, int limit, int position, int readableLength, ChannelContext channelContext) {
+      return null;
+    }
+
+    @Override
+    public ByteBuffer encode(Packet packet, TioConfig tioConfig, ChannelContext channelContext) {
+      encodes.incrementAndGet();
+      ByteBuffer byteBuffer = pooled ? BufferPoolUtils.allocate(4) : ByteBuffer.allocate(4);
+      byteBuffer.putInt(0);
+      encoded = byteBuffer;
+      return byteBuffer;
+    }
+
+    @Override
+    public void handler(Packet packet, ChannelContext channelContext) {
+    }
+  }
+}
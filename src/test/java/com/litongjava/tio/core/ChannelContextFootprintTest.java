@@ -0,0 +1,215 @@
+package com.litongjava.tio.core;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.litongjava.tio.server.ServerChannelContext;
+import com.litongjava.tio.server.ServerTioConfig;
+
+/**
+ * 紧凑连接的内存占用：属性map、closeLock、CloseMeta、groups、发送队列都不应预先创建；
+ * 默认（非紧凑）连接的已废弃public字段保持原来的行为<br>
+ * 占用按字段类型估算（压缩指针：对象头12字节、引用4字节、按8字节对齐），不依赖GC，结果是确定的
+ */
+public class ChannelContextFootprintTest {
+  /** 每个空闲连接（含ChannelStat、SendQueue、Node）的字节数上限 */
+  private static final int BYTES_PER_IDLE_CONNECTION = 512;
+
+  @Test
+  public void testFootprint() throws Exception {
+    ServerTioConfig serverTioConfig = TestConfigUtils.serverTioConfig("footprint-test");
+    serverTioConfig.setCompactChannelContext(true);
+    long bytesPerConnection = ownedBytes(new ServerChannelContext(serverTioConfig, "fp"), new ServerChannelContext(serverTioConfig, "fp"));
+    Assert.assertTrue("bytes per idle connection: " + bytesPerConnection, bytesPerConnection < BYTES_PER_IDLE_CONNECTION);
+
+    // 非紧凑连接多出已废弃的字段和计数器
+    ServerTioConfig legacy = TestConfigUtils.serverTioConfig("footprint-test");
+    long legacyBytes = ownedBytes(new ServerChannelContext(legacy, "fp"), new ServerChannelContext(legacy, "fp"));
+    Assert.assertTrue(legacyBytes + " vs " + bytesPerConnection, legacyBytes > bytesPerConnection);
+  }
+
+  @Test
+  public void testStateWord() {
+    for (boolean compact : new boolean[] { false, true }) {
+      ServerTioConfig serverTioConfig = TestConfigUtils.serverTioConfig("footprint-test");
+      serverTioConfig.setCompactChannelContext(compact);
+      assertStateWord(new ServerChannelContext(serverTioConfig, "1"));
+    }
+  }
+
+  private static void assertStateWord(ChannelContext channelContext) {
+    Assert.assertTrue(channelContext.isClosed());
+    Assert.assertFalse(channelContext.isRemoved());
+    Assert.assertFalse(channelContext.isWaitingClose());
+
+    channelContext.setClosed(false);
+    channelContext.setWaitingClose(true);
+    channelContext.setRemoved(true);
+    Assert.assertFalse(channelContext.isClosed());
+    Assert.assertTrue(channelContext.isWaitingClose());
+    Assert.assertTrue(channelContext.isRemoved());
+
+    // 发送权互斥，与其它标志位互不影响
+    Assert.assertTrue(channelContext.tryAcquireSending());
+    Assert.assertFalse(channelContext.tryAcquireSending());
+    channelContext.setWaitingClose(false);
+    Assert.assertTrue(channelContext.isSending());
+    channelContext.releaseSending();
+    Assert.assertTrue(channelContext.tryAcquireSending());
+    Assert.assertTrue(channelContext.isRemoved());
+    Assert.assertFalse(channelContext.isWaitingClose());
+  }
+
+  @SuppressWarnings("deprecation")
+  @Test
+  public void testLegacyFields() {
+    ChannelContext channelContext = new ServerChannelContext(TestConfigUtils.serverTioConfig("footprint-test"), "1");
+    Assert.assertSame(channelContext.closeLock, channelContext.getCloseLock());
+    Assert.assertSame(channelContext.closeMeta, channelContext.getCloseMeta());
+    Assert.assertTrue(channelContext.tryAcquireSending());
+    Assert.assertTrue(channelContext.isSending.get());
+    channelContext.releaseSending();
+    Assert.assertFalse(channelContext.isSending.get());
+
+    channelContext.stat.addSentBytes(10);
+    channelContext.stat.heartbeatTimeoutCount.incrementAndGet();
+    Assert.assertEquals(10, channelContext.stat.sentBytes.get());
+    Assert.assertSame(channelContext.stat.sentBytes, channelContext.stat.getSentBytes());
+    Assert.assertEquals(1, channelContext.stat.getHeartbeatTimeoutCount());
+
+    ServerTioConfig serverTioConfig = TestConfigUtils.serverTioConfig("footprint-test");
+    serverTioConfig.setCompactChannelContext(true);
+    ChannelContext compact = new ServerChannelContext(serverTioConfig, "2");
+    Assert.assertNull(compact.closeLock);
+    Assert.assertNull(compact.isSending);
+    Assert.assertNull(compact.stat.sentBytes);
+    compact.stat.addSentBytes(10);
+    Assert.assertEquals(10, compact.stat.getSentBytes().get());
+    Assert.assertEquals(10, compact.stat.getSentBytesValue());
+    Assert.assertEquals(1, compact.stat.incrementHeartbeatTimeoutCount());
+    Assert.assertSame(compact.getCloseLock(), compact.closeLock);
+  }
+
+  @Test
+  public void testLazyProps() {
+    ChannelContext channelContext = new ServerChannelContext(TestConfigUtils.serverTioConfig("footprint-test"), "1");
+    Assert.assertNull(channelContext.get("k"));
+    channelContext.remove("k");
+    channelContext.set("k", 1L);
+    Assert.assertEquals(Long.valueOf(1), channelContext.getLong("k"));
+    channelContext.clear();
+    Assert.assertNull(channelContext.getAttribute("k"));
+
+    Assert.assertFalse(channelContext.hasGroups());
+    channelContext.getGroups().add("g");
+    Assert.assertTrue(channelContext.hasGroups());
+    Assert.assertSame(channelContext.getCloseLock(), channelContext.getCloseLock());
+    Assert.assertSame(channelContext.getCloseMeta(), channelContext.getCloseMeta());
+  }
+
+  /**
+   * @param channelContext 要估算的连接
+   * @param other 同一TioConfig下的另一个连接，两者都能引用到的对象（TioConfig、共享的单例等）不计入
+   * @return channelContext独占的对象的估算字节数
+   */
+  static long ownedBytes(ChannelContext channelContext, ChannelContext other) throws IllegalAccessException {
+    Set<Object> shared = Collections.newSetFromMap(new IdentityHashMap<>());
+    reachable(other, shared);
+    Set<Object> owned = Collections.newSetFromMap(new IdentityHashMap<>());
+    reachable(channelContext, owned);
+    long bytes = 0;
+    for (Object object : owned) {
+      if (!shared.contains(object)) {
+        bytes += shallowSize(object);
+      }
+    }
+    return bytes;
+  }
+
+  /**
+   * 从root出发遍历本项目的对象；JDK的对象只计自身（String加上字符数组），不再深入；TioConfig和枚举是共享的，不遍历
+   */
+  private static void reachable(Object root, Set<Object> seen) throws IllegalAccessException {
+    Deque<Object> stack = new ArrayDeque<>();
+    stack.push(root);
+    while (!stack.isEmpty()) {
+      Object object = stack.pop();
+      if (object instanceof TioConfig || object instanceof Class || object instanceof Enum || !seen.add(object)) {
+        continue;
+      }
+      Class<?> clazz = object.getClass();
+      if (clazz.isArray()) {
+        if (!clazz.getComponentType().isPrimitive()) {
+          for (Object element : (Object[]) object) {
+            if (element != null) {
+              stack.push(element);
+            }
+          }
+        }
+        continue;
+      }
+      if (!clazz.getName().startsWith("com.litongjava.")) {
+        continue;
+      }
+      for (Class<?> c = clazz; c != null && c.getName().startsWith("com.litongjava."); c = c.getSuperclass()) {
+        for (Field field : c.getDeclaredFields()) {
+          if (Modifier.isStatic(field.getModifiers()) || field.getType().isPrimitive()) {
+            continue;
+          }
+          field.setAccessible(true);
+          Object value = field.get(object);
+          if (value != null) {
+            stack.push(value);
+          }
+        }
+      }
+    }
+  }
+
+  private static long shallowSize(Object object) {
+    Class<?> clazz = object.getClass();
+    if (clazz.isArray()) {
+      Class<?> component = clazz.getComponentType();
+      return align(16 + (long) Array.getLength(object) * (component.isPrimitive() ? primitiveSize(component) : 4));
+    }
+    long size = 12;
+    for (Class<?> c = clazz; c != null; c = c.getSuperclass()) {
+      for (Field field : c.getDeclaredFields()) {
+        if (!Modifier.isStatic(field.getModifiers())) {
+          size += field.getType().isPrimitive() ? primitiveSize(field.getType()) : 4;
+        }
+      }
+    }
+    if (object instanceof String) {
+      // 字符数组（Latin1）
+      size = align(size) + align(16 + ((String) object).length());
+    }
+    return align(size);
+  }
+
+  private static int primitiveSize(Class<?> type) {
+    if (type == long.class || type == double.class) {
+      return 8;
+    }
+    if (type == int.class || type == float.class) {
+      return 4;
+    }
+    if (type == short.class || type == char.class) {
+      return 2;
+    }
+    return 1;
+  }
+
+  private static long align(long size) {
+    return (size + 7) & ~7L;
+  }
+}
@@ -0,0 +1,199 @@
+package com.litongjava.tio.core;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.net.SocketOption;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousServerSocketChannel;
+import java.nio.channels.AsynchronousSocketChannel;
+import java.nio.channels.CompletionHandler;
+import java.util.Set;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.litongjava.aio.Packet;
+import com.litongjava.tio.server.ServerChannelContext;
+import com.litongjava.tio.server.ServerTioConfig;
+
+/**
+ * 回环连接上逐个写与聚合写的对比：每个packet的写操作（系统调用）次数和吞吐量<br>
+ * 不属于单元测试，用main()运行
+ */
+public class GatheringWriteBenchmark {
+
+  public static void main(String[] args) throws Exception {
+    int packets = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+    for (int batch : new int[] { 1, 16, 64 }) {
+      run(batch, packets);
+    }
+  }
+
+  private static void run(int batch, int packets) throws Exception {
+    AtomicInteger sent = new AtomicInteger();
+    ServerTioConfig serverTioConfig = new ServerTioConfig("gathering-write-benchmark");
+    serverTioConfig.setHeartbeatTimeout(0);
+    serverTioConfig.setSendBatchMaxPackets(batch);
+    serverTioConfig.setServerAioListener(new DefaultAioListener() {
+      @Override
+      public void onAfterSent(ChannelContext channelContext, Packet packet, boolean isSentSuccess) {
+        sent.incrementAndGet();
+      }
+    });
+    serverTioConfig.init();
+
+    try (AsynchronousServerSocketChannel serverSocketChannel = AsynchronousServerSocketChannel.open()) {
+      serverSocketChannel.bind(new InetSocketAddress("127.0.0.1", 0));
+      Future<AsynchronousSocketChannel> accepted = serverSocketChannel.accept();
+      try (Socket socket = new Socket("127.0.0.1", ((InetSocketAddress) serverSocketChannel.getLocalAddress()).getPort())) {
+        Thread reader = new Thread(() -> drain(socket));
+        reader.setDaemon(true);
+        reader.start();
+
+        CountingSocketChannel channel = new CountingSocketChannel(accepted.get(5, TimeUnit.SECONDS));
+        ChannelContext channelContext = new ServerChannelContext(serverTioConfig, channel);
+        channelContext.setClosed(false);
+        byte[] body = new byte[64];
+        long start = System.nanoTime();
+        for (int i = 0; i < packets; i++) {
+          Packet packet = new Packet();
+          packet.setPreEncodedByteBuffer(ByteBuffer.wrap(body));
+          Tio.send(channelContext, packet);
+        }
+        while (sent.get() < packets) {
+          Thread.sleep(1);
+        }
+        long nanos = System.nanoTime() - start;
+        System.out.printf("batch: %d, packets: %d, writes: %d, writes/packet: %.4f, %.0f packets/s%n", batch, packets, channel.writes.sum(),
+            channel.writes.sum() / (double) packets, packets * 1e9 / nanos);
+        channel.close();
+      }
+    }
+  }
+
+  private static void drain(Socket socket) {
+    byte[] buffer = new byte[64 * 1024];
+    try (InputStream in = socket.getInputStream()) {
+      while (in.read(buffer) >= 0) {
+      }
+    } catch (IOException e) {
+      // 连接关闭
+    }
+  }
+
+  /**
+   * 统计写操作次数的AsynchronousSocketChannel，其它操作转给原通道
+   */
+  private static class CountingSocketChannel extends AsynchronousSocketChannel {
+    final LongAdder writes = new LongAdder();
+    private final AsynchronousSocketChannel channel;
+
+    CountingSocketChannel(AsynchronousSocketChannel channel) {
+      super(channel.provider());
+      this.channel = channel;
+    }
+
+    @Override
+    public <A> void write(ByteBuffer src, long timeout, TimeUnit unit, A attachment, CompletionHandler<Integer, ? super A> handler) {
+      writes.increment();
+      channel.write(src, timeout, unit, attachment, handler);
+    }
+
+    @Override
+    public <A> void write(ByteBuffer[] srcs, int offset, int length, long timeout, TimeUnit unit, A attachment,
+        CompletionHandler<Long, ? super A> handler) {
+      writes.increment();
+      channel.write(srcs, offset, length, timeout, unit, attachment, handler);
+    }
+
+    @Override
+    public Future<Integer> write(ByteBuffer src) {
+      writes.increment();
+      return channel.write(src);
+    }
+
+    @Override
+    public <A> void read(ByteBuffer dst, long timeout, TimeUnit unit, A attachment, CompletionHandler<Integer, ? super A> handler) {
+      channel.read(dst, timeout, unit, attachment, handler);
+    }
+
+    @Override
+    public Future<Integer> read(ByteBuffer dst) {
+      return channel.read(dst);
+    }
+
+    @Override
+    public <A> void read(ByteBuffer[] dsts, int offset, int length, long timeout, TimeUnit unit, A attachment,
+        CompletionHandler<Long, ? super A> handler) {
+      channel.read(dsts, offset, length, timeout, unit, attachment, handler);
+    }
+
+    @Override
+    public <A> void connect(SocketAddress remote, A attachment, CompletionHandler<Void, ? super A> handler) {
+      channel.connect(remote, attachment, handler);
+    }
+
+    @Override
+    public Future<Void> connect(SocketAddress remote) {
+      return channel.connect(remote);
+    }
+
+    @Override
+    public AsynchronousSocketChannel bind(SocketAddress local) throws IOException {
+      channel.bind(local);
+      return this;
+    }
+
+    @Override
+    public <T> AsynchronousSocketChannel setOption(SocketOption<T> name, T value) throws IOException {
+      channel.setOption(name, value);
+      return this;
+    }
+
+    @Override
+    public <T> T getOption(SocketOption<T> name) throws IOException {
+      return channel.getOption(name);
+    }
+
+    @Override
+    public Set<SocketOption<?>> supportedOptions() {
+      return channel.supportedOptions();
+    }
+
+    @Override
+    public AsynchronousSocketChannel shutdownInput() throws IOException {
+      channel.shutdownInput();
+      return this;
+    }
+
+    @Override
+    public AsynchronousSocketChannel shutdownOutput() throws IOException {
+      channel.shutdownOutput();
+      return this;
+    }
+
+    @Override
+    public SocketAddress getRemoteAddress() throws IOException {
+      return channel.getRemoteAddress();
+    }
+
+    @Override
+    public SocketAddress getLocalAddress() throws IOException {
+      return channel.getLocalAddress();
+    }
+
+    @Override
+    public boolean isOpen() {
+      return channel.isOpen();
+    }
+
+    @Override
+    public void close() throws IOException {
+      channel.close();
+    }
+  }
+}
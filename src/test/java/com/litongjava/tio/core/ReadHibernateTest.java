@@ -0,0 +1,133 @@
+package com.litongjava.tio.core;
+
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.litongjava.aio.Packet;
+import com.litongjava.enhance.buffer.BufferPage;
+import com.litongjava.tio.core.pool.BufferPoolUtils;
+import com.litongjava.tio.server.ServerTioConfig;
+import com.litongjava.tio.server.TioServer;
+import com.litongjava.tio.server.intf.ServerAioHandler;
+
+/**
+ * 读休眠：大量空闲连接不持有读缓冲区，有数据到达时照常收发<br>
+ * 分别在不休眠、立即休眠、空闲一段时间后休眠三种配置下建立连接，比较空闲时的直接内存
+ */
+public class ReadHibernateTest {
+  private static final int CONNECTIONS = 2000;
+
+  static class BytesPacket extends Packet {
+    private static final long serialVersionUID = 1L;
+    byte[] body;
+
+    BytesPacket(byte[] body) {
+      this.body = body;
+    }
+  }
+
+  @Test
+  public void test() throws Exception {
+    long[] off = run(-1, 19331);
+    long[] immediate = run(0, 19332);
+    long[] delayed = run(300, 19333);
+    // 每个空闲连接少持有一个读缓冲区
+    long saved = (long) CONNECTIONS * TioConfig.READ_BUFFER_SIZE / 2;
+    Assert.assertTrue(off[0] - immediate[0] > saved);
+    Assert.assertTrue(off[0] - delayed[0] > saved);
+  }
+
+  /**
+   * @return 所有连接空闲时的直接内存、堆内存
+   */
+  private long[] run(long hibernateTimeout, int port) throws Exception {
+    ServerTioConfig serverTioConfig = new ServerTioConfig("read-hibernate-test");
+    serverTioConfig.setHeartbeatTimeout(0);
+    serverTioConfig.setReadHibernateTimeout(hibernateTimeout);
+    serverTioConfig.setServerAioHandler(new ServerAioHandler() {
+      @Override
+      public Packet decode(ByteBuffer buffer, int limit, int position, int readableLength, ChannelContext ctx) {
+        byte[] body = new byte[readableLength];
+        buffer.get(body);
+        return new BytesPacket(body);
+      }
+
+      @Override
+      public ByteBuffer encode(Packet packet, TioConfig tioConfig, ChannelContext ctx) {
+        return ByteBuffer.wrap(((BytesPacket) packet).body);
+      }
+
+      @Override
+      public void handler(Packet packet, ChannelContext ctx) {
+        Tio.send(ctx, packet);
+      }
+    });
+    TioServer tioServer = new TioServer(serverTioConfig);
+    tioServer.start("127.0.0.1", port);
+    List<SocketChannel> clients = new ArrayList<>(CONNECTIONS);
+    try {
+      for (int i = 0; i < CONNECTIONS; i++) {
+        clients.add(SocketChannel.open(new InetSocketAddress("127.0.0.1", port)));
+      }
+      long deadline = System.currentTimeMillis() + 20000;
+      while (System.currentTimeMillis() < deadline) {
+        boolean connected = serverTioConfig.connections.getObj().size() == CONNECTIONS;
+        if (connected && (hibernateTimeout < 0 || serverTioConfig.groupStat.hibernatingChannels.get() == CONNECTIONS)) {
+          break;
+        }
+        Thread.sleep(20);
+      }
+      Assert.assertEquals(CONNECTIONS, serverTioConfig.connections.getObj().size());
+      if (hibernateTimeout >= 0) {
+        Assert.assertEquals(CONNECTIONS, serverTioConfig.groupStat.hibernatingChannels.get());
+      }
+
+      long[] used = measure();
+
+      // 休眠的连接收到数据后照常解码、回复
+      for (int i = 0; i < CONNECTIONS; i += CONNECTIONS / 10) {
+        SocketChannel client = clients.get(i);
+        client.write(ByteBuffer.wrap(("ping" + i).getBytes()));
+        ByteBuffer reply = ByteBuffer.allocate(("ping" + i).length());
+        while (reply.hasRemaining()) {
+          Assert.assertTrue(client.read(reply) > 0);
+        }
+        Assert.assertEquals("ping" + i, new String(reply.array()));
+      }
+      return used;
+    } finally {
+      for (SocketChannel client : clients) {
+        client.close();
+      }
+      tioServer.stop();
+    }
+  }
+
+  private static long[] measure() throws InterruptedException {
+    // 归还的读缓冲区先回到页池的空闲队列，这里直接释放掉，只统计连接实际持有的
+    for (BufferPage page : BufferPoolUtils.bufferPool.getRequestBufferPages()) {
+      page.release();
+    }
+    BufferPoolUtils.release();
+    for (int i = 0; i < 3; i++) {
+      System.gc();
+      Thread.sleep(50);
+    }
+    long direct = 0;
+    for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+      if ("direct".equalsIgnoreCase(pool.getName())) {
+        direct = pool.getMemoryUsed();
+      }
+    }
+    Runtime runtime = Runtime.getRuntime();
+    return new long[] { direct, runtime.totalMemory() - runtime.freeMemory() };
+  }
+}
@@ -0,0 +1,150 @@
+package com.litongjava.tio.core;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.litongjava.aio.Packet;
+import com.litongjava.tio.server.ServerChannelContext;
+import com.litongjava.tio.server.ServerTioConfig;
+
+public class SendQueueTest {
+
+  private static Packet packet(int size) {
+    Packet packet = new Packet();
+    packet.setPreEncodedByteBuffer(ByteBuffer.allocate(size));
+    return packet;
+  }
+
+  private static ServerTioConfig serverTioConfig(List<Boolean> changes) {
+    ServerTioConfig serverTioConfig = new ServerTioConfig("send-queue-test");
+    serverTioConfig.setHeartbeatTimeout(0);
+    serverTioConfig.setServerAioListener(new DefaultAioListener() {
+      @Override
+      public void onWritabilityChanged(ChannelContext channelContext, boolean writable) {
+        changes.add(writable);
+      }
+    });
+    serverTioConfig.init();
+    return serverTioConfig;
+  }
+
+  @Test
+  public void testWaterMarks() {
+    List<Boolean> changes = new ArrayList<>();
+    ServerTioConfig serverTioConfig = serverTioConfig(changes);
+    serverTioConfig.setSendQueueHighWaterMarkBytes(1000);
+    serverTioConfig.setSendQueueLowWaterMarkBytes(300);
+    ChannelContext channelContext = new ServerChannelContext(serverTioConfig, "1");
+    SendQueue sendQueue = channelContext.sendQueue;
+
+    for (int i = 0; i < 5; i++) {
+      Assert.assertTrue(sendQueue.offer(packet(250)));
+    }
+    Assert.assertFalse(channelContext.isWritable());
+    Assert.assertEquals(1250, channelContext.stat.getSendQueueBytes());
+    Assert.assertEquals(5, serverTioConfig.groupStat.sendQueuePackets.get());
+
+    // 1000 -> 750 -> 500 仍高于低水位
+    sendQueue.poll();
+    sendQueue.poll();
+    sendQueue.poll();
+    Assert.assertFalse(channelContext.isWritable());
+    sendQueue.poll();
+    Assert.assertTrue(channelContext.isWritable());
+    Assert.assertEquals(2, changes.size());
+    Assert.assertFalse(changes.get(0));
+    Assert.assertTrue(changes.get(1));
+  }
+
+  @Test
+  public void testOverflowPolicy() {
+    ServerTioConfig serverTioConfig = serverTioConfig(new ArrayList<>());
+    serverTioConfig.setSendQueueMaxPackets(3);
+    ChannelContext channelContext = new ServerChannelContext(serverTioConfig, "1");
+    SendQueue sendQueue = channelContext.sendQueue;
+
+    Packet first = packet(10);
+    Assert.assertTrue(sendQueue.offer(first));
+    Assert.assertTrue(sendQueue.offer(packet(10)));
+    Assert.assertTrue(sendQueue.offer(packet(10)));
+    Assert.assertFalse(sendQueue.offer(packet(10)));
+    Assert.assertEquals(3, sendQueue.size());
+
+    serverTioConfig.setSendQueueOverflowPolicy(SendQueueOverflowPolicy.DROP_OLDEST);
+    Packet last = packet(10);
+    Assert.assertTrue(sendQueue.offer(last));
+    Assert.assertEquals(3, sendQueue.size());
+    Assert.assertNotSame(first, sendQueue.poll());
+    Assert.assertEquals(2, serverTioConfig.groupStat.sendQueueOverflows.get());
+
+    sendQueue.clear();
+    Assert.assertEquals(0, serverTioConfig.groupStat.sendQueuePackets.get());
+    Assert.assertEquals(0, serverTioConfig.groupStat.sendQueueBytes.get());
+  }
+
+  @Test
+  public void testOfferedNanos() {
+    ServerTioConfig serverTioConfig = serverTioConfig(new ArrayList<>());
+    ChannelContext channelContext = new ServerChannelContext(serverTioConfig, "a");
+    Packet plain = packet(10);
+    Assert.assertTrue(channelContext.sendQueue.offer(plain));
+    // 开关在队列中还有packet时切换，两种元素都能取出
+    serverTioConfig.setLatencyStatOn(true);
+    Packet timed = packet(10);
+    Assert.assertTrue(channelContext.sendQueue.offer(timed));
+    Assert.assertSame(plain, channelContext.sendQueue.pollForSend());
+    Assert.assertEquals(0, channelContext.sendQueue.getPolledOfferedNanos());
+    Assert.assertSame(timed, channelContext.sendQueue.pollForSend());
+    Assert.assertTrue(channelContext.sendQueue.getPolledOfferedNanos() != 0);
+    Assert.assertEquals(0, channelContext.sendQueue.bytes());
+  }
+
+  @Test
+  public void testPerConnectionLimit() {
+    ServerTioConfig serverTioConfig = serverTioConfig(new ArrayList<>());
+    serverTioConfig.setSendQueueMaxPackets(10);
+    ChannelContext slow = new ServerChannelContext(serverTioConfig, "slow");
+    ChannelContext normal = new ServerChannelContext(serverTioConfig, "normal");
+    slow.sendQueue.setMaxPackets(2);
+    normal.sendQueue.setMaxBytes(25);
+    Assert.assertTrue(slow.sendQueue.offer(packet(10)));
+    Assert.assertTrue(slow.sendQueue.offer(packet(10)));
+    Assert.assertFalse(slow.sendQueue.offer(packet(10)));
+    Assert.assertTrue(normal.sendQueue.offer(packet(10)));
+    Assert.assertTrue(normal.sendQueue.offer(packet(10)));
+    Assert.assertFalse(normal.sendQueue.offer(packet(10)));
+    Assert.assertEquals(2, normal.sendQueue.size());
+  }
+
+  @Test
+  public void testWritableAfterConcurrentDrain() throws Exception {
+    ServerTioConfig serverTioConfig = serverTioConfig(new ArrayList<>());
+    serverTioConfig.setSendQueueHighWaterMarkPackets(2);
+    serverTioConfig.setSendQueueLowWaterMarkPackets(1);
+    for (int round = 0; round < 50; round++) {
+      ChannelContext channelContext = new ServerChannelContext(serverTioConfig, "c" + round);
+      SendQueue sendQueue = channelContext.sendQueue;
+      int count = 2000;
+      Thread producer = new Thread(() -> {
+        for (int i = 0; i < count; i++) {
+          sendQueue.offer(packet(1));
+        }
+      });
+      producer.start();
+      int polled = 0;
+      while (polled < count) {
+        if (sendQueue.poll() != null) {
+          polled++;
+        }
+      }
+      producer.join();
+      Assert.assertTrue(sendQueue.isEmpty());
+      // 队列空了一定可写
+      Assert.assertTrue(channelContext.isWritable());
+    }
+  }
+}
@@ -0,0 +1,198 @@
+package com.litongjava.tio.core;
+
+import java.net.SocketAddress;
+import java.net.SocketOption;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousSocketChannel;
+import java.nio.channels.CompletionHandler;
+import java.util.Set;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.litongjava.aio.Packet;
+import com.litongjava.tio.core.pool.BufferPoolUtils;
+import com.litongjava.tio.server.ServerChannelContext;
+import com.litongjava.tio.server.ServerTioConfig;
+import com.litongjava.tio.server.intf.ServerAioHandler;
+
+/**
+ * 1万、10万成员的组群发一个packet的耗时和编码次数，对比每个接收者各自编码与开启fanOutSharedEncode后只编码一次<br>
+ * 成员的通道直接丢弃写出的数据并在调用线程中完成回调，耗时包括入队、编码、写完成回调和归还缓冲区<br>
+ * 不属于单元测试，用main()运行
+ */
+public class SendToGroupBenchmark {
+  private static final String GROUP = "g";
+  private static final int BODY_SIZE = 256;
+
+  public static void main(String[] args) {
+    for (int members : new int[] { 10000, 100000 }) {
+      for (boolean shared : new boolean[] { false, true }) {
+        run(members, shared);
+      }
+    }
+  }
+
+  private static void run(int members, boolean shared) {
+    LongAdder encodes = new LongAdder();
+    ServerTioConfig serverTioConfig = serverTioConfig(encodes);
+    serverTioConfig.setFanOutSharedEncode(shared);
+    try {
+      for (int i = 0; i < members; i++) {
+        ChannelContext channelContext = new ServerChannelContext(serverTioConfig, new SinkChannel(), "127.0.0.1", 10000 + i % 50000);
+        channelContext.setClosed(false);
+        Tio.bindGroup(channelContext, GROUP);
+      }
+      for (int i = 0; i < 5; i++) {
+        Tio.bSendToGroup(serverTioConfig, GROUP, new Packet());
+      }
+      encodes.reset();
+      int rounds = 10;
+      long best = Long.MAX_VALUE;
+      for (int i = 0; i < rounds; i++) {
+        long start = System.nanoTime();
+        Tio.bSendToGroup(serverTioConfig, GROUP, new Packet());
+        best = Math.min(best, System.nanoTime() - start);
+      }
+      System.out.printf("members: %d, shared encode: %s, best: %dus, encodes/broadcast: %d%n", members, shared, best / 1000, encodes.sum() / rounds);
+    } finally {
+      serverTioConfig.shutdownFanOutPool();
+    }
+  }
+
+  private static ServerTioConfig serverTioConfig(LongAdder encodes) {
+    ServerTioConfig serverTioConfig = new ServerTioConfig("send-to-group-benchmark");
+    serverTioConfig.setHeartbeatTimeout(0);
+    serverTioConfig.setServerAioHandler(new ServerAioHandler() {
+      @Override
+      public Packet decode(ByteBuffer buffer, int limit, int position, int readableLength, ChannelContext ctx) {
+        return null;
+      }
+
+      @Override
+      public ByteBuffer encode(Packet packet, TioConfig tioConfig, ChannelContext ctx) {
+        encodes.increment();
+        ByteBuffer byteBuffer = BufferPoolUtils.allocate(BODY_SIZE);
+        for (int i = 0; i < BODY_SIZE; i++) {
+          byteBuffer.put((byte) i);
+        }
+        byteBuffer.flip();
+        return byteBuffer;
+      }
+
+      @Override
+      public void handler(Packet packet, ChannelContext ctx) {
+      }
+    });
+    serverTioConfig.init();
+    return serverTioConfig;
+  }
+
+  /**
+   * 丢弃写出的数据，在调用线程中同步回调
+   */
+  private static class SinkChannel extends AsynchronousSocketChannel {
+
+    SinkChannel() {
+      super(null);
+    }
+
+    @Override
+    public <A> void write(ByteBuffer src, long timeout, TimeUnit unit, A attachment, CompletionHandler<Integer, ? super A> handler) {
+      int n = src.remaining();
+      src.position(src.limit());
+      handler.completed(n, attachment);
+    }
+
+    @Override
+    public <A> void write(ByteBuffer[] srcs, int offset, int length, long timeout, TimeUnit unit, A attachment,
+        CompletionHandler<Long, ? super A> handler) {
+      long n = 0;
+      for (int i = offset; i < offset + length; i++) {
+        n += srcs[i].remaining();
+        srcs[i].position(srcs[i].limit());
+      }
+      handler.completed(n, attachment);
+    }
+
+    @Override
+    public Future<Integer> write(ByteBuffer src) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public <A> void read(ByteBuffer dst, long timeout, TimeUnit unit, A attachment, CompletionHandler<Integer, ? super A> handler) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Future<Integer> read(ByteBuffer dst) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public <A> void read(ByteBuffer[] dsts, int offset, int length, long timeout, TimeUnit unit, A attachment,
+        CompletionHandler<Long, ? super A> handler) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public <A> void connect(SocketAddress remote, A attachment, CompletionHandler<Void, ? super A> handler) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Future<Void> connect(SocketAddress remote) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public AsynchronousSocketChannel bind(SocketAddress local) {
+      return this;
+    }
+
+    @Override
+    public <T> AsynchronousSocketChannel setOption(SocketOption<T> name, T value) {
+      return this;
+    }
+
+    @Override
+    public <T> T getOption(SocketOption<T> name) {
+      return null;
+    }
+
+    @Override
+    public Set<SocketOption<?>> supportedOptions() {
+      return null;
+    }
+
+    @Override
+    public AsynchronousSocketChannel shutdownInput() {
+      return this;
+    }
+
+    @Override
+    public AsynchronousSocketChannel shutdownOutput() {
+      return this;
+    }
+
+    @Override
+    public SocketAddress getRemoteAddress() {
+      return null;
+    }
+
+    @Override
+    public SocketAddress getLocalAddress() {
+      return null;
+    }
+
+    @Override
+    public boolean isOpen() {
+      return true;
+    }
+
+    @Override
+    public void close() {
+    }
+  }
+}
@@ -0,0 +1,132 @@
+package com.litongjava.tio.core;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.litongjava.aio.Packet;
+import com.litongjava.tio.core.TestConfigUtils.NoopServerAioHandler;
+import com.litongjava.tio.core.pool.BufferLeakDetector;
+import com.litongjava.tio.core.pool.BufferPoolUtils;
+import com.litongjava.tio.core.pool.SharedByteBuffer;
+import com.litongjava.tio.server.ServerChannelContext;
+import com.litongjava.tio.server.ServerTioConfig;
+import com.litongjava.tio.server.intf.ServerAioHandler;
+
+/**
+ * 群发共享编码结果的引用计数：发送队列拒绝、连接已关闭、群发途中连接关闭时都要释放引用；共享编码需显式开启
+ */
+public class SharedPacketTest {
+
+  @After
+  public void after() {
+    BufferLeakDetector.setLevel(BufferLeakDetector.Level.DISABLED);
+    BufferLeakDetector.setSamplingInterval(1024);
+  }
+
+  @Test
+  public void testReject() {
+    ServerTioConfig serverTioConfig = serverTioConfig();
+    serverTioConfig.setSendQueueMaxPackets(1);
+    ChannelContext channelContext = new ServerChannelContext(serverTioConfig, null, "127.0.0.1", 10000);
+    SharedByteBuffer sharedByteBuffer = new SharedByteBuffer(ByteBuffer.allocate(16));
+    Assert.assertTrue(channelContext.sendQueue.offer(new SharedPacket(new Packet(), sharedByteBuffer)));
+    Assert.assertFalse(channelContext.sendQueue.offer(new SharedPacket(new Packet(), sharedByteBuffer)));
+    Assert.assertEquals(2, sharedByteBuffer.refCnt());
+
+    // CLOSE策略：被拒绝的和关闭时清空的都释放
+    serverTioConfig.setSendQueueOverflowPolicy(SendQueueOverflowPolicy.CLOSE);
+    Assert.assertFalse(channelContext.sendQueue.offer(new SharedPacket(new Packet(), sharedByteBuffer)));
+    Assert.assertEquals(1, sharedByteBuffer.refCnt());
+  }
+
+  @Test
+  public void testClosedChannel() {
+    ServerTioConfig serverTioConfig = serverTioConfig();
+    ChannelContext channelContext = new ServerChannelContext(serverTioConfig, null, "127.0.0.1", 10000);
+    SharedByteBuffer sharedByteBuffer = new SharedByteBuffer(ByteBuffer.allocate(16));
+    SharedPacket sharedPacket = new SharedPacket(new Packet(), sharedByteBuffer);
+    // 生成SharedPacket之后、发送之前连接被关闭
+    channelContext.setClosed(true);
+    Assert.assertFalse(Tio.send(channelContext, sharedPacket));
+    Assert.assertEquals(1, sharedByteBuffer.refCnt());
+    // 重复释放只生效一次
+    sharedPacket.release();
+    Assert.assertEquals(1, sharedByteBuffer.refCnt());
+  }
+
+  @Test
+  public void testCloseDuringFanOut() {
+    // 每个分配都跟踪，归还后删除记录
+    BufferLeakDetector.setLevel(BufferLeakDetector.Level.SAMPLED);
+    BufferLeakDetector.setSamplingInterval(1);
+    ServerTioConfig serverTioConfig = serverTioConfig();
+    serverTioConfig.setFanOutSharedEncode(true);
+    ChannelContext[] members = new ChannelContext[10];
+    for (int i = 0; i < members.length; i++) {
+      members[i] = new ServerChannelContext(serverTioConfig, null, "127.0.0.1", 10000 + i);
+      members[i].setClosed(false);
+      Tio.bindGroup(members[i], "g");
+    }
+    int tracked = BufferLeakDetector.getTracked();
+    // 群发途中关闭后面的连接；没有socket的连接在写之前的检查中被放弃
+    Tio.sendToGroup(serverTioConfig, "g", new Packet(), channelContext -> {
+      for (int i = 0; i < members.length; i += 2) {
+        members[i].setClosed(true);
+      }
+      return true;
+    });
+    Assert.assertEquals(tracked, BufferLeakDetector.getTracked());
+  }
+
+  @Test
+  public void testSharedEncodeOptIn() {
+    ServerTioConfig serverTioConfig = serverTioConfig();
+    List<ChannelContext> encoded = new ArrayList<>();
+    ServerAioHandler handler = serverTioConfig.getServerAioHandler();
+    serverTioConfig.setServerAioHandler(new ServerAioHandler() {
+      @Override
+      public Packet decode(ByteBuffer buffer, int limit, int position, int readableLength, ChannelContext ctx) throws Exception {
+        return handler.decode(buffer, limit, position, readableLength, ctx);
+      }
+
+      @Override
+      public ByteBuffer encode(Packet packet, TioConfig tioConfig, ChannelContext ctx) {
+        encoded.add(ctx);
+        return handler.encode(packet, tioConfig, ctx);
+      }
+
+      @Override
+      public void handler(Packet packet, ChannelContext ctx) throws Exception {
+      }
+    });
+    int members = 5;
+    for (int i = 0; i < members; i++) {
+      ChannelContext channelContext = new ServerChannelContext(serverTioConfig, null, "127.0.0.1", 10000 + i);
+      channelContext.setClosed(false);
+      Tio.bindGroup(channelContext, "g");
+    }
+    // 默认每个接收者按自己的连接编码
+    Tio.sendToGroup(serverTioConfig, "g", new Packet());
+    Assert.assertEquals(members, new HashSet<>(encoded).size());
+
+    encoded.clear();
+    serverTioConfig.setFanOutSharedEncode(true);
+    Tio.sendToGroup(serverTioConfig, "g", new Packet());
+    Assert.assertEquals(1, encoded.size());
+  }
+
+  private static ServerTioConfig serverTioConfig() {
+    return TestConfigUtils.serverTioConfig("shared-packet-test", new NoopServerAioHandler() {
+      @Override
+      public ByteBuffer encode(Packet packet, TioConfig tioConfig, ChannelContext ctx) {
+        return BufferPoolUtils.allocate(16);
+      }
+    });
+  }
+}
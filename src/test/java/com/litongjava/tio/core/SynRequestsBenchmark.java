@@ -0,0 +1,67 @@
+package com.litongjava.tio.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import com.litongjava.aio.Packet;
+import com.litongjava.tio.core.task.HandlePacketTask;
+import com.litongjava.tio.server.ServerChannelContext;
+import com.litongjava.tio.server.ServerTioConfig;
+
+/**
+ * 同时等待响应的请求：注册、多线程关联响应、全部超时的耗时<br>
+ * 不属于单元测试，用main()运行
+ */
+public class SynRequestsBenchmark {
+
+  public static void main(String[] args) throws Exception {
+    int requests = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+    int threads = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+    ServerTioConfig serverTioConfig = new ServerTioConfig("syn-requests-benchmark");
+    serverTioConfig.setHeartbeatTimeout(0);
+    serverTioConfig.init();
+    ChannelContext channelContext = new ServerChannelContext(serverTioConfig, "1");
+
+    int[] seqs = new int[requests];
+    long start = System.nanoTime();
+    for (int i = 0; i < requests; i++) {
+      Packet request = new Packet();
+      Tio.request(channelContext, request, 60000);
+      seqs[i] = request.getSynSeq();
+    }
+    long registered = System.nanoTime();
+    Thread[] workers = new Thread[threads];
+    for (int t = 0; t < threads; t++) {
+      int from = t;
+      workers[t] = new Thread(() -> {
+        HandlePacketTask handlePacketTask = new HandlePacketTask();
+        for (int i = from; i < requests; i += threads) {
+          Packet response = new Packet();
+          response.setSynSeq(seqs[i]);
+          try {
+            handlePacketTask.handle(channelContext, response);
+          } catch (Throwable e) {
+            throw new RuntimeException(e);
+          }
+        }
+      });
+      workers[t].start();
+    }
+    for (Thread worker : workers) {
+      worker.join();
+    }
+    long completed = System.nanoTime();
+    System.out.printf("register %d requests: %dms, correlate responses with %d threads: %dms%n", requests,
+        TimeUnit.NANOSECONDS.toMillis(registered - start), threads, TimeUnit.NANOSECONDS.toMillis(completed - registered));
+
+    List<CompletableFuture<Packet>> futures = new ArrayList<>(requests);
+    start = System.nanoTime();
+    for (int i = 0; i < requests; i++) {
+      futures.add(Tio.request(channelContext, new Packet(), 200));
+    }
+    CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).handle((v, e) -> null).get(60, TimeUnit.SECONDS);
+    System.out.printf("%d requests timed out after %dms%n", requests, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+  }
+}
@@ -0,0 +1,93 @@
+package com.litongjava.tio.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.litongjava.aio.Packet;
+import com.litongjava.tio.core.task.HandlePacketTask;
+import com.litongjava.tio.server.ServerChannelContext;
+import com.litongjava.tio.server.ServerTioConfig;
+
+/**
+ * 大量同时等待响应的请求：多线程关联响应，以及全部由时间轮超时
+ */
+public class SynRequestsTest {
+  private static final int REQUESTS = 10000;
+  private static final int THREADS = 4;
+
+  private static ChannelContext channelContext() {
+    ServerTioConfig serverTioConfig = new ServerTioConfig("syn-requests-test");
+    serverTioConfig.setHeartbeatTimeout(0);
+    serverTioConfig.init();
+    return new ServerChannelContext(serverTioConfig, "1");
+  }
+
+  @Test
+  public void testResponses() throws Exception {
+    ChannelContext channelContext = channelContext();
+    SynRequests synRequests = channelContext.tioConfig.synRequests;
+    List<CompletableFuture<Packet>> futures = new ArrayList<>(REQUESTS);
+    int[] seqs = new int[REQUESTS];
+    for (int i = 0; i < REQUESTS; i++) {
+      Packet request = new Packet();
+      futures.add(Tio.request(channelContext, request, 60000));
+      seqs[i] = request.getSynSeq();
+    }
+    Assert.assertEquals(REQUESTS, synRequests.size());
+
+    Thread[] threads = new Thread[THREADS];
+    for (int t = 0; t < THREADS; t++) {
+      int from = t;
+      threads[t] = new Thread(() -> {
+        HandlePacketTask handlePacketTask = new HandlePacketTask();
+        for (int i = from; i < REQUESTS; i += THREADS) {
+          Packet response = new Packet();
+          response.setSynSeq(seqs[i]);
+          try {
+            handlePacketTask.handle(channelContext, response);
+          } catch (Throwable e) {
+            throw new RuntimeException(e);
+          }
+        }
+      });
+      threads[t].start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    Assert.assertEquals(0, synRequests.size());
+    for (int i = 0; i < REQUESTS; i++) {
+      Assert.assertEquals(Integer.valueOf(seqs[i]), futures.get(i).get(0, TimeUnit.SECONDS).getSynSeq());
+    }
+  }
+
+  @Test
+  public void testTimeouts() throws Exception {
+    ChannelContext channelContext = channelContext();
+    SynRequests synRequests = channelContext.tioConfig.synRequests;
+    List<CompletableFuture<Packet>> futures = new ArrayList<>(REQUESTS);
+    for (int i = 0; i < REQUESTS; i++) {
+      futures.add(Tio.request(channelContext, new Packet(), 200));
+    }
+    CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).handle((v, e) -> null).get(10, TimeUnit.SECONDS);
+
+    Assert.assertEquals(0, synRequests.size());
+    for (CompletableFuture<Packet> future : futures) {
+      try {
+        future.get();
+        Assert.fail();
+      } catch (ExecutionException e) {
+        Assert.assertTrue(e.getCause() instanceof TimeoutException);
+      }
+    }
+    Assert.assertNull(Tio.synSend(channelContext, new Packet(), 50));
+  }
+}
@@ -0,0 +1,54 @@
+package com.litongjava.tio.core;
+
+import java.nio.ByteBuffer;
+
+import com.litongjava.aio.Packet;
+import com.litongjava.tio.server.ServerTioConfig;
+import com.litongjava.tio.server.intf.ServerAioHandler;
+
+/**
+ * 单元测试共用的ServerTioConfig：关闭心跳检查，已经init()
+ * @author Tong Li
+ */
+public class TestConfigUtils {
+
+  /**
+   * @param name
+   * @return 使用NoopServerAioHandler的ServerTioConfig
+   */
+  public static ServerTioConfig serverTioConfig(String name) {
+    return serverTioConfig(name, new NoopServerAioHandler());
+  }
+
+  /**
+   * @param name
+   * @param serverAioHandler
+   * @return
+   */
+  public static ServerTioConfig serverTioConfig(String name, ServerAioHandler serverAioHandler) {
+    ServerTioConfig serverTioConfig = new ServerTioConfig(name);
+    serverTioConfig.setHeartbeatTimeout(0);
+    serverTioConfig.setServerAioHandler(serverAioHandler);
+    serverTioConfig.init();
+    return serverTioConfig;
+  }
+
+  /**
+   * decode、encode都返回null，handler什么也不做，需要时覆盖其中的方法
+   */
+  public static class NoopServerAioHandler implements ServerAioHandler {
+    @Override
+    public Packet decode(ByteBuffer buffer, int limit, int position, int readableLength, ChannelContext ctx) {
+      return null;
+    }
+
+    @Override
+    public ByteBuffer encode(Packet packet, TioConfig tioConfig, ChannelContext ctx) {
+      return null;
+    }
+
+    @Override
+    public void handler(Packet packet, ChannelContext ctx) throws Exception {
+    }
+  }
+}
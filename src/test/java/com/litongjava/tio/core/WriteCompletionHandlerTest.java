@@ -0,0 +1,259 @@
+package com.litongjava.tio.core;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.net.SocketOption;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousServerSocketChannel;
+import java.nio.channels.AsynchronousSocketChannel;
+import java.nio.channels.CompletionHandler;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.litongjava.aio.Packet;
+import com.litongjava.enhance.channel.EnhanceAsynchronousChannelProvider;
+import com.litongjava.tio.core.stat.LatencyStats;
+import com.litongjava.tio.core.task.SendPacketTask;
+import com.litongjava.tio.server.ServerChannelContext;
+import com.litongjava.tio.server.ServerTioConfig;
+
+/**
+ * 聚合写：部分写出后从第一个未写完的buffer继续，EnhanceAsynchronousSocketChannel合并成一个buffer写出，每个packet都计入统计
+ */
+public class WriteCompletionHandlerTest {
+
+  @Test
+  public void testPartialGatheringWrite() {
+    AtomicInteger sent = new AtomicInteger();
+    ServerTioConfig serverTioConfig = serverTioConfig(sent);
+    serverTioConfig.setSendBatchMaxPackets(16);
+    // 每次最多写15字节，10、20、30字节的三个packet需要分4次写完
+    PartialWriteChannel channel = new PartialWriteChannel(15);
+    ChannelContext channelContext = new ServerChannelContext(serverTioConfig, channel, "10.0.0.1", 1);
+    channelContext.setClosed(false);
+
+    byte[] expected = new byte[60];
+    int from = 0;
+    for (int size : new int[] { 10, 20, 30 }) {
+      byte[] bytes = new byte[size];
+      for (int i = 0; i < size; i++) {
+        bytes[i] = (byte) (from + i);
+      }
+      System.arraycopy(bytes, 0, expected, from, size);
+      from += size;
+      Packet packet = new Packet();
+      packet.setPreEncodedByteBuffer(ByteBuffer.wrap(bytes));
+      Assert.assertTrue(channelContext.sendQueue.offer(packet));
+    }
+    new SendPacketTask(channelContext).processSendQueue();
+
+    Assert.assertArrayEquals(expected, channel.out.toByteArray());
+    Assert.assertEquals(Arrays.asList(0, 1, 2, 2), channel.offsets);
+    Assert.assertEquals(3, sent.get());
+    Assert.assertEquals(60, channelContext.stat.getSentBytes().get());
+    Assert.assertEquals(3, serverTioConfig.ipStats.get(60L, channelContext).getSentPackets().get());
+    Assert.assertFalse(channelContext.isSending());
+  }
+
+  @Test
+  public void testEnhanceChannelCoalesce() throws Exception {
+    AtomicInteger sent = new AtomicInteger();
+    ServerTioConfig serverTioConfig = serverTioConfig(sent);
+    serverTioConfig.setSendBatchMaxPackets(16);
+    serverTioConfig.setLatencyStatOn(true);
+    ExecutorService executor = Executors.newFixedThreadPool(1);
+    EnhanceAsynchronousChannelProvider provider = new EnhanceAsynchronousChannelProvider(false);
+    AsynchronousServerSocketChannel serverSocketChannel = provider
+        .openAsynchronousServerSocketChannel(provider.openAsynchronousChannelGroup(executor, 1));
+    serverSocketChannel.bind(new InetSocketAddress("127.0.0.1", 0));
+    CompletableFuture<AsynchronousSocketChannel> accepted = new CompletableFuture<>();
+    serverSocketChannel.accept(null, new CompletionHandler<AsynchronousSocketChannel, Object>() {
+      @Override
+      public void completed(AsynchronousSocketChannel result, Object attachment) {
+        accepted.complete(result);
+      }
+
+      @Override
+      public void failed(Throwable exc, Object attachment) {
+        accepted.completeExceptionally(exc);
+      }
+    });
+
+    try (Socket socket = new Socket("127.0.0.1", ((InetSocketAddress) serverSocketChannel.getLocalAddress()).getPort())) {
+      socket.setSoTimeout(5000);
+      ChannelContext channelContext = new ServerChannelContext(serverTioConfig, accepted.get(5, TimeUnit.SECONDS));
+      channelContext.setClosed(false);
+      int packets = 5;
+      for (int i = 0; i < packets; i++) {
+        Packet packet = new Packet();
+        packet.setPreEncodedByteBuffer(ByteBuffer.wrap(new byte[] { (byte) i, (byte) i }));
+        Assert.assertTrue(channelContext.sendQueue.offer(packet));
+      }
+      new SendPacketTask(channelContext).processSendQueue();
+
+      byte[] received = new byte[packets * 2];
+      new DataInputStream(socket.getInputStream()).readFully(received);
+      Assert.assertArrayEquals(new byte[] { 0, 0, 1, 1, 2, 2, 3, 3, 4, 4 }, received);
+      long deadline = System.currentTimeMillis() + 5000;
+      while (sent.get() < packets && System.currentTimeMillis() < deadline) {
+        Thread.sleep(10);
+      }
+      Assert.assertEquals(packets, sent.get());
+      // 一次写操作写出整批
+      Assert.assertEquals(1, serverTioConfig.groupStat.latency.snapshot(LatencyStats.WRITE).getCount());
+      Assert.assertEquals(packets, serverTioConfig.ipStats.get(60L, channelContext).getSentPackets().get());
+    } finally {
+      serverSocketChannel.close();
+      executor.shutdownNow();
+    }
+  }
+
+  private static ServerTioConfig serverTioConfig(AtomicInteger sent) {
+    ServerTioConfig serverTioConfig = new ServerTioConfig("write-completion-test");
+    serverTioConfig.setHeartbeatTimeout(0);
+    serverTioConfig.setServerAioListener(new DefaultAioListener() {
+      @Override
+      public void onAfterSent(ChannelContext channelContext, Packet packet, boolean isSentSuccess) {
+        if (isSentSuccess) {
+          sent.incrementAndGet();
+        }
+      }
+    });
+    serverTioConfig.init();
+    serverTioConfig.ipStats.addDuration(60L);
+    return serverTioConfig;
+  }
+
+  /**
+   * 每次写操作最多写出maxBytes字节，在调用线程中同步回调
+   */
+  private static class PartialWriteChannel extends AsynchronousSocketChannel {
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    final List<Integer> offsets = new ArrayList<>();
+    private final int maxBytes;
+
+    PartialWriteChannel(int maxBytes) {
+      super(null);
+      this.maxBytes = maxBytes;
+    }
+
+    private int drain(ByteBuffer src, int limit) {
+      int n = Math.min(src.remaining(), limit);
+      for (int i = 0; i < n; i++) {
+        out.write(src.get());
+      }
+      return n;
+    }
+
+    @Override
+    public <A> void write(ByteBuffer src, long timeout, TimeUnit unit, A attachment, CompletionHandler<Integer, ? super A> handler) {
+      handler.completed(drain(src, maxBytes), attachment);
+    }
+
+    @Override
+    public <A> void write(ByteBuffer[] srcs, int offset, int length, long timeout, TimeUnit unit, A attachment,
+        CompletionHandler<Long, ? super A> handler) {
+      offsets.add(offset);
+      long written = 0;
+      for (int i = offset; i < offset + length && written < maxBytes; i++) {
+        written += drain(srcs[i], (int) (maxBytes - written));
+      }
+      handler.completed(written, attachment);
+    }
+
+    @Override
+    public Future<Integer> write(ByteBuffer src) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public <A> void read(ByteBuffer dst, long timeout, TimeUnit unit, A attachment, CompletionHandler<Integer, ? super A> handler) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Future<Integer> read(ByteBuffer dst) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public <A> void read(ByteBuffer[] dsts, int offset, int length, long timeout, TimeUnit unit, A attachment,
+        CompletionHandler<Long, ? super A> handler) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public <A> void connect(SocketAddress remote, A attachment, CompletionHandler<Void, ? super A> handler) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Future<Void> connect(SocketAddress remote) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public AsynchronousSocketChannel bind(SocketAddress local) {
+      return this;
+    }
+
+    @Override
+    public <T> AsynchronousSocketChannel setOption(SocketOption<T> name, T value) {
+      return this;
+    }
+
+    @Override
+    public <T> T getOption(SocketOption<T> name) {
+      return null;
+    }
+
+    @Override
+    public Set<SocketOption<?>> supportedOptions() {
+      return null;
+    }
+
+    @Override
+    public AsynchronousSocketChannel shutdownInput() {
+      return this;
+    }
+
+    @Override
+    public AsynchronousSocketChannel shutdownOutput() {
+      return this;
+    }
+
+    @Override
+    public SocketAddress getRemoteAddress() {
+      return null;
+    }
+
+    @Override
+    public SocketAddress getLocalAddress() {
+      return null;
+    }
+
+    @Override
+    public boolean isOpen() {
+      return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+    }
+  }
+}
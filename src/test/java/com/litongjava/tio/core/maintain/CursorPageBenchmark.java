@@ -0,0 +1,50 @@
+package com.litongjava.tio.core.maintain;
+
+import com.litongjava.model.page.Page;
+import com.litongjava.tio.core.ChannelContext;
+import com.litongjava.tio.core.CursorPage;
+import com.litongjava.tio.core.TestConfigUtils;
+import com.litongjava.tio.core.Tio;
+import com.litongjava.tio.server.ServerChannelContext;
+import com.litongjava.tio.server.ServerTioConfig;
+
+/**
+ * 大量连接时getPageOfAll与getCursorOfAll每次调用的耗时对比<br>
+ * 不属于单元测试，用main()运行
+ */
+public class CursorPageBenchmark {
+
+  public static void main(String[] args) {
+    int connections = args.length > 0 ? Integer.parseInt(args[0]) : CursorPageTest.CONNECTIONS;
+    ServerTioConfig serverTioConfig = TestConfigUtils.serverTioConfig("cursor-page-benchmark");
+    for (int i = 0; i < connections; i++) {
+      serverTioConfig.connections.add(new ServerChannelContext(serverTioConfig, "s" + i));
+    }
+    int pageSize = 100;
+    for (int r = 0; r < 20; r++) {
+      Tio.getPageOfAll(serverTioConfig, r + 1, pageSize);
+      Tio.getCursorOfAll(serverTioConfig, "s" + r, pageSize, null);
+    }
+    int calls = 50;
+    long start = System.nanoTime();
+    for (int r = 0; r < calls; r++) {
+      Page<ChannelContext> page = Tio.getPageOfAll(serverTioConfig, r + 1, pageSize);
+      if (page.getList().size() != pageSize) {
+        throw new IllegalStateException("page size " + page.getList().size());
+      }
+    }
+    long pageNanos = System.nanoTime() - start;
+    start = System.nanoTime();
+    String cursor = null;
+    for (int r = 0; r < calls; r++) {
+      CursorPage<ChannelContext> page = Tio.getCursorOfAll(serverTioConfig, cursor, pageSize, null);
+      if (page.getList().size() != pageSize) {
+        throw new IllegalStateException("page size " + page.getList().size());
+      }
+      cursor = page.getCursor();
+    }
+    long cursorNanos = System.nanoTime() - start;
+    System.out.printf("%d connections, page size %d: getPageOfAll %dus/call, getCursorOfAll %dus/call%n", connections, pageSize, pageNanos / calls / 1000,
+        cursorNanos / calls / 1000);
+  }
+}
@@ -0,0 +1,122 @@
+package com.litongjava.tio.core.maintain;
+
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.litongjava.tio.core.ChannelContext;
+import com.litongjava.tio.core.CursorPage;
+import com.litongjava.tio.core.TestConfigUtils;
+import com.litongjava.tio.core.Tio;
+import com.litongjava.tio.server.ServerChannelContext;
+import com.litongjava.tio.server.ServerTioConfig;
+
+/**
+ * 游标分页：遍历期间有连接增删时，一直在的连接恰好出现一次；过滤、每页遍历数有上限
+ */
+public class CursorPageTest {
+  static final int CONNECTIONS = 100000;
+
+  @Test
+  public void testWalkUnderChurn() throws Exception {
+    ServerTioConfig serverTioConfig = TestConfigUtils.serverTioConfig("cursor-page-test");
+    for (int i = 0; i < CONNECTIONS; i++) {
+      serverTioConfig.connections.add(new ServerChannelContext(serverTioConfig, "s" + i));
+    }
+    AtomicBoolean running = new AtomicBoolean(true);
+    Thread churner = new Thread(() -> {
+      int i = 0;
+      while (running.get()) {
+        ChannelContext channelContext = new ServerChannelContext(serverTioConfig, "c" + (i++ % 5000));
+        if (!serverTioConfig.connections.add(channelContext)) {
+          serverTioConfig.connections.remove(channelContext);
+        }
+      }
+    });
+    churner.start();
+
+    Set<String> seen = new HashSet<>();
+    int stable = 0;
+    int pages = 0;
+    String cursor = null;
+    do {
+      CursorPage<ChannelContext> page = Tio.getCursorOfAll(serverTioConfig, cursor, 1000, null);
+      for (ChannelContext channelContext : page.getList()) {
+        Assert.assertTrue(channelContext.getId(), seen.add(channelContext.getId()));
+        if (channelContext.getId().startsWith("s")) {
+          stable++;
+        }
+      }
+      cursor = page.getCursor();
+      pages++;
+    } while (cursor != null);
+    running.set(false);
+    churner.join();
+
+    Assert.assertEquals(CONNECTIONS, stable);
+    Assert.assertTrue(pages >= CONNECTIONS / 1000);
+  }
+
+  @Test
+  public void testFilterAndBoundedScan() {
+    ServerTioConfig serverTioConfig = TestConfigUtils.serverTioConfig("cursor-page-test");
+    for (int i = 0; i < 30000; i++) {
+      ChannelContext channelContext = new ServerChannelContext(serverTioConfig, String.format("id%05d", i));
+      serverTioConfig.connections.add(channelContext);
+      if (i % 3 == 0) {
+        Tio.bindGroup(channelContext, "g");
+      }
+    }
+
+    // 过滤掉的连接也计入每页的遍历数，全部被过滤时返回空页和游标
+    CursorPage<ChannelContext> page = Tio.getCursorOfAll(serverTioConfig, null, 10, channelContext -> false);
+    Assert.assertTrue(page.getList().isEmpty());
+    Assert.assertEquals(String.format("id%05d", MaintainUtils.CURSOR_MAX_SCAN - 1), page.getCursor());
+
+    page = Tio.getCursorOfAll(serverTioConfig, "id00100", 5, channelContext -> channelContext.getId().endsWith("7"));
+    Assert.assertEquals("id00107", page.getList().get(0).getId());
+    Assert.assertEquals("id00147", page.getList().get(4).getId());
+    Assert.assertEquals("id00147", page.getCursor());
+
+    CursorPage<String> ids = Tio.getCursorOfGroup(serverTioConfig, "g", "id00001", 2, null, obj -> ((ChannelContext) obj).getId());
+    Assert.assertEquals("id00003", ids.getList().get(0));
+    Assert.assertEquals("id00006", ids.getList().get(1));
+
+    Assert.assertTrue(Tio.getCursorOfGroup(serverTioConfig, "none", null, 10, null).isLastPage());
+  }
+
+  @Test
+  public void testGroupWithComparatorAndUser() {
+    ServerTioConfig serverTioConfig = TestConfigUtils.serverTioConfig("cursor-page-test");
+    // 组的比较器只影响群发快照的顺序，游标分页仍然按id
+    serverTioConfig.groups.setChannelContextComparator(Comparator.comparing(ChannelContext::getId).reversed());
+    ChannelContext a = new ServerChannelContext(serverTioConfig, "a");
+    ChannelContext b = new ServerChannelContext(serverTioConfig, "b");
+    ChannelContext c = new ServerChannelContext(serverTioConfig, "c");
+    for (ChannelContext channelContext : new ChannelContext[] { b, c, a }) {
+      Tio.bindGroup(channelContext, "g");
+      Tio.bindUserId(channelContext, "u");
+    }
+    GroupMemberSet members = (GroupMemberSet) Tio.getByGroup(serverTioConfig, "g").getObj();
+    Assert.assertEquals(c, members.snapshot()[0]);
+
+    CursorPage<ChannelContext> page = Tio.getCursorOfGroup(serverTioConfig, "g", null, 2, null);
+    Assert.assertEquals(a, page.getList().get(0));
+    Assert.assertEquals(b, page.getList().get(1));
+    // 游标对应的连接已经离开也能接着取
+    Tio.unbindGroup("g", b);
+    page = Tio.getCursorOfGroup(serverTioConfig, "g", page.getCursor(), 2, null);
+    Assert.assertEquals(1, page.getList().size());
+    Assert.assertEquals(c, page.getList().get(0));
+    Assert.assertTrue(page.isLastPage());
+
+    page = Tio.getCursorOfUser(serverTioConfig, "u", "a", 10, null);
+    Assert.assertEquals(2, page.getList().size());
+    Assert.assertEquals(b, page.getList().get(0));
+    Assert.assertTrue(page.isLastPage());
+  }
+}
@@ -0,0 +1,158 @@
+package com.litongjava.tio.core.maintain;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantReadWriteLock.ReadLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock.WriteLock;
+
+import com.litongjava.aio.Packet;
+import com.litongjava.tio.core.ChannelContext;
+import com.litongjava.tio.core.TestConfigUtils;
+import com.litongjava.tio.core.Tio;
+import com.litongjava.tio.server.ServerChannelContext;
+import com.litongjava.tio.server.ServerTioConfig;
+import com.litongjava.tio.utils.lock.SetWithLock;
+
+/**
+ * 大组群发与bind/unbind并发时的群发耗时和bind耗时，以HashSet+读写锁（原实现）作为对照<br>
+ * 不属于单元测试，用main()运行
+ */
+public class GroupsBenchmark {
+  private static final String GROUP = "g";
+  private static final int MEMBERS = 20000;
+  private static final int CHURN = 2000;
+
+  public static void main(String[] args) throws Exception {
+    long durationMs = args.length > 0 ? Long.parseLong(args[0]) : 1500;
+    // 第一轮预热
+    for (int round = 0; round < 2; round++) {
+      runGroups(durationMs);
+      runLegacy(durationMs);
+    }
+  }
+
+  private static void runGroups(long durationMs) throws Exception {
+    ServerTioConfig serverTioConfig = TestConfigUtils.serverTioConfig("groups-benchmark");
+    for (int i = 0; i < MEMBERS; i++) {
+      Tio.bindGroup(new ServerChannelContext(serverTioConfig, "m" + i), GROUP);
+    }
+    ChannelContext[] churn = churn(serverTioConfig);
+    long[] bindNanos = new long[2];
+    AtomicBoolean running = new AtomicBoolean(true);
+    Thread churner = new Thread(() -> {
+      int i = 0;
+      while (running.get()) {
+        // 第一轮全部bind，第二轮全部unbind，依次交替
+        ChannelContext channelContext = churn[i % CHURN];
+        boolean bind = (i++ / CHURN) % 2 == 0;
+        long start = System.nanoTime();
+        if (bind) {
+          Tio.bindGroup(channelContext, GROUP);
+        } else {
+          Tio.unbindGroup(GROUP, channelContext);
+        }
+        bindNanos[0] += System.nanoTime() - start;
+        bindNanos[1]++;
+        sleepQuietly(1);
+      }
+    });
+    churner.start();
+
+    Packet packet = new Packet();
+    long broadcasts = 0;
+    long broadcastNanos = 0;
+    long deadline = System.currentTimeMillis() + durationMs;
+    while (System.currentTimeMillis() < deadline) {
+      long start = System.nanoTime();
+      // 与对照组做同样的事：遍历成员逐个发送
+      GroupMemberSet set = (GroupMemberSet) Tio.getByGroup(serverTioConfig, GROUP).getObj();
+      for (ChannelContext channelContext : set.snapshot()) {
+        Tio.send(channelContext, packet);
+      }
+      broadcastNanos += System.nanoTime() - start;
+      broadcasts++;
+    }
+    running.set(false);
+    churner.join();
+    print("group", broadcasts, broadcastNanos, bindNanos);
+  }
+
+  private static void runLegacy(long durationMs) throws Exception {
+    ServerTioConfig serverTioConfig = TestConfigUtils.serverTioConfig("groups-benchmark");
+    SetWithLock<ChannelContext> setWithLock = new SetWithLock<ChannelContext>(new HashSet<ChannelContext>());
+    for (int i = 0; i < MEMBERS; i++) {
+      setWithLock.getObj().add(new ServerChannelContext(serverTioConfig, "m" + i));
+    }
+    ChannelContext[] churn = churn(serverTioConfig);
+    long[] bindNanos = new long[2];
+    AtomicBoolean running = new AtomicBoolean(true);
+    Thread churner = new Thread(() -> {
+      int i = 0;
+      while (running.get()) {
+        ChannelContext channelContext = churn[i % CHURN];
+        boolean bind = (i++ / CHURN) % 2 == 0;
+        long start = System.nanoTime();
+        WriteLock writeLock = setWithLock.writeLock();
+        writeLock.lock();
+        try {
+          if (bind) {
+            setWithLock.getObj().add(channelContext);
+          } else {
+            setWithLock.getObj().remove(channelContext);
+          }
+        } finally {
+          writeLock.unlock();
+        }
+        bindNanos[0] += System.nanoTime() - start;
+        bindNanos[1]++;
+        sleepQuietly(1);
+      }
+    });
+    churner.start();
+
+    Packet packet = new Packet();
+    long broadcasts = 0;
+    long broadcastNanos = 0;
+    long deadline = System.currentTimeMillis() + durationMs;
+    while (System.currentTimeMillis() < deadline) {
+      long start = System.nanoTime();
+      ReadLock readLock = setWithLock.readLock();
+      readLock.lock();
+      try {
+        Set<ChannelContext> set = setWithLock.getObj();
+        for (ChannelContext channelContext : set) {
+          Tio.send(channelContext, packet);
+        }
+      } finally {
+        readLock.unlock();
+      }
+      broadcastNanos += System.nanoTime() - start;
+      broadcasts++;
+    }
+    running.set(false);
+    churner.join();
+    print("legacy", broadcasts, broadcastNanos, bindNanos);
+  }
+
+  private static ChannelContext[] churn(ServerTioConfig serverTioConfig) {
+    ChannelContext[] churn = new ChannelContext[CHURN];
+    for (int i = 0; i < CHURN; i++) {
+      churn[i] = new ServerChannelContext(serverTioConfig, "c" + i);
+    }
+    return churn;
+  }
+
+  private static void print(String name, long broadcasts, long broadcastNanos, long[] bindNanos) {
+    System.out.println(name + " broadcast: " + broadcasts + " times, avg " + broadcastNanos / broadcasts / 1000 + "us; bind/unbind: " + bindNanos[1]
+        + " times, avg " + bindNanos[0] / Math.max(1, bindNanos[1]) / 1000 + "us");
+  }
+
+  private static void sleepQuietly(long millis) {
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
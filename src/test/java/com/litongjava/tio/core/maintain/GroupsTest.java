@@ -0,0 +1,93 @@
+package com.litongjava.tio.core.maintain;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.litongjava.aio.Packet;
+import com.litongjava.tio.core.ChannelContext;
+import com.litongjava.tio.core.TestConfigUtils;
+import com.litongjava.tio.core.Tio;
+import com.litongjava.tio.server.ServerChannelContext;
+import com.litongjava.tio.server.ServerTioConfig;
+import com.litongjava.tio.utils.lock.SetWithLock;
+
+/**
+ * 大组群发与bind/unbind并发：群发遍历快照不加锁，成员与各连接的groups保持一致；耗时对比见GroupsBenchmark
+ */
+public class GroupsTest {
+  private static final String GROUP = "g";
+  private static final int MEMBERS = 20000;
+  private static final int CHURN = 2000;
+  private static final int BROADCASTS = 20;
+
+  @Test
+  public void testBroadcastUnderChurn() throws Exception {
+    ServerTioConfig serverTioConfig = TestConfigUtils.serverTioConfig("groups-test");
+    ChannelContext[] members = new ChannelContext[MEMBERS];
+    for (int i = 0; i < MEMBERS; i++) {
+      members[i] = new ServerChannelContext(serverTioConfig, "m" + i);
+      Tio.bindGroup(members[i], GROUP);
+    }
+    ChannelContext[] churn = new ChannelContext[CHURN];
+    for (int i = 0; i < CHURN; i++) {
+      churn[i] = new ServerChannelContext(serverTioConfig, "c" + i);
+    }
+
+    AtomicBoolean running = new AtomicBoolean(true);
+    Thread churner = new Thread(() -> {
+      int i = 0;
+      while (running.get()) {
+        // 第一轮全部bind，第二轮全部unbind，依次交替
+        ChannelContext channelContext = churn[i % CHURN];
+        boolean bind = (i++ / CHURN) % 2 == 0;
+        if (bind) {
+          Tio.bindGroup(channelContext, GROUP);
+        } else {
+          Tio.unbindGroup(GROUP, channelContext);
+        }
+      }
+    });
+    churner.start();
+
+    Packet packet = new Packet();
+    for (int k = 0; k < BROADCASTS; k++) {
+      GroupMemberSet set = (GroupMemberSet) Tio.getByGroup(serverTioConfig, GROUP).getObj();
+      ChannelContext[] snapshot = set.snapshot();
+      // 快照至少包含不参与bind/unbind的成员
+      Assert.assertTrue(snapshot.length >= MEMBERS);
+      for (ChannelContext channelContext : snapshot) {
+        Tio.send(channelContext, packet);
+      }
+    }
+    Assert.assertTrue(Tio.bSendToGroup(serverTioConfig, GROUP, packet));
+    running.set(false);
+    churner.join();
+
+    // 成员与各连接的groups一致
+    SetWithLock<ChannelContext> clients = Tio.getByGroup(serverTioConfig, GROUP);
+    int expected = MEMBERS;
+    for (ChannelContext channelContext : churn) {
+      boolean bound = channelContext.hasGroups() && channelContext.getGroups().getObj().contains(GROUP);
+      Assert.assertEquals(bound, clients.getObj().contains(channelContext));
+      if (bound) {
+        expected++;
+      }
+    }
+    Assert.assertEquals(expected, clients.getObj().size());
+    Assert.assertEquals(expected, ((GroupMemberSet) clients.getObj()).snapshot().length);
+  }
+
+  @Test
+  public void testEmptyGroupRemoved() {
+    ServerTioConfig serverTioConfig = TestConfigUtils.serverTioConfig("groups-test");
+    ChannelContext channelContext = new ServerChannelContext(serverTioConfig, "1");
+    Tio.bindGroup(channelContext, GROUP);
+    Assert.assertEquals(1, Tio.getByGroup(serverTioConfig, GROUP).getObj().size());
+    Tio.unbindGroup(GROUP, channelContext);
+    Assert.assertNull(Tio.getByGroup(serverTioConfig, GROUP));
+    Tio.bindGroup(channelContext, GROUP);
+    Assert.assertTrue(Tio.getByGroup(serverTioConfig, GROUP).getObj().contains(channelContext));
+  }
+}
@@ -0,0 +1,58 @@
+package com.litongjava.tio.core.maintain;
+
+import java.util.concurrent.CountDownLatch;
+
+import com.litongjava.tio.core.ChannelContext;
+import com.litongjava.tio.core.TestConfigUtils;
+import com.litongjava.tio.core.Tio;
+import com.litongjava.tio.server.ServerChannelContext;
+import com.litongjava.tio.server.ServerTioConfig;
+
+/**
+ * 发布后大量用户同时重连的吞吐：新连接绑定userid/token/bsId，旧连接关闭<br>
+ * 不属于单元测试，用main()运行
+ */
+public class IdentityIndexBenchmark {
+
+  public static void main(String[] args) throws Exception {
+    int users = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+    int threads = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+    ServerTioConfig serverTioConfig = TestConfigUtils.serverTioConfig("identity-index-benchmark");
+    ChannelContext[] olds = new ChannelContext[users];
+    ChannelContext[] news = new ChannelContext[users];
+    for (int i = 0; i < users; i++) {
+      olds[i] = new ServerChannelContext(serverTioConfig, "old" + i);
+      news[i] = new ServerChannelContext(serverTioConfig, "new" + i);
+      Tio.bindUserId(olds[i], "u" + i);
+      Tio.bindToken(olds[i], "t" + i);
+      Tio.bindBsId(olds[i], "b" + i);
+    }
+
+    // 每个线程负责一部分用户：新连接绑定，旧连接关闭
+    CountDownLatch start = new CountDownLatch(1);
+    CountDownLatch done = new CountDownLatch(threads);
+    for (int t = 0; t < threads; t++) {
+      int from = t;
+      new Thread(() -> {
+        try {
+          start.await();
+          for (int i = from; i < users; i += threads) {
+            Tio.bindUserId(news[i], "u" + i);
+            Tio.bindToken(news[i], "t" + i);
+            Tio.bindBsId(news[i], "b" + i);
+            MaintainUtils.close(olds[i]);
+          }
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        } finally {
+          done.countDown();
+        }
+      }).start();
+    }
+    long begin = System.nanoTime();
+    start.countDown();
+    done.await();
+    long costMs = Math.max(1, (System.nanoTime() - begin) / 1000000);
+    System.out.println("reconnect storm: " + users + " users, " + threads + " threads in " + costMs + "ms, " + users * 1000L / costMs + " rebinds/s");
+  }
+}
@@ -0,0 +1,157 @@
+package com.litongjava.tio.core.maintain;
+
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.litongjava.tio.core.ChannelContext;
+import com.litongjava.tio.core.TestConfigUtils;
+import com.litongjava.tio.core.Tio;
+import com.litongjava.tio.server.ServerChannelContext;
+import com.litongjava.tio.server.ServerTioConfig;
+import com.litongjava.tio.utils.lock.SetWithLock;
+
+/**
+ * userid/token/bsId绑定：反向引用、重复绑定、踢人、同一连接并发换绑，以及发布后大量用户同时重连（新连接绑定、旧连接关闭）；
+ * 重连吞吐见IdentityIndexBenchmark
+ */
+public class IdentityIndexTest {
+  private static final int USERS = 20000;
+  private static final int THREADS = 4;
+
+  @Test
+  public void testBindUnbind() {
+    ServerTioConfig serverTioConfig = TestConfigUtils.serverTioConfig("identity-index-test");
+    ChannelContext a = new ServerChannelContext(serverTioConfig, "a");
+    ChannelContext b = new ServerChannelContext(serverTioConfig, "b");
+
+    Tio.bindUserId(a, "u1");
+    Tio.bindUserId(b, "u1");
+    Tio.bindToken(a, "t1");
+    Assert.assertEquals(2, Tio.getByUserId(serverTioConfig, "u1").getObj().size());
+    Assert.assertEquals("u1", a.userId);
+    Assert.assertEquals("t1", a.getToken());
+
+    // 换绑到别的用户时先从原来的用户下解绑
+    Tio.bindUserId(a, "u2");
+    Assert.assertEquals(1, Tio.getByUserId(serverTioConfig, "u1").getObj().size());
+    Assert.assertTrue(Tio.getByUserId(serverTioConfig, "u2").getObj().contains(a));
+
+    // 踢掉u1的所有连接
+    Tio.unbindUser(serverTioConfig, "u1");
+    Assert.assertNull(Tio.getByUserId(serverTioConfig, "u1"));
+    Assert.assertNull(b.userId);
+    Assert.assertEquals("u2", a.userId);
+
+    // 关闭时按反向引用解绑，空的key被删除
+    MaintainUtils.close(a);
+    Assert.assertNull(a.userId);
+    Assert.assertNull(a.getToken());
+    Assert.assertNull(Tio.getByUserId(serverTioConfig, "u2"));
+    Assert.assertNull(Tio.getByToken(serverTioConfig, "t1"));
+    Assert.assertEquals(0, serverTioConfig.users.size());
+    Assert.assertEquals(0, serverTioConfig.tokens.size());
+
+    // bsId已经绑定到新连接时，旧连接关闭不影响新连接
+    Tio.bindBsId(a, "bs");
+    Tio.bindBsId(b, "bs");
+    MaintainUtils.close(a);
+    Assert.assertEquals(b, Tio.getByBsId(serverTioConfig, "bs"));
+  }
+
+  @Test
+  public void testReconnectStorm() throws Exception {
+    ServerTioConfig serverTioConfig = TestConfigUtils.serverTioConfig("identity-index-test");
+    ChannelContext[] olds = new ChannelContext[USERS];
+    ChannelContext[] news = new ChannelContext[USERS];
+    for (int i = 0; i < USERS; i++) {
+      olds[i] = new ServerChannelContext(serverTioConfig, "old" + i);
+      news[i] = new ServerChannelContext(serverTioConfig, "new" + i);
+      Tio.bindUserId(olds[i], "u" + i);
+      Tio.bindToken(olds[i], "t" + i);
+      Tio.bindBsId(olds[i], "b" + i);
+    }
+
+    // 每个线程负责一部分用户：新连接绑定，旧连接关闭
+    CountDownLatch start = new CountDownLatch(1);
+    CountDownLatch done = new CountDownLatch(THREADS);
+    for (int t = 0; t < THREADS; t++) {
+      int from = t;
+      new Thread(() -> {
+        try {
+          start.await();
+          for (int i = from; i < USERS; i += THREADS) {
+            Tio.bindUserId(news[i], "u" + i);
+            Tio.bindToken(news[i], "t" + i);
+            Tio.bindBsId(news[i], "b" + i);
+            MaintainUtils.close(olds[i]);
+          }
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        } finally {
+          done.countDown();
+        }
+      }).start();
+    }
+    start.countDown();
+    done.await();
+
+    Assert.assertEquals(USERS, serverTioConfig.users.size());
+    Assert.assertEquals(USERS, serverTioConfig.tokens.size());
+    for (int i = 0; i < USERS; i++) {
+      SetWithLock<ChannelContext> users = Tio.getByUserId(serverTioConfig, "u" + i);
+      Assert.assertEquals(1, users.getObj().size());
+      Assert.assertTrue(users.getObj().contains(news[i]));
+      Assert.assertTrue(Tio.getByToken(serverTioConfig, "t" + i).getObj().contains(news[i]));
+      Assert.assertEquals(news[i], Tio.getByBsId(serverTioConfig, "b" + i));
+      Assert.assertNull(olds[i].userId);
+      Assert.assertNull(olds[i].getToken());
+    }
+  }
+
+  @Test
+  public void testConcurrentRebind() throws Exception {
+    ServerTioConfig serverTioConfig = TestConfigUtils.serverTioConfig("identity-index-test");
+    int keys = 8;
+    for (int round = 0; round < 200; round++) {
+      ChannelContext channelContext = new ServerChannelContext(serverTioConfig, "c" + round);
+      CountDownLatch start = new CountDownLatch(1);
+      Thread[] threads = new Thread[THREADS];
+      for (int t = 0; t < THREADS; t++) {
+        int from = t;
+        threads[t] = new Thread(() -> {
+          try {
+            start.await();
+            for (int i = 0; i < 50; i++) {
+              String userId = "u" + (from + i) % keys;
+              Tio.bindUserId(channelContext, userId);
+              if (i % 7 == 0) {
+                Tio.unbindUser(serverTioConfig, userId);
+              }
+            }
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+        });
+        threads[t].start();
+      }
+      start.countDown();
+      for (Thread thread : threads) {
+        thread.join();
+      }
+      // 连接只留在反向引用指向的key下
+      int bound = 0;
+      for (int k = 0; k < keys; k++) {
+        SetWithLock<ChannelContext> users = Tio.getByUserId(serverTioConfig, "u" + k);
+        if (users != null && users.getObj().contains(channelContext)) {
+          bound++;
+          Assert.assertEquals("u" + k, channelContext.userId);
+        }
+      }
+      Assert.assertEquals(channelContext.userId == null ? 0 : 1, bound);
+      MaintainUtils.close(channelContext);
+      Assert.assertEquals(0, serverTioConfig.users.size());
+    }
+  }
+}
@@ -0,0 +1,32 @@
+package com.litongjava.tio.core.maintain;
+
+import com.litongjava.tio.core.ChannelContext;
+import com.litongjava.tio.core.TestConfigUtils;
+import com.litongjava.tio.server.ServerTioConfig;
+
+/**
+ * IP统计开关时每个包（读、解码、处理、写）的统计耗时，两个时段<br>
+ * 不属于单元测试，用main()运行
+ */
+public class IpStatsBenchmark {
+
+  public static void main(String[] args) {
+    int packets = args.length > 0 ? Integer.parseInt(args[0]) : 2000000;
+    ServerTioConfig off = TestConfigUtils.serverTioConfig("ip-stats-benchmark");
+    ServerTioConfig on = TestConfigUtils.serverTioConfig("ip-stats-benchmark");
+    on.ipStats.addDurations(new Long[] { 60L, 3600L });
+    ChannelContext offContext = IpStatsTest.channelContext(off, "off", "10.0.0.1");
+    ChannelContext onContext = IpStatsTest.channelContext(on, "on", "10.0.0.1");
+    for (int r = 0; r < 3; r++) {
+      IpStatsTest.onePacket(off, offContext, packets / 10);
+      IpStatsTest.onePacket(on, onContext, packets / 10);
+    }
+    long start = System.nanoTime();
+    IpStatsTest.onePacket(off, offContext, packets);
+    long offNanos = System.nanoTime() - start;
+    start = System.nanoTime();
+    IpStatsTest.onePacket(on, onContext, packets);
+    long onNanos = System.nanoTime() - start;
+    System.out.printf("ip stats per packet, 2 durations: off %.1fns, on %.1fns%n", offNanos / (double) packets, onNanos / (double) packets);
+  }
+}
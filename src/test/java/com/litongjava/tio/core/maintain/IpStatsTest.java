@@ -0,0 +1,198 @@
+package com.litongjava.tio.core.maintain;
+
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.litongjava.tio.core.ChannelContext;
+import com.litongjava.tio.core.Node;
+import com.litongjava.tio.core.TestConfigUtils;
+import com.litongjava.tio.core.TioConfig;
+import com.litongjava.tio.core.stat.IpStat;
+import com.litongjava.tio.core.stat.IpStatRecord;
+import com.litongjava.tio.server.ServerChannelContext;
+import com.litongjava.tio.server.ServerTioConfig;
+import com.litongjava.tio.utils.SystemTimer;
+
+/**
+ * IP统计：滑动窗口、定时过期清理、连接删除后的统计、快照缓存、多线程计数
+ */
+public class IpStatsTest {
+
+  @Test
+  public void testSlidingWindow() {
+    IpStatRecord record = new IpStatRecord("127.0.0.1", new Long[] { 1L, 60L }, 0);
+    record.add(IpStatRecord.RECEIVED_BYTES, 100);
+    record.add(IpStatRecord.RECEIVED_BYTES, 20);
+    long now = SystemTimer.currTime;
+    Assert.assertEquals(120, record.sum(0, IpStatRecord.RECEIVED_BYTES, now));
+    Assert.assertEquals(120, record.sum(1, IpStatRecord.RECEIVED_BYTES, now));
+    Assert.assertEquals(0, record.sum(0, IpStatRecord.SENT_BYTES, now));
+
+    // 1秒的窗口滑过去了，60秒的还在
+    Assert.assertEquals(0, record.sum(0, IpStatRecord.RECEIVED_BYTES, now + 1500));
+    Assert.assertEquals(120, record.sum(1, IpStatRecord.RECEIVED_BYTES, now + 1500));
+    Assert.assertEquals(0, record.sum(1, IpStatRecord.RECEIVED_BYTES, now + 61000));
+
+    IpStat ipStat = record.snapshot(1);
+    Assert.assertEquals(120, ipStat.getReceivedBytes().get());
+    Assert.assertEquals(Long.valueOf(60), ipStat.getDurationType());
+
+    record.clear(1);
+    Assert.assertEquals(0, record.sum(1, IpStatRecord.RECEIVED_BYTES, now));
+    Assert.assertEquals(120, record.sum(0, IpStatRecord.RECEIVED_BYTES, now));
+  }
+
+  @Test
+  public void testRecordPerConnectionAndExpire() throws Exception {
+    ServerTioConfig serverTioConfig = TestConfigUtils.serverTioConfig("ip-stats-test");
+    IpStats ipStats = serverTioConfig.ipStats;
+    ipStats.addDuration(1L);
+
+    ChannelContext a = channelContext(serverTioConfig, "a", "10.0.0.1");
+    ChannelContext b = channelContext(serverTioConfig, "b", "10.0.0.1");
+    IpStatRecord record = ipStats.record(a);
+    Assert.assertSame(record, ipStats.record(a));
+    Assert.assertSame(record, ipStats.record(b));
+    record.add(IpStatRecord.HANDLED_PACKETS, 3);
+    Assert.assertEquals(3, ipStats.get(1L, b).getHandledPackets().get());
+
+    ipStats.record(channelContext(serverTioConfig, "c", "10.0.0.2"));
+    ipStats.release(a);
+    ipStats.release(b);
+    // 定时任务清理没有连接在用、窗口内没有数据的
+    long deadline = System.currentTimeMillis() + 5000;
+    while (ipStats.get(1L, a, false) != null && System.currentTimeMillis() < deadline) {
+      Thread.sleep(50);
+    }
+    Assert.assertNull(ipStats.get(1L, a, false));
+    Assert.assertEquals(Long.valueOf(1), ipStats.size(1L));
+
+    // 时段变化后重新创建
+    ChannelContext c = channelContext(serverTioConfig, "d", "10.0.0.3");
+    IpStatRecord old = ipStats.record(c);
+    ipStats.addDuration(60L);
+    IpStatRecord current = ipStats.record(c);
+    Assert.assertNotSame(old, current);
+    Assert.assertEquals(2, current.durationCount());
+  }
+
+  @Test
+  public void testSwitchIp() {
+    ServerTioConfig serverTioConfig = TestConfigUtils.serverTioConfig("ip-stats-test");
+    IpStats ipStats = serverTioConfig.ipStats;
+    ipStats.addDuration(60L);
+    ChannelContext channelContext = channelContext(serverTioConfig, "a", "10.0.0.1");
+    ipStats.record(channelContext).add(IpStatRecord.REQUEST_COUNT, 1);
+    channelContext.stat.addReceivedBytes(50);
+    ipStats.record(channelContext).add(IpStatRecord.RECEIVED_BYTES, 50);
+
+    channelContext.setProxyClientNode(new Node("192.168.1.1", 1));
+    IpStat proxy = ipStats._get(60L, channelContext, false, false);
+    IpStat client = ipStats.get(60L, channelContext);
+    Assert.assertEquals(0, proxy.getReceivedBytes().get());
+    Assert.assertEquals(0, proxy.getRequestCount().get());
+    Assert.assertEquals(50, client.getReceivedBytes().get());
+    Assert.assertEquals(1, client.getRequestCount().get());
+    Assert.assertEquals("192.168.1.1", channelContext.getIpStatRecord().getIp());
+  }
+
+  @Test
+  public void testContendedAdd() throws Exception {
+    IpStatRecord record = new IpStatRecord("127.0.0.1", new Long[] { 60L }, 0);
+    int threads = 4;
+    int count = 200000;
+    CountDownLatch latch = new CountDownLatch(threads);
+    for (int t = 0; t < threads; t++) {
+      new Thread(() -> {
+        for (int i = 0; i < count; i++) {
+          record.add(IpStatRecord.SENT_PACKETS, 1);
+        }
+        latch.countDown();
+      }).start();
+    }
+    latch.await();
+    Assert.assertEquals(threads * count, record.sum(0, IpStatRecord.SENT_PACKETS, SystemTimer.currTime));
+  }
+
+  @Test
+  public void testReleased() {
+    ServerTioConfig serverTioConfig = TestConfigUtils.serverTioConfig("ip-stats-test");
+    IpStats ipStats = serverTioConfig.ipStats;
+    ipStats.addDuration(60L);
+    ChannelContext a = channelContext(serverTioConfig, "a", "10.0.0.1");
+    IpStatRecord record = ipStats.record(a);
+    ipStats.release(a);
+    // 关闭途中的统计不再创建IpStatRecord，也不计数
+    IpStatRecord released = ipStats.record(a);
+    Assert.assertSame(IpStatRecord.RELEASED, released);
+    released.add(IpStatRecord.RECEIVED_BYTES, 100);
+    Assert.assertEquals(0, released.snapshots().length);
+    Assert.assertEquals(0, record.sum(0, IpStatRecord.RECEIVED_BYTES, SystemTimer.currTime));
+    Assert.assertTrue(record.isIdle(SystemTimer.currTime + 61000, 60000));
+
+    // 没有统计过的连接也一样
+    ChannelContext b = channelContext(serverTioConfig, "b", "10.0.0.2");
+    ipStats.release(b);
+    Assert.assertSame(IpStatRecord.RELEASED, ipStats.record(b));
+    ipStats.switchIp(b);
+    Assert.assertNull(ipStats.get(60L, b, false));
+  }
+
+  @Test
+  public void testSnapshotsCached() throws Exception {
+    IpStatRecord record = new IpStatRecord("127.0.0.1", new Long[] { 60L, 3600L }, 0);
+    record.add(IpStatRecord.SENT_PACKETS, 1);
+    long time = SystemTimer.currTime;
+    IpStat[] first = record.snapshots();
+    IpStat[] second = record.snapshots();
+    long after = SystemTimer.currTime;
+    // 两次调用之间时刻没变才一定是同一份快照
+    if (time == after) {
+      Assert.assertSame(first, second);
+    }
+    Assert.assertEquals(2, first.length);
+    record.add(IpStatRecord.SENT_PACKETS, 1);
+    // 下一个时刻重新生成
+    while (SystemTimer.currTime == after) {
+      Thread.sleep(1);
+    }
+    IpStat[] third = record.snapshots();
+    Assert.assertNotSame(first, third);
+    Assert.assertEquals(2, third[1].getSentPackets().get());
+  }
+
+  /**
+   * 与ReadCompletionHandler、DecodeTask、HandlePacketTask、WriteCompletionHandler中的统计相同
+   */
+  static void onePacket(TioConfig tioConfig, ChannelContext channelContext, int packets) {
+    for (int i = 0; i < packets; i++) {
+      if (tioConfig.ipStats.isOn()) {
+        IpStatRecord record = tioConfig.ipStats.record(channelContext);
+        record.add(IpStatRecord.RECEIVED_BYTES, 100);
+        record.add(IpStatRecord.RECEIVED_TCPS, 1);
+      }
+      if (tioConfig.ipStats.isOn()) {
+        tioConfig.ipStats.record(channelContext).add(IpStatRecord.RECEIVED_PACKETS, 1);
+      }
+      if (tioConfig.ipStats.isOn()) {
+        IpStatRecord record = tioConfig.ipStats.record(channelContext);
+        record.add(IpStatRecord.HANDLED_PACKETS, 1);
+        record.add(IpStatRecord.HANDLED_BYTES, 100);
+        record.add(IpStatRecord.HANDLED_PACKET_COSTS, 1);
+      }
+      if (tioConfig.ipStats.isOn()) {
+        IpStatRecord record = tioConfig.ipStats.record(channelContext);
+        record.add(IpStatRecord.SENT_BYTES, 100);
+        record.add(IpStatRecord.SENT_PACKETS, 1);
+      }
+    }
+  }
+
+  static ChannelContext channelContext(ServerTioConfig serverTioConfig, String id, String ip) {
+    ChannelContext channelContext = new ServerChannelContext(serverTioConfig, id);
+    channelContext.setClientNode(new Node(ip, 10000));
+    return channelContext;
+  }
+}
@@ -0,0 +1,68 @@
+package com.litongjava.tio.core.maintain;
+
+import java.util.HashMap;
+import java.util.concurrent.locks.Lock;
+
+import com.litongjava.tio.core.Node;
+import com.litongjava.tio.utils.lock.MapWithLock;
+
+/**
+ * NodeIndex与MapWithLock<Node, V>（原实现）的查找吞吐和每次查找的内存分配对比<br>
+ * 不属于单元测试，用main()运行
+ */
+public class NodeIndexBenchmark {
+
+  public static void main(String[] args) {
+    int count = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+    String[] ips = new String[count];
+    NodeIndex<Integer> index = new NodeIndex<>();
+    MapWithLock<Node, Integer> legacy = new MapWithLock<>(new HashMap<Node, Integer>());
+    for (int i = 0; i < count; i++) {
+      ips[i] = i % 4 == 0 ? NodeIndexTest.ipv6(i) : NodeIndexTest.ipv4(i);
+      index.put(ips[i], 10000 + i % 50000, i);
+      legacy.put(new Node(ips[i], 10000 + i % 50000), i);
+    }
+    // 预热
+    for (int r = 0; r < 10; r++) {
+      NodeIndexTest.lookupIndex(index, ips, count);
+      lookupLegacy(legacy, ips, count);
+    }
+
+    int rounds = 20;
+    long indexAllocated = NodeIndexTest.allocatedBytes();
+    long start = System.nanoTime();
+    long sum = 0;
+    for (int r = 0; r < rounds; r++) {
+      sum += NodeIndexTest.lookupIndex(index, ips, count);
+    }
+    long indexNanos = System.nanoTime() - start;
+    indexAllocated = NodeIndexTest.allocatedBytes() - indexAllocated;
+
+    long legacyAllocated = NodeIndexTest.allocatedBytes();
+    start = System.nanoTime();
+    for (int r = 0; r < rounds; r++) {
+      sum += lookupLegacy(legacy, ips, count);
+    }
+    long legacyNanos = System.nanoTime() - start;
+    legacyAllocated = NodeIndexTest.allocatedBytes() - legacyAllocated;
+
+    long lookups = (long) rounds * count;
+    System.out.println("NodeIndex: " + lookups * 1000 / Math.max(1, indexNanos / 1000000) + " lookups/s, " + (double) indexAllocated / lookups
+        + " bytes/lookup; MapWithLock<Node>: " + lookups * 1000 / Math.max(1, legacyNanos / 1000000) + " lookups/s, " + (double) legacyAllocated / lookups
+        + " bytes/lookup (" + sum + ")");
+  }
+
+  private static long lookupLegacy(MapWithLock<Node, Integer> legacy, String[] ips, int count) {
+    long sum = 0;
+    for (int i = 0; i < count; i++) {
+      Lock lock = legacy.readLock();
+      lock.lock();
+      try {
+        sum += legacy.getObj().get(new Node(ips[i], 10000 + i % 50000));
+      } finally {
+        lock.unlock();
+      }
+    }
+    return sum;
+  }
+}
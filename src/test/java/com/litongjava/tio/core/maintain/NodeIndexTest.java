@@ -0,0 +1,207 @@
+package com.litongjava.tio.core.maintain;
+
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.litongjava.tio.core.Node;
+
+/**
+ * ip:port索引：ip解析、带zone的IPv6、并发读写，查找不分配内存；与原实现的吞吐对比见NodeIndexBenchmark
+ */
+public class NodeIndexTest {
+
+  @Test
+  public void testParse() throws Exception {
+    Assert.assertEquals(0x7F000001L, NodeIndex.parseIpv4("127.0.0.1"));
+    Assert.assertEquals(0xFFFFFFFFL, NodeIndex.parseIpv4("255.255.255.255"));
+    Assert.assertEquals(-1, NodeIndex.parseIpv4("256.0.0.1"));
+    Assert.assertEquals(-1, NodeIndex.parseIpv4("1.2.3"));
+    Assert.assertEquals(-1, NodeIndex.parseIpv4("1..2.3"));
+    Assert.assertEquals(-1, NodeIndex.parseIpv4("localhost"));
+
+    String[] ipv6s = { "::1", "::", "2001:db8::8a2e:370:7334", "fe80::1", "1::", "1:2:3:4:5:6:7:8", "::ffff:1.2.3.4", "64:ff9b::10.0.0.1",
+        "2001:DB8:0:0:1::1" };
+    for (String ip : ipv6s) {
+      long[] out = new long[2];
+      Assert.assertTrue(ip, NodeIndex.parseIpv6(ip, out));
+      ByteBuffer expected = ByteBuffer.wrap(InetAddress.getByName(ip).getAddress().length == 16 ? InetAddress.getByName(ip).getAddress() : ipv4Mapped(ip));
+      Assert.assertEquals(ip, expected.getLong(0), out[0]);
+      Assert.assertEquals(ip, expected.getLong(8), out[1]);
+    }
+    long[] a = new long[2];
+    long[] b = new long[2];
+    Assert.assertTrue(NodeIndex.parseIpv6("[fe80::1%eth0]", a));
+    Assert.assertTrue(NodeIndex.parseIpv6("fe80:0:0:0:0:0:0:1", b));
+    Assert.assertArrayEquals(a, b);
+
+    String[] invalids = { "1:2:3:4:5:6:7:8:9", "1::2::3", ":1", "1:", "12345::", "g::1", "1:2:3:4:5:6:7", "$UNKNOWN", "example.com" };
+    for (String ip : invalids) {
+      Assert.assertFalse(ip, NodeIndex.parseIpv6(ip, new long[2]));
+    }
+  }
+
+  private static byte[] ipv4Mapped(String ip) throws Exception {
+    byte[] v4 = InetAddress.getByName(ip).getAddress();
+    byte[] mapped = new byte[16];
+    mapped[10] = (byte) 0xFF;
+    mapped[11] = (byte) 0xFF;
+    System.arraycopy(v4, 0, mapped, 12, 4);
+    return mapped;
+  }
+
+  @Test
+  public void testPutGetRemove() {
+    NodeIndex<String> index = new NodeIndex<>();
+    int count = 10000;
+    for (int i = 0; i < count; i++) {
+      Assert.assertNull(index.put(ipv4(i), 1000 + i % 50000, "v4-" + i));
+      Assert.assertNull(index.put("2001:db8::" + Integer.toHexString(i), 443, "v6-" + i));
+    }
+    index.put("$UNKNOWN", 70000, "unknown");
+    Assert.assertEquals(count * 2 + 1, index.size());
+
+    for (int i = 0; i < count; i++) {
+      Assert.assertEquals("v4-" + i, index.get(ipv4(i), 1000 + i % 50000));
+      Assert.assertEquals("v6-" + i, index.get("2001:0db8:0:0:0:0:0:" + Integer.toHexString(i), 443));
+    }
+    Assert.assertNull(index.get(ipv4(1), 1));
+    Assert.assertNull(index.get("2001:db8::1", 80));
+    Assert.assertEquals("unknown", index.get("$UNKNOWN", 70000));
+
+    Assert.assertEquals("v4-1", index.put(ipv4(1), 1001, "v4-1b"));
+    Assert.assertEquals("v4-1b", index.get(ipv4(1), 1001));
+
+    for (int i = 0; i < count; i += 2) {
+      Assert.assertNotNull(index.remove(ipv4(i), 1000 + i % 50000));
+      Assert.assertNotNull(index.remove("2001:db8::" + Integer.toHexString(i), 443));
+    }
+    Assert.assertEquals(count + 1, index.size());
+    for (int i = 0; i < count; i++) {
+      Assert.assertEquals(i % 2 == 0, index.get(ipv4(i), 1000 + i % 50000) == null);
+    }
+
+    Map<Node, String> all = new HashMap<>();
+    index.forEach(all::put);
+    Assert.assertEquals(count + 1, all.size());
+    Assert.assertEquals("v6-1", all.get(new Node("2001:db8:0:0:0:0:0:1", 443)));
+    Assert.assertEquals("v4-3", all.get(new Node(ipv4(3), 1003)));
+  }
+
+  @Test
+  public void testConcurrentReadDuringWrites() throws Exception {
+    NodeIndex<Integer> index = new NodeIndex<>();
+    int stable = 1000;
+    for (int i = 0; i < stable; i++) {
+      index.put(ipv4(i), 8000, i);
+    }
+    AtomicBoolean running = new AtomicBoolean(true);
+    AtomicInteger misses = new AtomicInteger();
+    Thread[] readers = new Thread[2];
+    for (int t = 0; t < readers.length; t++) {
+      readers[t] = new Thread(() -> {
+        int i = 0;
+        while (running.get()) {
+          Integer value = index.get(ipv4(i % stable), 8000);
+          if (value == null || value != i % stable) {
+            misses.incrementAndGet();
+          }
+          i++;
+        }
+      });
+      readers[t].start();
+    }
+    // 写线程不断增删其它key，触发扩容和链表复制
+    for (int round = 0; round < 20; round++) {
+      for (int i = 0; i < 5000; i++) {
+        index.put(ipv4(100000 + i), 9000, i);
+      }
+      for (int i = 0; i < 5000; i++) {
+        index.remove(ipv4(100000 + i), 9000);
+      }
+    }
+    running.set(false);
+    for (Thread reader : readers) {
+      reader.join();
+    }
+    Assert.assertEquals(0, misses.get());
+    Assert.assertEquals(stable, index.size());
+  }
+
+  @Test
+  public void testScopedIpv6() {
+    NodeIndex<String> index = new NodeIndex<>();
+    index.put("fe80::1%eth0", 80, "eth0");
+    index.put("fe80::1%eth1", 80, "eth1");
+    index.put("fe80::1", 80, "none");
+    Assert.assertEquals(3, index.size());
+    Assert.assertEquals("eth0", index.get("fe80::1%eth0", 80));
+    Assert.assertEquals("eth1", index.get("fe80::1%eth1", 80));
+    Assert.assertEquals("none", index.get("fe80:0:0:0:0:0:0:1", 80));
+    Assert.assertEquals("eth0", index.remove("fe80::1%eth0", 80));
+    Assert.assertNull(index.get("fe80::1%eth0", 80));
+    Assert.assertEquals("eth1", index.get("fe80::1%eth1", 80));
+  }
+
+  @Test
+  public void testLookupAllocation() {
+    int count = 10000;
+    String[] ips = new String[count];
+    NodeIndex<Integer> index = new NodeIndex<>();
+    for (int i = 0; i < count; i++) {
+      ips[i] = i % 4 == 0 ? ipv6(i) : ipv4(i);
+      index.put(ips[i], 10000 + i % 50000, i);
+    }
+    // 预热，ThreadLocal的临时数组在这里创建
+    for (int r = 0; r < 10; r++) {
+      lookupIndex(index, ips, count);
+    }
+    long allocated = allocatedBytes();
+    if (allocated < 0) {
+      return;
+    }
+    int rounds = 20;
+    long sum = 0;
+    for (int r = 0; r < rounds; r++) {
+      sum += lookupIndex(index, ips, count);
+    }
+    allocated = allocatedBytes() - allocated;
+    Assert.assertEquals((long) rounds * count * (count - 1) / 2, sum);
+    // 查找不创建对象，平均每次查找不到1字节
+    Assert.assertTrue("allocated " + allocated, allocated < (long) rounds * count);
+  }
+
+  static long lookupIndex(NodeIndex<Integer> index, String[] ips, int count) {
+    long sum = 0;
+    for (int i = 0; i < count; i++) {
+      sum += index.get(ips[i], 10000 + i % 50000);
+    }
+    return sum;
+  }
+
+  /**
+   * @return 当前线程累计分配的字节数，不支持时返回-1
+   */
+  static long allocatedBytes() {
+    java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+    if (bean instanceof com.sun.management.ThreadMXBean) {
+      return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+    return -1;
+  }
+
+  static String ipv4(int i) {
+    return "10." + (i >>> 16 & 0xFF) + "." + (i >>> 8 & 0xFF) + "." + (i & 0xFF);
+  }
+
+  static String ipv6(int i) {
+    return "2001:db8::" + Integer.toHexString(i >>> 16) + ":" + Integer.toHexString(i & 0xFFFF);
+  }
+}
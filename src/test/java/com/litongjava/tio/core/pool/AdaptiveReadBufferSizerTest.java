@@ -0,0 +1,49 @@
+package com.litongjava.tio.core.pool;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.litongjava.tio.core.stat.SizeHistogram;
+
+public class AdaptiveReadBufferSizerTest {
+
+  @Test
+  public void testGrowAndShrink() {
+    AdaptiveReadBufferSizer sizer = new AdaptiveReadBufferSizer(512, 2000, 64 * 1024);
+    Assert.assertEquals(2048, sizer.nextSize());
+
+    // 连续读满，每次加倍直到上限
+    for (int i = 0; i < 10; i++) {
+      int size = sizer.nextSize();
+      sizer.record(size, size);
+    }
+    Assert.assertEquals(64 * 1024, sizer.nextSize());
+
+    // 一次读得少不缩小，连续两次才减半
+    sizer.record(100, 64 * 1024);
+    Assert.assertEquals(64 * 1024, sizer.nextSize());
+    sizer.record(100, 64 * 1024);
+    Assert.assertEquals(32 * 1024, sizer.nextSize());
+
+    for (int i = 0; i < 40; i++) {
+      sizer.record(10, sizer.nextSize());
+    }
+    Assert.assertEquals(512, sizer.nextSize());
+  }
+
+  @Test
+  public void testHistogram() {
+    SizeHistogram histogram = new SizeHistogram();
+    histogram.record(1);
+    histogram.record(64);
+    histogram.record(65);
+    histogram.record(8192);
+    histogram.record(1 << 20);
+    Assert.assertEquals(2, histogram.getCount(0));
+    Assert.assertEquals(1, histogram.getCount(1));
+    Assert.assertEquals(1, histogram.getCount(7));
+    Assert.assertEquals(1, histogram.getCount(SizeHistogram.BUCKETS - 1));
+    Assert.assertEquals(5, histogram.getTotal());
+    Assert.assertEquals(Long.valueOf(1), histogram.toMap().get("<=8192"));
+  }
+}
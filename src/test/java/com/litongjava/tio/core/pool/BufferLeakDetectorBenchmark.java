@@ -0,0 +1,25 @@
+package com.litongjava.tio.core.pool;
+
+/**
+ * 各检测级别下一次分配/归还的耗时<br>
+ * 不属于单元测试，用main()运行
+ */
+public class BufferLeakDetectorBenchmark {
+
+  public static void main(String[] args) {
+    int ops = args.length > 0 ? Integer.parseInt(args[0]) : 2000000;
+    int[] sizes = { 100, 1000, 4000, 16000 };
+    // 前两轮是预热
+    BufferLeakDetector.Level[] levels = { BufferLeakDetector.Level.DISABLED, BufferLeakDetector.Level.SAMPLED,
+        BufferLeakDetector.Level.DISABLED, BufferLeakDetector.Level.SAMPLED, BufferLeakDetector.Level.PARANOID };
+    for (BufferLeakDetector.Level level : levels) {
+      BufferLeakDetector.setLevel(level);
+      long start = System.nanoTime();
+      for (int i = 0; i < ops; i++) {
+        BufferPoolUtils.clean(BufferPoolUtils.allocate(sizes[i & 3]));
+      }
+      System.out.println(level + ": " + ((System.nanoTime() - start) / ops) + "ns per allocate/clean");
+    }
+    BufferLeakDetector.setLevel(BufferLeakDetector.Level.DISABLED);
+  }
+}
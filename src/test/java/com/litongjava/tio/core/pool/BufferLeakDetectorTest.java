@@ -0,0 +1,114 @@
+package com.litongjava.tio.core.pool;
+
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.litongjava.tio.core.ChannelContext;
+import com.litongjava.tio.core.TestConfigUtils;
+import com.litongjava.tio.server.ServerChannelContext;
+
+/**
+ * 泄漏检测：重复归还、未归还被GC（包括由定时任务报告）、关闭后仍持有，且不持有连接
+ */
+public class BufferLeakDetectorTest {
+
+  @After
+  public void after() {
+    BufferLeakDetector.setLevel(BufferLeakDetector.Level.DISABLED);
+    BufferLeakDetector.setSamplingInterval(1024);
+  }
+
+  @Test
+  public void testDoubleRelease() {
+    BufferLeakDetector.setLevel(BufferLeakDetector.Level.PARANOID);
+    long before = BufferLeakDetector.getDoubleReleases();
+    ByteBuffer buffer = BufferPoolUtils.allocate(3000);
+    BufferPoolUtils.clean(buffer);
+    BufferPoolUtils.clean(buffer);
+    Assert.assertEquals(before + 1, BufferLeakDetector.getDoubleReleases());
+
+    // 第二次归还没有进入池，不会被分配给两个使用者
+    ByteBuffer first = BufferPoolUtils.allocate(3000);
+    ByteBuffer second = BufferPoolUtils.allocate(3000);
+    Assert.assertNotSame(first, second);
+    BufferPoolUtils.clean(first);
+    BufferPoolUtils.clean(second);
+  }
+
+  @Test
+  public void testLeak() throws Exception {
+    BufferLeakDetector.setLevel(BufferLeakDetector.Level.SAMPLED);
+    BufferLeakDetector.setSamplingInterval(1);
+    long before = BufferLeakDetector.getLeaks();
+    for (int i = 0; i < 10; i++) {
+      // 分配后不归还
+      BufferPoolUtils.allocate(100 * 1024 + i);
+    }
+    long deadline = System.currentTimeMillis() + 10000;
+    while (BufferLeakDetector.getLeaks() - before < 10 && System.currentTimeMillis() < deadline) {
+      System.gc();
+      Thread.sleep(20);
+      BufferLeakDetector.reportCollected();
+    }
+    Assert.assertEquals(before + 10, BufferLeakDetector.getLeaks());
+
+    // 正常归还的不报告
+    before = BufferLeakDetector.getLeaks();
+    for (int i = 0; i < 10; i++) {
+      BufferPoolUtils.clean(BufferPoolUtils.allocate(100 * 1024 + i));
+    }
+    System.gc();
+    Thread.sleep(100);
+    BufferLeakDetector.reportCollected();
+    Assert.assertEquals(before, BufferLeakDetector.getLeaks());
+  }
+
+  @Test
+  public void testUnreleasedOnClose() {
+    BufferLeakDetector.setLevel(BufferLeakDetector.Level.PARANOID);
+    ChannelContext channelContext = new ServerChannelContext(TestConfigUtils.serverTioConfig("leak-test"), "1");
+    ByteBuffer buffer = BufferPoolUtils.allocate(1024, channelContext);
+    Assert.assertEquals(1, BufferLeakDetector.checkOwner(channelContext));
+    BufferPoolUtils.clean(buffer);
+    Assert.assertEquals(0, BufferLeakDetector.checkOwner(channelContext));
+  }
+
+  @Test
+  public void testTimerDrain() throws Exception {
+    BufferLeakDetector.setLevel(BufferLeakDetector.Level.SAMPLED);
+    BufferLeakDetector.setSamplingInterval(1);
+    long before = BufferLeakDetector.getLeaks();
+    BufferPoolUtils.allocate(100 * 1024);
+    // 之后不再分配，只由定时任务报告
+    long deadline = System.currentTimeMillis() + 10000;
+    while (BufferLeakDetector.getLeaks() == before && System.currentTimeMillis() < deadline) {
+      System.gc();
+      Thread.sleep(100);
+    }
+    Assert.assertEquals(before + 1, BufferLeakDetector.getLeaks());
+  }
+
+  @Test
+  public void testOwnerNotRetained() throws Exception {
+    BufferLeakDetector.setLevel(BufferLeakDetector.Level.PARANOID);
+    ChannelContext channelContext = new ServerChannelContext(TestConfigUtils.serverTioConfig("leak-test"), "2");
+    String id = channelContext.getId();
+    ByteBuffer buffer = BufferPoolUtils.allocate(1024, channelContext);
+    WeakReference<ChannelContext> ref = new WeakReference<>(channelContext);
+    channelContext = null;
+    long deadline = System.currentTimeMillis() + 10000;
+    while (ref.get() != null && System.currentTimeMillis() < deadline) {
+      System.gc();
+      Thread.sleep(20);
+    }
+    // 连接被回收后仍能按id报告它持有的缓冲区
+    Assert.assertNull(ref.get());
+    Assert.assertEquals(1, BufferLeakDetector.checkOwner(id));
+    BufferPoolUtils.clean(buffer);
+    Assert.assertEquals(0, BufferLeakDetector.checkOwner(id));
+  }
+}
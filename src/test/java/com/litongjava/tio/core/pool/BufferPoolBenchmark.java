@@ -0,0 +1,78 @@
+package com.litongjava.tio.core.pool;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+
+import com.litongjava.enhance.buffer.BufferMemoryStat;
+import com.litongjava.enhance.buffer.DirectBufferCleaner;
+
+/**
+ * 多线程混合大小的分配/归还下，分档缓冲池和原来的单队列实现的吞吐与复用率<br>
+ * 不属于单元测试，用main()运行
+ */
+public class BufferPoolBenchmark {
+
+  public static void main(String[] args) throws Exception {
+    LegacyPool legacy = new LegacyPool();
+    run("warmup legacy", legacy::allocate, legacy::clean);
+    run("warmup size-classed", BufferPoolUtils::allocate, BufferPoolUtils::clean);
+
+    legacy = new LegacyPool();
+    long legacyCost = run("legacy single queue", legacy::allocate, legacy::clean);
+    System.out.println("legacy single queue: newAlloc=" + legacy.newAlloc.get() + ", reuseHit=" + legacy.reuseHit.get());
+
+    BufferMemoryStat before = BufferPoolUtils.getStat();
+    long cost = run("size-classed", BufferPoolUtils::allocate, BufferPoolUtils::clean);
+    BufferMemoryStat after = BufferPoolUtils.getStat();
+    System.out.println("size-classed: newAlloc=" + (after.statNewAlloc - before.statNewAlloc) + ", reuseHit="
+        + (after.statReuseHit - before.statReuseHit) + ", retained bytes=" + BufferPoolUtils.getRetainedBytes());
+    BufferMemoryStat[] stats = BufferPoolUtils.getSizeClassStats();
+    for (int i = 0; i < stats.length; i++) {
+      if (stats[i].statNewAlloc > 0) {
+        String sizeClass = i < BufferPoolUtils.getSizeClasses() ? String.valueOf(BufferPoolUtils.sizeOfClass(i)) : "unpooled";
+        System.out.println("  " + sizeClass + ": newAlloc=" + stats[i].statNewAlloc + ", reuseHit=" + stats[i].statReuseHit
+            + ", clean=" + stats[i].statCleanCount + ", depot=" + stats[i].bufferSize);
+      }
+    }
+    System.out.printf("speedup: %.2f%n", legacyCost / (double) cost);
+  }
+
+  private static long run(String name, IntFunction<ByteBuffer> allocator, Consumer<ByteBuffer> cleaner) throws InterruptedException {
+    long begin = System.nanoTime();
+    BufferPoolUtilsTest.run(allocator, cleaner);
+    long cost = System.nanoTime() - begin;
+    long ops = (long) BufferPoolUtilsTest.THREADS * BufferPoolUtilsTest.OPS_PER_THREAD;
+    System.out.println(name + ": " + (cost / 1000000) + "ms, " + (ops * 1000000000L / cost) + " ops/s");
+    return cost;
+  }
+
+  /**
+   * 原来的实现：一条全局队列，只有容量完全一致才复用，否则释放队首再新分配
+   */
+  static class LegacyPool {
+    final ConcurrentLinkedQueue<ByteBuffer> cleanBuffers = new ConcurrentLinkedQueue<>();
+    final AtomicLong newAlloc = new AtomicLong();
+    final AtomicLong reuseHit = new AtomicLong();
+
+    ByteBuffer allocate(int size) {
+      ByteBuffer bb = cleanBuffers.poll();
+      if (bb != null) {
+        if (bb.capacity() == size) {
+          bb.clear();
+          reuseHit.incrementAndGet();
+          return bb;
+        }
+        DirectBufferCleaner.clean(bb);
+      }
+      newAlloc.incrementAndGet();
+      return ByteBuffer.allocateDirect(size);
+    }
+
+    void clean(ByteBuffer buffer) {
+      cleanBuffers.offer(buffer);
+    }
+  }
+}
@@ -0,0 +1,153 @@
+package com.litongjava.tio.core.pool;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.litongjava.enhance.buffer.BufferMemoryStat;
+
+/**
+ * 分档缓冲池：档位、保留上限（包括线程缓存）、线程结束后回收线程缓存，以及多线程混合大小分配/归还时的复用率
+ */
+public class BufferPoolUtilsTest {
+  static final int THREADS = 8;
+  static final int OPS_PER_THREAD = 50000;
+  /** 编码后的小packet、SSL记录、文件分片等大小混合 */
+  private static final int[] SIZES = { 100, 300, 1000, 2000, 8192, 16 * 1024 + 5, 64 * 1024 };
+
+  @Test
+  public void testSizeClass() {
+    ByteBuffer buffer = BufferPoolUtils.allocate(1000);
+    Assert.assertEquals(1024, buffer.capacity());
+    Assert.assertEquals(1000, buffer.limit());
+    Assert.assertEquals(0, buffer.position());
+    BufferPoolUtils.clean(buffer);
+
+    // 同一档位在本线程内直接复用
+    ByteBuffer reused = BufferPoolUtils.allocate(600);
+    Assert.assertSame(buffer, reused);
+    Assert.assertEquals(600, reused.limit());
+    BufferPoolUtils.clean(reused);
+
+    Assert.assertEquals(0, BufferPoolUtils.indexOf(1));
+    Assert.assertEquals(0, BufferPoolUtils.indexOf(64));
+    Assert.assertEquals(1, BufferPoolUtils.indexOf(65));
+    Assert.assertEquals(-1, BufferPoolUtils.indexOf(Integer.MAX_VALUE));
+    Assert.assertEquals(-1, BufferPoolUtils.classOf(1000));
+    Assert.assertEquals(4, BufferPoolUtils.classOf(1024));
+
+    // 超过最大档位的不池化
+    int large = BufferPoolUtils.sizeOfClass(BufferPoolUtils.getSizeClasses() - 1) + 1;
+    ByteBuffer unpooled = BufferPoolUtils.allocate(large);
+    Assert.assertEquals(large, unpooled.capacity());
+    BufferPoolUtils.clean(unpooled);
+  }
+
+  @Test
+  public void testMaxRetainedBytes() {
+    long max = BufferPoolUtils.getMaxRetainedBytes();
+    BufferPoolUtils.release();
+    BufferPoolUtils.setMaxRetainedBytes(1024 * 1024);
+    try {
+      List<ByteBuffer> buffers = new ArrayList<>();
+      for (int i = 0; i < 64; i++) {
+        buffers.add(BufferPoolUtils.allocate(256 * 1024));
+      }
+      for (ByteBuffer buffer : buffers) {
+        BufferPoolUtils.clean(buffer);
+      }
+      Assert.assertTrue(BufferPoolUtils.getRetainedBytes() <= 1024 * 1024);
+    } finally {
+      BufferPoolUtils.setMaxRetainedBytes(max);
+      BufferPoolUtils.release();
+    }
+    Assert.assertEquals(0, BufferPoolUtils.getRetainedBytes());
+  }
+
+  @Test
+  public void testMagazineRetained() throws Exception {
+    long max = BufferPoolUtils.getMaxRetainedBytes();
+    BufferPoolUtils.release();
+    try {
+      // 线程缓存中的缓冲区也计入保留的字节数
+      BufferPoolUtils.clean(BufferPoolUtils.allocate(1000));
+      Assert.assertEquals(1024, BufferPoolUtils.getRetainedBytes());
+      BufferPoolUtils.clean(BufferPoolUtils.allocate(1000));
+      Assert.assertEquals(1024, BufferPoolUtils.getRetainedBytes());
+
+      // 达到上限后，线程缓存也不再保留
+      BufferPoolUtils.setMaxRetainedBytes(1024);
+      BufferPoolUtils.clean(BufferPoolUtils.allocate(2000));
+      Assert.assertEquals(1024, BufferPoolUtils.getRetainedBytes());
+      BufferPoolUtils.setMaxRetainedBytes(max);
+
+      // 线程结束后，它缓存的缓冲区由清理任务回收
+      Thread thread = new Thread(() -> BufferPoolUtils.clean(BufferPoolUtils.allocate(4000)));
+      thread.start();
+      thread.join();
+      Assert.assertEquals(1024 + 4096, BufferPoolUtils.getRetainedBytes());
+      BufferPoolUtils.tryClean();
+      Assert.assertEquals(1024, BufferPoolUtils.getRetainedBytes());
+
+      BufferPoolUtils.release();
+      Assert.assertEquals(0, BufferPoolUtils.getRetainedBytes());
+    } finally {
+      BufferPoolUtils.setMaxRetainedBytes(max);
+      BufferPoolUtils.release();
+    }
+  }
+
+  @Test
+  public void testConcurrentReuse() throws Exception {
+    BufferMemoryStat before = BufferPoolUtils.getStat();
+    run(BufferPoolUtils::allocate, BufferPoolUtils::clean);
+    BufferMemoryStat after = BufferPoolUtils.getStat();
+    // 每个线程最多同时持有4个缓冲区，绝大多数分配都应该命中
+    Assert.assertTrue(after.statReuseHit - before.statReuseHit > (long) THREADS * OPS_PER_THREAD * 9 / 10);
+    Assert.assertTrue(BufferPoolUtils.getRetainedBytes() <= BufferPoolUtils.getMaxRetainedBytes());
+    BufferPoolUtils.release();
+  }
+
+  static void run(IntFunction<ByteBuffer> allocator, Consumer<ByteBuffer> cleaner) throws InterruptedException {
+    CountDownLatch start = new CountDownLatch(1);
+    CountDownLatch done = new CountDownLatch(THREADS);
+    for (int t = 0; t < THREADS; t++) {
+      long seed = t;
+      Thread thread = new Thread(() -> {
+        Random random = new Random(seed);
+        ByteBuffer[] holding = new ByteBuffer[4];
+        try {
+          start.await();
+          for (int i = 0; i < OPS_PER_THREAD; i++) {
+            int slot = i & 3;
+            if (holding[slot] != null) {
+              cleaner.accept(holding[slot]);
+            }
+            ByteBuffer buffer = allocator.apply(SIZES[random.nextInt(SIZES.length)]);
+            buffer.put(0, (byte) i);
+            holding[slot] = buffer;
+          }
+          for (ByteBuffer buffer : holding) {
+            if (buffer != null) {
+              cleaner.accept(buffer);
+            }
+          }
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        } finally {
+          done.countDown();
+        }
+      });
+      thread.start();
+    }
+    start.countDown();
+    done.await();
+  }
+}
@@ -0,0 +1,114 @@
+package com.litongjava.tio.core.pool;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.litongjava.aio.Packet;
+import com.litongjava.enhance.channel.EnhanceAsynchronousChannelProvider;
+import com.litongjava.tio.core.ChannelContext;
+import com.litongjava.tio.core.ReadCompletionHandler;
+import com.litongjava.tio.core.TestConfigUtils;
+import com.litongjava.tio.server.ServerChannelContext;
+import com.litongjava.tio.server.ServerTioConfig;
+
+/**
+ * 直接内存预算：超过软上限时按直接内存占用从大到小暂停读并立即归还空闲的读缓冲区，超过硬上限时拒绝新连接
+ */
+public class MemoryBudgetTest {
+
+  @Test
+  public void testPauseLargest() {
+    ServerTioConfig serverTioConfig = TestConfigUtils.serverTioConfig("budget-test");
+    List<ChannelContext> channels = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      ChannelContext channelContext = new ServerChannelContext(serverTioConfig, String.valueOf(i));
+      channelContext.setReadBufferSize(1024 * (i + 1));
+      new ReadCompletionHandler(channelContext);
+      channels.add(channelContext);
+    }
+
+    // 超出20KB：10KB + 9KB还不够，暂停读缓冲区最大的三个连接
+    int count = MemoryBudget.pauseLargest(channels, 20 * 1024);
+    Assert.assertEquals(3, count);
+    for (int i = 0; i < 10; i++) {
+      Assert.assertEquals(i >= 7, channels.get(i).readCompletionHandler.isReadPaused());
+    }
+    Assert.assertEquals(3, MemoryBudget.getPausedChannels());
+
+    // 已经暂停的不会重复计入，至少再暂停一个
+    Assert.assertEquals(1, MemoryBudget.pauseLargest(channels, 0));
+    Assert.assertTrue(channels.get(6).readCompletionHandler.isReadPaused());
+
+    MemoryBudget.resumeAll();
+    Assert.assertEquals(0, MemoryBudget.getPausedChannels());
+    for (ChannelContext channelContext : channels) {
+      Assert.assertFalse(channelContext.readCompletionHandler.isReadPaused());
+    }
+  }
+
+  @Test
+  public void testHeldBytes() {
+    ServerTioConfig serverTioConfig = TestConfigUtils.serverTioConfig("budget-test");
+    ChannelContext channelContext = new ServerChannelContext(serverTioConfig, "held");
+    channelContext.setReadBufferSize(2048);
+    new ReadCompletionHandler(channelContext);
+    long held = MemoryBudget.heldBytes(channelContext);
+    // 发送队列中还没有编码的packet不占用直接内存
+    Packet packet = new Packet();
+    packet.setByteCount(1024 * 1024);
+    channelContext.sendQueue.offer(packet);
+    Assert.assertEquals(held, MemoryBudget.heldBytes(channelContext));
+    Assert.assertEquals(BufferPoolUtils.direct ? 2048 : 0, held);
+  }
+
+  @Test
+  public void testPauseReleasesIdleBuffer() {
+    ServerTioConfig serverTioConfig = TestConfigUtils.serverTioConfig("budget-test");
+    ChannelContext channelContext = new ServerChannelContext(serverTioConfig, "idle");
+    ReadCompletionHandler readCompletionHandler = new ReadCompletionHandler(channelContext);
+    // 读休眠的通道报告暂时没有数据，读缓冲区暂存在ReadCompletionHandler中
+    readCompletionHandler.completed(EnhanceAsynchronousChannelProvider.READ_MONITOR_SIGNAL, BufferPoolUtils.allocateRequest(1024, channelContext));
+    Assert.assertFalse(readCompletionHandler.isHibernating());
+
+    // 暂停时立即归还，不等下一次读完成
+    readCompletionHandler.pauseRead();
+    Assert.assertTrue(readCompletionHandler.isHibernating());
+    Assert.assertTrue(readCompletionHandler.isReadPaused());
+    readCompletionHandler.resumeRead();
+    Assert.assertFalse(readCompletionHandler.isReadPaused());
+    readCompletionHandler.release();
+  }
+
+  @Test
+  public void testHardLimit() {
+    boolean enabled = MemoryBudget.isEnabled();
+    long hardLimit = MemoryBudget.getHardLimit();
+    try {
+      MemoryBudget.setEnabled(true);
+      // init()之后开启也启动定时检查
+      Assert.assertTrue(MemoryBudget.isStarted());
+      MemoryBudget.setHardLimit(MemoryBudget.used() + 4 * 1024 * 1024);
+      Assert.assertFalse(MemoryBudget.isOverHardLimit());
+      ByteBuffer buffer = ByteBuffer.allocateDirect(4 * 1024 * 1024);
+      Assert.assertTrue(MemoryBudget.isOverHardLimit());
+      Assert.assertTrue(MemoryBudget.getUtilization() >= 1.0);
+      Assert.assertEquals(4 * 1024 * 1024, buffer.capacity());
+    } finally {
+      MemoryBudget.setEnabled(enabled);
+      MemoryBudget.setHardLimit(hardLimit);
+    }
+  }
+
+  @Test
+  public void testParseSize() {
+    Assert.assertEquals(512L * 1024 * 1024, MemoryBudget.parseSize("512m"));
+    Assert.assertEquals(2L * 1024 * 1024 * 1024, MemoryBudget.parseSize("2G"));
+    Assert.assertEquals(4096L, MemoryBudget.parseSize("4k"));
+    Assert.assertEquals(1000L, MemoryBudget.parseSize("1000"));
+    Assert.assertTrue(MemoryBudget.maxDirectMemory() > 0);
+  }
+}
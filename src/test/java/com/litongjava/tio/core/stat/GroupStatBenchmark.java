@@ -0,0 +1,44 @@
+package com.litongjava.tio.core.stat;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 1到64个线程同时累加AtomicLong与StatCounter的耗时对比，单核机器上没有真正的竞争，看不出差别<br>
+ * 不属于单元测试，用main()运行
+ */
+public class GroupStatBenchmark {
+
+  public static void main(String[] args) throws Exception {
+    int total = args.length > 0 ? Integer.parseInt(args[0]) : 2000000;
+    for (int threads = 1; threads <= 64; threads <<= 1) {
+      AtomicLong atomicLong = new AtomicLong();
+      StatCounter statCounter = new StatCounter();
+      long atomicNanos = run(threads, total / threads, atomicLong::incrementAndGet);
+      long adderNanos = run(threads, total / threads, statCounter::increment);
+      System.out.printf("%d threads: AtomicLong %.2fns/op, StatCounter %.2fns/op%n", threads, atomicNanos / (double) total, adderNanos / (double) total);
+    }
+  }
+
+  private static long run(int threads, int perThread, Runnable op) throws InterruptedException {
+    CountDownLatch start = new CountDownLatch(1);
+    CountDownLatch done = new CountDownLatch(threads);
+    for (int t = 0; t < threads; t++) {
+      new Thread(() -> {
+        try {
+          start.await();
+        } catch (InterruptedException e) {
+          return;
+        }
+        for (int i = 0; i < perThread; i++) {
+          op.run();
+        }
+        done.countDown();
+      }).start();
+    }
+    long begin = System.nanoTime();
+    start.countDown();
+    done.await();
+    return System.nanoTime() - begin;
+  }
+}
@@ -0,0 +1,71 @@
+package com.litongjava.tio.core.stat;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.litongjava.tio.core.ChannelContext;
+import com.litongjava.tio.core.TestConfigUtils;
+import com.litongjava.tio.core.maintain.MaintainUtils;
+import com.litongjava.tio.server.ServerChannelContext;
+import com.litongjava.tio.server.ServerTioConfig;
+
+/**
+ * GroupStat：延迟汇总模式下快照与连接删除，StatCounter兼容AtomicLong的用法
+ */
+public class GroupStatTest {
+
+  @Test
+  public void testSnapshot() {
+    GroupStat groupStat = new GroupStat();
+    groupStat.receivedBytes.add(300);
+    groupStat.receivedTcps.add(3);
+    groupStat.receivedPackets.add(6);
+    groupStat.handledPackets.add(4);
+    groupStat.handledPacketCosts.add(10);
+    groupStat.sendQueuePackets.set(2);
+    GroupStatSnapshot snapshot = groupStat.snapshot(null);
+    Assert.assertEquals(300, snapshot.getReceivedBytes());
+    Assert.assertEquals(100, snapshot.getBytesPerTcpReceive(), 0);
+    Assert.assertEquals(2, snapshot.getPacketsPerTcpReceive(), 0);
+    Assert.assertEquals(2.5, snapshot.getHandledCostsPerPacket(), 0);
+    Assert.assertEquals(2, snapshot.getSendQueuePackets());
+    Assert.assertEquals(300, groupStat.getReceivedBytes().get());
+  }
+
+  @Test
+  public void testLazyGroupTotals() {
+    ServerTioConfig serverTioConfig = TestConfigUtils.serverTioConfig("group-stat-test");
+    serverTioConfig.setStatGroupLazy(true);
+    ChannelContext a = new ServerChannelContext(serverTioConfig, "a");
+    ChannelContext b = new ServerChannelContext(serverTioConfig, "b");
+    serverTioConfig.connections.add(a);
+    serverTioConfig.connections.add(b);
+    a.stat.addReceivedBytes(100);
+    a.stat.addSentPackets(2);
+    b.stat.addReceivedBytes(50);
+
+    GroupStatSnapshot snapshot = serverTioConfig.getGroupStatSnapshot();
+    Assert.assertEquals(150, snapshot.getReceivedBytes());
+    Assert.assertEquals(2, snapshot.getSentPackets());
+    Assert.assertEquals(0, serverTioConfig.groupStat.receivedBytes.get());
+
+    // 删除后并入GroupStat，合计不变，也不会重复计入
+    MaintainUtils.remove(a);
+    MaintainUtils.remove(a);
+    Assert.assertEquals(100, serverTioConfig.groupStat.receivedBytes.get());
+    snapshot = serverTioConfig.getGroupStatSnapshot();
+    Assert.assertEquals(150, snapshot.getReceivedBytes());
+    Assert.assertEquals(2, snapshot.getSentPackets());
+  }
+
+  @Test
+  public void testAtomicLongCompatible() {
+    StatCounter counter = new StatCounter();
+    Assert.assertEquals(1, counter.incrementAndGet());
+    Assert.assertEquals(6, counter.addAndGet(5));
+    Assert.assertEquals(6, counter.getAndIncrement());
+    Assert.assertEquals(7, counter.getAndAdd(3));
+    counter.set(2);
+    Assert.assertEquals(2, counter.get());
+  }
+}
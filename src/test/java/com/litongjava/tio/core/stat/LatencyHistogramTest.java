@@ -0,0 +1,127 @@
+package com.litongjava.tio.core.stat;
+
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.litongjava.aio.Packet;
+import com.litongjava.tio.core.ChannelContext;
+import com.litongjava.tio.core.TestConfigUtils.NoopServerAioHandler;
+import com.litongjava.tio.core.TestConfigUtils;
+import com.litongjava.tio.core.task.HandlePacketTask;
+import com.litongjava.tio.server.ServerChannelContext;
+import com.litongjava.tio.server.ServerTioConfig;
+
+/**
+ * 耗时直方图：分桶误差、百分位、多线程记录与合并，HandlePacketTask记录的排队和处理耗时，以及默认不记录
+ */
+public class LatencyHistogramTest {
+
+  @Test
+  public void testBuckets() {
+    for (long v = 0; v < 100000; v += 7) {
+      int index = LatencyHistogram.indexOf(v);
+      Assert.assertTrue(v + "", LatencyHistogram.lowerBound(index) <= v && v <= LatencyHistogram.upperBound(index));
+    }
+    long[] values = { 15, 16, 1000, 123456789, 1L << 40 };
+    for (long v : values) {
+      int index = LatencyHistogram.indexOf(v);
+      long width = LatencyHistogram.upperBound(index) - LatencyHistogram.lowerBound(index) + 1;
+      Assert.assertTrue(v + "", width <= Math.max(1, v / LatencyHistogram.SUB_BUCKETS));
+    }
+    Assert.assertEquals(LatencyHistogram.BUCKETS - 1, LatencyHistogram.indexOf(Long.MAX_VALUE));
+  }
+
+  @Test
+  public void testPercentiles() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (int i = 1; i <= 1000; i++) {
+      histogram.record(i * 1000L);
+    }
+    LatencySnapshot snapshot = histogram.snapshot();
+    Assert.assertEquals(1000, snapshot.getCount());
+    Assert.assertEquals(1000000, snapshot.getMax());
+    Assert.assertEquals(500500, snapshot.getMean(), 0.001);
+    assertNear(500000, snapshot.getP50());
+    assertNear(990000, snapshot.getP99());
+    Assert.assertEquals(1000000, snapshot.getPercentile(100));
+    Assert.assertEquals(0, new LatencyHistogram().snapshot().getP99());
+  }
+
+  @Test
+  public void testConcurrentRecordAndMerge() throws Exception {
+    int threads = 4;
+    int count = 100000;
+    LatencyHistogram[] histograms = new LatencyHistogram[threads];
+    LatencyHistogram shared = new LatencyHistogram();
+    CountDownLatch latch = new CountDownLatch(threads);
+    for (int t = 0; t < threads; t++) {
+      LatencyHistogram own = histograms[t] = new LatencyHistogram();
+      long value = (t + 1) * 1000L;
+      new Thread(() -> {
+        for (int i = 0; i < count; i++) {
+          shared.record(value);
+          own.record(value);
+        }
+        latch.countDown();
+      }).start();
+    }
+    latch.await();
+    Assert.assertEquals(threads * count, shared.snapshot().getCount());
+
+    LatencyHistogram merged = new LatencyHistogram();
+    LatencySnapshot mergedSnapshot = histograms[0].snapshot();
+    for (int t = 0; t < threads; t++) {
+      merged.merge(histograms[t]);
+      if (t > 0) {
+        mergedSnapshot = mergedSnapshot.merge(histograms[t].snapshot());
+      }
+    }
+    Assert.assertEquals(shared.snapshot().toString(), merged.snapshot().toString());
+    Assert.assertEquals(shared.snapshot().toString(), mergedSnapshot.toString());
+    Assert.assertEquals(threads * 1000L, merged.snapshot().getMax());
+  }
+
+  @Test
+  public void testHandleLatency() throws Throwable {
+    ServerTioConfig serverTioConfig = serverTioConfig();
+    serverTioConfig.setLatencyStatOn(true);
+    serverTioConfig.setChannelLatencyStatOn(true);
+    ChannelContext channelContext = new ServerChannelContext(serverTioConfig, "a");
+    long decodedNanos = System.nanoTime() - 5000000;
+    new HandlePacketTask().handle(channelContext, new Packet(), decodedNanos);
+    new HandlePacketTask().handle(channelContext, new Packet());
+
+    LatencySnapshot queue = serverTioConfig.groupStat.latency.snapshot(LatencyStats.QUEUE);
+    LatencySnapshot handle = serverTioConfig.groupStat.latency.snapshot(LatencyStats.HANDLE);
+    // 没有排队的不记录排队时间
+    Assert.assertEquals(1, queue.getCount());
+    Assert.assertTrue(queue.getMax() >= 5000000);
+    Assert.assertEquals(2, handle.getCount());
+    Assert.assertTrue(handle.getMax() >= 2000000);
+    Assert.assertEquals(2, channelContext.stat.getLatency().snapshot(LatencyStats.HANDLE).getCount());
+  }
+
+  @Test
+  public void testOffByDefault() throws Throwable {
+    ServerTioConfig serverTioConfig = serverTioConfig();
+    ChannelContext channelContext = new ServerChannelContext(serverTioConfig, "a");
+    new HandlePacketTask().handle(channelContext, new Packet(), System.nanoTime());
+    Assert.assertFalse(LatencyStats.isOn(serverTioConfig));
+    Assert.assertEquals(0, serverTioConfig.groupStat.latency.snapshot(LatencyStats.HANDLE).getCount());
+  }
+
+  private static void assertNear(long expected, long actual) {
+    Assert.assertTrue(expected + " vs " + actual, Math.abs(actual - expected) <= expected / LatencyHistogram.SUB_BUCKETS);
+  }
+
+  private static ServerTioConfig serverTioConfig() {
+    return TestConfigUtils.serverTioConfig("latency-test", new NoopServerAioHandler() {
+      @Override
+      public void handler(Packet packet, ChannelContext ctx) throws Exception {
+        Thread.sleep(2);
+      }
+    });
+  }
+}
@@ -0,0 +1,80 @@
+package com.litongjava.tio.core.task;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import com.litongjava.enhance.buffer.BufferMemoryStat;
+import com.litongjava.tio.core.ChannelContext;
+import com.litongjava.tio.core.pool.BufferPoolUtils;
+import com.litongjava.tio.server.ServerChannelContext;
+import com.litongjava.tio.server.ServerTioConfig;
+
+/**
+ * 1、1MB的长度前缀帧被拆成1..64字节和1..8KB的片段依次解码，打印耗时和池中新分配的缓冲区个数<br>
+ * 2、流水线客户端每次读到50个小请求，比较逐个提交和批量提交的线程池提交次数和耗时<br>
+ * 不属于单元测试，用main()运行
+ */
+public class DecodeTaskBenchmark {
+
+  public static void main(String[] args) throws Exception {
+    fragmented(args.length > 0 ? Integer.parseInt(args[0]) : 16);
+    batchDispatch(args.length > 1 ? Integer.parseInt(args[1]) : 2000, 50);
+  }
+
+  private static void fragmented(int frames) throws InterruptedException {
+    int frameSize = 1024 * 1024;
+    List<byte[]> received = Collections.synchronizedList(new ArrayList<>());
+    ServerTioConfig serverTioConfig = DecodeTaskTest.serverTioConfig(received);
+    ChannelContext channelContext = new ServerChannelContext(serverTioConfig, "1");
+    Random random = new Random(1);
+    ByteBuffer stream = DecodeTaskTest.lengthPrefixed(new ArrayList<>(), frames, frameSize, random);
+
+    int[] maxChunks = { 64, 8 * 1024 };
+    for (int maxChunk : maxChunks) {
+      // 预热
+      decode(channelContext, stream, maxChunk, random, received, frames);
+      BufferMemoryStat before = BufferPoolUtils.getStat();
+      long start = System.nanoTime();
+      decode(channelContext, stream, maxChunk, random, received, frames);
+      long cost = System.nanoTime() - start;
+      BufferMemoryStat after = BufferPoolUtils.getStat();
+      System.out.println("frames: " + frames + " x " + frameSize + "B, chunk: 1.." + maxChunk + "B, decode: " + cost / 1000000 + "ms, new alloc: "
+          + (after.statNewAlloc - before.statNewAlloc));
+    }
+  }
+
+  private static void decode(ChannelContext channelContext, ByteBuffer stream, int maxChunk, Random random, List<byte[]> received, int frames)
+      throws InterruptedException {
+    received.clear();
+    DecodeTask decodeTask = new DecodeTask();
+    DecodeTaskTest.feed(decodeTask, channelContext, stream.duplicate(), maxChunk, random);
+    DecodeTaskTest.await(received, frames);
+    decodeTask.release();
+  }
+
+  private static void batchDispatch(int reads, int pipelined) throws InterruptedException {
+    ByteBuffer segment = DecodeTaskTest.pipelined(pipelined);
+    for (boolean batchDispatch : new boolean[] { false, true }) {
+      List<byte[]> received = Collections.synchronizedList(new ArrayList<>());
+      ServerTioConfig serverTioConfig = DecodeTaskTest.serverTioConfig(received);
+      DecodeTaskTest.CountingExecutor executor = new DecodeTaskTest.CountingExecutor(4);
+      serverTioConfig.setBizExecutor(executor);
+      serverTioConfig.setBizBatchDispatch(batchDispatch);
+      ChannelContext channelContext = new ServerChannelContext(serverTioConfig, "1");
+      DecodeTask decodeTask = new DecodeTask();
+
+      long start = System.nanoTime();
+      for (int i = 0; i < reads; i++) {
+        decodeTask.decode(channelContext, segment.duplicate());
+      }
+      DecodeTaskTest.await(received, reads * pipelined);
+      long cost = System.nanoTime() - start;
+      executor.shutdown();
+      System.out.println("reads: " + reads + " x " + pipelined + " packets, batch dispatch: " + batchDispatch + ", submissions: "
+          + executor.submissions.get() + ", handled: " + received.size() + ", cost: " + cost / 1000000 + "ms");
+    }
+  }
+}
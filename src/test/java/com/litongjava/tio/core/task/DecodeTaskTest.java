@@ -0,0 +1,294 @@
+package com.litongjava.tio.core.task;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.litongjava.aio.Packet;
+import com.litongjava.enhance.buffer.BufferMemoryStat;
+import com.litongjava.tio.core.ChannelContext;
+import com.litongjava.tio.core.TioConfig;
+import com.litongjava.tio.core.pool.BufferPoolUtils;
+import com.litongjava.tio.server.ServerChannelContext;
+import com.litongjava.tio.server.ServerTioConfig;
+import com.litongjava.tio.server.intf.ServerAioHandler;
+
+/**
+ * 64KB的长度前缀帧被拆成1字节到8KB的片段依次解码，验证内容完整和缓冲区分配次数；解码过程中关闭连接时release()不阻塞
+ */
+public class DecodeTaskTest {
+  private static final int FRAME_SIZE = 64 * 1024;
+  private static final int FRAMES = 4;
+
+  static class BytesPacket extends Packet {
+    private static final long serialVersionUID = 1L;
+    byte[] body;
+
+    BytesPacket(byte[] body) {
+      this.body = body;
+    }
+  }
+
+  static ServerTioConfig serverTioConfig(List<byte[]> received) {
+    ServerTioConfig serverTioConfig = new ServerTioConfig("decode-test");
+    serverTioConfig.setHeartbeatTimeout(0);
+    serverTioConfig.setServerAioHandler(new ServerAioHandler() {
+      @Override
+      public Packet decode(ByteBuffer buffer, int limit, int position, int readableLength, ChannelContext ctx) {
+        if (readableLength < 4) {
+          return null;
+        }
+        int length = buffer.getInt(position);
+        if (readableLength < 4 + length) {
+          ctx.setPacketNeededLength(4 + length);
+          return null;
+        }
+        byte[] body = new byte[length];
+        buffer.position(position + 4);
+        buffer.get(body);
+        return new BytesPacket(body);
+      }
+
+      @Override
+      public ByteBuffer encode(Packet packet, TioConfig tioConfig, ChannelContext ctx) {
+        return null;
+      }
+
+      @Override
+      public void handler(Packet packet, ChannelContext ctx) {
+        received.add(((BytesPacket) packet).body);
+      }
+    });
+    serverTioConfig.init();
+    return serverTioConfig;
+  }
+
+  /**
+   * 生成count个size字节的随机帧，放进frames
+   * @return 长度前缀编码后的字节流
+   */
+  static ByteBuffer lengthPrefixed(List<byte[]> frames, int count, int size, Random random) {
+    ByteBuffer stream = ByteBuffer.allocate(count * (4 + size));
+    for (int i = 0; i < count; i++) {
+      byte[] frame = new byte[size];
+      random.nextBytes(frame);
+      frames.add(frame);
+      stream.putInt(frame.length).put(frame);
+    }
+    stream.flip();
+    return stream;
+  }
+
+  /**
+   * 把字节流拆成1到maxChunk字节的片段，每段复制进同一个读缓冲区后解码
+   */
+  static void feed(DecodeTask decodeTask, ChannelContext channelContext, ByteBuffer source, int maxChunk, Random random) {
+    ByteBuffer read = ByteBuffer.allocateDirect(maxChunk);
+    while (source.hasRemaining()) {
+      int n = Math.min(source.remaining(), 1 + random.nextInt(maxChunk));
+      ByteBuffer slice = source.duplicate();
+      slice.limit(slice.position() + n);
+      source.position(source.position() + n);
+      read.clear();
+      read.put(slice);
+      read.flip();
+      decodeTask.decode(channelContext, read);
+    }
+  }
+
+  static void await(List<?> received, int count) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 30000;
+    while (received.size() < count && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+  }
+
+  @Test
+  public void test() throws Exception {
+    List<byte[]> received = Collections.synchronizedList(new ArrayList<>());
+    ServerTioConfig serverTioConfig = serverTioConfig(received);
+    ChannelContext channelContext = new ServerChannelContext(serverTioConfig, "1");
+
+    Random random = new Random(1);
+    List<byte[]> frames = new ArrayList<>();
+    ByteBuffer stream = lengthPrefixed(frames, FRAMES, FRAME_SIZE, random);
+
+    int[] maxChunks = { 64, 8 * 1024 };
+    for (int maxChunk : maxChunks) {
+      received.clear();
+      BufferMemoryStat before = BufferPoolUtils.getStat();
+      DecodeTask decodeTask = new DecodeTask();
+      feed(decodeTask, channelContext, stream.duplicate(), maxChunk, random);
+      BufferMemoryStat after = BufferPoolUtils.getStat();
+
+      await(received, FRAMES);
+      Assert.assertEquals(FRAMES, received.size());
+      for (int i = 0; i < FRAMES; i++) {
+        Assert.assertArrayEquals(frames.get(i), received.get(i));
+      }
+      // 每帧最多分配一个小缓冲区和一个整包大小的缓冲区
+      Assert.assertTrue(after.statNewAlloc - before.statNewAlloc <= 2 * FRAMES);
+      decodeTask.release();
+    }
+  }
+
+  @Test
+  public void testReleaseDuringDecode() throws Exception {
+    CountDownLatch decoding = new CountDownLatch(1);
+    CountDownLatch resume = new CountDownLatch(1);
+    ServerTioConfig serverTioConfig = serverTioConfig(new ArrayList<>());
+    ServerAioHandler delegate = (ServerAioHandler) serverTioConfig.getAioHandler();
+    serverTioConfig.setServerAioHandler(new ServerAioHandler() {
+      @Override
+      public Packet decode(ByteBuffer buffer, int limit, int position, int readableLength, ChannelContext ctx) throws Exception {
+        if (readableLength > 4) {
+          decoding.countDown();
+          try {
+            resume.await();
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+        }
+        return delegate.decode(buffer, limit, position, readableLength, ctx);
+      }
+
+      @Override
+      public ByteBuffer encode(Packet packet, TioConfig tioConfig, ChannelContext ctx) {
+        return null;
+      }
+
+      @Override
+      public void handler(Packet packet, ChannelContext ctx) {
+      }
+    });
+    ChannelContext channelContext = new ServerChannelContext(serverTioConfig, "1");
+    DecodeTask decodeTask = new DecodeTask();
+    // 半包：留下累积缓冲区
+    decodeTask.decode(channelContext, ByteBuffer.wrap(new byte[] { 0, 0, 1 }));
+    Assert.assertTrue(decodeTask.getCumulationCapacity() > 0);
+
+    Thread decoder = new Thread(() -> decodeTask.decode(channelContext, ByteBuffer.wrap(new byte[] { 0, 1, 2, 3 })));
+    decoder.start();
+    Assert.assertTrue(decoding.await(5, TimeUnit.SECONDS));
+    Thread closer = new Thread(decodeTask::release);
+    closer.start();
+    closer.join(5000);
+    // 解码还没结束，release()已经返回，缓冲区由decode()结束时归还
+    Assert.assertFalse(closer.isAlive());
+    Assert.assertTrue(decodeTask.getCumulationCapacity() > 0);
+    resume.countDown();
+    decoder.join(5000);
+    Assert.assertEquals(0, decodeTask.getCumulationCapacity());
+
+    // release()之后不再累积
+    decodeTask.decode(channelContext, ByteBuffer.wrap(new byte[] { 0, 0 }));
+    Assert.assertEquals(0, decodeTask.getCumulationCapacity());
+  }
+
+  /**
+   * 统计提交次数的线程池
+   */
+  static class CountingExecutor extends AbstractExecutorService {
+    final ExecutorService executor;
+    final AtomicInteger submissions = new AtomicInteger();
+
+    CountingExecutor(int threads) {
+      this.executor = Executors.newFixedThreadPool(threads);
+    }
+
+    @Override
+    public void execute(Runnable command) {
+      submissions.incrementAndGet();
+      executor.execute(command);
+    }
+
+    @Override
+    public void shutdown() {
+      executor.shutdown();
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+      return executor.shutdownNow();
+    }
+
+    @Override
+    public boolean isShutdown() {
+      return executor.isShutdown();
+    }
+
+    @Override
+    public boolean isTerminated() {
+      return executor.isTerminated();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+      return executor.awaitTermination(timeout, unit);
+    }
+  }
+
+  /**
+   * @return 一次读到的pipelined个请求，每个请求是4字节长度加4字节序号
+   */
+  static ByteBuffer pipelined(int pipelined) {
+    ByteBuffer segment = ByteBuffer.allocate(pipelined * 8);
+    for (int i = 0; i < pipelined; i++) {
+      segment.putInt(4).putInt(i);
+    }
+    segment.flip();
+    return segment;
+  }
+
+  /**
+   * 流水线客户端一次发来50个小请求，验证逐个提交和批量提交的线程池提交次数，以及批量提交时的处理顺序
+   */
+  @Test
+  public void testBatchDispatch() throws Exception {
+    int reads = 100;
+    int pipelined = 50;
+    ByteBuffer segment = pipelined(pipelined);
+
+    for (boolean batchDispatch : new boolean[] { false, true }) {
+      List<byte[]> received = Collections.synchronizedList(new ArrayList<>());
+      ServerTioConfig serverTioConfig = serverTioConfig(received);
+      CountingExecutor executor = new CountingExecutor(4);
+      serverTioConfig.setBizExecutor(executor);
+      serverTioConfig.setBizBatchDispatch(batchDispatch);
+      ChannelContext channelContext = new ServerChannelContext(serverTioConfig, "1");
+      DecodeTask decodeTask = new DecodeTask();
+
+      for (int i = 0; i < reads; i++) {
+        decodeTask.decode(channelContext, segment.duplicate());
+      }
+      await(received, reads * pipelined);
+      executor.shutdown();
+      Assert.assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+
+      // 批量派发时每次读最多提交一次（通道还在运行时不再提交）
+      if (batchDispatch) {
+        Assert.assertTrue(executor.submissions.get() <= reads);
+      } else {
+        Assert.assertEquals(reads * pipelined, executor.submissions.get());
+      }
+      Assert.assertEquals(reads * pipelined, received.size());
+      // 多线程的线程池中，批量派发仍按到达顺序处理
+      if (batchDispatch) {
+        for (int i = 0; i < received.size(); i++) {
+          Assert.assertEquals(i % pipelined, ByteBuffer.wrap(received.get(i)).getInt());
+        }
+      }
+    }
+  }
+}
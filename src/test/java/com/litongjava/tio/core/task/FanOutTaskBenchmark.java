@@ -0,0 +1,51 @@
+package com.litongjava.tio.core.task;
+
+import com.litongjava.aio.Packet;
+import com.litongjava.tio.core.ChannelContext;
+import com.litongjava.tio.core.Tio;
+import com.litongjava.tio.server.ServerTioConfig;
+
+/**
+ * 不同组大小、不同并行度下的群发耗时，过滤器模拟每个成员的入队开销<br>
+ * 不属于单元测试，用main()运行
+ */
+public class FanOutTaskBenchmark {
+  private static volatile long sink;
+
+  public static void main(String[] args) {
+    int cores = Runtime.getRuntime().availableProcessors();
+    int[] sizes = { 10000, 50000, 200000 };
+    int[] concurrencies = { 1, 2, Math.max(4, cores) };
+    for (int concurrency : concurrencies) {
+      ServerTioConfig serverTioConfig = FanOutTaskTest.serverTioConfig(concurrency, 4096);
+      try {
+        int bound = 0;
+        for (int size : sizes) {
+          FanOutTaskTest.bindMembers(serverTioConfig, size - bound);
+          bound = size;
+          Packet packet = new Packet();
+          // 预热
+          Tio.bSendToGroup(serverTioConfig, FanOutTaskTest.GROUP, packet, FanOutTaskBenchmark::simulateEnqueue);
+          long best = Long.MAX_VALUE;
+          for (int i = 0; i < 5; i++) {
+            long start = System.nanoTime();
+            Tio.bSendToGroup(serverTioConfig, FanOutTaskTest.GROUP, packet, FanOutTaskBenchmark::simulateEnqueue);
+            best = Math.min(best, System.nanoTime() - start);
+          }
+          System.out.println("group size: " + size + ", concurrency: " + concurrency + ", cores: " + cores + ", broadcast: " + best / 1000 + "us");
+        }
+      } finally {
+        serverTioConfig.shutdownFanOutPool();
+      }
+    }
+  }
+
+  private static boolean simulateEnqueue(ChannelContext channelContext) {
+    long h = channelContext.hashCode();
+    for (int i = 0; i < 100; i++) {
+      h = h * 31 + i;
+    }
+    sink = h;
+    return true;
+  }
+}
@@ -0,0 +1,64 @@
+package com.litongjava.tio.core.task;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.litongjava.aio.Packet;
+import com.litongjava.tio.core.ChannelContext;
+import com.litongjava.tio.core.TestConfigUtils;
+import com.litongjava.tio.core.Tio;
+import com.litongjava.tio.server.ServerChannelContext;
+import com.litongjava.tio.server.ServerTioConfig;
+
+/**
+ * 并行群发：每个成员恰好处理一次，bSendToGroup等所有分片发送完成；耗时见FanOutTaskBenchmark
+ */
+public class FanOutTaskTest {
+  static final String GROUP = "all";
+
+  @Test
+  public void testEveryMemberOnce() {
+    ServerTioConfig serverTioConfig = serverTioConfig(4, 1000);
+    try {
+      int size = 50000;
+      bindMembers(serverTioConfig, size);
+      ConcurrentHashMap<ChannelContext, Boolean> seen = new ConcurrentHashMap<>();
+      AtomicInteger filtered = new AtomicInteger();
+      ConcurrentHashMap<Thread, Boolean> workers = new ConcurrentHashMap<>();
+      Boolean ret = Tio.bSendToGroup(serverTioConfig, GROUP, new Packet(), channelContext -> {
+        Assert.assertNull(seen.put(channelContext, Boolean.TRUE));
+        workers.put(Thread.currentThread(), Boolean.TRUE);
+        return filtered.incrementAndGet() % 3 == 0;
+      });
+      Assert.assertTrue(ret);
+      Assert.assertEquals(size, seen.size());
+      Assert.assertEquals(size, filtered.get());
+      // 分片在fanOutPool中发送，调用线程只等待
+      Assert.assertFalse(workers.containsKey(Thread.currentThread()));
+      Assert.assertTrue(workers.size() <= 4);
+
+      // 全部被过滤时没有发送
+      Assert.assertFalse(Tio.bSendToGroup(serverTioConfig, GROUP, new Packet(), channelContext -> false));
+    } finally {
+      serverTioConfig.shutdownFanOutPool();
+    }
+  }
+
+  private static final AtomicInteger ID = new AtomicInteger();
+
+  static void bindMembers(ServerTioConfig serverTioConfig, int count) {
+    for (int i = 0; i < count; i++) {
+      Tio.bindGroup(new ServerChannelContext(serverTioConfig, "m" + ID.incrementAndGet()), GROUP);
+    }
+  }
+
+  static ServerTioConfig serverTioConfig(int concurrency, int shardSize) {
+    ServerTioConfig serverTioConfig = TestConfigUtils.serverTioConfig("fan-out-test");
+    serverTioConfig.setFanOutConcurrency(concurrency);
+    serverTioConfig.setFanOutShardSize(shardSize);
+    return serverTioConfig;
+  }
+}
@@ -0,0 +1,182 @@
+package com.litongjava.tio.core.task;
+
+import java.io.File;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.litongjava.aio.Packet;
+import com.litongjava.tio.core.ChannelContext;
+import com.litongjava.tio.core.Tio;
+import com.litongjava.tio.core.TioConfig;
+import com.litongjava.tio.server.ServerTioConfig;
+import com.litongjava.tio.server.TioServer;
+import com.litongjava.tio.server.intf.ServerAioHandler;
+
+/**
+ * 几百个不读数据的下载端占满socket缓冲区时，只有两个工作线程的服务端仍能及时响应其它请求（文件传输不占用线程）；
+ * 下载端恢复读取（限速）后内容完整，并且与后续packet保持顺序
+ */
+public class FileTransferTaskTest {
+  private static final int CLIENTS = 200;
+  private static final int PORT = 19321;
+
+  static class BytesPacket extends Packet {
+    private static final long serialVersionUID = 1L;
+    byte[] body;
+
+    BytesPacket(byte[] body) {
+      this.body = body;
+    }
+  }
+
+  @Test
+  public void test() throws Exception {
+    File file = File.createTempFile("tio", ".bin");
+    file.deleteOnExit();
+    byte[] data = new byte[1024 * 1024];
+    new Random(1).nextBytes(data);
+    Files.write(file.toPath(), data);
+    ServerTioConfig serverTioConfig = new ServerTioConfig("file-transfer-test");
+    serverTioConfig.setWorkerThreads(2);
+    serverTioConfig.setFileTransferMaxConcurrent(64);
+    serverTioConfig.setHeartbeatTimeout(0);
+    serverTioConfig.setServerAioHandler(new ServerAioHandler() {
+      @Override
+      public Packet decode(ByteBuffer buffer, int limit, int position, int readableLength, ChannelContext ctx) {
+        byte command = buffer.get(position);
+        buffer.position(limit);
+        return new BytesPacket(new byte[] { command });
+      }
+
+      @Override
+      public ByteBuffer encode(Packet packet, TioConfig tioConfig, ChannelContext ctx) {
+        return ByteBuffer.wrap(((BytesPacket) packet).body);
+      }
+
+      @Override
+      public void handler(Packet packet, ChannelContext ctx) {
+        if (((BytesPacket) packet).body[0] == 'p') {
+          Tio.send(ctx, new BytesPacket("PONG".getBytes()));
+          return;
+        }
+        BytesPacket header = new BytesPacket("HEAD".getBytes());
+        header.setFileBody(file);
+        Tio.send(ctx, header);
+        Tio.send(ctx, new BytesPacket("TAIL".getBytes()));
+      }
+    });
+    TioServer tioServer = new TioServer(serverTioConfig);
+    tioServer.start("127.0.0.1", PORT);
+    try {
+      AtomicInteger ok = new AtomicInteger();
+      CountDownLatch requested = new CountDownLatch(CLIENTS);
+      CountDownLatch resume = new CountDownLatch(1);
+      List<Thread> threads = new ArrayList<>();
+      List<Throwable> errors = new ArrayList<>();
+      for (int k = 0; k < CLIENTS; k++) {
+        Thread thread = new Thread(() -> {
+          try (Socket socket = new Socket()) {
+            // 小接收缓冲区，不读时服务端很快写不动
+            socket.setReceiveBufferSize(16 * 1024);
+            socket.connect(new InetSocketAddress("127.0.0.1", PORT));
+            socket.setSoTimeout(60000);
+            OutputStream out = socket.getOutputStream();
+            out.write('x');
+            out.flush();
+            requested.countDown();
+            resume.await();
+            download(socket.getInputStream(), data);
+            ok.incrementAndGet();
+          } catch (Throwable e) {
+            synchronized (errors) {
+              errors.add(e);
+            }
+          }
+        });
+        thread.start();
+        threads.add(thread);
+      }
+      Assert.assertTrue(requested.await(30, TimeUnit.SECONDS));
+
+      // 所有传输都卡在对端不读的时候，新的请求仍然在限定时间内得到响应
+      long deadline = System.currentTimeMillis() + 10000;
+      while (serverTioConfig.fileTransferCount.get() < 64 && System.currentTimeMillis() < deadline) {
+        Thread.sleep(10);
+      }
+      Assert.assertEquals(64, serverTioConfig.fileTransferCount.get());
+      try (Socket probe = new Socket("127.0.0.1", PORT)) {
+        probe.setSoTimeout(5000);
+        probe.getOutputStream().write('p');
+        byte[] pong = new byte[4];
+        int n = 0;
+        while (n < 4) {
+          int r = probe.getInputStream().read(pong, n, 4 - n);
+          Assert.assertTrue(r > 0);
+          n += r;
+        }
+        Assert.assertEquals("PONG", new String(pong));
+      }
+      Assert.assertEquals(64, serverTioConfig.fileTransferCount.get());
+
+      resume.countDown();
+      for (Thread thread : threads) {
+        thread.join();
+      }
+      Assert.assertTrue(errors.toString(), errors.isEmpty());
+      Assert.assertEquals(CLIENTS, ok.get());
+      deadline = System.currentTimeMillis() + 5000;
+      while (serverTioConfig.fileTransferCount.get() > 0 && System.currentTimeMillis() < deadline) {
+        Thread.sleep(10);
+      }
+      Assert.assertEquals(0, serverTioConfig.fileTransferCount.get());
+      Assert.assertTrue(serverTioConfig.pendingFileTransfers.isEmpty());
+    } finally {
+      tioServer.stop();
+    }
+  }
+
+  /**
+   * 限速读取并逐字节比较：HEAD、文件内容、TAIL
+   */
+  private static void download(InputStream in, byte[] data) throws Exception {
+    int expect = 4 + data.length + 4;
+    byte[] head = new byte[4];
+    byte[] tail = new byte[4];
+    byte[] buf = new byte[16 * 1024];
+    int n = 0;
+    int reads = 0;
+    while (n < expect) {
+      int r = in.read(buf, 0, Math.min(buf.length, expect - n));
+      Assert.assertTrue("eof at " + n, r > 0);
+      for (int i = 0; i < r; i++, n++) {
+        if (n < 4) {
+          head[n] = buf[i];
+        } else if (n < 4 + data.length) {
+          if (buf[i] != data[n - 4]) {
+            Assert.fail("mismatch at " + (n - 4));
+          }
+        } else {
+          tail[n - 4 - data.length] = buf[i];
+        }
+      }
+      if (++reads % 20 == 0) {
+        Thread.sleep(1);
+      }
+    }
+    Assert.assertEquals("HEAD", new String(head));
+    Assert.assertEquals("TAIL", new String(tail));
+  }
+}
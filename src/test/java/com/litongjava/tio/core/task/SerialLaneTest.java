@@ -0,0 +1,203 @@
+package com.litongjava.tio.core.task;
+
+import java.nio.ByteBuffer;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.litongjava.aio.Packet;
+import com.litongjava.tio.core.ChannelCloseCode;
+import com.litongjava.tio.core.ChannelContext;
+import com.litongjava.tio.core.PacketHandlerMode;
+import com.litongjava.tio.core.ReadCompletionHandler;
+import com.litongjava.tio.core.TioConfig;
+import com.litongjava.tio.server.ServerChannelContext;
+import com.litongjava.tio.server.ServerTioConfig;
+import com.litongjava.tio.server.intf.ServerAioHandler;
+
+/**
+ * 多个连接、多个生产者同时入队，验证同一连接按顺序串行处理，且线程池被多个连接共享；
+ * 线程池拒绝时暂停读并重新提交，线程池关闭时关闭连接
+ */
+public class SerialLaneTest {
+  private static final int CHANNELS = 16;
+  private static final int PACKETS = 2000;
+
+  @Test
+  public void test() throws Exception {
+    ConcurrentHashMap<ChannelContext, AtomicLong> lastSeq = new ConcurrentHashMap<>();
+    ConcurrentHashMap<ChannelContext, AtomicInteger> running = new ConcurrentHashMap<>();
+    AtomicInteger errors = new AtomicInteger();
+    AtomicInteger handled = new AtomicInteger();
+    ServerTioConfig serverTioConfig = new ServerTioConfig("serial-lane-test");
+    serverTioConfig.setHeartbeatTimeout(0);
+    serverTioConfig.setServerAioHandler(new ServerAioHandler() {
+      @Override
+      public Packet decode(ByteBuffer buffer, int limit, int position, int readableLength, ChannelContext ctx) {
+        return null;
+      }
+
+      @Override
+      public ByteBuffer encode(Packet packet, TioConfig tioConfig, ChannelContext ctx) {
+        return null;
+      }
+
+      @Override
+      public void handler(Packet packet, ChannelContext ctx) {
+        if (running.get(ctx).incrementAndGet() != 1) {
+          errors.incrementAndGet();
+        }
+        if (lastSeq.get(ctx).getAndSet(packet.getId()) + 1 != packet.getId()) {
+          errors.incrementAndGet();
+        }
+        running.get(ctx).decrementAndGet();
+        handled.incrementAndGet();
+      }
+    });
+    serverTioConfig.init();
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    serverTioConfig.setBizExecutor(executor);
+    serverTioConfig.setPacketHandlerMode(PacketHandlerMode.ORDERED);
+    serverTioConfig.setLaneMaxPacketsPerRun(8);
+
+    ChannelContext[] channelContexts = new ChannelContext[CHANNELS];
+    for (int i = 0; i < CHANNELS; i++) {
+      channelContexts[i] = new ServerChannelContext(serverTioConfig, "c" + i);
+      lastSeq.put(channelContexts[i], new AtomicLong(-1));
+      running.put(channelContexts[i], new AtomicInteger());
+    }
+
+    // 每个连接一个生产者线程（对应连接的读线程）
+    Thread[] producers = new Thread[CHANNELS];
+    for (int i = 0; i < CHANNELS; i++) {
+      ChannelContext channelContext = channelContexts[i];
+      producers[i] = new Thread(() -> {
+        for (long seq = 0; seq < PACKETS; seq++) {
+          Packet packet = new Packet();
+          packet.setId(seq);
+          channelContext.getSerialLane().offer(packet);
+        }
+      });
+      producers[i].start();
+    }
+    for (Thread producer : producers) {
+      producer.join();
+    }
+
+    long deadline = System.currentTimeMillis() + 30000;
+    while (handled.get() < CHANNELS * PACKETS && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    executor.shutdown();
+    Assert.assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+    Assert.assertEquals(CHANNELS * PACKETS, handled.get());
+    Assert.assertEquals(0, errors.get());
+    Assert.assertEquals(0, serverTioConfig.groupStat.laneQueuedPackets.get());
+    for (ChannelContext channelContext : channelContexts) {
+      Assert.assertEquals(0, channelContext.getLaneQueueSize());
+      Assert.assertEquals(PACKETS - 1, lastSeq.get(channelContext).get());
+    }
+  }
+
+  @Test
+  public void testRejectedBackpressure() throws Exception {
+    CountDownLatch blocked = new CountDownLatch(1);
+    CountDownLatch handled = new CountDownLatch(2);
+    Set<Thread> handlerThreads = ConcurrentHashMap.newKeySet();
+    ServerTioConfig serverTioConfig = serverTioConfig((packet, ctx) -> {
+      handlerThreads.add(Thread.currentThread());
+      if (packet.getId() == 0L) {
+        blocked.await();
+      }
+      handled.countDown();
+    });
+    // 一个线程、没有队列：第一个连接占住线程后，第二个连接被拒绝
+    ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new SynchronousQueue<>());
+    serverTioConfig.setBizExecutor(executor);
+    ChannelContext busy = new ServerChannelContext(serverTioConfig, "busy");
+    ChannelContext rejected = new ServerChannelContext(serverTioConfig, "rejected");
+    rejected.setClosed(false);
+    ReadCompletionHandler readCompletionHandler = new ReadCompletionHandler(rejected);
+    try {
+      busy.getSerialLane().offer(packet(0));
+      rejected.getSerialLane().offer(packet(1));
+
+      // 没有在入队线程（I/O线程）中处理，而是暂停读等待重新提交
+      Assert.assertEquals(1, rejected.getLaneQueueSize());
+      Assert.assertTrue(readCompletionHandler.isReadPaused());
+      blocked.countDown();
+      Assert.assertTrue(handled.await(5, TimeUnit.SECONDS));
+      Assert.assertFalse(handlerThreads.contains(Thread.currentThread()));
+      long deadline = System.currentTimeMillis() + 5000;
+      while (readCompletionHandler.isReadPaused() && System.currentTimeMillis() < deadline) {
+        Thread.sleep(10);
+      }
+      Assert.assertFalse(readCompletionHandler.isReadPaused());
+      Assert.assertEquals(0, rejected.getLaneQueueSize());
+    } finally {
+      blocked.countDown();
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void testExecutorShutdown() throws Exception {
+    AtomicInteger handled = new AtomicInteger();
+    ServerTioConfig serverTioConfig = serverTioConfig((packet, ctx) -> handled.incrementAndGet());
+    ExecutorService executor = Executors.newFixedThreadPool(1);
+    executor.shutdown();
+    serverTioConfig.setBizExecutor(executor);
+    ChannelContext channelContext = new ServerChannelContext(serverTioConfig, null, "127.0.0.1", 10000);
+    channelContext.setClosed(false);
+    channelContext.getSerialLane().offer(packet(0));
+
+    Assert.assertEquals(0, handled.get());
+    Assert.assertEquals(0, channelContext.getLaneQueueSize());
+    Assert.assertFalse(channelContext.getSerialLane().isScheduled());
+    Assert.assertEquals(ChannelCloseCode.BIZ_EXECUTOR_REJECTED, channelContext.getCloseCode());
+  }
+
+  private interface Handler {
+    void handle(Packet packet, ChannelContext ctx) throws Exception;
+  }
+
+  private static Packet packet(long id) {
+    Packet packet = new Packet();
+    packet.setId(id);
+    return packet;
+  }
+
+  private static ServerTioConfig serverTioConfig(Handler handler) {
+    ServerTioConfig serverTioConfig = new ServerTioConfig("serial-lane-reject-test");
+    serverTioConfig.setHeartbeatTimeout(0);
+    serverTioConfig.setServerAioHandler(new ServerAioHandler() {
+      @Override
+      public Packet decode(ByteBuffer buffer, int limit, int position, int readableLength, ChannelContext ctx) {
+        return null;
+      }
+
+      @Override
+      public ByteBuffer encode(Packet packet, TioConfig tioConfig, ChannelContext ctx) {
+        return null;
+      }
+
+      @Override
+      public void handler(Packet packet, ChannelContext ctx) throws Exception {
+        handler.handle(packet, ctx);
+      }
+    });
+    serverTioConfig.init();
+    serverTioConfig.setPacketHandlerMode(PacketHandlerMode.ORDERED);
+    return serverTioConfig;
+  }
+}
@@ -0,0 +1,77 @@
+package com.litongjava.tio.core.timer;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * 时间轮：取消的任务在下一个tick移除而不是等到经过它的格子，空闲后线程退出，添加任务时重新启动
+ */
+public class HashedTimingWheelTest {
+
+  @Test
+  public void testPurgeCancelled() throws Exception {
+    HashedTimingWheel wheel = new HashedTimingWheel("purge-test", 10, TimeUnit.MILLISECONDS, 64);
+    try {
+      AtomicInteger fired = new AtomicInteger();
+      HashedTimingWheel.Timeout[] timeouts = new HashedTimingWheel.Timeout[10000];
+      for (int i = 0; i < timeouts.length; i++) {
+        timeouts[i] = wheel.newTimeout(fired::incrementAndGet, 1, TimeUnit.HOURS);
+      }
+      waitFor(() -> wheel.bucketed() == timeouts.length);
+      for (HashedTimingWheel.Timeout timeout : timeouts) {
+        Assert.assertTrue(timeout.cancel());
+      }
+      waitFor(() -> wheel.bucketed() == 0);
+      Assert.assertEquals(0, wheel.bucketed());
+      Assert.assertFalse(timeouts[0].cancel());
+
+      // 取消其中一个，其它的照常执行
+      CountDownLatch latch = new CountDownLatch(2);
+      wheel.newTimeout(latch::countDown, 20, TimeUnit.MILLISECONDS);
+      wheel.newTimeout(latch::countDown, 20, TimeUnit.MILLISECONDS).cancel();
+      wheel.newTimeout(latch::countDown, 30, TimeUnit.MILLISECONDS);
+      Assert.assertTrue(latch.await(1, TimeUnit.SECONDS));
+      Assert.assertEquals(0, fired.get());
+    } finally {
+      wheel.stop();
+    }
+  }
+
+  @Test
+  public void testIdleExit() throws Exception {
+    HashedTimingWheel wheel = new HashedTimingWheel("idle-test", 10, TimeUnit.MILLISECONDS, 64);
+    wheel.setIdleTimeout(50, TimeUnit.MILLISECONDS);
+    try {
+      CountDownLatch first = new CountDownLatch(1);
+      wheel.newTimeout(first::countDown, 10, TimeUnit.MILLISECONDS);
+      Assert.assertTrue(first.await(1, TimeUnit.SECONDS));
+      waitFor(() -> !wheel.isRunning());
+      Assert.assertFalse(wheel.isRunning());
+
+      // 重新启动后按原来的时间基准继续
+      CountDownLatch second = new CountDownLatch(1);
+      long start = System.nanoTime();
+      wheel.newTimeout(second::countDown, 100, TimeUnit.MILLISECONDS);
+      Assert.assertTrue(wheel.isRunning());
+      Assert.assertTrue(second.await(1, TimeUnit.SECONDS));
+      Assert.assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(100));
+    } finally {
+      wheel.stop();
+    }
+  }
+
+  private interface Condition {
+    boolean test();
+  }
+
+  private static void waitFor(Condition condition) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 5000;
+    while (!condition.test() && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+  }
+}
@@ -0,0 +1,158 @@
+package com.litongjava.tio.core.timer;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.litongjava.aio.Packet;
+import com.litongjava.tio.core.ChannelContext;
+import com.litongjava.tio.core.DefaultAioListener;
+import com.litongjava.tio.core.IdleState;
+import com.litongjava.tio.core.TioConfig;
+import com.litongjava.tio.server.ServerChannelContext;
+import com.litongjava.tio.server.ServerTioConfig;
+import com.litongjava.tio.server.intf.ServerAioHandler;
+import com.litongjava.tio.utils.SystemTimer;
+
+/**
+ * 空闲检测：超时后一个tick内触发，有活动时不触发，支持连接级的heartbeatTimeout，关闭后不再检测
+ */
+public class IdleDetectorTest {
+
+  @Test
+  public void testAllIdle() throws Exception {
+    RecordingListener listener = new RecordingListener();
+    ServerTioConfig serverTioConfig = serverTioConfig(listener, 300);
+    ChannelContext channelContext = open(serverTioConfig, "all");
+    long start = SystemTimer.currTime;
+    IdleDetector.register(channelContext);
+
+    Thread.sleep(1000);
+    IdleDetector.cancel(channelContext);
+    Long firstFire = listener.first(channelContext, IdleState.ALL_IDLE);
+    Assert.assertNotNull(firstFire);
+    long delay = firstFire - start;
+    Assert.assertTrue("fired after " + delay, delay >= 300 && delay < 300 + 3 * IdleDetector.TICK_MILLIS);
+    Assert.assertTrue(listener.count(channelContext, IdleState.ALL_IDLE) >= 2);
+  }
+
+  @Test
+  public void testChannelHeartbeatTimeout() throws Exception {
+    RecordingListener listener = new RecordingListener();
+    ServerTioConfig serverTioConfig = serverTioConfig(listener, 60000);
+    ChannelContext channelContext = open(serverTioConfig, "channel");
+    IdleDetector.register(channelContext);
+    long start = SystemTimer.currTime;
+    channelContext.setHeartbeatTimeout(200L);
+
+    Thread.sleep(600);
+    IdleDetector.cancel(channelContext);
+    Long firstFire = listener.first(channelContext, IdleState.ALL_IDLE);
+    Assert.assertNotNull(firstFire);
+    Assert.assertTrue(firstFire - start < 200 + 3 * IdleDetector.TICK_MILLIS);
+  }
+
+  @Test
+  public void testReadIdle() throws Exception {
+    RecordingListener listener = new RecordingListener();
+    ServerTioConfig serverTioConfig = serverTioConfig(listener, 0);
+    serverTioConfig.setReadIdleTimeout(300);
+    serverTioConfig.setWriteIdleTimeout(300);
+    ChannelContext channelContext = open(serverTioConfig, "read");
+    IdleDetector.register(channelContext);
+
+    // 持续收到数据，只有写空闲
+    long end = System.currentTimeMillis() + 800;
+    while (System.currentTimeMillis() < end) {
+      channelContext.stat.latestTimeOfReceivedByte = SystemTimer.currTime;
+      Thread.sleep(50);
+    }
+    Assert.assertNull(listener.first(channelContext, IdleState.READER_IDLE));
+    Assert.assertNotNull(listener.first(channelContext, IdleState.WRITER_IDLE));
+    Assert.assertNull(listener.first(channelContext, IdleState.ALL_IDLE));
+
+    Thread.sleep(600);
+    IdleDetector.cancel(channelContext);
+    Assert.assertNotNull(listener.first(channelContext, IdleState.READER_IDLE));
+  }
+
+  @Test
+  public void testCancel() throws Exception {
+    RecordingListener listener = new RecordingListener();
+    ServerTioConfig serverTioConfig = serverTioConfig(listener, 200);
+    ChannelContext channelContext = open(serverTioConfig, "cancel");
+    IdleDetector.register(channelContext);
+    Assert.assertNotNull(channelContext.getIdleDetector());
+    IdleDetector.cancel(channelContext);
+    Assert.assertNull(channelContext.getIdleDetector());
+
+    Thread.sleep(500);
+    Assert.assertNull(listener.first(channelContext, IdleState.ALL_IDLE));
+  }
+
+  private static ChannelContext open(ServerTioConfig serverTioConfig, String id) {
+    ChannelContext channelContext = new ServerChannelContext(serverTioConfig, id);
+    channelContext.setClosed(false);
+    return channelContext;
+  }
+
+  /**
+   * 记录每个连接各类空闲的触发时间，总是保持连接
+   */
+  private static class RecordingListener extends DefaultAioListener {
+    private final Map<String, CopyOnWriteArrayList<Long>> fires = new ConcurrentHashMap<>();
+
+    @Override
+    public boolean onHeartbeatTimeout(ChannelContext channelContext, Long interval, int heartbeatTimeoutCount) {
+      record(channelContext, IdleState.ALL_IDLE);
+      return true;
+    }
+
+    @Override
+    public boolean onIdle(ChannelContext channelContext, IdleState idleState, long interval) {
+      record(channelContext, idleState);
+      return true;
+    }
+
+    private void record(ChannelContext channelContext, IdleState idleState) {
+      fires.computeIfAbsent(channelContext.getId() + idleState, k -> new CopyOnWriteArrayList<>()).add(SystemTimer.currTime);
+    }
+
+    Long first(ChannelContext channelContext, IdleState idleState) {
+      CopyOnWriteArrayList<Long> list = fires.get(channelContext.getId() + idleState);
+      return list == null ? null : list.get(0);
+    }
+
+    int count(ChannelContext channelContext, IdleState idleState) {
+      CopyOnWriteArrayList<Long> list = fires.get(channelContext.getId() + idleState);
+      return list == null ? 0 : list.size();
+    }
+  }
+
+  private static ServerTioConfig serverTioConfig(RecordingListener listener, long heartbeatTimeout) {
+    ServerTioConfig serverTioConfig = new ServerTioConfig("idle-test");
+    serverTioConfig.setHeartbeatTimeout(heartbeatTimeout);
+    serverTioConfig.setServerAioListener(listener);
+    serverTioConfig.setServerAioHandler(new ServerAioHandler() {
+      @Override
+      public Packet decode(ByteBuffer buffer, int limit, int position, int readableLength, ChannelContext ctx) {
+        return null;
+      }
+
+      @Override
+      public ByteBuffer encode(Packet packet, TioConfig tioConfig, ChannelContext ctx) {
+        return null;
+      }
+
+      @Override
+      public void handler(Packet packet, ChannelContext ctx) {
+      }
+    });
+    serverTioConfig.init();
+    return serverTioConfig;
+  }
+}
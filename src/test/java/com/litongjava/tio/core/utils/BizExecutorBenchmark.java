@@ -0,0 +1,98 @@
+package com.litongjava.tio.core.utils;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import com.litongjava.aio.Packet;
+import com.litongjava.tio.core.ChannelContext;
+import com.litongjava.tio.core.PacketHandlerMode;
+import com.litongjava.tio.core.TioConfig;
+import com.litongjava.tio.server.ServerChannelContext;
+import com.litongjava.tio.server.ServerTioConfig;
+import com.litongjava.tio.server.intf.ServerAioHandler;
+import com.litongjava.tio.utils.executor.TioThreadPoolExecutor;
+
+/**
+ * 业务处理中阻塞5~50ms时，相同并发数下TioThreadPoolExecutor与虚拟线程的吞吐量和p99延迟，以及不限制并发的虚拟线程<br>
+ * 当前JVM不支持虚拟线程时不运行。不属于单元测试，用main()运行
+ */
+public class BizExecutorBenchmark {
+
+  public static void main(String[] args) throws Exception {
+    if (!BizExecutorUtils.isVirtualThreadSupported()) {
+      System.out.println("virtual threads are not supported on java " + System.getProperty("java.version") + ", skipped");
+      return;
+    }
+    int channels = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+    int packets = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+    int parallelism = args.length > 2 ? Integer.parseInt(args[2]) : 64;
+
+    ServerTioConfig pooled = new ServerTioConfig("pooled");
+    pooled.setBizExecutor(new TioThreadPoolExecutor(parallelism, parallelism, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(),
+        r -> new Thread(r, "biz-pooled")));
+    pooled.setPacketHandlerMode(PacketHandlerMode.ORDERED);
+    run("TioThreadPoolExecutor(" + parallelism + ")", pooled, channels, packets);
+
+    ServerTioConfig limited = new ServerTioConfig("limited");
+    limited.setVirtualThreadEnabled(true);
+    limited.setVirtualThreadMaxConcurrent(parallelism);
+    run("virtual threads(" + parallelism + ")", limited, channels, packets);
+
+    ServerTioConfig unlimited = new ServerTioConfig("unlimited");
+    unlimited.setVirtualThreadEnabled(true);
+    run("virtual threads(unlimited)", unlimited, channels, packets);
+  }
+
+  private static void run(String name, ServerTioConfig serverTioConfig, int channels, int packets) throws Exception {
+    List<Long> latencies = Collections.synchronizedList(new ArrayList<>());
+    CountDownLatch latch = new CountDownLatch(channels * packets);
+    serverTioConfig.setHeartbeatTimeout(0);
+    serverTioConfig.setServerAioHandler(new ServerAioHandler() {
+      @Override
+      public Packet decode(ByteBuffer buffer, int limit, int position, int readableLength, ChannelContext ctx) {
+        return null;
+      }
+
+      @Override
+      public ByteBuffer encode(Packet packet, TioConfig tioConfig, ChannelContext ctx) {
+        return null;
+      }
+
+      @Override
+      public void handler(Packet packet, ChannelContext ctx) throws Exception {
+        // 模拟阻塞的JDBC、HTTP调用
+        Thread.sleep(5 + (packet.getRespId() % 46));
+        latencies.add(System.nanoTime() - packet.getRespId());
+        latch.countDown();
+      }
+    });
+    serverTioConfig.init();
+
+    List<ChannelContext> channelContexts = new ArrayList<>();
+    for (int i = 0; i < channels; i++) {
+      channelContexts.add(new ServerChannelContext(serverTioConfig, "c" + i));
+    }
+    long start = System.nanoTime();
+    for (long seq = 0; seq < packets; seq++) {
+      for (ChannelContext channelContext : channelContexts) {
+        Packet packet = new Packet();
+        packet.setId(seq);
+        // 借用respId记录入队时间
+        packet.setRespId(System.nanoTime());
+        channelContext.getSerialLane().offer(packet);
+      }
+    }
+    latch.await();
+    long cost = System.nanoTime() - start;
+    serverTioConfig.getBizExecutor().shutdown();
+
+    Collections.sort(latencies);
+    long p99 = latencies.get((int) (latencies.size() * 0.99) - 1);
+    System.out.printf("%s: %d packets/s, p99 %dms%n", name, channels * packets * 1000000000L / cost, TimeUnit.NANOSECONDS.toMillis(p99));
+  }
+}
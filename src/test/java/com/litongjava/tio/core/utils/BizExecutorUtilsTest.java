@@ -0,0 +1,104 @@
+package com.litongjava.tio.core.utils;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.litongjava.aio.Packet;
+import com.litongjava.tio.client.ClientTioConfig;
+import com.litongjava.tio.core.ChannelContext;
+import com.litongjava.tio.core.PacketHandlerMode;
+import com.litongjava.tio.core.TioConfig;
+import com.litongjava.tio.server.ServerChannelContext;
+import com.litongjava.tio.server.ServerTioConfig;
+import com.litongjava.tio.server.intf.ServerAioHandler;
+
+/**
+ * 虚拟线程模式（当前JVM不支持时是退回的平台线程池）：业务处理中阻塞时同一连接仍按顺序处理；
+ * init()之后开启、关闭、修改并发上限都立即生效
+ */
+public class BizExecutorUtilsTest {
+  private static final int CHANNELS = 50;
+  private static final int PACKETS = 5;
+
+  @Test
+  public void testOrdered() throws Exception {
+    ConcurrentHashMap<ChannelContext, AtomicLong> lastSeq = new ConcurrentHashMap<>();
+    AtomicInteger errors = new AtomicInteger();
+    CountDownLatch latch = new CountDownLatch(CHANNELS * PACKETS);
+    ServerTioConfig serverTioConfig = new ServerTioConfig("virtual");
+    serverTioConfig.setHeartbeatTimeout(0);
+    serverTioConfig.setVirtualThreadEnabled(true);
+    serverTioConfig.setVirtualThreadMaxConcurrent(16);
+    serverTioConfig.setServerAioHandler(new ServerAioHandler() {
+      @Override
+      public Packet decode(ByteBuffer buffer, int limit, int position, int readableLength, ChannelContext ctx) {
+        return null;
+      }
+
+      @Override
+      public ByteBuffer encode(Packet packet, TioConfig tioConfig, ChannelContext ctx) {
+        return null;
+      }
+
+      @Override
+      public void handler(Packet packet, ChannelContext ctx) throws Exception {
+        // 模拟阻塞的JDBC、HTTP调用
+        Thread.sleep(1);
+        if (lastSeq.get(ctx).getAndSet(packet.getId()) + 1 != packet.getId()) {
+          errors.incrementAndGet();
+        }
+        latch.countDown();
+      }
+    });
+    serverTioConfig.init();
+    Assert.assertEquals(PacketHandlerMode.ORDERED, serverTioConfig.getPacketHandlerMode());
+
+    ChannelContext[] channelContexts = new ChannelContext[CHANNELS];
+    for (int i = 0; i < CHANNELS; i++) {
+      channelContexts[i] = new ServerChannelContext(serverTioConfig, "c" + i);
+      lastSeq.put(channelContexts[i], new AtomicLong(-1));
+    }
+    for (long seq = 0; seq < PACKETS; seq++) {
+      for (ChannelContext channelContext : channelContexts) {
+        Packet packet = new Packet();
+        packet.setId(seq);
+        channelContext.getSerialLane().offer(packet);
+      }
+    }
+    Assert.assertTrue(latch.await(30, TimeUnit.SECONDS));
+    Assert.assertEquals(0, errors.get());
+    serverTioConfig.shutdownBizExecutor();
+  }
+
+  @Test
+  public void testEnableAfterInit() throws Exception {
+    // ClientTioConfig在构造方法中已经init
+    ClientTioConfig clientTioConfig = new ClientTioConfig(null, null);
+    clientTioConfig.setPacketHandlerMode(PacketHandlerMode.QUEUE);
+    Assert.assertNull(clientTioConfig.getBizExecutor());
+
+    clientTioConfig.setVirtualThreadEnabled(true);
+    ExecutorService first = clientTioConfig.getBizExecutor();
+    Assert.assertNotNull(first);
+    Assert.assertEquals(PacketHandlerMode.ORDERED, clientTioConfig.getPacketHandlerMode());
+
+    // 修改并发上限时重建，旧的线程池被关闭
+    clientTioConfig.setVirtualThreadMaxConcurrent(8);
+    Assert.assertNotSame(first, clientTioConfig.getBizExecutor());
+    Assert.assertTrue(first.isShutdown());
+
+    ExecutorService second = clientTioConfig.getBizExecutor();
+    clientTioConfig.setVirtualThreadEnabled(false);
+    Assert.assertNull(clientTioConfig.getBizExecutor());
+    Assert.assertTrue(second.isShutdown());
+    Assert.assertEquals(PacketHandlerMode.QUEUE, clientTioConfig.getPacketHandlerMode());
+  }
+}